@@ -28,9 +28,14 @@ package org.filesys.alfresco.repo;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.filesys.alfresco.base.ExtendedDiskInterface;
 import org.filesys.alfresco.repo.clientapi.AlfrescoClientApi;
@@ -39,6 +44,7 @@ import org.filesys.server.core.DeviceContext;
 import org.filesys.server.core.DeviceContextException;
 import org.filesys.server.core.SharedDevice;
 import org.filesys.server.filesys.*;
+import org.filesys.server.filesys.cache.FileState;
 import org.filesys.server.filesys.clientapi.ClientAPI;
 import org.filesys.server.filesys.clientapi.ClientAPIInterface;
 import org.filesys.server.filesys.postprocess.PostCloseProcessor;
@@ -51,11 +57,16 @@ import org.filesys.server.locking.OpLockManager;
 import org.filesys.smb.SMBException;
 import org.filesys.smb.server.SMBSrvSession;
 import org.filesys.util.DataBuffer;
+import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
 import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -66,6 +77,9 @@ import org.springframework.extensions.config.ConfigElement;
  * <p>
  * Decorates ContentDiskDriver with a performance cache of some frequently used 
  * results.   In particular for getFileInformation and fileExists
+ * <p>
+ * The file information cache is shared by all sessions and keyed by node, with the user specific
+ * attributes held per user. Entries are removed when the node is changed rather than clearing the cache.
  */
 public class BufferedContentDiskDriver implements ExtendedDiskInterface,
         DiskInterface,
@@ -79,7 +93,8 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
         ClientAPI,
         TransactionalMarkerInterface,
         NodeServicePolicies.OnDeleteNodePolicy,
-        NodeServicePolicies.OnMoveNodePolicy {
+        NodeServicePolicies.OnMoveNodePolicy,
+        NodeServicePolicies.OnUpdatePropertiesPolicy {
 
     // Logging
     private static final Log logger = LogFactory.getLog(BufferedContentDiskDriver.class);
@@ -119,50 +134,63 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
                 this, new JavaBehaviour(this, "onDeleteNode"));
         getPolicyComponent().bindClassBehaviour(NodeServicePolicies.OnMoveNodePolicy.QNAME,
                 this, new JavaBehaviour(this, "onMoveNode"));
+        getPolicyComponent().bindClassBehaviour(NodeServicePolicies.OnUpdatePropertiesPolicy.QNAME,
+                this, new JavaBehaviour(this, "onUpdateProperties"));
+
+        // Moving or renaming a folder changes the paths of the cached files below it
+        getPolicyComponent().bindClassBehaviour(NodeServicePolicies.OnMoveNodePolicy.QNAME,
+                ContentModel.TYPE_FOLDER, new JavaBehaviour(this, "onMoveFolder"));
+        getPolicyComponent().bindClassBehaviour(NodeServicePolicies.OnUpdatePropertiesPolicy.QNAME,
+                ContentModel.TYPE_FOLDER, new JavaBehaviour(this, "onUpdateFolderProperties"));
     }
 
     /**
-     * FileInfo Cache for path to FileInfo
+     * FileInfo Cache, shared by all sessions.
+     * <p>
+     * Holds three types of entry :-
+     * <ul>
+     *   <li>NodeRef to the file information for the node, less the user specific attributes</li>
+     *   <li>Path key to the NodeRef for the path</li>
+     *   <li>User key to the user specific attributes for the node</li>
+     * </ul>
      */
-    private SimpleCache<Serializable, FileInfo> fileInfoCache;
+    private SimpleCache<Serializable, Serializable> fileInfoCache;
+
+    // File attributes that depend on the user, permissions and lock ownership
+    private static final int USER_ATTRIBUTES = FileAttribute.ReadOnly + FileAttribute.NTOffline;
+
+    // Number of lookups between cache statistics debug output
+    private static final long CACHE_STATS_INTERVAL = 1000L;
+
+    // Cache statistics
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    // Cached file information stamp generator
+    private final AtomicLong cacheStamp = new AtomicLong();
 
     /**
-     * Set the cache that maintains node ID-NodeRef cross referencing data
+     * Set the cache that maintains the shared file information
      *
      * @param cache the cache
      */
-    public void setFileInfoCache(SimpleCache<Serializable, FileInfo> cache) {
+    public void setFileInfoCache(SimpleCache<Serializable, Serializable> cache) {
         this.fileInfoCache = cache;
     }
 
-    private static class FileInfoKey implements Serializable {
-        /**
-         *
-         */
+    /**
+     * Path cache key, maps a filesystem path to a node
+     */
+    private static class PathKey implements Serializable {
         private static final long serialVersionUID = 1L;
 
         String deviceName;
         String path;
-        String user;
         int hashCode;
 
-        public FileInfoKey(SrvSession sess, String path, TreeConnection tree) {
-            this.path = path;
-            this.user = sess.getUniqueId();
+        public PathKey(TreeConnection tree, String path) {
+            this.path = path.toUpperCase();
             this.deviceName = tree.getSharedDevice().getName();
-
-//            if(deviceName == null)
-//            {
-//                throw new RuntimeException("device name is null");
-//            }
-//            if(path == null)
-//            {
-//                throw new RuntimeException("path is null");
-//            }
-//            if(user == null)
-//            {
-//                throw new RuntimeException("unique id is null");
-//            }
         }
 
         @Override
@@ -170,81 +198,386 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
             if (this == other) {
                 return true;
             }
-            if (other == null || !(other instanceof FileInfoKey)) {
+            if (other == null || !(other instanceof PathKey)) {
                 return false;
             }
 
-            FileInfoKey o = (FileInfoKey) other;
+            PathKey o = (PathKey) other;
 
-            return path.equals(o.path) && user.equals(o.user) && deviceName.equals(o.deviceName);
+            return path.equals(o.path) && deviceName.equals(o.deviceName);
         }
 
         @Override
         public int hashCode() {
             if (hashCode == 0) {
-                hashCode = (user + path + deviceName).hashCode();
+                hashCode = (path + deviceName).hashCode();
             }
             return hashCode;
         }
     }
 
-    private FileInfo getFileInformationInternal(SrvSession sess, TreeConnection tree,
-                                                String path) throws IOException {
+    /**
+     * User cache key, maps a user and a cached file information entry to the user specific attributes
+     */
+    private static class UserKey implements Serializable {
+        private static final long serialVersionUID = 1L;
 
-        //String userName = AuthenticationUtil.getFullyAuthenticatedUser();
-        SharedDevice device = tree.getSharedDevice();
-        String deviceName = device.getName();
+        NodeRef nodeRef;
+        long stamp;
+        String user;
+        int hashCode;
 
-        if (logger.isDebugEnabled()) {
-            logger.debug("getFileInformation session:" + sess.getUniqueId() + ", deviceName:" + deviceName + ", path:" + path);
+        public UserKey(NodeRef nodeRef, long stamp, String user) {
+            this.nodeRef = nodeRef;
+            this.stamp = stamp;
+            this.user = user;
         }
 
-        if (path == null) {
-            throw new IllegalArgumentException("Path is null");
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || !(other instanceof UserKey)) {
+                return false;
+            }
+
+            UserKey o = (UserKey) other;
+
+            return stamp == o.stamp && nodeRef.equals(o.nodeRef) && user.equals(o.user);
+        }
+
+        @Override
+        public int hashCode() {
+            if (hashCode == 0) {
+                hashCode = (user + nodeRef + stamp).hashCode();
+            }
+            return hashCode;
         }
+    }
+
+    /**
+     * Cached file information for a node, the stamp changes each time the node is cached so that user
+     * attributes cached for a previous version of the node are not used. The paths that map to the node are
+     * held so that they are removed with the node, a path only resolves to the node while it is in the set.
+     */
+    private static class CachedFileInfo implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        ContentFileInfo fileInfo;
+        long stamp;
+        HashSet<PathKey> paths;
+
+        public CachedFileInfo(ContentFileInfo fileInfo, long stamp, HashSet<PathKey> paths) {
+            this.fileInfo = fileInfo;
+            this.stamp = stamp;
+            this.paths = paths;
+        }
+    }
+
+    // Transaction resource key for the nodes to remove from the cache when the transaction commits
+    private static final String KEY_INVALIDATE_NODES = BufferedContentDiskDriver.class.getName() + ".invalidateNodes";
+
+    // Marker added to the invalidate set when all path mappings must be removed
+    private static final NodeRef INVALIDATE_ALL_PATHS = new NodeRef("fsng", "invalidate", "allPaths");
 
-        FileInfoKey key = new FileInfoKey(sess, path, tree);
+    /**
+     * Return the user name to be used for the user specific cache entries
+     *
+     * @param sess SrvSession
+     * @return String
+     */
+    private String getCacheUser(SrvSession sess) {
+        if (sess.getClientInformation() != null && sess.getClientInformation().getUserName() != null) {
+            return sess.getClientInformation().getUserName();
+        }
+        return sess.getUniqueId();
+    }
 
-        FileInfo fromCache = fileInfoCache.get(key);
+    /**
+     * Check if the file information for a path can be cached, open files have their latest details held by
+     * the file state
+     *
+     * @param tree TreeConnection
+     * @param path String
+     * @return boolean
+     */
+    private boolean isCacheable(TreeConnection tree, String path) {
+        if (path.length() == 0 || path.equals(FileName.DOS_SEPERATOR_STR)) {
+            return false;
+        }
 
-        if (fromCache != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("returning FileInfo from cache");
+        ContentContext ctx = (ContentContext) tree.getContext();
+        if (ctx.hasStateCache()) {
+            FileState fstate = ctx.getStateCache().findFileState(path, false);
+            if (fstate != null && fstate.getOpenCount() > 0) {
+                return false;
             }
-            return fromCache;
         }
+        return true;
+    }
 
-        FileInfo info = diskInterface.getFileInformation(sess, tree, path);
+    /**
+     * Return cached file information for a path, merged with the user specific attributes
+     *
+     * @param sess SrvSession
+     * @param tree TreeConnection
+     * @param path String
+     * @return FileInfo, or null if not cached
+     */
+    private FileInfo getCachedFileInformation(SrvSession sess, TreeConnection tree, String path) {
+        FileInfo info = null;
 
-        if (info != null) {
-            /**
-             * Don't cache directories since the modification date is important.
-             */
-            if (!info.isDirectory()) {
-                fileInfoCache.put(key, info);
+        PathKey pathKey = new PathKey(tree, path);
+        NodeRef nodeRef = (NodeRef) fileInfoCache.get(pathKey);
+        if (nodeRef != null) {
+            CachedFileInfo cached = (CachedFileInfo) fileInfoCache.get(nodeRef);
+
+            // The path mapping is stale if the node has been cached again without the path
+            if (cached != null && cached.paths.contains(pathKey)) {
+                Integer userAttr = (Integer) fileInfoCache.get(new UserKey(nodeRef, cached.stamp, getCacheUser(sess)));
+
+                if (userAttr != null) {
+
+                    // Return a copy of the cached file information with the user attributes
+                    ContentFileInfo cinfo = new ContentFileInfo(nodeRef);
+                    cinfo.copyFrom(cached.fileInfo);
+                    cinfo.setLinkNodeRef(cached.fileInfo.getLinkNodeRef());
+
+                    int attr = (cached.fileInfo.getFileAttributes() & ~FileAttribute.NTNormal) + userAttr.intValue();
+                    cinfo.setFileAttributes(attr != 0 ? attr : FileAttribute.NTNormal);
+
+                    info = cinfo;
+                }
             }
         }
 
-        /*
-         * Dual Key the cache so it can be looked up by NodeRef or Path
-         */
-        if (info instanceof ContentFileInfo) {
-            ContentFileInfo cinfo = (ContentFileInfo) info;
-            fileInfoCache.put(cinfo.getNodeRef(), info);
+        // Update the cache statistics
+        long lookups;
+        if (info != null) {
+            lookups = cacheHits.incrementAndGet() + cacheMisses.get();
+        }
+        else {
+            lookups = cacheHits.get() + cacheMisses.incrementAndGet();
+        }
+
+        if (logger.isDebugEnabled() && (lookups % CACHE_STATS_INTERVAL) == 0) {
+            logger.debug("FileInfo cache hits=" + getCacheHitCount() + ", misses=" + getCacheMissCount() + ", hitRate=" + getCacheHitRate() + "%");
         }
 
         return info;
     }
 
+    /**
+     * Add file information to the cache, the user specific attributes are cached separately
+     *
+     * @param sess SrvSession
+     * @param tree TreeConnection
+     * @param path String
+     * @param info ContentFileInfo
+     */
+    private void cacheFileInformation(SrvSession sess, TreeConnection tree, String path, ContentFileInfo info) {
+        NodeRef nodeRef = info.getNodeRef();
+        PathKey pathKey = new PathKey(tree, path);
+        CachedFileInfo cached = (CachedFileInfo) fileInfoCache.get(nodeRef);
+
+        if (cached == null) {
+
+            // Cache a copy of the file information without the user specific attributes
+            ContentFileInfo cinfo = new ContentFileInfo(nodeRef);
+            cinfo.copyFrom(info);
+            cinfo.setLinkNodeRef(info.getLinkNodeRef());
+
+            int attr = info.getFileAttributes() & ~USER_ATTRIBUTES;
+            cinfo.setFileAttributes(attr != 0 ? attr : FileAttribute.NTNormal);
+
+            HashSet<PathKey> paths = new HashSet<PathKey>();
+            paths.add(pathKey);
+
+            cached = new CachedFileInfo(cinfo, cacheStamp.incrementAndGet(), paths);
+            fileInfoCache.put(nodeRef, cached);
+        }
+        else if (!cached.paths.contains(pathKey)) {
+
+            // Add the path to a copy of the cached entry, the cached value may be shared
+            HashSet<PathKey> paths = new HashSet<PathKey>(cached.paths);
+            paths.add(pathKey);
+
+            cached = new CachedFileInfo(cached.fileInfo, cached.stamp, paths);
+            fileInfoCache.put(nodeRef, cached);
+        }
+
+        fileInfoCache.put(new UserKey(nodeRef, cached.stamp, getCacheUser(sess)), Integer.valueOf(info.getFileAttributes() & USER_ATTRIBUTES));
+        fileInfoCache.put(pathKey, nodeRef);
+    }
+
+    /**
+     * Remove the cached file information for a path
+     *
+     * @param tree TreeConnection
+     * @param path String
+     */
+    private void invalidatePath(TreeConnection tree, String path) {
+        PathKey pathKey = new PathKey(tree, path);
+        NodeRef nodeRef = (NodeRef) fileInfoCache.get(pathKey);
+
+        if (nodeRef != null) {
+            invalidateNode(nodeRef);
+        }
+        fileInfoCache.remove(pathKey);
+    }
+
+    /**
+     * Remove the cached file information for a node, and the paths that map to the node
+     *
+     * @param nodeRef NodeRef
+     */
+    private void invalidateNode(NodeRef nodeRef) {
+        CachedFileInfo cached = (CachedFileInfo) fileInfoCache.get(nodeRef);
+
+        if (cached != null) {
+            for (PathKey pathKey : cached.paths) {
+                fileInfoCache.remove(pathKey);
+            }
+            fileInfoCache.remove(nodeRef);
+        }
+    }
+
+    /**
+     * Remove the cached path mappings for a folder and the paths below it, or all path mappings if the
+     * folder path is not known. The cached node details are kept.
+     *
+     * @param deviceName String, or null for all paths
+     * @param folderPath String, or null for all paths
+     */
+    private void invalidateFolderPaths(String deviceName, String folderPath) {
+        String prefix = folderPath != null ? folderPath.toUpperCase() + FileName.DOS_SEPERATOR_STR : null;
+        Collection<Serializable> keys = fileInfoCache.getKeys();
+
+        for (Serializable key : keys) {
+            if (key instanceof PathKey) {
+                PathKey pathKey = (PathKey) key;
+
+                if (prefix == null || (pathKey.deviceName.equals(deviceName) && pathKey.path.startsWith(prefix))) {
+                    fileInfoCache.remove(pathKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a node from the cache now, and again when the current transaction commits so that values read by
+     * another session before the commit are not left in the cache
+     *
+     * @param nodeRef NodeRef, or INVALIDATE_ALL_PATHS to remove all path mappings
+     */
+    private void invalidateAfterCommit(NodeRef nodeRef) {
+        if (nodeRef == INVALIDATE_ALL_PATHS) {
+            invalidateFolderPaths(null, null);
+        }
+        else {
+            invalidateNode(nodeRef);
+        }
+
+        if (AlfrescoTransactionSupport.getTransactionReadState() != AlfrescoTransactionSupport.TxnReadState.TXN_READ_WRITE) {
+            return;
+        }
+
+        // Collect the nodes for the transaction, and remove them from the cache once the transaction has committed
+        Set<NodeRef> nodes = AlfrescoTransactionSupport.getResource(KEY_INVALIDATE_NODES);
+
+        if (nodes == null) {
+            final Set<NodeRef> txnNodes = new HashSet<NodeRef>();
+            nodes = txnNodes;
+
+            AlfrescoTransactionSupport.bindResource(KEY_INVALIDATE_NODES, txnNodes);
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter() {
+                @Override
+                public void afterCommit() {
+                    if (txnNodes.remove(INVALIDATE_ALL_PATHS)) {
+                        invalidateFolderPaths(null, null);
+                    }
+                    for (NodeRef txnNode : txnNodes) {
+                        invalidateNode(txnNode);
+                    }
+                }
+            });
+        }
+
+        nodes.add(nodeRef);
+    }
+
+    /**
+     * Return the file information cache hit count
+     *
+     * @return long
+     */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Return the file information cache miss count
+     *
+     * @return long
+     */
+    public long getCacheMissCount() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Return the file information cache hit rate, as a percentage
+     *
+     * @return int
+     */
+    public int getCacheHitRate() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+
+        return total > 0 ? (int) ((hits * 100L) / total) : 0;
+    }
 
     @Override
     public FileInfo getFileInformation(SrvSession sess, TreeConnection tree,
                                        String path) throws IOException {
-        return diskInterface.getFileInformation( sess, tree, path);
+
+        if (path == null) {
+            throw new IllegalArgumentException("Path is null");
+        }
+
+        // Check for cached file information
+        boolean cacheable = isCacheable(tree, path);
+
+        if (cacheable) {
+            FileInfo fromCache = getCachedFileInformation(sess, tree, path);
+
+            if (fromCache != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("returning FileInfo from cache, path:" + path);
+                }
+                return fromCache;
+            }
+        }
+
+        FileInfo info = diskInterface.getFileInformation(sess, tree, path);
+
+        /**
+         * Don't cache directories since the modification date is important.
+         */
+        if (cacheable && info instanceof ContentFileInfo && !info.isDirectory()) {
+            cacheFileInformation(sess, tree, path, (ContentFileInfo) info);
+        }
+
+        return info;
     }
 
     @Override
     public FileStatus fileExists(SrvSession sess, TreeConnection tree, String path) {
+
+        // Only files are cached, a cache hit means the file exists
+        if (path != null && isCacheable(tree, path) && getCachedFileInformation(sess, tree, path) != null) {
+            return FileStatus.FileExists;
+        }
         return diskInterface.fileExists( sess, tree, path);
     }
 
@@ -302,9 +635,9 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
         // Close the file
         diskInterface.closeFile(sess, tree, netFile);
 
-        // If the fileInfo cache may have just had some content updated.
+        // The file content may have just been updated, remove the cached file information
         if ( !netFile.isDirectory() && !netFile.isReadOnly()) {
-            fileInfoCache.clear();
+            invalidatePath(tree, netFile.getFullName());
         }
     }
 
@@ -323,7 +656,7 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
     @Override
     public void deleteDirectory(SrvSession sess, TreeConnection tree, String dir)
             throws IOException {
-        fileInfoCache.remove(dir);
+        invalidatePath(tree, dir);
 
         diskInterface.deleteDirectory(sess, tree, dir);
     }
@@ -331,7 +664,7 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
     @Override
     public void deleteFile(SrvSession sess, TreeConnection tree, String name)
             throws IOException {
-        fileInfoCache.remove(name);
+        invalidatePath(tree, name);
 
         diskInterface.deleteFile(sess, tree, name);
     }
@@ -363,7 +696,18 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
     @Override
     public void renameFile(SrvSession sess, TreeConnection tree,
                            String oldName, String newName, NetworkFile netFile) throws IOException {
+        invalidatePath(tree, oldName);
+        invalidatePath(tree, newName);
+
+        // Renaming a folder changes the paths of the files below it
+        boolean isFolder = netFile != null ? netFile.isDirectory() :
+                diskInterface.fileExists(sess, tree, oldName) == FileStatus.DirectoryExists;
+
         diskInterface.renameFile(sess, tree, oldName, newName, netFile);
+
+        if (isFolder) {
+            invalidateFolderPaths(tree.getSharedDevice().getName(), oldName);
+        }
     }
 
     @Override
@@ -375,6 +719,8 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
     @Override
     public void setFileInformation(SrvSession sess, TreeConnection tree,
                                    String name, FileInfo info) throws IOException {
+        invalidatePath(tree, name);
+
         diskInterface.setFileInformation(sess, tree, name, info);
     }
 
@@ -431,16 +777,52 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
     public void onMoveNode(ChildAssociationRef oldChildAssocRef,
                            ChildAssociationRef newChildAssocRef) {
         if (fileInfoCache.contains(oldChildAssocRef.getChildRef())) {
-            logger.debug("cached node moved - clear the cache");
-            fileInfoCache.clear();
+            logger.debug("cached node moved - remove from the cache");
+            invalidateAfterCommit(oldChildAssocRef.getChildRef());
+        }
+    }
+
+    /**
+     * Folder moved, the folder path is not known so remove all cached path mappings
+     *
+     * @param oldChildAssocRef ChildAssociationRef
+     * @param newChildAssocRef ChildAssociationRef
+     */
+    public void onMoveFolder(ChildAssociationRef oldChildAssocRef,
+                             ChildAssociationRef newChildAssocRef) {
+        logger.debug("folder moved - remove the cached paths");
+        invalidateAfterCommit(INVALIDATE_ALL_PATHS);
+    }
+
+    /**
+     * Folder properties updated, if the folder has been renamed remove all cached path mappings
+     *
+     * @param nodeRef NodeRef
+     * @param before Map&lt;QName, Serializable&gt;
+     * @param after Map&lt;QName, Serializable&gt;
+     */
+    public void onUpdateFolderProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after) {
+        Serializable oldName = before.get(ContentModel.PROP_NAME);
+
+        if (oldName != null && !oldName.equals(after.get(ContentModel.PROP_NAME))) {
+            logger.debug("folder renamed - remove the cached paths");
+            invalidateAfterCommit(INVALIDATE_ALL_PATHS);
         }
     }
 
     @Override
     public void onDeleteNode(ChildAssociationRef oldChildAssocRef, boolean isArchived) {
         if (fileInfoCache.contains(oldChildAssocRef.getChildRef())) {
-            logger.debug("cached node deleted - clear the cache");
-            fileInfoCache.clear();
+            logger.debug("cached node deleted - remove from the cache");
+            invalidateAfterCommit(oldChildAssocRef.getChildRef());
+        }
+    }
+
+    @Override
+    public void onUpdateProperties(NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after) {
+        if (fileInfoCache.contains(nodeRef)) {
+            logger.debug("cached node updated - remove from the cache");
+            invalidateAfterCommit(nodeRef);
         }
     }
 
@@ -613,9 +995,9 @@ public class BufferedContentDiskDriver implements ExtendedDiskInterface,
         // Close the file
         diskInterface.closeFile(sess, tree, netFile);
 
-        // If the fileInfo cache may have just had some content updated.
+        // The file content may have just been updated, remove the cached file information
         if (! netFile.isDirectory() && ! netFile.isReadOnly()) {
-            fileInfoCache.clear();
+            invalidatePath(tree, netFile.getFullName());
         }
     }
 }
\ No newline at end of file
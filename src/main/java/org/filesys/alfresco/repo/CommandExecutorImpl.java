@@ -301,7 +301,10 @@ public class CommandExecutorImpl implements CommandExecutor
                     logger.debug("Remove Temp File:" + r.getNetworkFile());
                 }
                 File file = r.getNetworkFile().getFile();
-                boolean isDeleted = file.delete();
+
+                // The temp file may already have been moved to the content commit queue, if the delete fails the
+                // temp file cleanup task retries the delete
+                boolean isDeleted = FSTempFileProvider.getRegistry().deleteTempFile(file);
 
                 if(!isDeleted)
                 {          
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content Block Cache Class
+ *
+ * <p>Shared cache of fixed size blocks of content data, keyed by content URL and block index, used to serve reads
+ * of read-only content files without each file handle opening a channel to the content store. Content URLs are
+ * never reused for different data, so cached blocks do not need to be invalidated.
+ *
+ * <p>The block data is held in direct buffers, the total size of the buffers is limited by the memory budget. Blocks
+ * are evicted using the CLOCK algorithm.
+ */
+public class ContentBlockCache {
+
+    // Block size
+    public static final int BlockSize = 64 * 1024;
+
+    // Default memory budget
+    public static final long DefaultMemoryBudget = 64L * 1024L * 1024L;
+
+    /**
+     * Block key, content URL and block index
+     */
+    private static final class BlockKey {
+
+        private final String m_contentUrl;
+        private final long m_blockIdx;
+
+        BlockKey( String contentUrl, long blockIdx) {
+            m_contentUrl = contentUrl;
+            m_blockIdx = blockIdx;
+        }
+
+        @Override
+        public boolean equals( Object obj) {
+            if ( obj instanceof BlockKey == false)
+                return false;
+
+            BlockKey key = (BlockKey) obj;
+            return m_blockIdx == key.m_blockIdx && m_contentUrl.equals( key.m_contentUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_contentUrl.hashCode() * 31 + (int) ( m_blockIdx ^ ( m_blockIdx >>> 32));
+        }
+    }
+
+    /**
+     * Cache block, access to the key and data is synchronized on the block
+     */
+    private static final class CacheBlock {
+
+        // Block key, or null if the block is not in use
+        private BlockKey m_key;
+
+        // Block data, and length of valid data
+        private final ByteBuffer m_data;
+        private int m_length;
+
+        // Block has been accessed since the clock hand last passed
+        private volatile boolean m_referenced;
+
+        // Block is being loaded
+        private volatile boolean m_loading;
+
+        CacheBlock() {
+            m_data = ByteBuffer.allocateDirect( BlockSize);
+        }
+    }
+
+    // Cached blocks
+    private final Map<BlockKey, CacheBlock> m_blockMap = new ConcurrentHashMap<BlockKey, CacheBlock>();
+
+    // Block slots, allocated on demand, and the clock hand
+    private CacheBlock[] m_slots;
+    private int m_clockHand;
+
+    // Memory budget
+    private long m_memBudget = DefaultMemoryBudget;
+
+    // Statistics
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_evictions = new AtomicLong();
+
+    /**
+     * Set the memory budget, in bytes. Must be set before the cache is used.
+     *
+     * @param budget long
+     */
+    public final synchronized void setMemoryBudget( long budget) {
+        m_memBudget = budget >= BlockSize ? budget : DefaultMemoryBudget;
+        m_slots = null;
+    }
+
+    /**
+     * Return the memory budget, in bytes
+     *
+     * @return long
+     */
+    public final long getMemoryBudget() {
+        return m_memBudget;
+    }
+
+    /**
+     * Read data from a cached block
+     *
+     * @param contentUrl String
+     * @param blockIdx long
+     * @param blockOff int offset within the block
+     * @param buf byte[]
+     * @param pos int
+     * @param len int
+     * @return int number of bytes copied, or -1 if the block is not cached
+     */
+    public final int readBlock( String contentUrl, long blockIdx, int blockOff, byte[] buf, int pos, int len) {
+
+        BlockKey key = new BlockKey( contentUrl, blockIdx);
+        CacheBlock block = m_blockMap.get( key);
+
+        if ( block != null) {
+            synchronized ( block) {
+
+                // Check the block has not been evicted
+                if ( key.equals( block.m_key)) {
+                    block.m_referenced = true;
+                    m_hits.incrementAndGet();
+
+                    return copyFromBlock( block, blockOff, buf, pos, len);
+                }
+            }
+        }
+
+        m_misses.incrementAndGet();
+        return -1;
+    }
+
+    /**
+     * Load a block from the content channel, and copy the requested data. If the buffer is null the block is
+     * loaded without copying any data, for read-ahead.
+     *
+     * @param contentUrl String
+     * @param blockIdx long
+     * @param channel FileChannel
+     * @param blockOff int offset within the block
+     * @param buf byte[]
+     * @param pos int
+     * @param len int
+     * @return int number of bytes copied, or the block length if the buffer is null, or -1 if no cache block is
+     *         available
+     * @exception IOException Error reading the content
+     */
+    public final int loadBlock( String contentUrl, long blockIdx, FileChannel channel, int blockOff, byte[] buf, int pos, int len)
+        throws IOException {
+
+        CacheBlock block = allocateBlock();
+        if ( block == null)
+            return -1;
+
+        BlockKey key = new BlockKey( contentUrl, blockIdx);
+
+        synchronized ( block) {
+            try {
+
+                // Read the block data
+                ByteBuffer data = block.m_data.duplicate();
+                data.clear();
+
+                long fileOff = blockIdx * BlockSize;
+                int cnt = 0;
+
+                while ( data.hasRemaining() && cnt >= 0) {
+                    cnt = channel.read( data, fileOff + data.position());
+                }
+
+                block.m_length = data.position();
+                block.m_key = key;
+                block.m_referenced = true;
+
+                // Another handle may have loaded the same block, in which case release this block
+                if ( m_blockMap.putIfAbsent( key, block) != null)
+                    block.m_key = null;
+
+                if ( buf == null)
+                    return block.m_length;
+
+                return copyFromBlock( block, blockOff, buf, pos, len);
+            }
+            catch ( IOException ex) {
+                block.m_key = null;
+                throw ex;
+            }
+            finally {
+                block.m_loading = false;
+            }
+        }
+    }
+
+    /**
+     * Check if a block is cached
+     *
+     * @param contentUrl String
+     * @param blockIdx long
+     * @return boolean
+     */
+    public final boolean hasBlock( String contentUrl, long blockIdx) {
+        return m_blockMap.containsKey( new BlockKey( contentUrl, blockIdx));
+    }
+
+    /**
+     * Copy data from a block, must be called with the block locked
+     *
+     * @param block CacheBlock
+     * @param blockOff int
+     * @param buf byte[]
+     * @param pos int
+     * @param len int
+     * @return int number of bytes copied
+     */
+    private int copyFromBlock( CacheBlock block, int blockOff, byte[] buf, int pos, int len) {
+        if ( blockOff >= block.m_length)
+            return 0;
+
+        int cnt = Math.min( len, block.m_length - blockOff);
+
+        ByteBuffer data = block.m_data.duplicate();
+        data.clear();
+        data.position( blockOff);
+        data.get( buf, pos, cnt);
+
+        return cnt;
+    }
+
+    /**
+     * Allocate a block to be loaded, evicting a block if the memory budget has been used
+     *
+     * @return CacheBlock, or null if no block is available
+     */
+    private synchronized CacheBlock allocateBlock() {
+
+        if ( m_slots == null)
+            m_slots = new CacheBlock[(int) Math.min( m_memBudget / BlockSize, Integer.MAX_VALUE)];
+
+        // Sweep the slots at most twice, the first pass clears the referenced flags
+        for ( int i = 0; i < m_slots.length * 2; i++) {
+            int slot = m_clockHand;
+            m_clockHand = ( m_clockHand + 1) % m_slots.length;
+
+            CacheBlock block = m_slots[ slot];
+
+            if ( block == null) {
+                block = new CacheBlock();
+                block.m_loading = true;
+                m_slots[ slot] = block;
+
+                return block;
+            }
+
+            if ( block.m_loading)
+                continue;
+
+            if ( block.m_referenced) {
+                block.m_referenced = false;
+                continue;
+            }
+
+            // Evict the block, the block lock is only held briefly by readers copying data
+            block.m_loading = true;
+
+            synchronized ( block) {
+                if ( block.m_key != null) {
+                    m_blockMap.remove( block.m_key, block);
+                    block.m_key = null;
+                    m_evictions.incrementAndGet();
+                }
+            }
+
+            return block;
+        }
+
+        return null;
+    }
+
+    /**
+     * Return the number of cached blocks
+     *
+     * @return int
+     */
+    public final int numberOfBlocks() {
+        return m_blockMap.size();
+    }
+
+    /**
+     * Return the cache hit count
+     *
+     * @return long
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * Return the cache miss count
+     *
+     * @return long
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * Return the number of blocks evicted
+     *
+     * @return long
+     */
+    public final long getEvictionCount() {
+        return m_evictions.get();
+    }
+
+    /**
+     * Return the cache details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ContentBlockCache blocks=");
+        str.append( numberOfBlocks());
+        str.append( ", budget=");
+        str.append( m_memBudget);
+        str.append( ", hits=");
+        str.append( getHitCount());
+        str.append( ", misses=");
+        str.append( getMissCount());
+        str.append( ", evictions=");
+        str.append( getEvictionCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.node.NodeServicePolicies;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Content Channel Pool Class
+ *
+ * <p>Pool of read-only content channels, keyed by content URL, shared by the file handles reading the same
+ * content. The channel is closed when the last handle releases it. When the content property of a node changes the
+ * channel for the previous content is no longer shared with new handles.
+ *
+ * <p>Shared channels must only be used for positional reads, the channel position is shared by all handles.
+ */
+public class ContentChannelPool implements NodeServicePolicies.OnUpdatePropertiesPolicy {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(ContentChannelPool.class);
+
+    /**
+     * Pooled channel details
+     */
+    public static final class PooledChannel {
+
+        // Content URL, reader and read-only channel
+        private final String m_contentUrl;
+        private final ContentReader m_reader;
+        private final FileChannel m_channel;
+
+        // Number of file handles using the channel
+        private int m_refCount;
+
+        /**
+         * Class constructor
+         *
+         * @param contentUrl String
+         * @param reader ContentReader
+         * @param channel FileChannel
+         */
+        private PooledChannel( String contentUrl, ContentReader reader, FileChannel channel) {
+            m_contentUrl = contentUrl;
+            m_reader = reader;
+            m_channel = channel;
+        }
+
+        /**
+         * Return the content reader
+         *
+         * @return ContentReader
+         */
+        public final ContentReader getReader() {
+            return m_reader;
+        }
+
+        /**
+         * Return the read-only channel
+         *
+         * @return FileChannel
+         */
+        public final FileChannel getChannel() {
+            return m_channel;
+        }
+    }
+
+    // Policy component
+    private PolicyComponent m_policyComponent;
+
+    // Shared read channels enabled
+    private boolean m_enabled;
+
+    // Shared channels, keyed by content URL
+    private final Map<String, PooledChannel> m_channelMap = new HashMap<String, PooledChannel>();
+
+    // Statistics
+    private final AtomicLong m_opened = new AtomicLong();
+    private final AtomicLong m_shared = new AtomicLong();
+    private final AtomicLong m_invalidated = new AtomicLong();
+
+    /**
+     * Initialize the channel pool, register for node property updates if the pool is enabled
+     */
+    public void init() {
+        if ( m_enabled == false)
+            return;
+
+        PropertyCheck.mandatory( this, "policyComponent", m_policyComponent);
+
+        m_policyComponent.bindClassBehaviour( NodeServicePolicies.OnUpdatePropertiesPolicy.QNAME,
+                this, new JavaBehaviour( this, "onUpdateProperties"));
+    }
+
+    /**
+     * Enable/disable the shared read channels
+     *
+     * @param enabled boolean
+     */
+    public void setEnabled( boolean enabled) {
+        m_enabled = enabled;
+    }
+
+    /**
+     * Check if the shared read channels are enabled
+     *
+     * @return boolean
+     */
+    public final boolean isEnabled() {
+        return m_enabled;
+    }
+
+    /**
+     * Set the policy component
+     *
+     * @param policyComponent PolicyComponent
+     */
+    public void setPolicyComponent( PolicyComponent policyComponent) {
+        m_policyComponent = policyComponent;
+    }
+
+    /**
+     * Acquire the shared channel for a content URL
+     *
+     * @param contentUrl String
+     * @return PooledChannel, or null if there is no shared channel for the content
+     */
+    public final synchronized PooledChannel acquire( String contentUrl) {
+
+        PooledChannel pooled = m_channelMap.get( contentUrl);
+
+        if ( pooled != null) {
+            pooled.m_refCount++;
+            m_shared.incrementAndGet();
+        }
+
+        return pooled;
+    }
+
+    /**
+     * Acquire the shared channel for a content URL, opening a channel from the reader if there is no shared channel
+     *
+     * @param contentUrl String
+     * @param reader ContentReader
+     * @return PooledChannel
+     */
+    public final synchronized PooledChannel acquire( String contentUrl, ContentReader reader) {
+
+        PooledChannel pooled = acquire( contentUrl);
+        if ( pooled != null)
+            return pooled;
+
+        pooled = new PooledChannel( contentUrl, reader, reader.getFileChannel());
+        pooled.m_refCount = 1;
+
+        m_channelMap.put( contentUrl, pooled);
+        m_opened.incrementAndGet();
+
+        return pooled;
+    }
+
+    /**
+     * Release a shared channel, the channel is closed when the last file handle releases it
+     *
+     * @param pooled PooledChannel
+     */
+    public final void release( PooledChannel pooled) {
+
+        synchronized ( this) {
+            if ( --pooled.m_refCount > 0)
+                return;
+
+            m_channelMap.remove( pooled.m_contentUrl, pooled);
+        }
+
+        try {
+            pooled.m_channel.close();
+        }
+        catch ( IOException ex) {
+            logger.error("Error closing pooled channel, url=" + pooled.m_contentUrl, ex);
+        }
+    }
+
+    /**
+     * Stop sharing the channel for a content URL, the channel remains open until the current handles release it
+     *
+     * @param contentUrl String
+     */
+    public final synchronized void invalidate( String contentUrl) {
+
+        if ( m_channelMap.remove( contentUrl) != null) {
+            m_invalidated.incrementAndGet();
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Invalidated pooled channel, url=" + contentUrl);
+        }
+    }
+
+    /**
+     * Node properties updated, stop sharing the channel for the previous content if the content has changed
+     *
+     * @param nodeRef NodeRef
+     * @param before Map&lt;QName, Serializable&gt;
+     * @param after Map&lt;QName, Serializable&gt;
+     */
+    public void onUpdateProperties( NodeRef nodeRef, Map<QName, Serializable> before, Map<QName, Serializable> after) {
+
+        synchronized ( this) {
+            if ( m_channelMap.isEmpty())
+                return;
+        }
+
+        Serializable beforeContent = before.get( ContentModel.PROP_CONTENT);
+
+        if ( beforeContent instanceof ContentData && beforeContent.equals( after.get( ContentModel.PROP_CONTENT)) == false) {
+            String contentUrl = ((ContentData) beforeContent).getContentUrl();
+
+            if ( contentUrl != null)
+                invalidate( contentUrl);
+        }
+    }
+
+    /**
+     * Return the number of shared channels
+     *
+     * @return int
+     */
+    public final synchronized int numberOfChannels() {
+        return m_channelMap.size();
+    }
+
+    /**
+     * Return the pool details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ContentChannelPool channels=");
+        str.append( numberOfChannels());
+        str.append( ", opened=");
+        str.append( m_opened.get());
+        str.append( ", shared=");
+        str.append( m_shared.get());
+        str.append( ", invalidated=");
+        str.append( m_invalidated.get());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,1082 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Content Commit Queue Class
+ *
+ * <p>Commits the content of closed temporary files to the repository in the background, so the client does not
+ * have to wait for the content to be copied to the content store when a file is closed. Reads of a file with a
+ * pending commit are served from the temporary file, other opens of the file wait for the commit to complete.
+ *
+ * <p>Queued temporary files are moved to a commit folder below the temporary folder, with a journal of the queued
+ * and completed commits, so that commits that were pending when the server stopped are completed at startup. A
+ * commit that fails is marked failed in the journal so it is never replayed, and the failure is reported to the
+ * next open of the path. The temporary file of a failed or discarded commit is the only copy of the data, it is
+ * moved to the failed folder below the commit folder, and the failed file name is recorded in the journal and logged
+ * so the content can be recovered.
+ *
+ * <p>Commits for the same node run one at a time, in the order they were queued. The number of queued commits is
+ * limited, when the queue is full the caller must commit the content itself.
+ */
+public class ContentCommitQueue {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(ContentCommitQueue.class);
+
+    // Defaults for the number of commit threads and maximum queued commits
+    public static final int DefaultThreads = 2;
+    public static final int DefaultQueueSize = 100;
+
+    // Default time to wait for a pending commit to complete, in milliseconds
+    public static final long DefaultWaitTimeout = 60000L;
+
+    // Journal file name, and record types
+    public static final String JournalFileName = "commit.journal";
+
+    // Folder below the commit folder that the temporary files of failed and discarded commits are moved to
+    public static final String FailedFolderName = "failed";
+
+    private static final String JournalQueued = "Q";
+    private static final String JournalDone = "D";
+    private static final String JournalFailed = "F";
+
+    // Number of journal records to allow before the journal is compacted
+    private static final int JournalCompactSize = 1000;
+
+    /**
+     * Commit interface, called to commit a pending temporary file to the repository
+     */
+    public interface ContentCommitter {
+
+        /**
+         * Commit the temporary file content, called within a transaction running as the user that wrote the file
+         *
+         * @param pending PendingCommit
+         * @exception Exception Error committing the content
+         */
+        void commitContent( PendingCommit pending)
+            throws Exception;
+    }
+
+    /**
+     * Commit Discarded Exception Class
+     *
+     * <p>Thrown by the committer when the queued content must not be committed, such as when the node has been
+     * modified since the commit was queued. The temporary file is kept in the failed folder, the discard is not
+     * reported to the next open of the path.
+     */
+    public static class CommitDiscardedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Class constructor
+         *
+         * @param msg String
+         */
+        public CommitDiscardedException( String msg) {
+            super( msg);
+        }
+    }
+
+    /**
+     * Pending Commit Class
+     *
+     * <p>Details of a temporary file waiting to be committed.
+     */
+    public class PendingCommit {
+
+        // Filesystem path key, node, temporary file, path and user
+        private final String m_key;
+        private final NodeRef m_nodeRef;
+        private final File m_tempFile;
+        private final String m_path;
+        private final String m_userName;
+
+        // Modification date set directly by the client, or -1
+        private final long m_modifyDate;
+
+        // Content tracker and loader for the temporary file, not available for commits restored from the journal
+        private TempContentTracker m_tracker;
+        private TempContentLoader m_loader;
+
+        // Time queued, commit started and completed flags, and number of active readers
+        private final long m_queuedAt;
+        private boolean m_started;
+        private boolean m_completed;
+        private int m_readers;
+
+        // Commit restored from the journal at startup, and holds a queue slot
+        private boolean m_restored;
+        private boolean m_queueSlot;
+
+        // Ready to run once the queueing transaction has completed, and submitted to the thread pool
+        private boolean m_ready;
+        private boolean m_submitted;
+
+        // Next commit queued for the same node, guarded by the node commit map
+        private PendingCommit m_next;
+
+        // Error if the commit failed, and the file the temporary file was kept in
+        private Exception m_error;
+        private File m_failedFile;
+
+        // Signalled when the commit completes
+        private final CountDownLatch m_done = new CountDownLatch( 1);
+
+        /**
+         * Class constructor
+         *
+         * @param key String
+         * @param nodeRef NodeRef
+         * @param tempFile File
+         * @param path String
+         * @param userName String
+         * @param modifyDate long
+         * @param queuedAt long
+         */
+        protected PendingCommit( String key, NodeRef nodeRef, File tempFile, String path, String userName, long modifyDate, long queuedAt) {
+            m_key = key;
+            m_nodeRef = nodeRef;
+            m_tempFile = tempFile;
+            m_path = path;
+            m_userName = userName;
+            m_modifyDate = modifyDate;
+            m_queuedAt = queuedAt;
+        }
+
+        public final NodeRef getNodeRef() { return m_nodeRef; }
+        public final File getTempFile() { return m_tempFile; }
+        public final String getPath() { return m_path; }
+        public final String getUserName() { return m_userName; }
+        public final long getModifyDate() { return m_modifyDate; }
+        public final boolean hasModifyDate() { return m_modifyDate != -1L; }
+        public final TempContentTracker getContentTracker() { return m_tracker; }
+        public final TempContentLoader getContentLoader() { return m_loader; }
+        public final long getQueuedAt() { return m_queuedAt; }
+        public final boolean isRestored() { return m_restored; }
+        public final synchronized Exception getError() { return m_error; }
+        public final synchronized File getFailedFile() { return m_failedFile; }
+
+        /**
+         * Add a reader of the temporary file, only allowed before the commit starts
+         *
+         * @return boolean
+         */
+        public final synchronized boolean addReader() {
+            if ( m_started)
+                return false;
+            m_readers++;
+            return true;
+        }
+
+        /**
+         * Release a reader of the temporary file, delete the temporary file if the commit has completed successfully
+         */
+        public final void releaseReader() {
+            boolean delete;
+
+            synchronized ( this) {
+                m_readers--;
+                delete = m_completed && m_readers == 0 && m_error == null;
+            }
+
+            if ( delete)
+                deleteTempFile( this);
+        }
+
+        /**
+         * Check if the temporary file must be kept after the commit, as there are active readers
+         *
+         * @return boolean
+         */
+        public final synchronized boolean hasReaders() {
+            return m_readers > 0;
+        }
+
+        /**
+         * Wait for the commit to complete
+         *
+         * @param timeout long
+         * @return boolean true if the commit completed
+         */
+        public final boolean waitForCommit( long timeout) {
+            try {
+                return m_done.await( timeout, TimeUnit.MILLISECONDS);
+            }
+            catch ( InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * Mark the commit as started
+         *
+         * @return boolean true if there are active readers
+         */
+        protected final synchronized boolean setStarted() {
+            m_started = true;
+            return m_readers > 0;
+        }
+
+        /**
+         * Mark the commit as complete
+         *
+         * @param error Exception if the commit failed, or null
+         * @return boolean true if the temporary file can be deleted, the temporary file of a failed commit is kept
+         */
+        protected final boolean setCompleted( Exception error) {
+            boolean delete;
+
+            synchronized ( this) {
+                m_completed = true;
+                m_error = error;
+                delete = m_readers == 0 && error == null;
+            }
+
+            m_done.countDown();
+            return delete;
+        }
+
+        /**
+         * Return the pending commit details as a string
+         *
+         * @return String
+         */
+        public String toString() {
+            StringBuilder str = new StringBuilder();
+
+            str.append( "[PendingCommit ");
+            str.append( m_path);
+            str.append( ", node=");
+            str.append( m_nodeRef);
+            str.append( ", temp=");
+            str.append( m_tempFile.getName());
+            str.append( ", user=");
+            str.append( m_userName);
+            str.append( ", readers=");
+            str.append( m_readers);
+            if ( m_restored)
+                str.append( ", restored");
+            str.append( "]");
+
+            return str.toString();
+        }
+    }
+
+    // Transaction service and content committer
+    private final TransactionService m_transactionService;
+    private final ContentCommitter m_committer;
+
+    // Commit folder and journal
+    private final File m_commitDir;
+    private Writer m_journal;
+    private int m_journalRecords;
+
+    // Pending commits, keyed by filesystem and path
+    private final Map<String, PendingCommit> m_pending = new ConcurrentHashMap<String, PendingCommit>();
+
+    // Failed commits that have not been reported, keyed by filesystem and path
+    private final Map<String, PendingCommit> m_failed = new ConcurrentHashMap<String, PendingCommit>();
+
+    // Oldest outstanding commit for each node, later commits for the node are chained from it
+    private final Map<NodeRef, PendingCommit> m_nodeCommits = new HashMap<NodeRef, PendingCommit>();
+
+    // Commit thread pool, and queue slots for new commits
+    private volatile ThreadPoolExecutor m_executor;
+    private final int m_threads;
+    private final int m_queueSize;
+    private final Semaphore m_queueSlots;
+
+    // Commit statistics
+    private final AtomicLong m_commitCount = new AtomicLong();
+    private final AtomicLong m_failedCount = new AtomicLong();
+    private final AtomicLong m_totalLatency = new AtomicLong();
+    private final AtomicLong m_maxLatency = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param transactionService TransactionService
+     * @param committer ContentCommitter
+     * @param commitDir File
+     * @param threads int
+     * @param queueSize int
+     */
+    public ContentCommitQueue( TransactionService transactionService, ContentCommitter committer, File commitDir, int threads, int queueSize) {
+        m_transactionService = transactionService;
+        m_committer = committer;
+        m_commitDir = commitDir;
+        m_threads = threads > 0 ? threads : DefaultThreads;
+        m_queueSize = queueSize > 0 ? queueSize : DefaultQueueSize;
+        m_queueSlots = new Semaphore( m_queueSize);
+    }
+
+    /**
+     * Start the commit threads, and queue any commits that were pending when the server was stopped
+     *
+     * @exception IOException Error opening the journal
+     */
+    public final synchronized void startQueue()
+        throws IOException {
+
+        // Restore pending commits from the journal
+        List<PendingCommit> restored = restoreJournal();
+
+        // Create the commit thread pool. The number of queued commits is limited by the queue slots when the commit
+        // is queued, so submitting a commit never blocks or runs the commit on the calling thread.
+        final AtomicInteger threadId = new AtomicInteger();
+
+        m_executor = new ThreadPoolExecutor( m_threads, m_threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread( Runnable r) {
+                        Thread thread = new Thread( r, "ContentCommit_" + threadId.incrementAndGet());
+                        thread.setDaemon( true);
+                        return thread;
+                    }
+                });
+
+        for ( PendingCommit pending : restored) {
+            m_pending.put( pending.m_key, pending);
+            addNodeCommit( pending);
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Restored pending commit " + pending);
+
+            submitCommit( pending);
+        }
+
+        if ( logger.isDebugEnabled())
+            logger.debug("Content commit queue started, threads=" + m_threads + ", queueSize=" + m_queueSize + ", restored=" + restored.size());
+    }
+
+    /**
+     * Read the journal and open it for new records. The journal is rewritten with the outstanding commits only, and
+     * files in the commit folder that are not outstanding commits are deleted.
+     *
+     * @return List of restored pending commits, in the order they were queued
+     * @exception IOException Error reading or writing the journal
+     */
+    final synchronized List<PendingCommit> restoreJournal()
+        throws IOException {
+
+        if ( m_commitDir.exists() == false && m_commitDir.mkdirs() == false)
+            throw new IOException( "Failed to create commit folder " + m_commitDir);
+
+        List<String[]> outstanding = readJournal();
+        rewriteJournal( outstanding, true);
+
+        List<PendingCommit> restored = new ArrayList<PendingCommit>( outstanding.size());
+
+        for ( String[] rec : outstanding)
+            restored.add( restoreCommit( rec));
+
+        return restored;
+    }
+
+    /**
+     * Create a pending commit from a journal record
+     *
+     * @param rec String[]
+     * @return PendingCommit
+     */
+    protected final PendingCommit restoreCommit( String[] rec) {
+        File tempFile = new File( m_commitDir, rec[3]);
+
+        // Journals written before the queued time was recorded use the temporary file modification time
+        long queuedAt = rec.length > 7 ? Long.parseLong( rec[7]) : tempFile.lastModified();
+
+        PendingCommit pending = new PendingCommit( rec[1], new NodeRef( rec[2]), tempFile, rec[5], rec[4], Long.parseLong( rec[6]), queuedAt);
+        pending.m_restored = true;
+
+        return pending;
+    }
+
+    /**
+     * Stop the commit threads, queued commits will be restored from the journal at the next startup
+     */
+    public final void stopQueue() {
+        ThreadPoolExecutor executor;
+
+        synchronized ( this) {
+            executor = m_executor;
+            m_executor = null;
+        }
+
+        // Let running commits complete, commits that have not started stay in the journal
+        if ( executor != null) {
+            executor.shutdown();
+            executor.getQueue().clear();
+
+            try {
+                if ( executor.awaitTermination( 30L, TimeUnit.SECONDS) == false)
+                    logger.warn("Timeout waiting for content commits to complete, " + this);
+            }
+            catch ( InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized ( this) {
+            if ( m_journal != null) {
+                try {
+                    m_journal.close();
+                }
+                catch ( IOException ex) {
+                    logger.warn("Failed to close commit journal", ex);
+                }
+                m_journal = null;
+            }
+        }
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Content commit queue stopped, " + this);
+    }
+
+    /**
+     * Queue a temporary file to be committed. The temporary file is moved to the commit folder, the commit is
+     * started when the current transaction completes.
+     *
+     * @param deviceName String
+     * @param tempFile TempNetworkFile
+     * @param nodeRef NodeRef
+     * @param userName String
+     * @return PendingCommit
+     * @exception IOException Error queueing the commit, or the queue is full, the caller must commit the content
+     */
+    public final PendingCommit queueCommit( String deviceName, TempNetworkFile tempFile, NodeRef nodeRef, String userName)
+        throws IOException {
+
+        // Check the queue is running and has space, if not the caller commits the content itself
+        if ( m_executor == null)
+            throw new IOException( "Content commit queue is not running");
+
+        if ( m_queueSlots.tryAcquire() == false)
+            throw new IOException( "Content commit queue full, depth=" + getQueueDepth());
+
+        // Move the temporary file to the commit folder, the temporary file may be on a different temp root volume
+        File queueFile = new File( m_commitDir, tempFile.getFile().getName());
+
+        if ( tempFile.getFile().renameTo( queueFile) == false) {
+            try {
+                Files.move( tempFile.getFile().toPath(), queueFile.toPath());
+            }
+            catch ( IOException ex) {
+                m_queueSlots.release();
+                throw new IOException( "Failed to move temp file to commit folder, " + tempFile.getFile(), ex);
+            }
+        }
+
+        // The commit queue journal now tracks the temporary file
+        FSTempFileProvider.getRegistry().recordCommit( tempFile.getFile());
+
+        String key = makeKey( deviceName, tempFile.getFullName());
+        long modifyDate = tempFile.isModificationDateSetDirectly() ? tempFile.getModifyDate() : -1L;
+
+        final PendingCommit pending = new PendingCommit( key, nodeRef, queueFile, tempFile.getFullName(), userName, modifyDate,
+                System.currentTimeMillis());
+        pending.m_tracker = tempFile.getContentTracker();
+        pending.m_loader = tempFile.getContentLoader();
+        pending.m_queueSlot = true;
+
+        // Record the commit in the journal, then make the pending commit visible to other opens
+        writeJournal( JournalQueued, key, nodeRef.toString(), queueFile.getName(), userName, pending.getPath(), Long.toString( modifyDate),
+                Long.toString( pending.getQueuedAt()));
+
+        m_failed.remove( key);
+
+        PendingCommit prev = m_pending.put( key, pending);
+        if ( prev != null && logger.isDebugEnabled())
+            logger.debug("Replaced pending commit " + prev);
+
+        // Commits for the node run in the order they were queued
+        addNodeCommit( pending);
+
+        // Start the commit once the current transaction has completed, so the node updates do not conflict
+        if ( AlfrescoTransactionSupport.getTransactionReadState() != AlfrescoTransactionSupport.TxnReadState.TXN_NONE) {
+            AlfrescoTransactionSupport.bindListener( new TransactionListenerAdapter() {
+                @Override
+                public void afterCommit() {
+                    submitCommit( pending);
+                }
+
+                @Override
+                public void afterRollback() {
+                    submitCommit( pending);
+                }
+            });
+        }
+        else
+            submitCommit( pending);
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Queued commit " + pending + ", depth=" + getQueueDepth());
+
+        return pending;
+    }
+
+    /**
+     * Find the pending commit for a path
+     *
+     * @param deviceName String
+     * @param path String
+     * @return PendingCommit, or null if there is no pending commit for the path
+     */
+    public final PendingCommit findPending( String deviceName, String path) {
+        return m_pending.get( makeKey( deviceName, path));
+    }
+
+    /**
+     * Wait for the pending commit for a path to complete, if there is one. The caller must not carry on using the
+     * path if the commit did not complete.
+     *
+     * @param deviceName String
+     * @param path String
+     * @param timeout long
+     * @exception IOException The commit did not complete within the timeout
+     */
+    public final void waitForCommit( String deviceName, String path, long timeout)
+        throws IOException {
+
+        PendingCommit pending = findPending( deviceName, path);
+
+        if ( pending != null) {
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Wait for pending commit " + pending);
+
+            if ( pending.waitForCommit( timeout) == false) {
+                logger.warn("Timeout waiting for pending commit " + pending);
+                throw new IOException( "Timeout waiting for pending content commit, path=" + path);
+            }
+        }
+
+    }
+
+    /**
+     * Check if the last queued commit for a path failed. The failure is reported once, to the next open of the path.
+     *
+     * @param deviceName String
+     * @param path String
+     * @return PendingCommit, or null if the commit did not fail or the failure has been reported
+     */
+    public final PendingCommit checkFailed( String deviceName, String path) {
+        return m_failed.remove( makeKey( deviceName, path));
+    }
+
+    /**
+     * Return the number of commits queued or in progress
+     *
+     * @return int
+     */
+    public final int getQueueDepth() {
+        return m_pending.size();
+    }
+
+    /**
+     * Return the number of completed commits
+     *
+     * @return long
+     */
+    public final long getCommitCount() {
+        return m_commitCount.get();
+    }
+
+    /**
+     * Return the number of failed commits
+     *
+     * @return long
+     */
+    public final long getFailedCount() {
+        return m_failedCount.get();
+    }
+
+    /**
+     * Return the average time from a commit being queued to completion, in milliseconds
+     *
+     * @return long
+     */
+    public final long getAverageLatency() {
+        long cnt = m_commitCount.get();
+        return cnt > 0 ? m_totalLatency.get() / cnt : 0L;
+    }
+
+    /**
+     * Return the maximum time from a commit being queued to completion, in milliseconds
+     *
+     * @return long
+     */
+    public final long getMaximumLatency() {
+        return m_maxLatency.get();
+    }
+
+    /**
+     * Add a commit to the end of the commit chain for its node
+     *
+     * @param pending PendingCommit
+     */
+    private void addNodeCommit( PendingCommit pending) {
+        synchronized ( m_nodeCommits) {
+            PendingCommit tail = m_nodeCommits.get( pending.getNodeRef());
+
+            if ( tail == null)
+                m_nodeCommits.put( pending.getNodeRef(), pending);
+            else {
+                while ( tail.m_next != null)
+                    tail = tail.m_next;
+                tail.m_next = pending;
+            }
+        }
+    }
+
+    /**
+     * Mark a commit as ready to run, it is submitted to the thread pool once earlier commits for the node have
+     * completed
+     *
+     * @param pending PendingCommit
+     */
+    private void submitCommit( PendingCommit pending) {
+        synchronized ( m_nodeCommits) {
+            pending.m_ready = true;
+        }
+
+        runNextCommit( pending.getNodeRef());
+    }
+
+    /**
+     * Submit the oldest commit for a node to the thread pool, if it is ready and not already running
+     *
+     * @param nodeRef NodeRef
+     */
+    private void runNextCommit( NodeRef nodeRef) {
+        final PendingCommit next;
+
+        synchronized ( m_nodeCommits) {
+            PendingCommit head = m_nodeCommits.get( nodeRef);
+
+            if ( head == null || head.m_ready == false || head.m_submitted)
+                return;
+
+            head.m_submitted = true;
+            next = head;
+        }
+
+        // If the queue has been stopped the commit stays in the journal and is restarted at the next startup
+        ThreadPoolExecutor executor = m_executor;
+
+        if ( executor == null) {
+            if ( logger.isDebugEnabled())
+                logger.debug("Commit queue stopped, leave commit in journal " + next);
+            return;
+        }
+
+        try {
+            executor.execute( new Runnable() {
+                @Override
+                public void run() {
+                    runCommit( next);
+                }
+            });
+        }
+        catch ( RejectedExecutionException ex) {
+            if ( logger.isDebugEnabled())
+                logger.debug("Commit queue stopped, leave commit in journal " + next);
+        }
+    }
+
+    /**
+     * Remove a finished commit from its node chain, and start the next commit for the node
+     *
+     * @param pending PendingCommit
+     */
+    private void finishNodeCommit( PendingCommit pending) {
+        boolean runNext;
+
+        synchronized ( m_nodeCommits) {
+            runNext = pending.m_next != null;
+
+            if ( runNext)
+                m_nodeCommits.put( pending.getNodeRef(), pending.m_next);
+            else
+                m_nodeCommits.remove( pending.getNodeRef());
+        }
+
+        if ( runNext)
+            runNextCommit( pending.getNodeRef());
+    }
+
+    /**
+     * Commit the temporary file content, as the user that wrote the file
+     *
+     * @param pending PendingCommit
+     */
+    private void runCommit( final PendingCommit pending) {
+
+        // No new readers can be added once the commit has started
+        pending.setStarted();
+
+        boolean success = false;
+        boolean discarded = false;
+        Exception error = null;
+
+        try {
+            AuthenticationUtil.runAs( new AuthenticationUtil.RunAsWork<Void>() {
+                @Override
+                public Void doWork() throws Exception {
+                    RetryingTransactionHelper txHelper = m_transactionService.getRetryingTransactionHelper();
+
+                    return txHelper.doInTransaction( new RetryingTransactionHelper.RetryingTransactionCallback<Void>() {
+                        @Override
+                        public Void execute() throws Throwable {
+                            m_committer.commitContent( pending);
+                            return null;
+                        }
+                    }, false, true);
+                }
+            }, pending.getUserName());
+
+            success = true;
+        }
+        catch ( Exception ex) {
+            error = ex;
+            discarded = isDiscarded( ex);
+
+            if ( discarded == false)
+                m_failedCount.incrementAndGet();
+        }
+
+        // Keep the temporary file of a failed or discarded commit, it is the only copy of the data
+        File failedFile = null;
+
+        if ( success == false) {
+            failedFile = keepFailedFile( pending);
+
+            synchronized ( pending) {
+                pending.m_failedFile = failedFile;
+            }
+
+            String keptMsg = failedFile != null ? ", the content can be recovered from " + failedFile.getAbsolutePath() :
+                    ", failed to keep the temp file " + pending.getTempFile().getAbsolutePath();
+
+            if ( discarded)
+                logger.warn("Discarded queued content for " + pending + ", " + error.getMessage() + keptMsg);
+            else
+                logger.error("Failed to commit content for " + pending + ", the content has not been saved" + keptMsg, error);
+        }
+
+        // Update the statistics
+        long latency = System.currentTimeMillis() - pending.m_queuedAt;
+
+        if ( success) {
+            m_commitCount.incrementAndGet();
+            m_totalLatency.addAndGet( latency);
+
+            long maxLatency = m_maxLatency.get();
+            while ( latency > maxLatency && m_maxLatency.compareAndSet( maxLatency, latency) == false)
+                maxLatency = m_maxLatency.get();
+        }
+
+        // A failed commit is marked failed in the journal so it is not replayed over later content, with the name of
+        // the kept file, and a failure is reported to the next open of the path
+        if ( success)
+            writeJournal( JournalDone, pending.m_key, pending.getTempFile().getName());
+        else {
+            writeJournal( JournalFailed, pending.m_key, pending.getTempFile().getName(),
+                    failedFile != null ? FailedFolderName + File.separator + failedFile.getName() : "");
+
+            if ( discarded == false)
+                m_failed.put( pending.m_key, pending);
+        }
+
+        m_pending.remove( pending.m_key, pending);
+
+        if ( pending.m_queueSlot)
+            m_queueSlots.release();
+
+        if ( pending.setCompleted( error))
+            deleteTempFile( pending);
+
+        // Start the next commit for the node
+        finishNodeCommit( pending);
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Commit " + ( success ? "completed" : "failed") + " for " + pending + ", latency=" + latency + "ms, depth=" + getQueueDepth() +
+                    ", avgLatency=" + getAverageLatency() + "ms");
+    }
+
+    /**
+     * Check if a commit error is, or is caused by, the committer discarding the content
+     *
+     * @param ex Throwable
+     * @return boolean
+     */
+    private static boolean isDiscarded( Throwable ex) {
+        while ( ex != null) {
+            if ( ex instanceof CommitDiscardedException)
+                return true;
+            ex = ex.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Move the temporary file of a failed commit to the failed folder. Readers of the temporary file keep their
+     * open handles.
+     *
+     * @param pending PendingCommit
+     * @return File the kept file, or null if the temporary file could not be moved
+     */
+    private File keepFailedFile( PendingCommit pending) {
+        File tempFile = pending.getTempFile();
+
+        if ( tempFile.exists() == false)
+            return null;
+
+        File failedDir = new File( m_commitDir, FailedFolderName);
+
+        if ( failedDir.exists() == false && failedDir.mkdirs() == false) {
+            logger.warn("Failed to create failed commit folder " + failedDir);
+            return null;
+        }
+
+        // Do not overwrite an earlier failed file with the same name
+        File failedFile = new File( failedDir, tempFile.getName());
+        if ( failedFile.exists())
+            failedFile = new File( failedDir, tempFile.getName() + "." + System.currentTimeMillis());
+
+        try {
+            Files.move( tempFile.toPath(), failedFile.toPath());
+            return failedFile;
+        }
+        catch ( IOException ex) {
+            logger.warn("Failed to move temp file " + tempFile + " to " + failedFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Delete the temporary file for a completed commit, it may have been moved into the content store
+     *
+     * @param pending PendingCommit
+     */
+    private void deleteTempFile( PendingCommit pending) {
+        File tempFile = pending.getTempFile();
+
+        if ( tempFile.exists() && tempFile.delete() == false && logger.isDebugEnabled())
+            logger.debug("Failed to delete committed temp file " + tempFile);
+    }
+
+    /**
+     * Read the journal, and return the commits that were queued but not completed
+     *
+     * @return List of journal records
+     * @exception IOException Error reading the journal
+     */
+    private List<String[]> readJournal()
+        throws IOException {
+
+        Map<String, String[]> queued = new LinkedHashMap<String, String[]>();
+        File journalFile = new File( m_commitDir, JournalFileName);
+
+        if ( journalFile.exists()) {
+            BufferedReader rdr = new BufferedReader( new FileReader( journalFile));
+
+            try {
+                String line;
+
+                while (( line = rdr.readLine()) != null) {
+                    String[] rec = line.split( "\t");
+
+                    // Index the records by temporary file name, completed and failed commits are not restored
+                    if ( rec.length >= 7 && rec[0].equals( JournalQueued))
+                        queued.put( rec[3], rec);
+                    else if ( rec.length >= 3 && ( rec[0].equals( JournalDone) || rec[0].equals( JournalFailed)))
+                        queued.remove( rec[2]);
+                }
+            }
+            finally {
+                rdr.close();
+            }
+        }
+
+        // Only restore commits that still have a temporary file
+        List<String[]> restored = new ArrayList<String[]>( queued.size());
+
+        for ( String[] rec : queued.values()) {
+            if ( new File( m_commitDir, rec[3]).exists())
+                restored.add( rec);
+            else
+                logger.warn("Pending commit temp file missing, path=" + rec[5] + ", temp=" + rec[3]);
+        }
+
+        return restored;
+    }
+
+    /**
+     * Rewrite the journal with the outstanding commits, and optionally remove files that do not belong to an
+     * outstanding commit
+     *
+     * @param outstanding List of journal records
+     * @param deleteOrphans boolean
+     * @exception IOException Error writing the journal
+     */
+    private void rewriteJournal( List<String[]> outstanding, boolean deleteOrphans)
+        throws IOException {
+
+        File newJournal = new File( m_commitDir, JournalFileName + ".new");
+        Writer wrt = new FileWriter( newJournal);
+
+        try {
+            for ( String[] rec : outstanding)
+                wrt.write( String.join( "\t", rec) + "\n");
+        }
+        finally {
+            wrt.close();
+        }
+
+        File journalFile = new File( m_commitDir, JournalFileName);
+        if ( journalFile.exists() && journalFile.delete() == false)
+            throw new IOException( "Failed to replace commit journal " + journalFile);
+        if ( newJournal.renameTo( journalFile) == false)
+            throw new IOException( "Failed to replace commit journal " + journalFile);
+
+        m_journalRecords = outstanding.size();
+        m_journal = new FileWriter( journalFile, true);
+
+        // Delete files that are not part of an outstanding commit, only safe when no commits are being queued
+        if ( deleteOrphans == false)
+            return;
+
+        List<String> keepNames = new ArrayList<String>();
+        keepNames.add( JournalFileName);
+        keepNames.add( FailedFolderName);
+
+        for ( String[] rec : outstanding)
+            keepNames.add( rec[3]);
+
+        File[] files = m_commitDir.listFiles();
+        if ( files != null) {
+            for ( File curFile : files) {
+                if ( keepNames.contains( curFile.getName()) == false && curFile.delete() && logger.isDebugEnabled())
+                    logger.debug("Deleted orphan commit file " + curFile);
+            }
+        }
+    }
+
+    /**
+     * Write a record to the journal
+     *
+     * @param fields String...
+     */
+    private synchronized void writeJournal( String... fields) {
+        if ( m_journal == null)
+            return;
+
+        try {
+
+            // Compact the journal if it has grown, keeping the commits that have not completed
+            if ( m_journalRecords >= JournalCompactSize) {
+                m_journal.close();
+                m_journal = null;
+
+                rewriteJournal( readJournal(), false);
+            }
+
+            m_journal.write( String.join( "\t", fields) + "\n");
+            m_journal.flush();
+
+            m_journalRecords++;
+        }
+        catch ( IOException ex) {
+            logger.error("Failed to write commit journal", ex);
+        }
+    }
+
+    /**
+     * Build the pending commit key for a filesystem path
+     *
+     * @param deviceName String
+     * @param path String
+     * @return String
+     */
+    private static String makeKey( String deviceName, String path) {
+        return deviceName + ":" + path.toUpperCase();
+    }
+
+    /**
+     * Return the commit queue details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ContentCommitQueue depth=");
+        str.append( getQueueDepth());
+        str.append( ", commits=");
+        str.append( getCommitCount());
+        str.append( ", failed=");
+        str.append( getFailedCount());
+        str.append( ", avgLatency=");
+        str.append( getAverageLatency());
+        str.append( "ms, maxLatency=");
+        str.append( getMaximumLatency());
+        str.append( "ms]");
+
+        return str.toString();
+    }
+}
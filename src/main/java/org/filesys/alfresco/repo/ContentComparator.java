@@ -43,4 +43,31 @@ public interface ContentComparator
      * @return true content is equal, false content is different.
      */
     boolean isContentEqual(ContentReader existingContent, File file);
+
+    /**
+     * Are the two content items equal?
+     * <p>
+     * Uses the digest of the new content, if known, so that the new content does not need to be read.
+     * <p>
+     * @param existingContent
+     * @param file file
+     * @param fileDigest digest of the file content, or null if not known
+     * @return true content is equal, false content is different.
+     */
+    default boolean isContentEqual(ContentReader existingContent, File file, byte[] fileDigest)
+    {
+        return isContentEqual(existingContent, file);
+    }
+
+    /**
+     * The content of a file that was compared has been committed to the content store
+     * <p>
+     * Allows any information calculated for the new content during the comparison to be kept for the new content URL.
+     * <p>
+     * @param file file that was compared
+     * @param contentUrl content URL of the committed content
+     */
+    default void contentCommitted(File file, String contentUrl)
+    {
+    }
 }
@@ -105,6 +105,19 @@ public class ContentContext extends AlfrescoContext
     // Host name to be used when generating URL link files
     private String m_urlHostName;
 
+    // Folder path to node cache, and maximum cache size, zero disables the cache
+    private NodePathCache m_pathCache;
+    private int m_pathCacheSize = NodePathCache.DefaultMaximumSize;
+
+    // Cache of file/folder names known not to exist, shared with the filesystem driver
+    private NegativeLookupCache m_negativeLookupCache;
+
+    // Queue of temporary files waiting to be committed, shared with the filesystem driver
+    private ContentCommitQueue m_commitQueue;
+
+    // Number of folder search entries to load in a single batch
+    private int m_searchPrefetchSize = ContentSearchContext.DefaultPrefetchSize;
+
     /**
      * Default constructor allowing initialization by container.
      */
@@ -232,6 +245,69 @@ public class ContentContext extends AlfrescoContext
      */
     public String getLinkUrlHostName() { return m_urlHostName; }
 
+    /**
+     * Set the maximum number of folder paths to cache, zero disables the path cache
+     *
+     * @param cacheSize int
+     */
+    public void setPathCacheSize( int cacheSize) { m_pathCacheSize = cacheSize; }
+
+    /**
+     * Check if the folder path cache is enabled
+     *
+     * @return boolean
+     */
+    public final boolean hasPathCache() { return m_pathCache != null; }
+
+    /**
+     * Return the folder path cache
+     *
+     * @return NodePathCache
+     */
+    public final NodePathCache getPathCache() { return m_pathCache; }
+
+    /**
+     * Set the negative lookup cache, only set when the node monitor is enabled for the filesystem
+     *
+     * @param missCache NegativeLookupCache
+     */
+    protected void setNegativeLookupCache( NegativeLookupCache missCache) { m_negativeLookupCache = missCache; }
+
+    /**
+     * Return the negative lookup cache
+     *
+     * @return NegativeLookupCache, or null if not enabled
+     */
+    public final NegativeLookupCache getNegativeLookupCache() { return m_negativeLookupCache; }
+
+    /**
+     * Set the content commit queue, only set when asynchronous commits are enabled
+     *
+     * @param commitQueue ContentCommitQueue
+     */
+    protected void setCommitQueue( ContentCommitQueue commitQueue) { m_commitQueue = commitQueue; }
+
+    /**
+     * Return the content commit queue
+     *
+     * @return ContentCommitQueue, or null if asynchronous commits are not enabled
+     */
+    public final ContentCommitQueue getCommitQueue() { return m_commitQueue; }
+
+    /**
+     * Set the number of folder search entries to load file information for in a single batch
+     *
+     * @param prefetchSize int
+     */
+    public void setSearchPrefetchSize( int prefetchSize) { m_searchPrefetchSize = prefetchSize; }
+
+    /**
+     * Return the number of folder search entries to load file information for in a single batch
+     *
+     * @return int
+     */
+    public final int getSearchPrefetchSize() { return m_searchPrefetchSize; }
+
     @Override
     public void initialize(AlfrescoDiskDriver filesysDriver)
     {
@@ -260,6 +336,11 @@ public class ContentContext extends AlfrescoContext
         // Create the file state based lock manager
         
         m_lockManager = new FileStateLockManager( getStateCache());        
+
+        // Create the folder path cache, if enabled
+
+        if ( m_pathCacheSize > 0)
+            m_pathCache = new NodePathCache( m_pathCacheSize);
     }
     
     /**
@@ -417,6 +498,11 @@ public class ContentContext extends AlfrescoContext
         if ( m_nodeMonitor != null)
             m_nodeMonitor.shutdownRequest();
         
+        // Clear the folder path cache
+
+        if ( m_pathCache != null)
+            m_pathCache.clear();
+
         //  Stop the quota manager, if enabled
         
         if ( hasQuotaManager()) {
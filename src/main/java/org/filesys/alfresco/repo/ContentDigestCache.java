@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Content Digest Cache Class
+ *
+ * <p>Caches the digest of content in the content store, keyed by the content URL. Content URLs are not reused
+ * when content is updated, so a cached digest stays valid for as long as the content exists. The cache is bounded
+ * and evicts the least recently used entries.
+ */
+public class ContentDigestCache {
+
+    // Default maximum number of cached digests
+    public static final int DefaultMaximumSize = 10000;
+
+    // Content digest algorithm
+    public static final String DigestAlgorithm = "SHA-256";
+
+    // Buffer size used to calculate a digest from a stream
+    private static final int DigestBufferSize = 65536;
+
+    // Content URL to digest mappings, in access order
+    private LinkedHashMap<String, byte[]> m_digestMap;
+
+    // Maximum number of cached digests
+    private int m_maxSize = DefaultMaximumSize;
+
+    // Cache statistics
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * Default constructor
+     */
+    public ContentDigestCache() {
+        this( DefaultMaximumSize);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param maxSize int
+     */
+    public ContentDigestCache( int maxSize) {
+        setMaximumSize( maxSize);
+    }
+
+    /**
+     * Set the maximum number of cached digests
+     *
+     * @param maxSize int
+     */
+    public final synchronized void setMaximumSize( int maxSize) {
+        m_maxSize = maxSize > 0 ? maxSize : DefaultMaximumSize;
+
+        LinkedHashMap<String, byte[]> digestMap = new LinkedHashMap<String, byte[]>( 256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, byte[]> eldest) {
+                return size() > m_maxSize;
+            }
+        };
+
+        if ( m_digestMap != null)
+            digestMap.putAll( m_digestMap);
+        m_digestMap = digestMap;
+    }
+
+    /**
+     * Find the cached digest for a content URL
+     *
+     * @param contentUrl String
+     * @return byte[], or null if not cached
+     */
+    public final byte[] findDigest( String contentUrl) {
+        if ( contentUrl == null)
+            return null;
+
+        byte[] digest;
+
+        synchronized ( this) {
+            digest = m_digestMap.get( contentUrl);
+        }
+
+        if ( digest != null)
+            m_hits.incrementAndGet();
+        else
+            m_misses.incrementAndGet();
+
+        return digest;
+    }
+
+    /**
+     * Add the digest for a content URL
+     *
+     * @param contentUrl String
+     * @param digest byte[]
+     */
+    public final synchronized void addDigest( String contentUrl, byte[] digest) {
+        if ( contentUrl != null && digest != null)
+            m_digestMap.put( contentUrl, digest);
+    }
+
+    /**
+     * Remove the digest for a content URL
+     *
+     * @param contentUrl String
+     */
+    public final synchronized void removeDigest( String contentUrl) {
+        if ( contentUrl != null)
+            m_digestMap.remove( contentUrl);
+    }
+
+    /**
+     * Return the digest of the content, from the cache or by reading the content
+     *
+     * @param reader ContentReader
+     * @return byte[]
+     * @exception IOException Error reading the content
+     */
+    public final byte[] getDigest( ContentReader reader)
+        throws IOException {
+
+        byte[] digest = findDigest( reader.getContentUrl());
+
+        if ( digest == null) {
+
+            // Calculate the digest from the content, use a new reader as a reader can only be opened once
+            InputStream is = reader.getReader().getContentInputStream();
+
+            try {
+                digest = calculateDigest( is);
+            }
+            finally {
+                is.close();
+            }
+
+            addDigest( reader.getContentUrl(), digest);
+        }
+
+        return digest;
+    }
+
+    /**
+     * Clear the cache
+     */
+    public final synchronized void clear() {
+        m_digestMap.clear();
+    }
+
+    /**
+     * Return the number of cached digests
+     *
+     * @return int
+     */
+    public final synchronized int numberOfEntries() {
+        return m_digestMap.size();
+    }
+
+    /**
+     * Return the cache hit count
+     *
+     * @return long
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * Return the cache miss count
+     *
+     * @return long
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * Create a new content digest
+     *
+     * @return MessageDigest
+     */
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance( DigestAlgorithm);
+        }
+        catch ( NoSuchAlgorithmException ex) {
+            throw new IllegalStateException( "Digest algorithm not available, " + DigestAlgorithm, ex);
+        }
+    }
+
+    /**
+     * Calculate the digest of the data from a stream
+     *
+     * @param is InputStream
+     * @return byte[]
+     * @exception IOException Error reading the stream
+     */
+    public static byte[] calculateDigest( InputStream is)
+        throws IOException {
+
+        MessageDigest digest = createDigest();
+        byte[] buf = new byte[DigestBufferSize];
+        int rdlen;
+
+        while (( rdlen = is.read( buf)) != -1)
+            digest.update( buf, 0, rdlen);
+
+        return digest.digest();
+    }
+
+    /**
+     * Convert a digest value to a hex string
+     *
+     * @param digest byte[]
+     * @return String
+     */
+    public static String toHexString( byte[] digest) {
+        StringBuilder str = new StringBuilder( digest.length * 2);
+
+        for ( byte b : digest) {
+            str.append( Character.forDigit(( b >> 4) & 0x0F, 16));
+            str.append( Character.forDigit( b & 0x0F, 16));
+        }
+
+        return str.toString();
+    }
+
+    /**
+     * Return the cache details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ContentDigestCache entries=");
+        str.append( numberOfEntries());
+        str.append( "/");
+        str.append( m_maxSize);
+        str.append( ", hits=");
+        str.append( getHitCount());
+        str.append( ", misses=");
+        str.append( getMissCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -27,12 +27,18 @@ package org.filesys.alfresco.repo;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.service.cmr.repository.*;
@@ -69,17 +75,20 @@ import org.filesys.smb.SMBException;
 import org.filesys.smb.server.SMBServer;
 import org.filesys.util.DataBuffer;
 import org.filesys.util.MemorySize;
+import org.filesys.util.WildCard;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.encoding.ContentCharsetFinder;
-import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.model.filefolder.HiddenAspect;
 import org.alfresco.repo.node.archive.NodeArchiveService;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.security.authentication.AuthenticationContext;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
 import org.alfresco.service.cmr.lock.LockService;
 import org.alfresco.service.cmr.lock.NodeLockedException;
@@ -95,6 +104,7 @@ import org.alfresco.util.PropertyCheck;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.extensions.config.ConfigElement;
+import org.springframework.extensions.surf.util.I18NUtil;
 
 import static java.lang.Thread.sleep;
 
@@ -113,7 +123,8 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         OpLockInterface,
         FileLockingInterface,
         VersionInterface,
-        ClientAPI
+        ClientAPI,
+        ContentCommitQueue.ContentCommitter
 {
     // Logging
     private static final Log logger = LogFactory.getLog(ContentDiskDriver2.class);
@@ -129,6 +140,9 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
     // Copy content from temporary file buffer size
     public static final long COPY_FROM_TEMP_BUFFER_SIZE = 256000L;
 
+    // Amount of the start of the content used to guess the mimetype and encoding, zip containers use the file extension
+    public static final int CONTENT_HEADER_SIZE = 65536;
+
     // Services and helpers
     private SMBHelper smbHelper;
     private NamespaceService namespaceService;
@@ -164,96 +178,128 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
     // Enable use of move file when copying content from temporary file to the content store
     private boolean m_useMoveTempFile = true;
 
-    // Temporary file cleanup interval, in minutes
-    private long m_tempFileCleanupInterval = 15 * 60 * 1000;  // ms, 15mins
+    // How a temporary file that must be kept is copied to the content store file, and the configured strategy,
+    // or null to probe the temporary and content store folders at startup
+    private TempFileCommitStrategy m_commitStrategy = TempFileCommitStrategy.Stream;
+    private String m_commitStrategyName;
 
-    // List of temporary file paths to be cleaned up
-    private List<String> m_tempFilesToCleanup = new ArrayList<>();
+    // Additional temp roots, comma separated, and number of sub-folders in each temp root
+    private String m_tempRoots;
+    private int m_tempShards = FSTempFileProvider.DefaultShardCount;
 
-    // Temporary file cleanup thread
-    private Thread m_tempFileCleanupThread;
+    // Write the data for new files directly to the content store, whilst the writes are sequential
+    private boolean m_directWrite;
 
-    /**
-     * Timed request to check the temporary folder for temporary files that failed to delete when closed
-     */
-    public class TempFileCleanup implements Runnable {
+    // Hold the data for small new files in memory, and the buffer pool
+    private boolean m_memoryTempFiles;
+    private MemoryTempFilePool m_memoryTempPool;
 
-        @Override
-        public void run() {
+    // Serve reads of read-only files from the shared block cache, and the block cache
+    private boolean m_readBlockCache;
+    private ContentBlockCache m_blockCache;
 
-            try {
+    // Serve reads of large read-only files from shared memory mappings, and the mapping cache
+    private boolean m_mappedReads;
+    private MappedContentCache m_mappedCache;
 
-                // Loop
-                boolean shutdown = false;
+    // Load blocks ahead of sequential reads, and the read-ahead manager
+    private boolean m_readAhead;
+    private ReadAheadManager m_readAheadManager;
 
-                while (!shutdown) {
+    // Syncs writes to temp files shared by more than one handle in batches
+    private TempFileFlusher m_tempFileFlusher;
 
-                    // Sleep for a while
-                    try {
-                        sleep(m_tempFileCleanupInterval);
-                    } catch (InterruptedException ex) {
-                        shutdown = true;
-                        continue;
-                    }
+    // Load the header and trailer of Office documents opened read-only into the block cache when opened
+    private boolean m_officePrefetch;
 
-                    // Check if there are any temporary files in the list
-                    if ( m_tempFilesToCleanup.isEmpty())
-                        continue;
+    // Share read-only channels between handles reading the same content, and the channel pool
+    private boolean m_sharedReadChannels;
+    private ContentChannelPool m_channelPool;
 
-                    // DEBUG
-                    if (logger.isDebugEnabled())
-                        logger.debug("Running temporary file cleanup task, temp files=" + m_tempFilesToCleanup.size());
+    // Temporary file cleanup interval, in minutes
+    private long m_tempFileCleanupInterval = 15 * 60 * 1000;  // ms, 15mins
 
-                    // Loop through the temp file paths
-                    int idx = 0;
+    // Maximum number of temporary files deleted per batch when deleting the files left by the previous run
+    private static final int TempFileCleanupBatch = 500;
 
-                    while (idx < m_tempFilesToCleanup.size()) {
+    // Temporary file cleanup thread
+    private Thread m_tempFileCleanupThread;
 
-                        // Get the current temp file path
-                        String tempFile = m_tempFilesToCleanup.get(idx);
+    // Negative lookup cache size and expiry interval, size zero disables the cache
+    private int m_negativeLookupCacheSize = NegativeLookupCache.DefaultMaximumSize;
+    private long m_negativeLookupCacheExpiry = NegativeLookupCache.DefaultExpiryInterval;
 
-                        // DEBUG
-                        if (logger.isDebugEnabled())
-                            logger.debug("Checking temporary file: " + tempFile);
+    // Cache of file/folder names known not to exist, keyed by parent folder node and name
+    private NegativeLookupCache m_negativeLookupCache;
 
-                        java.nio.file.Path tempPath = Paths.get(tempFile);
-                        boolean removeEntry = false;
+    // Cache of content digests, keyed by content URL
+    private ContentDigestCache m_digestCache;
 
-                        if (Files.exists(tempPath)) {
+    // Index of content written by the filesystem, keyed by content digest, used to avoid storing duplicate content
+    private ContentHashIndex m_hashIndex;
+    private boolean m_contentDedup;
 
-                            // Delete the temporary file
-                            try {
-                                Files.delete(tempPath);
-                                removeEntry = true;
-                            } catch (IOException e) {
+    // Asynchronous content commit enable, number of commit threads and maximum queued commits
+    private boolean m_asyncCommit;
+    private int m_commitThreads = ContentCommitQueue.DefaultThreads;
+    private int m_commitQueueSize = ContentCommitQueue.DefaultQueueSize;
 
-                                // DEBUG
-                                if (logger.isDebugEnabled())
-                                    logger.debug("Failed to delete temporary file: " + tempFile + ", error: " + e.getMessage());
-                            }
-                        } else {
+    // Queue of temporary files waiting to be committed to the repository
+    private ContentCommitQueue m_commitQueue;
 
-                            // DEBUG
-                            if (logger.isDebugEnabled())
-                                logger.debug("Temporary file does not exist: " + tempFile);
+    // Temporary file to content store copy statistics
+    private final AtomicLong m_contentCopies = new AtomicLong();
+    private final AtomicLong m_contentCopyBytes = new AtomicLong();
+    private final AtomicLong m_contentCopyTime = new AtomicLong();
 
-                            removeEntry = true;
-                        }
+    /**
+     * Timed request to delete temporary files that failed to delete when closed, the files left by the previous
+     * run are deleted in batches when the thread starts
+     */
+    public class TempFileCleanup implements Runnable {
 
-                        // Check if the temp file entry should be removed
-                        if (removeEntry) {
-                            m_tempFilesToCleanup.remove(idx);
-                        } else {
-                            idx++;
-                        }
-                    }
+        @Override
+        public void run() {
+
+            TempFileRegistry registry = FSTempFileProvider.getRegistry();
+
+            try {
+
+                // Delete the orphaned temporary files from the previous run, in batches. Stop when a pass does not
+                // delete any files, files that cannot be deleted yet are retried by the periodic cleanup.
+                while (registry.runCleanup(TempFileCleanupBatch) > 0) {
+                    sleep(50L);
                 }
-            } catch (Exception ex){
 
                 // DEBUG
                 if (logger.isDebugEnabled())
-                    logger.debug("Temp file cleanup thread error=" + ex);
+                    logger.debug("Temporary file cleanup startup pass complete, " + registry);
+
+                // Loop until interrupted
+                while (!Thread.currentThread().isInterrupted()) {
+
+                    // Sleep for a while
+                    sleep(m_tempFileCleanupInterval);
+
+                    // Retry deletes of temporary files that failed to delete when closed, and update the temporary
+                    // space used
+                    int deleted = registry.runCleanup(Integer.MAX_VALUE);
+
+                    // DEBUG
+                    if (logger.isDebugEnabled())
+                        logger.debug("Ran temporary file cleanup task, deleted=" + deleted + ", " + registry);
+                }
+            } catch (InterruptedException ex) {
+
+                // Shutdown request, keep the interrupt status
+                Thread.currentThread().interrupt();
+            } catch (Exception ex){
+                logger.warn("Temp file cleanup thread error", ex);
             }
+
+            // DEBUG
+            if (logger.isDebugEnabled())
+                logger.debug("Temporary file cleanup thread stopped, " + registry);
         }
     }
 
@@ -297,7 +343,8 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
 
         // Set the temp folder to be used by the filesystem
         try {
-            FSTempFileProvider.setTempDirRoot(m_dirRoot);
+            String[] extraRoots = m_tempRoots != null && m_tempRoots.trim().length() > 0 ? m_tempRoots.split(",") : null;
+            FSTempFileProvider.setTempDirRoots(m_dirRoot, extraRoots, m_tempShards);
 
             if ( logger.isDebugEnabled())
                 logger.debug("Temp dir root set to: " + FSTempFileProvider.getTempDirRoot());
@@ -313,10 +360,71 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         if ( logger.isDebugEnabled())
             logger.debug("Using move temp file: " + useMoveTempFile());
 
+        // Select the strategy for copying temporary files directly to the content store, used when the temporary
+        // file is not moved to the content store
+        if ( FSTempFileProvider.FSTempRoot != null) {
+            if ( m_commitStrategyName == null || m_commitStrategyName.equalsIgnoreCase("auto"))
+                m_commitStrategy = TempFileCommitStrategy.probe(FSTempFileProvider.FSTempRoot, contentDir);
+            else {
+                try {
+                    m_commitStrategy = TempFileCommitStrategy.valueOf(m_commitStrategyName.substring(0, 1).toUpperCase() +
+                            m_commitStrategyName.substring(1).toLowerCase());
+                }
+                catch (IllegalArgumentException ex) {
+                    logger.warn("Invalid temp file commit strategy '" + m_commitStrategyName + "', using Stream");
+                    m_commitStrategy = TempFileCommitStrategy.Stream;
+                }
+            }
+
+            logger.info("Temp file commit strategy: " + m_commitStrategy);
+        }
+
         // Start the temporary file cleanup thread
         m_tempFileCleanupThread = new Thread(new TempFileCleanup(), "TempFileCleanupThread");
         m_tempFileCleanupThread.setDaemon(true);
         m_tempFileCleanupThread.start();
+
+        // Create the negative lookup cache, if enabled
+        if ( m_negativeLookupCacheSize > 0)
+            m_negativeLookupCache = new NegativeLookupCache(m_negativeLookupCacheSize, m_negativeLookupCacheExpiry);
+
+        // Duplicate content checks use the content hash index
+        if ( !m_contentDedup)
+            m_hashIndex = null;
+        else if ( m_hashIndex != null && logger.isDebugEnabled())
+            logger.debug("Content deduplication enabled, index=" + m_hashIndex);
+
+        // Start the content commit queue, if enabled. Commits that were pending at shutdown are restarted.
+        if ( m_asyncCommit && FSTempFileProvider.FSTempRoot != null) {
+            try {
+                m_commitQueue = new ContentCommitQueue(getTransactionService(), this, FSTempFileProvider.getCommitQueueDir(),
+                        m_commitThreads, m_commitQueueSize);
+                m_commitQueue.startQueue();
+
+                logger.info("Asynchronous content commit enabled, threads=" + m_commitThreads + ", queueSize=" + m_commitQueueSize);
+            }
+            catch ( IOException ex) {
+                logger.error("Failed to start content commit queue, commits will be synchronous", ex);
+                m_commitQueue = null;
+            }
+        }
+    }
+
+    /**
+     * Shutdown, stop the background threads. Queued content commits that have not started are restarted from the
+     * commit journal at the next startup.
+     */
+    public void destroy()
+    {
+        if ( m_commitQueue != null) {
+            m_commitQueue.stopQueue();
+            m_commitQueue = null;
+        }
+
+        if ( m_tempFileCleanupThread != null) {
+            m_tempFileCleanupThread.interrupt();
+            m_tempFileCleanupThread = null;
+        }
     }
     
     /**
@@ -613,6 +721,199 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
      */
     public void setTempFileCleanupInterval(int tempFileCleanupInterval) { m_tempFileCleanupInterval = (long) tempFileCleanupInterval * 60 * 1000; }
 
+    /**
+     * Set the flusher that syncs writes to temporary files open by more than one handle to disk, if not set the
+     * writes are synced immediately
+     *
+     * @param flusher TempFileFlusher
+     */
+    public void setTempFileFlusher(TempFileFlusher flusher) { m_tempFileFlusher = flusher; }
+
+    /**
+     * Return the temporary file flusher
+     *
+     * @return TempFileFlusher
+     */
+    public TempFileFlusher getTempFileFlusher() { return m_tempFileFlusher; }
+
+    /**
+     * Set additional temporary file folders, as a comma separated list
+     *
+     * @param tempRoots String
+     */
+    public void setTempRoots(String tempRoots) { m_tempRoots = tempRoots; }
+
+    /**
+     * Set the number of sub-folders used in each temporary file folder
+     *
+     * @param tempShards int
+     */
+    public void setTempShards(int tempShards) { m_tempShards = tempShards; }
+
+    /**
+     * Enable/disable writing sequential writes to new files directly to the content store
+     *
+     * @param directWrite boolean
+     */
+    public void setDirectWrite(boolean directWrite) { m_directWrite = directWrite; }
+
+    /**
+     * Enable/disable holding the data for small new files in memory
+     *
+     * @param memoryTempFiles boolean
+     */
+    public void setMemoryTempFiles(boolean memoryTempFiles) { m_memoryTempFiles = memoryTempFiles; }
+
+    /**
+     * Set the buffer pool used to hold the data for small new files in memory
+     *
+     * @param memoryTempPool MemoryTempFilePool
+     */
+    public void setMemoryTempFilePool(MemoryTempFilePool memoryTempPool) { m_memoryTempPool = memoryTempPool; }
+
+    /**
+     * Enable/disable serving reads of read-only files from the shared block cache
+     *
+     * @param readBlockCache boolean
+     */
+    public void setReadBlockCache(boolean readBlockCache) { m_readBlockCache = readBlockCache; }
+
+    /**
+     * Set the shared cache of content blocks used to serve reads of read-only files
+     *
+     * @param blockCache ContentBlockCache
+     */
+    public void setContentBlockCache(ContentBlockCache blockCache) { m_blockCache = blockCache; }
+
+    /**
+     * Enable/disable serving reads of large read-only files from shared memory mappings
+     *
+     * @param mappedReads boolean
+     */
+    public void setMappedReads(boolean mappedReads) { m_mappedReads = mappedReads; }
+
+    /**
+     * Set the cache of shared memory mappings used to serve reads of large read-only files
+     *
+     * @param mappedCache MappedContentCache
+     */
+    public void setMappedContentCache(MappedContentCache mappedCache) { m_mappedCache = mappedCache; }
+
+    /**
+     * Enable/disable loading blocks ahead of sequential reads
+     *
+     * @param readAhead boolean
+     */
+    public void setReadAhead(boolean readAhead) { m_readAhead = readAhead; }
+
+    /**
+     * Set the read-ahead manager used to load blocks ahead of sequential reads
+     *
+     * @param readAheadManager ReadAheadManager
+     */
+    public void setReadAheadManager(ReadAheadManager readAheadManager) { m_readAheadManager = readAheadManager; }
+
+    /**
+     * Return the read-ahead manager
+     *
+     * @return ReadAheadManager
+     */
+    public ReadAheadManager getReadAheadManager() { return m_readAheadManager; }
+
+    /**
+     * Enable/disable loading the header and trailer of Office documents into the block cache when opened read-only,
+     * requires the block cache and read-ahead to be enabled
+     *
+     * @param officePrefetch boolean
+     */
+    public void setOfficePrefetch(boolean officePrefetch) { m_officePrefetch = officePrefetch; }
+
+    /**
+     * Enable/disable sharing read-only channels between handles reading the same content
+     *
+     * @param sharedReadChannels boolean
+     */
+    public void setSharedReadChannels(boolean sharedReadChannels) { m_sharedReadChannels = sharedReadChannels; }
+
+    /**
+     * Set the pool of shared read-only channels
+     *
+     * @param channelPool ContentChannelPool
+     */
+    public void setContentChannelPool(ContentChannelPool channelPool) { m_channelPool = channelPool; }
+
+    /**
+     * Set the strategy used to copy a temporary file that is not moved to the content store file, one of 'auto',
+     * 'link', 'transfer' or 'stream'. The 'auto' setting probes the temporary and content store folders at startup
+     * and selects 'transfer' or 'stream', 'link' must be configured explicitly.
+     *
+     * @param strategy String
+     */
+    public void setTempFileCommitStrategy(String strategy) { m_commitStrategyName = strategy; }
+
+    /**
+     * Return the strategy used to copy a temporary file that is not moved to the content store file
+     *
+     * @return TempFileCommitStrategy
+     */
+    public final TempFileCommitStrategy getTempFileCommitStrategy() { return m_commitStrategy; }
+
+    /**
+     * Set the maximum number of missing file names to cache, zero disables the negative lookup cache
+     *
+     * @param cacheSize int
+     */
+    public void setNegativeLookupCacheSize(int cacheSize) { m_negativeLookupCacheSize = cacheSize; }
+
+    /**
+     * Set the negative lookup cache entry expiry interval, in seconds
+     *
+     * @param expirySecs int
+     */
+    public void setNegativeLookupCacheExpiry(int expirySecs) { m_negativeLookupCacheExpiry = (long) expirySecs * 1000L; }
+
+    /**
+     * Enable/disable committing the content of closed temporary files in the background
+     *
+     * @param asyncCommit boolean
+     */
+    public void setAsyncCommit(boolean asyncCommit) { m_asyncCommit = asyncCommit; }
+
+    /**
+     * Set the number of background content commit threads
+     *
+     * @param threads int
+     */
+    public void setAsyncCommitThreads(int threads) { m_commitThreads = threads; }
+
+    /**
+     * Set the maximum number of queued content commits, when the queue is full the commit runs on the closing thread
+     *
+     * @param queueSize int
+     */
+    public void setAsyncCommitQueueSize(int queueSize) { m_commitQueueSize = queueSize; }
+
+    /**
+     * Return the content commit queue
+     *
+     * @return ContentCommitQueue, or null if asynchronous commits are not enabled
+     */
+    public final ContentCommitQueue getCommitQueue() { return m_commitQueue; }
+
+    /**
+     * Return the registry of the filesystem temporary files
+     *
+     * @return TempFileRegistry
+     */
+    public final TempFileRegistry getTempFileRegistry() { return FSTempFileProvider.getRegistry(); }
+
+    /**
+     * Return the temporary space used by the filesystem temporary files, as at the last cleanup run
+     *
+     * @return long
+     */
+    public final long getTempSpaceUsed() { return FSTempFileProvider.getRegistry().getTempSpaceUsed(); }
+
     /**
      * Parse and validate the parameter string and create a device context object for this instance
      * of the shared device. The same DeviceInterface implementation may be used for multiple
@@ -767,6 +1068,25 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
          {     
                 NodeMonitor nodeMonitor = m_nodeMonitorFactory.createNodeMonitor(context);
                 context.setNodeMonitor( nodeMonitor);
+                
+                // Enable the folder path cache, the node monitor keeps it in step with changes made outside the filesystem
+                if ( context.hasPathCache())
+                {
+                    getSMBHelper().registerPathCache(context.getRootNode(), context.getPathCache());
+                    logger.info("Path cache enabled for filesystem " + context.getDeviceName() + ", size=" + context.getPathCache().getMaximumSize());
+                }
+                
+                // Enable the negative lookup cache, the node monitor removes entries for files created outside the filesystem
+                if ( m_negativeLookupCache != null)
+                {
+                    context.setNegativeLookupCache(m_negativeLookupCache);
+                }
+         }
+
+         // Reads of files waiting for a background commit are served from the queued temporary file
+         if ( m_commitQueue != null)
+         {
+             context.setCommitQueue(m_commitQueue);
          }
          
          logger.debug("initialise the file state lock manager");
@@ -885,7 +1205,48 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
             }
             
             // no - this is not a specially named pseudo file.
-            NodeRef nodeRef = getNodeForPath(tree, infoPath);
+            
+            // Check if the path is known not to exist, the parent folder is only looked up when a new missing
+            // path is recorded
+            NegativeLookupCache missCache = ctx.getNegativeLookupCache();
+            boolean checkMissing = missCache != null && !WildCard.containsWildcards(infoPath);
+            long removeStamp = 0L;
+            
+            if ( checkMissing)
+            {
+                if ( missCache.isMissing(ctx.getRootNode(), infoPath))
+                {
+                    throw new FileNotFoundException(infoPath);
+                }
+                removeStamp = missCache.getRemoveStamp();
+            }
+            
+            NodeRef nodeRef = null;
+            try
+            {
+                nodeRef = getNodeForPath(tree, infoPath);
+            }
+            catch (FileNotFoundException e)
+            {
+                // Remember the missing name, if the parent folder exists
+                if ( checkMissing)
+                {
+                    String[] missPaths = FileName.splitPath(infoPath);
+                    if ( missPaths[1] != null && missPaths[1].length() > 0)
+                    {
+                        try
+                        {
+                            NodeRef parentNodeRef = getNodeForPath(tree, missPaths[0]);
+                            missCache.addMissing(ctx.getRootNode(), infoPath, parentNodeRef, missPaths[1], removeStamp);
+                        }
+                        catch (FileNotFoundException ex)
+                        {
+                            // Parent folder does not exist
+                        }
+                    }
+                }
+                throw e;
+            }
             
             if ( nodeRef != null)
             {
@@ -1030,6 +1391,7 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
             }
             
             DotDotContentSearchContext searchCtx = new DotDotContentSearchContext(getSMBHelper(), results, searchFileSpec, pseudoList, paths[0], isLockedFilesAsOffline);          
+            searchCtx.setPrefetchSize(ctx.getSearchPrefetchSize());
 
             FileInfo dotInfo = getSMBHelper().getFileInformation(searchRootNodeRef, false, isLockedFilesAsOffline);
             
@@ -1254,6 +1616,8 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
             }
             
             NodeRef nodeRef = getSMBHelper().createNode(dirNodeRef, folderName, ContentModel.TYPE_FOLDER);
+            
+            removeMissingAfterCommit(dirNodeRef, folderName, ctx.getRootNode(), path);
 
                 
             if (logger.isDebugEnabled())
@@ -1331,6 +1695,9 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                 {
                     // Delete the folder node
                     fileFolderService.delete(nodeRef);
+                    
+                    // Remove the folder, and any cached sub-folders, from the path cache
+                    getSMBHelper().invalidatePath(deviceRootNodeRef, dir);
                 }
                 else
                 {
@@ -1479,6 +1846,7 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                     logger.debug("deleted file" + path);
                 }
                 fileFolderService.delete(nodeRef);
+                getSMBHelper().invalidatePath(ctx.getRootNode(), path);
                 
                 //TODO Needs to be post-commit
                 if (quotaMgr != null)
@@ -1642,6 +2010,11 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                             "   Aspects:       " + nodeService.getAspects(nodeToMoveRef));
                 }
                 
+                // Remove the old path, and any cached sub-folders, from the path cache
+                getSMBHelper().invalidatePath(rootNode, oldName);
+                
+                removeMissingAfterCommit(targetFolderRef, name, rootNode, isFolder ? newName : null);
+                
                 if (logger.isDebugEnabled())
                 {
                     logger.debug("  Renamed " + (isFolder ? "folder" : "file") + " using "
@@ -1674,6 +2047,8 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                 {
                     fileFolderService.rename(nodeToMoveRef, name);
                 }        
+                
+                removeMissingAfterCommit(targetFolderRef, name, rootNode, null);
             }
         } 
         catch (org.alfresco.service.cmr.model.FileNotFoundException e)
@@ -2299,6 +2674,44 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         return size;
     }
 
+    /**
+     * Remove a name that now exists in a folder from the negative lookup cache. The name is removed now, and again
+     * after the transaction commits, as a lookup by another session does not see the new name until the commit
+     * and may add the name back in the meantime.
+     * <p>
+     * For a folder the paths below the folder path are removed too, as the entries below the path were recorded
+     * against the folder that previously had the path.
+     *
+     * @param parentNodeRef NodeRef
+     * @param name String
+     * @param rootNode NodeRef
+     * @param folderPath String path of a created, renamed or moved folder, or null for a file
+     */
+    private void removeMissingAfterCommit(final NodeRef parentNodeRef, final String name, final NodeRef rootNode, final String folderPath)
+    {
+        final NegativeLookupCache missCache = m_negativeLookupCache;
+        if ( missCache == null)
+            return;
+
+        missCache.removeMissing(parentNodeRef, name);
+        if ( folderPath != null)
+            missCache.removePath(rootNode, folderPath);
+
+        if ( AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_WRITE)
+        {
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+            {
+                @Override
+                public void afterCommit()
+                {
+                    missCache.removeMissing(parentNodeRef, name);
+                    if ( folderPath != null)
+                        missCache.removePath(rootNode, folderPath);
+                }
+            });
+        }
+    }
+
     /**
      * Get the node for the specified path
      * 
@@ -2635,6 +3048,9 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
             
             NodeRef nodeRef = null;
             
+            // The name will exist in the folder, remove any negative lookup cache entry
+            removeMissingAfterCommit(dirNodeRef, folderName, rootNode, null);
+            
             if(soft)
             {
                 nodeRef = existing;
@@ -2656,10 +3072,26 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                 hiddenAspect.hideNodeExplicit(nodeRef);
             }
             
-            File file = FSTempFileProvider.createTempFile("cifs", ".bin");
-            
-            TempNetworkFile netFile = new TempNetworkFile(file, path);
+            // Small new files are held in memory, new files can write sequential data directly to the content
+            // store, the temp file is used if the file grows or the writes are not sequential
+            TempNetworkFile netFile;
+
+            if (m_memoryTempFiles && m_memoryTempPool != null && !soft && allocationSize <= m_memoryTempPool.getMaximumFileSize())
+            {
+                netFile = new MemoryTempNetworkFile(FSTempFileProvider.newTempFilePath("cifs", ".bin"), path, m_memoryTempPool);
+            }
+            else if (m_directWrite && !soft)
+            {
+                File file = FSTempFileProvider.createTempFile("cifs", ".bin");
+                netFile = new DirectWriteNetworkFile(file, path, contentService.getWriter(null, null, false), m_dirContentStore);
+            }
+            else
+            {
+                File file = FSTempFileProvider.createTempFile("cifs", ".bin");
+                netFile = new TempNetworkFile(file, path);
+            }
             netFile.setChanged(true);
+            netFile.setTempFileFlusher(m_tempFileFlusher);
             
             Serializable created = nodeService.getProperty(nodeRef, ContentModel.PROP_CREATED); 
             if(created != null && created instanceof Date)
@@ -2883,6 +3315,34 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                             logger.debug("open file for read only");
                             netFile = ContentNetworkFile.createFile(nodeService, contentService, mimetypeService, getSMBHelper(), nodeRef, path, true, false, session);
                             netFile.setGrantedAccess( NetworkFile.Access.READ_ONLY);
+
+                            // Serve reads from the shared memory mappings, block cache and channels
+                            // The shared channels are only used if the pool is enabled, and so invalidates channels on content updates
+                            boolean sharedChannels = m_sharedReadChannels && m_channelPool != null && m_channelPool.isEnabled();
+
+                            if ((m_readBlockCache && m_blockCache != null) || (m_mappedReads && m_mappedCache != null) || sharedChannels)
+                            {
+                                ContentData contentData = (ContentData) nodeService.getProperty(nodeRef, ContentModel.PROP_CONTENT);
+                                if (contentData != null && contentData.getContentUrl() != null)
+                                {
+                                    ContentNetworkFile contentFile = (ContentNetworkFile) netFile;
+                                    contentFile.setContentUrl(contentData.getContentUrl());
+
+                                    if (m_readBlockCache)
+                                        contentFile.setBlockCache(m_blockCache);
+                                    if (m_readBlockCache && (m_readAhead || m_officePrefetch))
+                                    {
+                                        contentFile.setReadAheadManager(m_readAheadManager, m_readAhead);
+
+                                        if (m_officePrefetch)
+                                            contentFile.setOfficeDocument(contentFile.isOfficeDocument(contentData.getMimetype()));
+                                    }
+                                    if (m_mappedReads)
+                                        contentFile.setMappedContentCache(m_mappedCache);
+                                    if (sharedChannels)
+                                        contentFile.setChannelPool(m_channelPool);
+                                }
+                            }
                             break;
                     
                         case READ_WRITE:
@@ -2892,17 +3352,29 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                             
                             lockKeeper.addLock(nodeRef);
 
+                            TempContentLoader contentLoader = null;
+
                             if(!truncate)
                             {
-                                // Need to open a temp file with a copy of the content.
+                                // Need to open a temp file with the content, the existing content is loaded into
+                                // the temp file on demand as it is read, or partially overwritten
                                 ContentReader reader = contentService.getReader(nodeRef, ContentModel.PROP_CONTENT);
-                                if(reader != null)
+                                if(reader != null && reader.exists() && reader.getSize() > 0)
                                 {
-                                    reader.getContent(file);
+                                    contentLoader = new TempContentLoader(reader, file);
+
+                                    if (m_readAhead)
+                                        contentLoader.setReadAheadManager(m_readAheadManager);
+
+                                    // Start loading the ranges an Office application reads first into the temp file,
+                                    // the existing content is opened by the read-ahead thread
+                                    if (m_officePrefetch && m_readAheadManager != null && ContentNetworkFile.isOfficeMimetype(reader.getMimetype()))
+                                        ContentNetworkFile.queueOfficePrefetch(m_readAheadManager, contentLoader.createBlockLoader(), reader.getSize(), name);
                                 }
                             }
 
-                            netFile = new TempNetworkFile(file, name);
+                            netFile = new TempNetworkFile(file, name, contentLoader);
+                            ((TempNetworkFile) netFile).setTempFileFlusher(m_tempFileFlusher);
                             netFile.setCreationDate(fileInfo.getCreationDateTime());
                             netFile.setModifyDate(fileInfo.getModifyDateTime());
 
@@ -2943,6 +3415,7 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                             File file = FSTempFileProvider.createTempFile("cifs", ".bin");
 
                             netFile = new TempNetworkFile(file, name);
+                            ((TempNetworkFile) netFile).setTempFileFlusher(m_tempFileFlusher);
                             
                             // Needs to be READWRITE for JavaNetworkFile - there's no such thing as WRITEONLY!
                             netFile.setGrantedAccess( NetworkFile.Access.READ_WRITE);
@@ -3084,6 +3557,10 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                 // Indicate the file is open
                 
                 netFile.setClosed( false);
+
+                // Start loading the ranges an Office application reads first when opening a document
+                if (netFile instanceof ContentNetworkFile)
+                    ((ContentNetworkFile) netFile).prefetchOfficeRanges(getTransactionService().getRetryingTransactionHelper());
             }
 
             if (logger.isDebugEnabled())
@@ -3323,126 +3800,102 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                     nodeService.removeAspect(target, ContentModel.ASPECT_NO_CONTENT);
                 }
 
-                if (tempFile.isChanged() && tempFile.getWriteCount() > 0) {
-                    tempFile.flushFile();
-                    tempFile.close();
+                if (tempFile instanceof DirectWriteNetworkFile && ((DirectWriteNetworkFile) tempFile).isDirectWrite()) {
 
-                    // Need to work out whether content has changed.  Some odd situations do not change content.
-                    boolean contentChanged = true;
+                    // Data was written directly to the content store, set the node content
+                    DirectWriteNetworkFile directFile = (DirectWriteNetworkFile) tempFile;
 
-                    ContentReader existingContent = contentService.getReader(target, ContentModel.PROP_CONTENT);
-                    if (existingContent != null) {
-                        existingContent.getSize();
-                        existingContent.getMimetype();
-                        contentChanged = isContentChanged(existingContent, tempFile);
+                    if (directFile.getContentWriter() != null) {
+                        long fileSize = commitDirectWrite(target, directFile);
 
-                        // MNT-248 fix
-                        // No need to create a version of a zero byte file
-                        if (file.getFileSize() > 0 && existingContent.getSize() == 0 && nodeService.hasAspect(target, ContentModel.ASPECT_VERSIONABLE)) {
-                            getPolicyFilter().disableBehaviour(target, ContentModel.ASPECT_VERSIONABLE);
-                        }
+                        tempFile.setChanged( false);
+                        updateFileStateSize(tempFile.getFileState(), fileSize);
+                    }
+                    else {
+                        directFile.abandonWriter();
                     }
 
-                    if (contentChanged) {
-                        logger.debug("content has changed, need to create a new content item, existingContent=" + existingContent);
-
-                        // Take over the behaviour of the auditable aspect
-                        getPolicyFilter().disableBehaviour(target, ContentModel.ASPECT_AUDITABLE);
-                        nodeService.setProperty(target, ContentModel.PROP_MODIFIER, authService.getCurrentUserName());
-                        if (tempFile.isModificationDateSetDirectly()) {
-                            logger.debug("modification date set directly");
-                            nodeService.setProperty(target, ContentModel.PROP_MODIFIED, new Date(tempFile.getModifyDate()));
-                        } else {
-                            logger.debug("modification date not set directly");
-                            nodeService.setProperty(target, ContentModel.PROP_MODIFIED, new Date());
-                        }
+                    // The temporary file was not used, delete it
+                    tempFile.closeFile();
+                    File tFile = tempFile.getFile();
 
-                        //  Take a guess at the mimetype
-                        String mimetype = mimetypeService.guessMimetype(tempFile.getFullName(), new FileContentReader(tempFile.getFile()));
-                        logger.debug("guessed mimetype:" + mimetype);
+                    if (tFile != null) {
+                        FSTempFileProvider.getRegistry().deleteTempFile( tFile);
+                    }
+                }
+                else if (tempFile instanceof MemoryTempNetworkFile && ((MemoryTempNetworkFile) tempFile).isInMemory()) {
 
-                        // Mime type guessing may have failed in which case we should assume the mimetype has not changed.
-                        if (mimetype.equalsIgnoreCase(MimetypeMap.MIMETYPE_BINARY)) {
+                    // Small file held in memory, write the content from memory, the buffers are released when the
+                    // file is closed
+                    if (tempFile.isChanged() && tempFile.getWriteCount() > 0) {
+                        long fileSize = commitMemoryFile(target, (MemoryTempNetworkFile) tempFile);
 
-                            // mimetype guessing may have failed
-                            if (existingContent != null) {
-                                // copy the mimetype from the existing content.
-                                mimetype = existingContent.getMimetype();
-                                if (logger.isDebugEnabled()) {
-                                    logger.debug("using mimetype of existing content :" + mimetype);
-                                }
-                            }
-                        }
+                        tempFile.setChanged( false);
+                        updateFileStateSize(tempFile.getFileState(), fileSize);
+                    }
+                }
+                else if (tempFile.isChanged() && tempFile.getWriteCount() > 0) {
 
-                        String encoding;
-                        // Take a guess at the locale
-                        InputStream is = new BufferedInputStream(new FileInputStream(tempFile.getFile()));
-                        try {
-                            ContentCharsetFinder charsetFinder = mimetypeService.getContentCharsetFinder();
-                            Charset charset = charsetFinder.getCharset(is, mimetype);
-                            encoding = charset.name();
-                        } finally {
-                            if (is != null) {
-                                try {
-                                    is.close();
-                                } catch (IOException e) {
-                                    // Ignore
-                                }
-                            }
-                        }
+                    // Merge any existing content that has not been loaded into the temp file
+                    tempFile.loadContent();
 
-                        ContentWriter writer = contentService.getWriter(target, ContentModel.PROP_CONTENT, true);
+                    tempFile.flushFile();
+                    tempFile.close();
 
-                        writer.setMimetype(mimetype);
-                        writer.setEncoding(encoding);
-//                        writer.putContent(tempFile.getFile());
+                    // Queue the content to be committed in the background, if enabled
+                    ContentCommitQueue.PendingCommit pending = null;
 
-                        long fileSize = copyOrMoveContent( target, writer, tempFile.getFile());
+                    if (m_commitQueue != null) {
+                        tempFile.closeFile();
+                        if (tempFile.getContentLoader() != null) {
+                            tempFile.getContentLoader().close();
+                        }
 
-                        if ( writer.getSize() != fileSize)
-                            logger.debug("*** File size mismatch, writer=" + writer.getSize() + ", fileSize=" + fileSize);
+                        try {
+                            pending = m_commitQueue.queueCommit(tree.getContext().getDeviceName(), tempFile, target, authService.getCurrentUserName());
+                        }
+                        catch (IOException ex) {
+                            logger.warn("Failed to queue content commit, commit synchronously, path=" + tempFile.getFullName(), ex);
+                        }
+                    }
 
+                    if (pending != null) {
                         tempFile.setChanged( false);
 
-                        // Update the file state details
-                        FileState fState = tempFile.getFileState();
-                        if ( fState != null) {
-                            fState.setFileSize( fileSize);
-                            fState.setAllocationSize( MemorySize.roundupLongSize( fileSize));
+                        // Update the file state details from the queued temporary file
+                        updateFileStateSize(tempFile.getFileState(), pending.getTempFile().length());
+                    }
+                    else {
 
-                            // TEST
-                            if ( logger.isDebugEnabled())
-                                logger.debug("File size updated: " + fState.getFileSize() + ", allocation size: " + fState.getAllocationSize());
-                        }
+                        // Commit the content now
+                        long modifyDate = tempFile.isModificationDateSetDirectly() ? tempFile.getModifyDate() : -1L;
+                        long fileSize = commitTempFile(target, tempFile.getFile(), tempFile.getFullName(), tempFile.getContentTracker(),
+                                tempFile.getContentLoader(), authService.getCurrentUserName(), modifyDate, true);
 
-                        // Close and delete the temporary file
-                        tempFile.closeFile();
-                        File tFile = tempFile.getFile();
+                        if (fileSize != -1L) {
+                            tempFile.setChanged( false);
 
-                        if ( logger.isDebugEnabled() && tFile != null)
-                            logger.debug("tFile = " + tFile + ", exists=" + tFile.exists());
+                            // Update the file state details
+                            updateFileStateSize(tempFile.getFileState(), fileSize);
 
-                        if ( tFile != null) {
-//                            try {
-                                boolean deleted = tFile.delete();
-//                                Files.delete(tFile.toPath());
+                            // Close and delete the temporary file
+                            tempFile.closeFile();
+                            File tFile = tempFile.getFile();
 
-                                if (tFile.exists() || !deleted) {
+                            if ( logger.isDebugEnabled() && tFile != null)
+                                logger.debug("tFile = " + tFile + ", exists=" + tFile.exists());
 
-                                    // DEBUG
-                                    if ( logger.isDebugEnabled())
-                                        logger.debug("Failed to delete temp file: " + tFile.getAbsolutePath() + ", add to cleanup list");
-
-                                    // Add the path to the temporary file cleanup list
-                                    m_tempFilesToCleanup.add( tFile.getAbsolutePath());
-                                }
+                            // If the delete fails the file is deleted by the temporary file cleanup task
+                            if ( tFile != null) {
+                                FSTempFileProvider.getRegistry().deleteTempFile( tFile);
                             }
-//                            catch ( IOException ex) {
-//                                logger.debug("Failed to delete temp file: " + tFile.getAbsolutePath() + ", ex=" + ex);
-//                            }
-//                        }
+                        }
+                    }
+                }
 
-                    } // if content changed
+                // Release the existing content loader
+                if (tempFile.getContentLoader() != null) {
+                    tempFile.getContentLoader().close();
                 }
             }
         }
@@ -3486,6 +3939,335 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         }
     }
     
+    /**
+     * Commit the content of a temporary file to a node, if the content has changed
+     *
+     * @param target NodeRef
+     * @param file File
+     * @param path String
+     * @param tracker TempContentTracker
+     * @param loader TempContentLoader
+     * @param userName String
+     * @param modifyDate long modification date set by the client, or -1 to use the current date/time
+     * @param allowMove boolean the temporary file can be moved to the content store
+     * @return long size of the committed content, or -1 if the content has not changed
+     */
+    private long commitTempFile(NodeRef target, File file, String path, TempContentTracker tracker, TempContentLoader loader,
+                                String userName, long modifyDate, boolean allowMove)
+    {
+        // Need to work out whether content has changed.  Some odd situations do not change content.
+        boolean contentChanged = true;
+
+        ContentReader existingContent = contentService.getReader(target, ContentModel.PROP_CONTENT);
+        if (existingContent != null) {
+            existingContent.getSize();
+            existingContent.getMimetype();
+            contentChanged = isContentChanged(existingContent, file, tracker, loader);
+
+            // MNT-248 fix
+            // No need to create a version of a zero byte file
+            if (file.length() > 0 && existingContent.getSize() == 0 && nodeService.hasAspect(target, ContentModel.ASPECT_VERSIONABLE)) {
+                getPolicyFilter().disableBehaviour(target, ContentModel.ASPECT_VERSIONABLE);
+            }
+        }
+
+        if (!contentChanged)
+            return -1L;
+
+        logger.debug("content has changed, need to create a new content item, existingContent=" + existingContent);
+
+        setModifiedProperties(target, userName, modifyDate);
+
+        // Reference existing content with the same digest, instead of storing another copy. The digest is only known
+        // if it was calculated as the file was written, otherwise it is calculated as the content is copied and the
+        // new content is indexed, the temp file is not read again to check for a duplicate
+        byte[] contentDigest = tracker != null ? tracker.getContentDigest(file.length()) : null;
+
+        if (m_hashIndex != null && contentDigest != null && file.length() > 0) {
+            try {
+                long dupSize = linkDuplicateContent(target, file, path, existingContent, contentDigest);
+                if (dupSize != -1L)
+                    return dupSize;
+            }
+            catch (IOException ex) {
+                logger.debug("Unable to check for duplicate content, path=" + path, ex);
+            }
+        }
+
+        // The mimetype and encoding are guessed from the start of the content as it is copied
+        ContentWriter writer = contentService.getWriter(target, ContentModel.PROP_CONTENT, true);
+
+        long fileSize = copyOrMoveContent( target, writer, file, path, existingContent, contentDigest, allowMove);
+
+        if ( writer.getSize() != fileSize)
+            logger.debug("*** File size mismatch, writer=" + writer.getSize() + ", fileSize=" + fileSize);
+
+        // Let the comparator keep anything it calculated for the new content, such as an Office document fingerprint
+        if ( fileSize > 0)
+            contentComparator.contentCommitted( file, writer.getContentUrl());
+
+        return fileSize;
+    }
+
+    /**
+     * Set the node content from the content written directly to the content store by a new file
+     *
+     * @param target NodeRef
+     * @param directFile DirectWriteNetworkFile
+     * @return long size of the content
+     * @exception IOException Error completing the content write
+     */
+    private long commitDirectWrite(NodeRef target, DirectWriteNetworkFile directFile)
+        throws IOException
+    {
+        ContentWriter writer = directFile.getContentWriter();
+
+        // Guess the content type from the start of the data, then complete the content write
+        byte[] header = new byte[CONTENT_HEADER_SIZE];
+        int hdrLen = directFile.readHeader(header);
+
+        setContentType(writer, directFile.getFullName(), null, header, hdrLen);
+        directFile.closeWriter();
+
+        long modifyDate = directFile.isModificationDateSetDirectly() ? directFile.getModifyDate() : -1L;
+        setModifiedProperties(target, authService.getCurrentUserName(), modifyDate);
+
+        ContentData contentData = writer.getContentData();
+        nodeService.setProperty(target, ContentModel.PROP_CONTENT, contentData);
+
+        // Cache the digest of the new content, the writes were sequential so the running digest is valid
+        byte[] contentDigest = directFile.getContentTracker() != null ? directFile.getContentTracker().getContentDigest(contentData.getSize()) : null;
+
+        if (contentDigest != null) {
+            if (m_digestCache != null)
+                m_digestCache.addDigest(contentData.getContentUrl(), contentDigest);
+            if (m_hashIndex != null)
+                m_hashIndex.addContent(contentDigest, contentData.getContentUrl(), contentData.getSize());
+        }
+
+        // DEBUG
+        if (logger.isDebugEnabled())
+            logger.debug("Committed direct write content, path=" + directFile.getFullName() + ", url=" + contentData.getContentUrl() + ", size=" + contentData.getSize());
+
+        return contentData.getSize();
+    }
+
+    /**
+     * Set the node content from a small file held in memory
+     *
+     * @param target NodeRef
+     * @param memFile MemoryTempNetworkFile
+     * @return long size of the content
+     * @exception IOException Error writing the content
+     */
+    private long commitMemoryFile(NodeRef target, MemoryTempNetworkFile memFile)
+        throws IOException
+    {
+        long fileSize = memFile.getMemorySize();
+        ContentReader existingContent = contentService.getReader(target, ContentModel.PROP_CONTENT);
+
+        long modifyDate = memFile.isModificationDateSetDirectly() ? memFile.getModifyDate() : -1L;
+        setModifiedProperties(target, authService.getCurrentUserName(), modifyDate);
+
+        byte[] header = new byte[(int) Math.min(fileSize, CONTENT_HEADER_SIZE)];
+        int hdrLen = Math.max(memFile.readMemory(header, header.length, 0, 0L), 0);
+
+        // Reference existing content with the same digest, instead of storing another copy
+        byte[] contentDigest = memFile.getContentTracker() != null ? memFile.getContentTracker().getContentDigest(fileSize) : null;
+
+        if (contentDigest == null && (m_digestCache != null || m_hashIndex != null))
+            contentDigest = memFile.calculateDigest();
+
+        String dupUrl = m_hashIndex != null && fileSize > 0 ? m_hashIndex.findContentUrl(contentDigest, fileSize) : null;
+
+        if (dupUrl != null)
+        {
+            long dupSize = linkDuplicateContent(target, memFile.getFullName(), existingContent, contentDigest, dupUrl, fileSize, header, hdrLen);
+            if (dupSize != -1L)
+                return dupSize;
+        }
+
+        ContentWriter writer = contentService.getWriter(target, ContentModel.PROP_CONTENT, true);
+        setContentType(writer, memFile.getFullName(), existingContent, header, hdrLen);
+
+        WritableByteChannel out = writer.getWritableChannel();
+        try
+        {
+            memFile.transferTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+
+        if (contentDigest != null)
+        {
+            if (m_digestCache != null)
+                m_digestCache.addDigest(writer.getContentUrl(), contentDigest);
+            if (m_hashIndex != null)
+                m_hashIndex.addContent(contentDigest, writer.getContentUrl(), fileSize);
+        }
+
+        // DEBUG
+        if (logger.isDebugEnabled())
+            logger.debug("Committed memory file content, path=" + memFile.getFullName() + ", url=" + writer.getContentUrl() + ", size=" + fileSize);
+
+        return fileSize;
+    }
+
+    /**
+     * Set the modifier and modification date properties, taking over the behaviour of the auditable aspect
+     *
+     * @param target NodeRef
+     * @param userName String
+     * @param modifyDate long modification date set by the client, or -1 to use the current date/time
+     */
+    private void setModifiedProperties(NodeRef target, String userName, long modifyDate)
+    {
+        getPolicyFilter().disableBehaviour(target, ContentModel.ASPECT_AUDITABLE);
+        nodeService.setProperty(target, ContentModel.PROP_MODIFIER, userName);
+        if (modifyDate != -1L) {
+            logger.debug("modification date set directly");
+            nodeService.setProperty(target, ContentModel.PROP_MODIFIED, new Date(modifyDate));
+        } else {
+            logger.debug("modification date not set directly");
+            nodeService.setProperty(target, ContentModel.PROP_MODIFIED, new Date());
+        }
+    }
+
+    /**
+     * Point the node content at existing content with the same digest, written previously by the filesystem
+     *
+     * @param target NodeRef
+     * @param file File
+     * @param name String
+     * @param existingContent ContentReader
+     * @param contentDigest byte[]
+     * @return long size of the content, or -1 if there is no duplicate content
+     * @exception IOException Error reading the temporary file
+     */
+    private long linkDuplicateContent(NodeRef target, File file, String name, ContentReader existingContent, byte[] contentDigest)
+        throws IOException
+    {
+        long fileSize = file.length();
+        String contentUrl = m_hashIndex.findContentUrl(contentDigest, fileSize);
+
+        if (contentUrl == null)
+            return -1L;
+
+        // Guess the content type of the new file from the start of the content
+        byte[] header = new byte[(int) Math.min(fileSize, CONTENT_HEADER_SIZE)];
+        int hdrLen;
+
+        FileInputStream is = new FileInputStream(file);
+        try
+        {
+            hdrLen = readContentHeader(is, header);
+        }
+        finally
+        {
+            is.close();
+        }
+
+        return linkDuplicateContent(target, name, existingContent, contentDigest, contentUrl, fileSize, header, hdrLen);
+    }
+
+    /**
+     * Point the node content at existing content with the same digest, written previously by the filesystem
+     *
+     * @param target NodeRef
+     * @param name String
+     * @param existingContent ContentReader
+     * @param contentDigest byte[]
+     * @param contentUrl String indexed content URL with the same digest
+     * @param fileSize long
+     * @param header byte[] start of the new content
+     * @param hdrLen int
+     * @return long size of the content, or -1 if the indexed content is no longer available
+     */
+    private long linkDuplicateContent(NodeRef target, String name, ContentReader existingContent, byte[] contentDigest, String contentUrl,
+                                      long fileSize, byte[] header, int hdrLen)
+    {
+        // Make sure the indexed content is still in the content store, it may have been cleaned up
+        ContentReader dupReader = contentService.getRawReader(contentUrl);
+
+        if (dupReader == null || !dupReader.exists() || dupReader.getSize() != fileSize)
+        {
+            m_hashIndex.removeContent(contentDigest, contentUrl);
+            return -1L;
+        }
+
+        // Guess the content type of the new file, the same content may have been saved with a different name
+        String mimetype = guessMimetype(name, existingContent, header, hdrLen);
+        Locale locale = existingContent != null && existingContent.getLocale() != null ? existingContent.getLocale() : I18NUtil.getContentLocale();
+
+        ContentData newData = new ContentData(contentUrl, mimetype, fileSize, guessEncoding(mimetype, header, hdrLen), locale);
+        nodeService.setProperty(target, ContentModel.PROP_CONTENT, newData);
+
+        if (m_digestCache != null)
+            m_digestCache.addDigest(contentUrl, contentDigest);
+
+        // DEBUG
+        if (logger.isDebugEnabled())
+            logger.debug("Duplicate content, skipped copy, path=" + name + ", url=" + contentUrl + ", size=" + fileSize);
+
+        return fileSize;
+    }
+
+    /**
+     * Update the cached file size and allocation size
+     *
+     * @param fState FileState
+     * @param fileSize long
+     */
+    private void updateFileStateSize(FileState fState, long fileSize)
+    {
+        if ( fState != null) {
+            fState.setFileSize( fileSize);
+            fState.setAllocationSize( MemorySize.roundupLongSize( fileSize));
+
+            // TEST
+            if ( logger.isDebugEnabled())
+                logger.debug("File size updated: " + fState.getFileSize() + ", allocation size: " + fState.getAllocationSize());
+        }
+    }
+
+    /**
+     * Commit the content of a queued temporary file, called by the content commit queue within a transaction
+     *
+     * @param pending ContentCommitQueue.PendingCommit
+     * @exception Exception Error committing the content
+     */
+    @Override
+    public void commitContent(ContentCommitQueue.PendingCommit pending)
+        throws Exception
+    {
+        NodeRef target = pending.getNodeRef();
+
+        if (!nodeService.exists(target))
+        {
+            throw new ContentCommitQueue.CommitDiscardedException("Node no longer exists");
+        }
+
+        // A commit restored from the journal must not overwrite content saved since it was queued
+        if (pending.isRestored())
+        {
+            Date modified = (Date) nodeService.getProperty(target, ContentModel.PROP_MODIFIED);
+
+            if (modified != null && modified.getTime() > pending.getQueuedAt())
+            {
+                throw new ContentCommitQueue.CommitDiscardedException("Node modified since commit was queued, modified=" + modified);
+            }
+        }
+
+        // The temporary file can only be moved into the content store if it is not being read
+        long fileSize = commitTempFile(target, pending.getTempFile(), pending.getPath(), pending.getContentTracker(),
+                pending.getContentLoader(), pending.getUserName(), pending.getModifyDate(), !pending.hasReaders());
+
+        if (logger.isDebugEnabled())
+            logger.debug("Committed queued content " + pending + ", size=" + fileSize);
+    }
+
     /**
      * 
      * @param session
@@ -3568,11 +4350,78 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
      * which should not result in new versions being created.
      * @param existingContent
      * @param newFile
+     * @param tracker
+     * @param loader
      * @return true the content has changed, false the content has not changed significantly.
      */
-    private boolean isContentChanged(ContentReader existingContent, TempNetworkFile newFile)
+    private boolean isContentChanged(ContentReader existingContent, File newFile, TempContentTracker tracker, TempContentLoader loader)
+    {
+        if (tracker == null)
+        {
+            return !contentComparator.isContentEqual(existingContent, newFile);
+        }
+
+        long fileSize = newFile.length();
+
+        // If the temp file was loaded from the existing content, and the size has not changed, then only the ranges
+        // of the file that have been written need to be compared
+        if (loader != null && tracker.hasDirtyRanges() && existingContent.getSize() == fileSize &&
+                existingContent.getContentUrl().equals(loader.getContentUrl()))
+        {
+            FileChannel existingChannel = null;
+            FileChannel fileChannel = null;
+
+            try
+            {
+                existingChannel = existingContent.getReader().getFileChannel();
+                fileChannel = FileChannel.open(newFile.toPath(), StandardOpenOption.READ);
+
+                if (tracker.isDirtyDataEqual(existingChannel, fileChannel))
+                {
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("written ranges are the same as the existing content, tracker=" + tracker);
+                    }
+                    return false;
+                }
+            }
+            catch (IOException ex)
+            {
+                logger.debug("Unable to compare written ranges", ex);
+            }
+            catch (ContentIOException ex)
+            {
+                logger.debug("Unable to compare written ranges", ex);
+            }
+            finally
+            {
+                closeQuietly(existingChannel);
+                closeQuietly(fileChannel);
+            }
+        }
+
+        // Compare using the running digest of the file, if available
+        return !contentComparator.isContentEqual(existingContent, newFile, tracker.getContentDigest(fileSize));
+    }
+
+    /**
+     * Close a channel, ignoring errors
+     *
+     * @param channel FileChannel
+     */
+    private static void closeQuietly(FileChannel channel)
     {
-        return !contentComparator.isContentEqual(existingContent, newFile.getFile());
+        if (channel != null)
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException ex)
+            {
+                // Ignore
+            }
+        }
     }
 
     public void setContentComparator(ContentComparator contentComparator)
@@ -3585,6 +4434,36 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         return contentComparator;
     }
 
+    /**
+     * Set the cache of content digests, keyed by content URL
+     *
+     * @param digestCache ContentDigestCache
+     */
+    public void setContentDigestCache(ContentDigestCache digestCache)
+    {
+        m_digestCache = digestCache;
+    }
+
+    /**
+     * Set the index of content written by the filesystem, keyed by content digest
+     *
+     * @param hashIndex ContentHashIndex
+     */
+    public void setContentHashIndex(ContentHashIndex hashIndex)
+    {
+        m_hashIndex = hashIndex;
+    }
+
+    /**
+     * Enable/disable referencing existing content when identical content is saved
+     *
+     * @param dedup boolean
+     */
+    public void setContentDedup(boolean dedup)
+    {
+        m_contentDedup = dedup;
+    }
+
     @Override
     public NetworkFile restoreFile(
             SrvSession sess, 
@@ -3817,11 +4696,134 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
         return verFileInfo;
     }
 
+    /**
+     * Guess the mimetype and encoding of new content from the start of the content, and set them on the content writer
+     *
+     * @param out ContentWriter
+     * @param name String
+     * @param existingContent ContentReader
+     * @param header byte[]
+     * @param hdrLen int
+     */
+    private void setContentType(ContentWriter out, String name, ContentReader existingContent, byte[] header, int hdrLen)
+    {
+        String mimetype = guessMimetype(name, existingContent, header, hdrLen);
+
+        out.setMimetype(mimetype);
+        out.setEncoding(guessEncoding(mimetype, header, hdrLen));
+    }
+
+    /**
+     * Guess the mimetype of new content from the file name and the start of the content
+     *
+     * @param name String
+     * @param existingContent ContentReader
+     * @param header byte[]
+     * @param hdrLen int
+     * @return String
+     */
+    private String guessMimetype(String name, ContentReader existingContent, byte[] header, int hdrLen)
+    {
+        //  Take a guess at the mimetype. Zip container formats, such as OOXML and ODF documents, are identified from
+        //  the zip directory at the end of the file, which is not in the header, so use the extension mapping for
+        //  zip containers if the extension is known
+        String mimetype = null;
+
+        if ( isZipContainer(header, hdrLen)) {
+            mimetype = mimetypeService.guessMimetype(name);
+            if ( mimetype != null && mimetype.equalsIgnoreCase(MimetypeMap.MIMETYPE_BINARY))
+                mimetype = null;
+        }
+
+        if ( mimetype == null)
+            mimetype = mimetypeService.guessMimetype(name, new ByteArrayInputStream(header, 0, hdrLen));
+        logger.debug("guessed mimetype:" + mimetype);
+
+        // Mime type guessing may have failed in which case we should assume the mimetype has not changed.
+        if (mimetype.equalsIgnoreCase(MimetypeMap.MIMETYPE_BINARY)) {
+
+            // mimetype guessing may have failed
+            if (existingContent != null) {
+                // copy the mimetype from the existing content.
+                mimetype = existingContent.getMimetype();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("using mimetype of existing content :" + mimetype);
+                }
+            }
+        }
+
+        return mimetype;
+    }
+
+    /**
+     * Check if the start of the content is a zip local file header
+     *
+     * @param header byte[]
+     * @param hdrLen int
+     * @return boolean
+     */
+    private static boolean isZipContainer(byte[] header, int hdrLen)
+    {
+        return hdrLen >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4;
+    }
+
+    /**
+     * Guess the encoding of new content from the start of the content
+     *
+     * @param mimetype String
+     * @param header byte[]
+     * @param hdrLen int
+     * @return String
+     */
+    private String guessEncoding(String mimetype, byte[] header, int hdrLen)
+    {
+        // Take a guess at the locale
+        ContentCharsetFinder charsetFinder = mimetypeService.getContentCharsetFinder();
+        Charset charset = charsetFinder.getCharset(new ByteArrayInputStream(header, 0, hdrLen), mimetype);
+
+        return charset.name();
+    }
+
+    /**
+     * Read the start of a file into the buffer, used to guess the content type
+     *
+     * @param is InputStream
+     * @param buffer byte[]
+     * @return int
+     * @exception IOException Error reading the file
+     */
+    private static int readContentHeader(InputStream is, byte[] buffer) throws IOException
+    {
+        int len = 0;
+        int bytesRead;
+
+        while (len < buffer.length && (bytesRead = is.read(buffer, len, buffer.length - len)) != -1)
+        {
+            len += bytesRead;
+        }
+        return len;
+    }
+
     /**
      * Copy content from a temporary file to the node content, use larger buffer than the ContentWriter.putContent() method
+     * <p>
+     * The mimetype and encoding are guessed from the first buffer of the content, and the content digest is calculated,
+     * as the content is copied so the temporary file is only read once. The digest of the new content is cached, keyed
+     * by the new content URL.
      *
+     * @param target NodeRef
+     * @param out ContentWriter
+     * @param file File
+     * @param name String
+     * @param existingContent ContentReader
+     * @param contentDigest byte[] digest of the temporary file, or null if not known
+     * @param allowMove boolean the temporary file can be moved to the content store, if enabled
+     * @return long
+     * @exception ContentIOException Error copying the content
      */
-    protected final long copyOrMoveContent(NodeRef target, ContentWriter out, File file) throws ContentIOException
+    protected final long copyOrMoveContent(NodeRef target, ContentWriter out, File file, String name, ContentReader existingContent,
+                                           byte[] contentDigest, boolean allowMove)
+        throws ContentIOException
     {
         // Check if the file has any data
         long fileSize = file.length();
@@ -3831,15 +4833,18 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
 
         long totalBytesRead = 0L;
 
-        // DEBUG
+        // Start time for the copy statistics
         long startTime = System.currentTimeMillis();
 
-        // Move the temporary file to the content store, if enabled
-        if ( m_useMoveTempFile) {
+        // Move the temporary file to the content store, if enabled. Otherwise copy it directly to the content store
+        // file using the fastest strategy the folders support.
+        boolean moveFile = m_useMoveTempFile && allowMove;
+
+        if ( moveFile || m_commitStrategy != TempFileCommitStrategy.Stream) {
 
             // DEBUG
             if (logger.isDebugEnabled())
-                logger.debug("Move temp file " + file.getAbsolutePath() + " to " + out.getContentUrl() + ", size=" + fileSize);
+                logger.debug((moveFile ? "Move" : m_commitStrategy.name()) + " temp file " + file.getAbsolutePath() + " to " + out.getContentUrl() + ", size=" + fileSize);
 
             // Build the path to the content store file
             String contentURL = out.getContentUrl();
@@ -3852,16 +4857,37 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                 // Try and move the temporary file to the content store file
                 try {
 
+                    // Only the start of the file needs to be read to guess the content type
+                    FileInputStream is = new FileInputStream(file);
+                    try {
+                        byte[] header = new byte[(int) Math.min(fileSize, CONTENT_HEADER_SIZE)];
+                        setContentType(out, name, existingContent, header, readContentHeader(is, header));
+                    }
+                    finally {
+                        is.close();
+                    }
+
                     // Get the temporary file path
                     java.nio.file.Path tempPath = Paths.get(file.getAbsolutePath());
-                    Files.move(tempPath, contentPath, StandardCopyOption.REPLACE_EXISTING);
 
-                    // Delete the temporary file
-                    boolean delSts = file.delete();
+                    if ( moveFile) {
+                        Files.move(tempPath, contentPath, StandardCopyOption.REPLACE_EXISTING);
+
+                        // The temporary file is now the content store file
+                        FSTempFileProvider.getRegistry().recordCommit(file);
+                    }
+                    else if (m_commitStrategy == TempFileCommitStrategy.Link && !FSTempFileProvider.isOnPrimaryRoot(file)) {
+
+                        // Links only work on the primary temp root volume
+                        TempFileCommitStrategy.Transfer.copyFile(tempPath, contentPath);
+                    }
+                    else {
+                        m_commitStrategy.copyFile(tempPath, contentPath);
+                    }
 
                     // DEBUG
                     if ( logger.isDebugEnabled())
-                        logger.debug("Finished move in " + (System.currentTimeMillis() - startTime) + "ms");
+                        logger.debug("Finished " + (moveFile ? "move" : m_commitStrategy.name().toLowerCase()) + " in " + (System.currentTimeMillis() - startTime) + "ms");
 
                     // Update the content data so that the new size is picked up
                     ContentData oldData = out.getContentData();
@@ -3869,7 +4895,14 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
 
                     nodeService.setProperty( target, ContentModel.PROP_CONTENT, newData);
 
-                    // Return the temporary file size
+                    // Cache the digest of the new content, if known
+                    if ( m_digestCache != null)
+                        m_digestCache.addDigest( oldData.getContentUrl(), contentDigest);
+                    if ( m_hashIndex != null)
+                        m_hashIndex.addContent( contentDigest, oldData.getContentUrl(), fileSize);
+
+                    // Update the copy statistics, and return the temporary file size
+                    recordContentCopy(fileSize, System.currentTimeMillis() - startTime);
                     return fileSize;
                 }
                 catch (IOException ex) {
@@ -3886,11 +4919,10 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
 
         try
         {
-            // Get the input and output streams
-            OutputStream os = out.getContentOutputStream();
+            // Get the input stream, the output channel is opened once the content type has been set
             FileInputStream is = new FileInputStream(file);
+            MessageDigest digest = contentDigest == null && (m_digestCache != null || m_hashIndex != null) ? ContentDigestCache.createDigest() : null;
 
-            long byteCount = 0;
             IOException error = null;
 
             // DEBUG
@@ -3899,17 +4931,12 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
 
             try
             {
-                int bufSize = (int) Math.min( fileSize, COPY_FROM_TEMP_BUFFER_SIZE);
-                byte[] buffer = new byte[bufSize];
-                int bytesRead = -1;
-                while ((bytesRead = is.read(buffer)) != -1)
-                {
-                    // We are able to abort the copy immediately upon limit violation.
-                    totalBytesRead += bytesRead;
-                    os.write(buffer, 0, bytesRead);
-                    byteCount += bytesRead;
-                }
-                os.flush();
+                // Guess the content type from the start of the data
+                byte[] header = new byte[(int) Math.min(fileSize, CONTENT_HEADER_SIZE)];
+                setContentType(out, name, existingContent, header, readContentHeader(is, header));
+
+                // Copy the data between the file channels, the digest, if required, is calculated as the data is copied
+                totalBytesRead = transferContent(is.getChannel(), out, fileSize, digest);
             }
             finally
             {
@@ -3922,20 +4949,26 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                     error = e;
                     logger.error("Failed to close input stream: " + this, e);
                 }
-                try
-                {
-                    os.close();
-                }
-                catch (IOException e)
-                {
-                    error = e;
-                    logger.error("Failed to close output stream: " + this, e);
-                }
             }
             if (error != null)
             {
                 throw error;
             }
+
+            // Cache the digest of the new content, and index the new content for duplicate checks
+            if ( digest != null)
+                contentDigest = digest.digest();
+
+            if ( contentDigest != null) {
+                if ( m_digestCache != null)
+                    m_digestCache.addDigest( out.getContentUrl(), contentDigest);
+                if ( m_hashIndex != null)
+                    m_hashIndex.addContent( contentDigest, out.getContentUrl(), totalBytesRead);
+
+                // DEBUG
+                if ( logger.isDebugEnabled())
+                    logger.debug("Content digest " + ContentDigestCache.DigestAlgorithm + "=" + ContentDigestCache.toHexString(contentDigest) + ", url=" + out.getContentUrl());
+            }
         }
         catch (IOException e)
         {
@@ -3945,13 +4978,125 @@ public class ContentDiskDriver2 extends  AlfrescoDiskDriver implements ExtendedD
                     e);
         }
 
+        // Update the copy statistics
+        long elapsed = System.currentTimeMillis() - startTime;
+        recordContentCopy(totalBytesRead, elapsed);
+
         // DEBUG
         if ( logger.isDebugEnabled())
-            logger.debug("Finished copy in " + (System.currentTimeMillis() - startTime) + "ms");
+            logger.debug("Finished copy of " + totalBytesRead + " bytes in " + elapsed + "ms, " + (totalBytesRead * 1000L / Math.max(elapsed, 1L)) + " bytes/sec");
 
         return totalBytesRead;
     }
 
+    /**
+     * Transfer the temporary file data to the content writer file channel. The writer file channel passes the
+     * transfer to the content store file channel, so the data is copied by the kernel. Content stores that do not
+     * write to a local file spool the data to a file before it is stored.
+     *
+     * <p>If a digest is required the data is copied via a direct buffer instead, and the digest is updated from
+     * the buffer, so the data still does not pass through the heap and the temporary file is only read once.
+     *
+     * @param inChannel FileChannel
+     * @param out ContentWriter
+     * @param fileSize long
+     * @param digest MessageDigest, or null if the content digest is not required
+     * @return long number of bytes transferred
+     * @exception IOException Error transferring the data
+     */
+    private static long transferContent(FileChannel inChannel, ContentWriter out, long fileSize, MessageDigest digest)
+        throws IOException
+    {
+        // Closing the writer channel completes the content write
+        FileChannel outChannel = out.getFileChannel(false);
+        long pos = 0L;
+
+        try
+        {
+            // The transfer reads from the current position of the temporary file, the header has already been read
+            inChannel.position(0L);
+
+            if (digest == null)
+            {
+                while (pos < fileSize)
+                {
+                    long cnt = outChannel.transferFrom(inChannel, pos, fileSize - pos);
+                    if (cnt <= 0)
+                        throw new IOException("Content transfer stopped at offset " + pos + " of " + fileSize);
+                    pos += cnt;
+                }
+            }
+            else
+            {
+                ByteBuffer buf = ByteBuffer.allocateDirect((int) Math.max(Math.min(fileSize, COPY_FROM_TEMP_BUFFER_SIZE), 1L));
+
+                while (pos < fileSize)
+                {
+                    buf.clear();
+                    if (fileSize - pos < buf.capacity())
+                        buf.limit((int) (fileSize - pos));
+
+                    if (inChannel.read(buf) == -1)
+                        throw new IOException("Content transfer stopped at offset " + pos + " of " + fileSize);
+
+                    // Update the digest from the buffer, then write the same data to the content store
+                    buf.flip();
+                    int cnt = buf.remaining();
+
+                    digest.update(buf);
+                    buf.rewind();
+
+                    while (buf.hasRemaining())
+                        outChannel.write(buf, pos + buf.position());
+                    pos += cnt;
+                }
+            }
+        }
+        finally
+        {
+            outChannel.close();
+        }
+
+        return pos;
+    }
+
+    /**
+     * Update the temporary file to content store copy statistics
+     *
+     * @param bytes long
+     * @param elapsed long copy time, in milliseconds
+     */
+    private void recordContentCopy(long bytes, long elapsed)
+    {
+        m_contentCopies.incrementAndGet();
+        m_contentCopyBytes.addAndGet(bytes);
+        m_contentCopyTime.addAndGet(elapsed);
+    }
+
+    /**
+     * Return the number of temporary files copied or moved to the content store
+     *
+     * @return long
+     */
+    public final long getContentCopyCount() { return m_contentCopies.get(); }
+
+    /**
+     * Return the number of bytes copied or moved from temporary files to the content store
+     *
+     * @return long
+     */
+    public final long getContentCopyBytes() { return m_contentCopyBytes.get(); }
+
+    /**
+     * Return the average temporary file to content store copy throughput, in bytes per second
+     *
+     * @return long
+     */
+    public final long getContentCopyThroughput()
+    {
+        return m_contentCopyBytes.get() * 1000L / Math.max(m_contentCopyTime.get(), 1L);
+    }
+
     //-------------------- ClientAPI implementation --------------------//
     /**
      * Check if the client API is enabled
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content Hash Index Class
+ *
+ * <p>Index of the content written by the filesystem, keyed by the content digest, so that when identical content
+ * is saved again the node can reference the existing content URL instead of writing a new copy to the content
+ * store. The index is bounded and evicts the least recently used entries.
+ */
+public class ContentHashIndex {
+
+    // Default maximum number of indexed content URLs
+    public static final int DefaultMaximumSize = 10000;
+
+    /**
+     * Indexed content details
+     */
+    private static class IndexEntry {
+
+        // Content URL and size
+        private final String m_contentUrl;
+        private final long m_size;
+
+        IndexEntry( String contentUrl, long size) {
+            m_contentUrl = contentUrl;
+            m_size = size;
+        }
+    }
+
+    // Content digest, as a hex string, to content mappings, in access order
+    private LinkedHashMap<String, IndexEntry> m_index;
+
+    // Maximum number of indexed content URLs
+    private int m_maxSize = DefaultMaximumSize;
+
+    // Index statistics
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * Default constructor
+     */
+    public ContentHashIndex() {
+        this( DefaultMaximumSize);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param maxSize int
+     */
+    public ContentHashIndex( int maxSize) {
+        setMaximumSize( maxSize);
+    }
+
+    /**
+     * Set the maximum number of indexed content URLs
+     *
+     * @param maxSize int
+     */
+    public final synchronized void setMaximumSize( int maxSize) {
+        m_maxSize = maxSize > 0 ? maxSize : DefaultMaximumSize;
+
+        LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<String, IndexEntry>( 256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, IndexEntry> eldest) {
+                return size() > m_maxSize;
+            }
+        };
+
+        if ( m_index != null)
+            index.putAll( m_index);
+        m_index = index;
+    }
+
+    /**
+     * Find the content URL for content with the specified digest and size
+     *
+     * @param digest byte[]
+     * @param size long
+     * @return String, or null if there is no indexed content
+     */
+    public final String findContentUrl( byte[] digest, long size) {
+        if ( digest == null)
+            return null;
+
+        IndexEntry entry;
+
+        synchronized ( this) {
+            entry = m_index.get( ContentDigestCache.toHexString( digest));
+        }
+
+        if ( entry != null && entry.m_size == size) {
+            m_hits.incrementAndGet();
+            return entry.m_contentUrl;
+        }
+
+        m_misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Add content to the index
+     *
+     * @param digest byte[]
+     * @param contentUrl String
+     * @param size long
+     */
+    public final synchronized void addContent( byte[] digest, String contentUrl, long size) {
+        if ( digest != null && contentUrl != null)
+            m_index.put( ContentDigestCache.toHexString( digest), new IndexEntry( contentUrl, size));
+    }
+
+    /**
+     * Remove content from the index, if the digest still maps to the specified content URL
+     *
+     * @param digest byte[]
+     * @param contentUrl String
+     */
+    public final synchronized void removeContent( byte[] digest, String contentUrl) {
+        if ( digest == null)
+            return;
+
+        String key = ContentDigestCache.toHexString( digest);
+        IndexEntry entry = m_index.get( key);
+
+        if ( entry != null && entry.m_contentUrl.equals( contentUrl))
+            m_index.remove( key);
+    }
+
+    /**
+     * Clear the index
+     */
+    public final synchronized void clear() {
+        m_index.clear();
+    }
+
+    /**
+     * Return the number of indexed content URLs
+     *
+     * @return int
+     */
+    public final synchronized int numberOfEntries() {
+        return m_index.size();
+    }
+
+    /**
+     * Return the number of lookups that found duplicate content
+     *
+     * @return long
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * Return the number of lookups that did not find duplicate content
+     *
+     * @return long
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * Return the index details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ContentHashIndex entries=");
+        str.append( numberOfEntries());
+        str.append( "/");
+        str.append( m_maxSize);
+        str.append( ", hits=");
+        str.append( getHitCount());
+        str.append( ", misses=");
+        str.append( getMissCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
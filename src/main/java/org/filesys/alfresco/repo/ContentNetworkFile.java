@@ -29,6 +29,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.filesys.server.SrvSession;
@@ -38,7 +41,9 @@ import org.filesys.smb.server.SMBSrvSession;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.service.cmr.repository.ContentAccessor;
 import org.alfresco.service.cmr.repository.ContentData;
@@ -67,6 +72,19 @@ public class ContentNetworkFile extends NodeRefNetworkFile
 {
     private static final Log logger = LogFactory.getLog(ContentNetworkFile.class);
     
+    // Office document mimetypes, Office applications read the header and trailer of the document first when opening
+    // a document
+    private static final Set<String> OfficeMimetypes = new HashSet<String>(Arrays.asList(
+            MimetypeMap.MIMETYPE_WORD, MimetypeMap.MIMETYPE_EXCEL, MimetypeMap.MIMETYPE_PPT,
+            MimetypeMap.MIMETYPE_OPENXML_WORDPROCESSING, MimetypeMap.MIMETYPE_OPENXML_SPREADSHEET,
+            MimetypeMap.MIMETYPE_OPENXML_PRESENTATION, MimetypeMap.MIMETYPE_OPENDOCUMENT_TEXT,
+            MimetypeMap.MIMETYPE_OPENDOCUMENT_SPREADSHEET, MimetypeMap.MIMETYPE_OPENDOCUMENT_PRESENTATION));
+
+    // Size of the header and trailer ranges of an Office document loaded when the document is opened, the header
+    // holds the OLE2/ZIP header and the trailer holds the ZIP central directory
+    private static final int OfficeHeaderSize = 2 * ContentBlockCache.BlockSize;
+    private static final int OfficeTrailerSize = 2 * ContentBlockCache.BlockSize;
+    
     // Services
     private NodeService nodeService;
     private ContentService contentService;
@@ -86,6 +104,27 @@ public class ContentNetworkFile extends NodeRefNetworkFile
     // Original size of the file when opened
     private long originalSize;
 
+    // Content URL of the data, and the shared cache of content blocks, used for read-only access
+    private String contentUrl;
+    private ContentBlockCache blockCache;
+
+    // Shared memory mapped content cache, the mapping being read, and flag to indicate mapping has been checked
+    private MappedContentCache mappedCache;
+    private MappedContentCache.MappedContent mappedContent;
+    private boolean mappingChecked;
+
+    // Detects sequential reads, and loads blocks into the shared block cache ahead of the reads, using the loader
+    private ReadAheadManager readAheadManager;
+    private ReadAheadManager.BlockLoader blockLoader;
+    private ReadAheadDetector readAhead;
+
+    // Office document, the ranges Office applications read first are loaded when the document is opened
+    private boolean officeDocument;
+
+    // Pool of shared read-only channels, and the shared channel in use
+    private ContentChannelPool channelPool;
+    private ContentChannelPool.PooledChannel pooledChannel;
+
     /**
      * Helper method to create a {@link org.filesys.server.filesys.NetworkFile network file} given a node reference.
      */
@@ -295,6 +334,268 @@ public class ContentNetworkFile extends NodeRefNetworkFile
      */
     protected final void setOriginalSize(long origSize) { originalSize = origSize; }
 
+    /**
+     * Set the content URL of the file data, used to share cached data for read-only access
+     *
+     * @param url String
+     */
+    public final void setContentUrl(String url)
+    {
+        contentUrl = url;
+    }
+
+    /**
+     * Set the shared block cache used to serve reads
+     *
+     * @param cache ContentBlockCache
+     */
+    public final void setBlockCache(ContentBlockCache cache)
+    {
+        blockCache = cache;
+    }
+
+    /**
+     * Set the read-ahead manager, used to load blocks into the shared block cache ahead of the reads. If sequential
+     * reads is set the blocks following sequential reads are loaded, otherwise the manager is only used by the
+     * Office prefetch. The block cache must be set first.
+     *
+     * @param manager ReadAheadManager
+     * @param sequentialReads boolean
+     */
+    public final void setReadAheadManager(ReadAheadManager manager, boolean sequentialReads)
+    {
+        if (manager == null || blockCache == null)
+        {
+            readAheadManager = null;
+            blockLoader = null;
+            readAhead = null;
+            return;
+        }
+
+        readAheadManager = manager;
+        blockLoader = new ReadAheadManager.BlockLoader()
+        {
+            @Override
+            public boolean isLoaded(long fileOff, long len)
+            {
+                long endBlk = (fileOff + len - 1) / ContentBlockCache.BlockSize;
+
+                for (long blk = fileOff / ContentBlockCache.BlockSize; blk <= endBlk; blk++)
+                {
+                    if (!blockCache.hasBlock(contentUrl, blk))
+                        return false;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean loadBlock(long fileOff) throws IOException
+            {
+                return prefetchBlock(fileOff);
+            }
+        };
+
+        readAhead = sequentialReads ? new ReadAheadDetector(manager, blockLoader) : null;
+    }
+
+    /**
+     * Set the Office document flag, the ranges Office applications read first are loaded when the document is opened
+     *
+     * @param office boolean
+     */
+    public final void setOfficeDocument(boolean office)
+    {
+        officeDocument = office;
+    }
+
+    /**
+     * Check if the file is an Office document, using the content mimetype or the special file handling
+     *
+     * @param mimetype String
+     * @return boolean
+     */
+    public final boolean isOfficeDocument(String mimetype)
+    {
+        return isOfficeMimetype(mimetype) || this instanceof MSOfficeContentNetworkFile ||
+                this instanceof OpenOfficeContentNetworkFile;
+    }
+
+    /**
+     * Check if the mimetype is an Office document mimetype
+     *
+     * @param mimetype String
+     * @return boolean
+     */
+    public static boolean isOfficeMimetype(String mimetype)
+    {
+        return mimetype != null && OfficeMimetypes.contains(mimetype);
+    }
+
+    /**
+     * Queue loading of the header and trailer ranges of an Office document, unless both ranges are already loaded
+     *
+     * @param manager ReadAheadManager
+     * @param loader ReadAheadManager.BlockLoader
+     * @param fileSize long
+     * @param name String
+     * @return boolean true if the ranges were queued, false if they are already loaded
+     */
+    public static boolean queueOfficePrefetch(ReadAheadManager manager, ReadAheadManager.BlockLoader loader, long fileSize, String name)
+    {
+        long headerEnd = Math.min(fileSize, OfficeHeaderSize);
+
+        // Trailer range, if the file is larger than the header
+
+        long trailerStart = fileSize;
+
+        if (fileSize > headerEnd)
+        {
+            trailerStart = Math.max(headerEnd, fileSize - OfficeTrailerSize);
+            trailerStart -= trailerStart % ContentBlockCache.BlockSize;
+        }
+
+        // Nothing to do if the document was loaded by an earlier open
+
+        if (loader.isLoaded(0L, headerEnd) && (trailerStart >= fileSize || loader.isLoaded(trailerStart, fileSize - trailerStart)))
+            return false;
+
+        manager.queuePrefetch(loader, 0L, headerEnd);
+
+        if (trailerStart < fileSize)
+            manager.queuePrefetch(loader, trailerStart, fileSize);
+
+        // DEBUG
+
+        if (logger.isDebugEnabled())
+            logger.debug("Queued Office prefetch file=" + name + ", header=" + headerEnd + ", trailer=" + trailerStart + "-" + fileSize);
+
+        return true;
+    }
+
+    /**
+     * Start loading the header and trailer ranges of an Office document into the shared block cache, Office
+     * applications read these ranges before anything else when opening a document. The blocks are loaded by the
+     * read-ahead threads, the first prefetch task opens the read channel within a transaction, as the current user,
+     * so the open does not wait for the content to be opened. The read-ahead manager must be set, and the file
+     * must be open.
+     *
+     * @param txnHelper RetryingTransactionHelper used to open the read channel
+     */
+    public final void prefetchOfficeRanges(final RetryingTransactionHelper txnHelper)
+    {
+        if (!officeDocument || blockLoader == null || contentUrl == null || isDirectory() || getFileSize() == 0L)
+            return;
+
+        synchronized (this)
+        {
+            if (isClosed() || writableChannel || modified)
+                return;
+        }
+
+        final String userName = AuthenticationUtil.getFullyAuthenticatedUser();
+        final ReadAheadManager.BlockLoader loader = blockLoader;
+
+        ReadAheadManager.BlockLoader prefetchLoader = new ReadAheadManager.BlockLoader()
+        {
+            @Override
+            public boolean isLoaded(long fileOff, long len)
+            {
+                return loader.isLoaded(fileOff, len);
+            }
+
+            @Override
+            public boolean loadBlock(long fileOff) throws IOException
+            {
+                return openPrefetchChannel(txnHelper, userName) && loader.loadBlock(fileOff);
+            }
+        };
+
+        queueOfficePrefetch(readAheadManager, prefetchLoader, getFileSize(), getName());
+    }
+
+    /**
+     * Open the read channel for the Office prefetch, from a read-ahead thread
+     *
+     * @param txnHelper RetryingTransactionHelper
+     * @param userName String
+     * @return boolean false if the file has been closed or opened for write
+     */
+    private boolean openPrefetchChannel(RetryingTransactionHelper txnHelper, String userName)
+    {
+        synchronized (this)
+        {
+            if (isClosed() || writableChannel || modified)
+                return false;
+
+            if (channel != null)
+                return true;
+        }
+
+        try
+        {
+            AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Void>()
+            {
+                @Override
+                public Void doWork() throws Exception
+                {
+                    return txnHelper.doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Void>()
+                    {
+                        @Override
+                        public Void execute() throws Throwable
+                        {
+                            synchronized (ContentNetworkFile.this)
+                            {
+                                if (!isClosed() && channel == null)
+                                    openContent(false, false);
+                            }
+                            return null;
+                        }
+                    }, true, true);
+                }
+            }, userName);
+        }
+        catch (Exception ex)
+        {
+            // DEBUG
+
+            if (logger.isDebugEnabled())
+                logger.debug("Failed to open content for Office prefetch, file=" + getName() + ", " + ex.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Set the pool of shared read-only channels, used instead of opening a channel per file handle
+     *
+     * @param pool ContentChannelPool
+     */
+    public final void setChannelPool(ContentChannelPool pool)
+    {
+        channelPool = pool;
+    }
+
+    /**
+     * Set the shared memory mapped content cache used to serve reads of large files
+     *
+     * @param cache MappedContentCache
+     */
+    public final void setMappedContentCache(MappedContentCache cache)
+    {
+        mappedCache = cache;
+    }
+
+    /**
+     * Return the content URL of the file data, if known
+     *
+     * @return String
+     */
+    public final String getContentUrl()
+    {
+        return contentUrl;
+    }
+
     /**
      * Opens the channel for reading or writing depending on the access mode.
      * <p>
@@ -339,9 +640,7 @@ public class ContentNetworkFile extends NodeRefNetworkFile
             
                 try
                 {
-                    channel.close();
-                    channel = null;
-                    content = null;
+                    closeReadChannel();
                 }
                 catch (IOException ex)
                 {
@@ -389,28 +688,57 @@ public class ContentNetworkFile extends NodeRefNetworkFile
             }
             else
             {
-                // Get a read-only channel to the content
-                if(logger.isDebugEnabled())
-                {
-                    logger.debug("open reader for content property");
-                }
-        	
-                content = contentService.getReader( getNodeRef(), ContentModel.PROP_CONTENT);
-            
-                // Ensure that the content we are going to read is valid
-            
-                content = FileContentReader.getSafeContentReader(
-                    (ContentReader) content,
-                    I18NUtil.getMessage(FileContentReader.MSG_MISSING_CONTENT),
-                    getNodeRef(), content);
-            
                 // Indicate that we only have a read-only channel to the data
-            
+
                 writableChannel = false;
-            
-                // Get the read-only channel
-            
-                channel = ((ContentReader) content).getFileChannel();
+
+                // Check for a shared channel to the content, avoids the reader lookup
+
+                if (channelPool != null && contentUrl != null)
+                {
+                    pooledChannel = channelPool.acquire(contentUrl);
+                }
+
+                if (pooledChannel != null)
+                {
+                    if(logger.isDebugEnabled())
+                    {
+                        logger.debug("using shared channel for content " + contentUrl);
+                    }
+
+                    content = pooledChannel.getReader();
+                    channel = pooledChannel.getChannel();
+                }
+                else
+                {
+                    // Get a read-only channel to the content
+                    if(logger.isDebugEnabled())
+                    {
+                        logger.debug("open reader for content property");
+                    }
+
+                    content = contentService.getReader( getNodeRef(), ContentModel.PROP_CONTENT);
+
+                    // Ensure that the content we are going to read is valid
+
+                    content = FileContentReader.getSafeContentReader(
+                        (ContentReader) content,
+                        I18NUtil.getMessage(FileContentReader.MSG_MISSING_CONTENT),
+                        getNodeRef(), content);
+
+                    // Get the read-only channel, shared with other handles reading the same content
+
+                    if (channelPool != null && contentUrl != null && contentUrl.equals(content.getContentUrl()))
+                    {
+                        pooledChannel = channelPool.acquire(contentUrl, (ContentReader) content);
+                        content = pooledChannel.getReader();
+                        channel = pooledChannel.getChannel();
+                    }
+                    else
+                    {
+                        channel = ((ContentReader) content).getFileChannel();
+                    }
+                }
             }
         
             // Update the current file size
@@ -447,6 +775,10 @@ public class ContentNetworkFile extends NodeRefNetworkFile
     	    logger.debug("closeFile");
     	}
     	
+        // Release the shared memory mapping, if used
+
+        releaseMapping();
+
         if (isDirectory())
         {
         	// Nothing to do
@@ -546,9 +878,7 @@ public class ContentNetworkFile extends NodeRefNetworkFile
                     logger.debug("content not modified - simply close the channel");
                 }
         	
-                channel.close();
-                channel = null;
-                content = null;
+                closeReadChannel();
                 setClosed(true);
             }
         }
@@ -690,14 +1020,41 @@ public class ContentNetworkFile extends NodeRefNetworkFile
     public int readFile(byte[] buffer, int length, int position, long fileOffset)
     	throws IOException
     {
-        // Open the channel for reading
-        
-        openContent(false, false);
-        
-        // Read from the channel
-        
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, position, length);
-        int count = channel.read(byteBuffer, fileOffset);
+        int count;
+
+        // Take a local reference to the mapping, the file may be closed and the mapping released whilst reading
+        MappedContentCache.MappedContent mapped = null;
+
+        if (mappedCache != null && contentUrl != null && !writableChannel && !modified)
+            mapped = openMapping();
+
+        if (mapped != null)
+        {
+            // Copy from the shared memory mapping of the content
+
+            count = mapped.read(buffer, length, position, fileOffset);
+        }
+        else if (blockCache != null && contentUrl != null && !writableChannel && !modified)
+        {
+            // Read via the shared block cache, the channel is only opened if a block is not cached
+
+            if (readAhead != null)
+                readAhead.recordRead(fileOffset, length, getFileSize());
+
+            count = readCached(buffer, length, position, fileOffset);
+        }
+        else
+        {
+            // Open the channel for reading
+
+            openContent(false, false);
+
+            // Read from the channel
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, position, length);
+            count = channel.read(byteBuffer, fileOffset);
+        }
+
         if (count < 0)
         {
             count = 0;  // doesn't obey the same rules, i.e. just returns the bytes read
@@ -718,6 +1075,180 @@ public class ContentNetworkFile extends NodeRefNetworkFile
         return count;
     }
     
+    /**
+     * Acquire a shared memory mapping of the content, if the content is a large content store file
+     *
+     * @return MappedContentCache.MappedContent, or null if the content is not mapped
+     * @exception IOException
+     */
+    private synchronized MappedContentCache.MappedContent openMapping()
+        throws IOException
+    {
+        if (mappedContent != null || mappingChecked)
+        {
+            return mappedContent;
+        }
+
+        mappingChecked = true;
+
+        // Check for an existing mapping, to avoid the content reader lookup
+
+        mappedContent = mappedCache.acquire(contentUrl);
+
+        if (mappedContent == null && getFileSize() >= mappedCache.getMinimumFileSize())
+        {
+            // Only content store files can be mapped
+
+            openContent(false, false);
+
+            if (content instanceof FileContentReader)
+            {
+                mappedContent = mappedCache.acquire(contentUrl, ((FileContentReader) content).getFile());
+            }
+
+            if (mappedContent != null)
+            {
+                // The channel is not required whilst the content is mapped
+
+                closeReadChannel();
+            }
+        }
+
+        // DEBUG
+
+        if (logger.isDebugEnabled() && mappedContent != null)
+            logger.debug("Mapped content file=" + this + ", url=" + contentUrl);
+
+        return mappedContent;
+    }
+
+    /**
+     * Release the shared memory mapping of the content
+     */
+    private synchronized void releaseMapping()
+    {
+        if (mappedContent != null)
+        {
+            mappedCache.release(mappedContent);
+            mappedContent = null;
+        }
+    }
+
+    /**
+     * Close the read-only channel, or release the shared channel. Must be called with the file locked.
+     *
+     * @exception IOException
+     */
+    private void closeReadChannel()
+        throws IOException
+    {
+        if (pooledChannel != null)
+        {
+            channelPool.release(pooledChannel);
+            pooledChannel = null;
+        }
+        else if (channel != null)
+        {
+            channel.close();
+        }
+
+        channel = null;
+        content = null;
+    }
+
+    /**
+     * Read from the file via the shared block cache, blocks that are not cached are loaded from the content channel
+     *
+     * @param buffer byte[]
+     * @param length int
+     * @param position int
+     * @param fileOffset long
+     * @return Length of data read.
+     * @exception IOException
+     */
+    private int readCached(byte[] buffer, int length, int position, long fileOffset)
+        throws IOException
+    {
+        int count = 0;
+
+        while (count < length)
+        {
+            long offset = fileOffset + count;
+            long blockIdx = offset / ContentBlockCache.BlockSize;
+            int blockOff = (int) (offset % ContentBlockCache.BlockSize);
+
+            int cnt = blockCache.readBlock(contentUrl, blockIdx, blockOff, buffer, position + count, length - count);
+
+            if (cnt < 0)
+            {
+                // Load the block into the cache
+
+                openContent(false, false);
+                cnt = blockCache.loadBlock(contentUrl, blockIdx, channel, blockOff, buffer, position + count, length - count);
+
+                if (cnt < 0)
+                {
+                    // No cache block available, read directly from the channel
+
+                    cnt = channel.read(ByteBuffer.wrap(buffer, position + count, length - count), offset);
+                    if (cnt > 0)
+                        count += cnt;
+                    break;
+                }
+            }
+
+            count += cnt;
+
+            // Stop at the end of the file, a partial block is the last block
+            if (cnt == 0 || blockOff + cnt < ContentBlockCache.BlockSize)
+                break;
+        }
+
+        return count;
+    }
+
+    /**
+     * Load a block into the shared block cache ahead of the reads
+     *
+     * @param fileOffset long
+     * @return boolean false if the file has been closed or opened for write
+     * @exception IOException
+     */
+    private boolean prefetchBlock(long fileOffset)
+        throws IOException
+    {
+        FileChannel readChannel;
+
+        synchronized (this)
+        {
+            if (isClosed() || writableChannel || modified)
+            {
+                // Close a channel opened by the Office prefetch whilst the file was closing
+                if (isClosed() && !writableChannel && channel != null)
+                    closeReadChannel();
+                return false;
+            }
+
+            openContent(false, false);
+            readChannel = channel;
+        }
+
+        blockCache.loadBlock(contentUrl, fileOffset / ContentBlockCache.BlockSize, readChannel, 0, null, 0, 0);
+
+        // Close the channel if the file was closed whilst the block was loading
+
+        synchronized (this)
+        {
+            if (isClosed() && channel != null)
+            {
+                closeReadChannel();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Open the file
      * 
@@ -750,6 +1281,20 @@ public class ContentNetworkFile extends NodeRefNetworkFile
 
         openContent( false, false);
 
+        synchronized (this)
+        {
+            if (pooledChannel != null)
+            {
+                // The shared channel position must not be changed, reads pass the file offset so there is no
+                // position to keep for this handle
+
+                if ( getFileState() != null)
+                    getFileState().updateAccessDateTime();
+
+                return typ == SeekType.EndOfFile ? channel.size() + pos : pos;
+            }
+        }
+
         //  Check if the current file position is the required file position
 
         long curPos = channel.position();
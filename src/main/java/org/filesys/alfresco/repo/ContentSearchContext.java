@@ -56,6 +56,10 @@ public class ContentSearchContext extends SearchContext
     
     public final static int LinkFileSize	= 512;
     
+    // Default number of file information entries to load in a single batch
+    
+    public final static int DefaultPrefetchSize = 100;
+    
     private InFlightCorrector corrector;
     
     public void setInFlightCorrector(InFlightCorrector corrector)
@@ -88,6 +92,12 @@ public class ContentSearchContext extends SearchContext
     
     private String m_lastFileName;
     
+    // Prefetched file information for a window of the results list, loaded in bulk ahead of the client's requests
+    
+    private List<ContentFileInfo> m_prefetchList;
+    private int m_prefetchStart = -1;
+    private int m_prefetchSize = DefaultPrefetchSize;
+    
     /**
      * Class constructor
      * 
@@ -248,7 +258,13 @@ public class ContentSearchContext extends SearchContext
 
         			// Get the file information and copy across to the caller's file info
     	            
-		            nextInfo = cifsHelper.getFileInformation(nextNodeRef, "", false, lockedFilesAsOffline);
+		            nextInfo = getPrefetchedFileInfo(index);
+		            if ( nextInfo == null)
+		            {
+		            	// Not returned by the bulk load, check the node individually
+		            	
+		            	nextInfo = cifsHelper.getFileInformation(nextNodeRef, "", false, lockedFilesAsOffline);
+		            }
 		            info.copyFrom(nextInfo);
 
 		            /**
@@ -380,7 +396,9 @@ public class ContentSearchContext extends SearchContext
         {
             // Get the file information and copy across to the callers file info
             
-            FileInfo nextInfo = cifsHelper.getFileInformation(nextNodeRef, "", false, false);
+            FileInfo nextInfo = getPrefetchedFileInfo(index);
+            if ( nextInfo == null)
+                nextInfo = cifsHelper.getFileInformation(nextNodeRef, "", false, false);
 
             // Keep track of the last file name returned
             
@@ -531,6 +549,45 @@ public class ContentSearchContext extends SearchContext
         return false;
     }
     
+    /**
+     * Set the number of file information entries to load in a single batch
+     * 
+     * @param prefetchSize int
+     */
+    public void setPrefetchSize(int prefetchSize)
+    {
+        m_prefetchSize = prefetchSize > 0 ? prefetchSize : 1;
+    }
+    
+    /**
+     * Return the file information for the specified results list entry, loading the next batch of file
+     * information in bulk if the entry is not in the current prefetch window
+     * 
+     * @param idx int
+     * @return ContentFileInfo, or null if the node no longer exists
+     */
+    private ContentFileInfo getPrefetchedFileInfo(int idx)
+    {
+        // Check if the entry is within the current prefetch window
+        
+        if ( m_prefetchList == null || idx < m_prefetchStart || idx >= m_prefetchStart + m_prefetchList.size())
+        {
+            // Load the file information for the next batch of nodes using a single transaction
+            
+            int endIdx = Math.min( idx + m_prefetchSize, results.size());
+            
+            m_prefetchList = cifsHelper.getFileInformation( results.subList( idx, endIdx), false, lockedFilesAsOffline);
+            m_prefetchStart = idx;
+            
+            // DEBUG
+            
+            if ( logger.isDebugEnabled())
+                logger.debug("Prefetched file information for entries " + idx + " to " + (endIdx - 1) + " of " + results.size());
+        }
+        
+        return m_prefetchList.get( idx - m_prefetchStart);
+    }
+
     /**
      * Check if the search is returning pseudo files or real file entries
      * 
@@ -39,6 +39,10 @@ public class CreateNodeEvent extends NodeEvent {
     private String relPath;
     private String name;
     
+    // Parent folder node
+    
+    private NodeRef parentNodeRef;
+    
 	/**
 	 * Class constructor
 	 * 
@@ -51,6 +55,20 @@ public class CreateNodeEvent extends NodeEvent {
 		this.setName(name);
 	}
 	
+	/**
+	 * Class constructor
+	 * 
+	 * @param fType FileFolderServiceTtype
+	 * @param nodeRef NodeRef
+	 * @param parentNodeRef NodeRef
+	 * @param relPath String
+	 * @param name String
+	 */
+	public CreateNodeEvent( FileFolderServiceType fType, NodeRef nodeRef, NodeRef parentNodeRef, String relPath, String name) {
+		this( fType, nodeRef, relPath, name);
+		this.parentNodeRef = parentNodeRef;
+	}
+	
 	/**
 	 * Return the node event as a string
 	 * 
@@ -87,4 +105,14 @@ public class CreateNodeEvent extends NodeEvent {
     {
         return name;
     }
+    
+    /**
+     * Return the parent folder node, if known
+     * 
+     * @return NodeRef
+     */
+    public NodeRef getParentNodeRef()
+    {
+        return parentNodeRef;
+    }
 }
@@ -0,0 +1,407 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Direct Write Network File Class
+ *
+ * <p>A newly created file that writes its data straight to a new content store writer, whilst the writes arrive
+ * sequentially from the start of the file, so the data is only written once. The first out of order write, read,
+ * shrinking truncate or open of the file by another handle copies the data written so far to the temporary file, and
+ * the file then behaves as a normal temporary file. A truncate that extends the file, as clients do to set the final size before writing, is kept as the
+ * expected size of the file.
+ *
+ * <p>The content writer is not bound to the node, the node content is set from the writer content data when the
+ * file is closed. The writer is allocated when the file is created, as the writes are not within a transaction.
+ */
+public class DirectWriteNetworkFile extends TempNetworkFile {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(DirectWriteNetworkFile.class);
+
+    // Content store root path, used to remove abandoned content
+    private String m_storeRoot;
+
+    // Content writer, and channel opened on the first write
+    private ContentWriter m_writer;
+    private FileChannel m_channel;
+
+    // Offset the next sequential write must start at, and direct write mode active
+    private long m_writePos;
+    private boolean m_direct = true;
+
+    // File size set by an extending truncate, the data past the last write is zeroes
+    private long m_expectedSize;
+
+    // Writer channel closed, the content is ready to be set on the node
+    private boolean m_writerClosed;
+
+    /**
+     * Class constructor
+     *
+     * @param file File
+     * @param netPath String
+     * @param writer ContentWriter
+     * @param storeRoot String
+     */
+    public DirectWriteNetworkFile( File file, String netPath, ContentWriter writer, String storeRoot) {
+        super( file, netPath);
+
+        m_writer = writer;
+        m_storeRoot = storeRoot;
+    }
+
+    /**
+     * Check if the file data is being written directly to the content store
+     *
+     * @return boolean
+     */
+    public final synchronized boolean isDirectWrite() {
+        return m_direct;
+    }
+
+    /**
+     * Return the content writer, or null if no data has been written directly
+     *
+     * @return ContentWriter
+     */
+    public final synchronized ContentWriter getContentWriter() {
+        return m_direct && ( m_channel != null || m_writerClosed) ? m_writer : null;
+    }
+
+    @Override
+    public void writeFile( byte[] buf, int len, int pos)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_direct) {
+                writeDirect( buf, len, pos, m_writePos);
+                return;
+            }
+        }
+
+        super.writeFile( buf, len, pos);
+    }
+
+    @Override
+    public void writeFile( byte[] buffer, int length, int position, long fileOffset)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_direct) {
+                if ( fileOffset == m_writePos) {
+                    writeDirect( buffer, length, position, fileOffset);
+                    return;
+                }
+
+                // Out of order write
+                spillToTempFile( "write at " + fileOffset + ", expected " + m_writePos);
+            }
+        }
+
+        super.writeFile( buffer, length, position, fileOffset);
+    }
+
+    @Override
+    public int readFile( byte[] buf, int len, int pos, long fileOff)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_direct) {
+
+                // Nothing written yet
+                if ( m_channel == null)
+                    return -1;
+
+                spillToTempFile( "read");
+            }
+        }
+
+        return super.readFile( buf, len, pos, fileOff);
+    }
+
+    @Override
+    public void truncateFile( long size)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_direct) {
+
+                // Setting the file size to the current size does not change the data, extending the file sets the
+                // expected size, the writes continue from the current write position
+                if ( size >= m_writePos) {
+                    if ( size > m_writePos)
+                        openChannel();
+
+                    m_expectedSize = size;
+
+                    setFileSize( size);
+                    updateTimestampsAndSize( getFileState(), size);
+                    return;
+                }
+
+                spillToTempFile( "truncate to " + size);
+            }
+        }
+
+        super.truncateFile( size);
+    }
+
+    @Override
+    public void closeFile()
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_direct && m_channel != null) {
+
+                // Closed without the content being committed, other handles are still using the file so keep the
+                // data in the temporary file, and release the writer channel
+                spillToTempFile( "close");
+            }
+            else if ( m_writer != null && !m_writerClosed) {
+
+                // No data was written directly
+                abandonWriter();
+            }
+        }
+
+        super.closeFile();
+    }
+
+    @Override
+    public void flushFile()
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_direct)
+                return;
+        }
+
+        super.flushFile();
+    }
+
+    @Override
+    public synchronized void prepareSharedOpen()
+        throws IOException {
+
+        // The other handle uses the temporary file, which does not have the data written directly
+        if ( m_direct)
+            spillToTempFile( "shared open");
+    }
+
+    /**
+     * Read the start of the directly written data
+     *
+     * @param buf byte[]
+     * @return int number of bytes read
+     * @exception IOException Error reading the data
+     */
+    public final synchronized int readHeader( byte[] buf)
+        throws IOException {
+
+        if ( m_channel == null)
+            return 0;
+
+        ByteBuffer bb = ByteBuffer.wrap( buf, 0, (int) Math.min( buf.length, m_writePos));
+
+        while ( bb.hasRemaining()) {
+            if ( m_channel.read( bb, bb.position()) == -1)
+                break;
+        }
+
+        return bb.position();
+    }
+
+    /**
+     * Close the content writer channel, the content writer then has the complete content data. If the file was
+     * extended past the written data the content is extended with zeroes to the expected size.
+     *
+     * @exception IOException Error closing the channel
+     */
+    public final synchronized void closeWriter()
+        throws IOException {
+
+        if ( m_channel != null) {
+            try {
+                extendToExpectedSize( m_channel);
+            }
+            finally {
+                m_channel.close();
+                m_channel = null;
+                m_writerClosed = true;
+            }
+        }
+    }
+
+    /**
+     * Extend the data to the expected size set by an extending truncate
+     *
+     * @param channel FileChannel
+     * @exception IOException Error extending the data
+     */
+    private void extendToExpectedSize( FileChannel channel)
+        throws IOException {
+
+        if ( m_expectedSize > m_writePos && channel.size() < m_expectedSize)
+            channel.write( ByteBuffer.allocate( 1), m_expectedSize - 1);
+    }
+
+    /**
+     * Write data directly to the content writer
+     *
+     * @param buf byte[]
+     * @param len int
+     * @param pos int
+     * @param fileOff long
+     * @exception IOException Error writing the data
+     */
+    private void writeDirect( byte[] buf, int len, int pos, long fileOff)
+        throws IOException {
+
+        setChanged( true);
+
+        // Open the content writer channel on the first write
+        openChannel();
+
+        ByteBuffer bb = ByteBuffer.wrap( buf, pos, len);
+        while ( bb.hasRemaining())
+            m_channel.write( bb, fileOff + ( bb.position() - pos));
+
+        // Only record the write once the data has been written to the channel
+        if ( getContentTracker() != null)
+            getContentTracker().recordWrite( buf, len, pos, fileOff);
+
+        m_writePos = fileOff + len;
+        incrementWriteCount();
+
+        long fileSize = Math.max( m_writePos, m_expectedSize);
+
+        setFileSize( fileSize);
+        updateTimestampsAndSize( getFileState(), fileSize);
+    }
+
+    /**
+     * Open the content writer channel, if not already open
+     *
+     * @exception IOException Error opening the channel
+     */
+    private void openChannel()
+        throws IOException {
+
+        if ( m_channel == null) {
+            m_channel = m_writer.getFileChannel( false);
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Direct write to " + m_writer.getContentUrl() + " for " + getFullName());
+        }
+    }
+
+    /**
+     * Copy the data written so far to the temporary file, and switch to using the temporary file
+     *
+     * @param reason String
+     * @exception IOException Error copying the data
+     */
+    private void spillToTempFile( String reason)
+        throws IOException {
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Direct write fallback to temp file, " + reason + ", file=" + getFullName() + ", written=" + m_writePos);
+
+        m_direct = false;
+
+        if ( m_channel == null) {
+            abandonWriter();
+            return;
+        }
+
+        // Copy the written data to the temporary file
+        FileChannel tempChannel = FileChannel.open( getFile().toPath(), StandardOpenOption.WRITE);
+
+        try {
+            long copied = 0L;
+
+            while ( copied < m_writePos) {
+                long cnt = m_channel.transferTo( copied, m_writePos - copied, tempChannel);
+                if ( cnt <= 0)
+                    throw new IOException( "Failed to copy direct write data to temp file at offset " + copied);
+                copied += cnt;
+            }
+
+            extendToExpectedSize( tempChannel);
+        }
+        finally {
+            tempChannel.close();
+        }
+
+        abandonWriter();
+
+        // Sequential writes continue from the end of the directly written data
+        if ( m_io == null)
+            m_io = new RandomAccessFile( getFile(), "rw");
+        m_io.seek( m_writePos);
+    }
+
+    /**
+     * Release the content writer without using the content, and remove the content from a file content store
+     *
+     * @exception IOException Error closing the writer channel
+     */
+    public final synchronized void abandonWriter()
+        throws IOException {
+
+        if ( m_writer == null)
+            return;
+
+        String contentUrl = m_writer.getContentUrl();
+
+        if ( m_channel != null) {
+            m_channel.close();
+            m_channel = null;
+        }
+
+        m_writer = null;
+        m_direct = false;
+
+        if ( m_storeRoot != null && contentUrl.startsWith( "store:/")) {
+            try {
+                Files.deleteIfExists( Paths.get( contentUrl.replace( "store:/", m_storeRoot)));
+            }
+            catch ( IOException ex) {
+
+                // DEBUG
+                if ( logger.isDebugEnabled())
+                    logger.debug("Failed to remove abandoned content " + contentUrl + ", " + ex);
+            }
+        }
+    }
+}
@@ -28,6 +28,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * FS Temp File Provider Class
@@ -36,6 +40,14 @@ import java.nio.file.attribute.BasicFileAttributes;
  * as the main Alfresco data folder. This allows much quicker moving of the data into the data store
  * as a rename/move can be done instead of a byte by byte copy.
  *
+ * <p>Additional temp roots, for example on a faster local volume, can be configured. New temporary files are placed
+ * on the root with the lowest recent write load that has enough free space, and are spread over a set of
+ * sub-folders within each root.
+ *
+ * <p>Temporary files are tracked by a journalled registry. If the journal from the previous run is available the
+ * temporary folders are kept and only the files listed in the journal are deleted, by the cleanup task, otherwise
+ * the folders from the previous run are removed by a background thread.
+ *
  * @author gkspencer
  */
 public class FSTempFileProvider {
@@ -44,9 +56,85 @@ public class FSTempFileProvider {
     // fileServersNG temporary files sub-folder
     public static final String FSNG_TEMP_FILE_DIR = "fileServersNG";
 
-    // FileServersNG temporary files folder
+    // Sub-folder for temporary files waiting to be committed, kept when the temporary folder is cleared
+    public static final String FSNG_COMMIT_QUEUE_DIR = "commitQueue";
+
+    // Suffix for temporary folders from a previous run that are waiting to be deleted
+    public static final String FSNG_TRASH_SUFFIX = ".old-";
+
+    // Default number of sub-folders in each temp root
+    public static final int DefaultShardCount = 16;
+
+    // Minimum free space for a temp root to be used for new files, and interval to check the free space
+    public static final long MinimumFreeSpace = 256L * 1024L * 1024L;
+    private static final long FreeSpaceCheckInterval = 5000L;
+
+    // FileServersNG temporary files folder, on the primary temp root
     public static File FSTempRoot;
 
+    // All temp roots, the primary root is first
+    private static TempRoot[] m_tempRoots;
+
+    // Registry of the temporary files
+    private static final TempFileRegistry s_registry = new TempFileRegistry();
+
+    // Unique id for temporary file paths that are not created immediately, and for spreading files over the
+    // sub-folders
+    private static final AtomicLong m_pathId = new AtomicLong();
+
+    /**
+     * Temp root details
+     */
+    private static class TempRoot {
+
+        // fileServersNG temporary folder, and the sub-folders
+        private final File m_dir;
+        private final File[] m_shards;
+
+        // Free space, and when it was last checked
+        private volatile long m_freeSpace;
+        private volatile long m_freeCheckTime;
+
+        // Files created recently, decays at each free space check
+        private final AtomicInteger m_load = new AtomicInteger();
+
+        TempRoot( File dir, int shardCount) {
+            m_dir = dir;
+            m_shards = new File[shardCount];
+
+            for ( int i = 0; i < shardCount; i++)
+                m_shards[i] = new File( dir, String.format( "%02x", i));
+        }
+
+        /**
+         * Refresh the free space, if due
+         *
+         * @param now long
+         */
+        final void checkFreeSpace( long now) {
+            if ( now - m_freeCheckTime >= FreeSpaceCheckInterval) {
+                m_freeCheckTime = now;
+                m_freeSpace = m_dir.getUsableSpace();
+                m_load.set( m_load.get() / 2);
+            }
+        }
+
+        /**
+         * Return the sub-folder for a new file
+         *
+         * @param id long
+         * @return File
+         */
+        final File getShard( long id) {
+            m_load.incrementAndGet();
+            return m_shards[(int) ( id % m_shards.length)];
+        }
+
+        public String toString() {
+            return "[" + m_dir + ",free=" + m_freeSpace + ",load=" + m_load.get() + "]";
+        }
+    }
+
     /**
      * Static class only
      */
@@ -70,25 +158,106 @@ public class FSTempFileProvider {
      */
     public static void setTempDirRoot( String tempPath)
         throws IOException {
+        setTempDirRoots( tempPath, null, DefaultShardCount);
+    }
+
+    /**
+     * Return the temporary file registry
+     *
+     * @return TempFileRegistry
+     */
+    public static TempFileRegistry getRegistry() {
+        return s_registry;
+    }
+
+    /**
+     * Set the primary temporary folder path, and any additional temp roots. Files left in the temporary folders
+     * from a previous run are deleted in the background.
+     *
+     * @param tempPath String primary temp root
+     * @param extraPaths String[] additional temp roots, or null
+     * @param shardCount int number of sub-folders in each temp root
+     * @exception java.io.IOException Primary root path does not exist
+     */
+    public static void setTempDirRoots( String tempPath, String[] extraPaths, int shardCount)
+        throws IOException {
+
+        if ( shardCount <= 0)
+            shardCount = DefaultShardCount;
+
+        List<TempRoot> roots = new ArrayList<TempRoot>();
+        List<Path> trashDirs = new ArrayList<Path>();
 
+        // The primary root must exist, holds the commit queue folder and temp file journal
         Path tempRoot = Paths.get(tempPath);
         if ( !Files.exists(tempRoot))
             throw new IOException("Temp directory does not exist: " + tempPath);
 
-        // Append the fileServersNG folder and make sure the path exists
-        Path fsTempRoot = Paths.get( tempRoot.toString(), FSNG_TEMP_FILE_DIR);
-        if ( Files.exists(fsTempRoot) && !Files.isDirectory(fsTempRoot))
-            throw new IOException("Temp path exists but is not a directory: " + fsTempRoot);
+        // If the journal from the previous run is available the existing temporary files are known
+        Path journalPath = Paths.get( tempRoot.toString(), FSNG_TEMP_FILE_DIR, TempFileRegistry.JournalFileName);
+        boolean keepExisting = Files.isRegularFile( journalPath) && Files.isReadable( journalPath);
 
-        if ( Files.exists(fsTempRoot)) {
-            clearTempDirectory(fsTempRoot);
+        roots.add( new TempRoot( prepareTempRoot( tempRoot, shardCount, trashDirs, keepExisting).toFile(), shardCount));
+
+        // Additional roots are skipped if not available
+        if ( extraPaths != null) {
+            for ( String extraPath : extraPaths) {
+                if ( extraPath == null || extraPath.trim().length() == 0)
+                    continue;
+
+                Path extraRoot = Paths.get( extraPath.trim());
+
+                try {
+                    if ( !Files.isDirectory( extraRoot))
+                        throw new IOException("Temp directory does not exist: " + extraRoot);
+
+                    roots.add( new TempRoot( prepareTempRoot( extraRoot, shardCount, trashDirs, keepExisting).toFile(), shardCount));
+                }
+                catch ( IOException ex) {
+                    logger.warn("Unable to use temp root " + extraRoot + ", " + ex.getMessage());
+                }
+            }
         }
-        else {
-            Files.createDirectories(fsTempRoot);
+
+        // Save the temporary folder paths
+        FSTempRoot = roots.get( 0).m_dir;
+        m_tempRoots = roots.toArray( new TempRoot[roots.size()]);
+
+        if ( logger.isDebugEnabled())
+            logger.debug("Temp roots: " + roots);
+
+        // Open the temp file journal, files left by the previous run are deleted by the cleanup task
+        try {
+            int orphanCnt = s_registry.openJournal( new File( FSTempRoot, TempFileRegistry.JournalFileName));
+            if ( orphanCnt > 0)
+                logger.info("Found " + orphanCnt + " temp files from the previous run, deleting in background");
+        }
+        catch ( IOException ex) {
+            logger.warn("Failed to open temp file journal, " + ex.getMessage());
         }
 
-        // Save the temporary folder path
-        FSTempRoot = new File( fsTempRoot.toString());
+        // Delete the files from the previous run in the background
+        if ( trashDirs.isEmpty() == false)
+            startTrashCleanup( trashDirs);
+    }
+
+    /**
+     * Return the folder used to hold temporary files waiting to be committed
+     *
+     * @return File
+     */
+    public static File getCommitQueueDir() {
+        return new File( FSTempRoot, FSNG_COMMIT_QUEUE_DIR);
+    }
+
+    /**
+     * Check if a temporary file is on the primary temp root
+     *
+     * @param file File
+     * @return boolean
+     */
+    public static boolean isOnPrimaryRoot( File file) {
+        return FSTempRoot != null && file.getAbsolutePath().startsWith( FSTempRoot.getAbsolutePath() + File.separator);
     }
 
     /**
@@ -100,7 +269,7 @@ public class FSTempFileProvider {
      */
     public static File createTempFile(String prefix, String suffix)
     {
-        return createTempFile(prefix, suffix, FSTempRoot);
+        return createTempFile(prefix, suffix, selectTempFolder());
     }
 
     /**
@@ -117,6 +286,8 @@ public class FSTempFileProvider {
             if (logger.isDebugEnabled())
                 logger.debug("Creating tmp file: " + tempFile);
 
+            s_registry.recordCreate(tempFile);
+
             return tempFile;
         } catch (IOException e)
         {
@@ -125,7 +296,148 @@ public class FSTempFileProvider {
         }
     }
 
-    private static void clearTempDirectory(Path directory) throws IOException {
+    /**
+     * Return a unique temporary file path in the default temporary folder, the file is not created
+     *
+     * @param prefix String
+     * @param suffix String
+     * @return File
+     */
+    public static File newTempFilePath(String prefix, String suffix)
+    {
+        long id = m_pathId.incrementAndGet();
+        return new File(selectTempFolder(id), prefix + Long.toHexString(System.nanoTime()) + "-" + id + suffix);
+    }
+
+    /**
+     * Select the folder for a new temporary file
+     *
+     * @return File
+     */
+    private static File selectTempFolder() {
+        return selectTempFolder( m_pathId.incrementAndGet());
+    }
+
+    /**
+     * Select the folder for a new temporary file, using the temp root with the lowest recent load that has enough
+     * free space, or the most free space if all roots are low on space
+     *
+     * @param id long
+     * @return File
+     */
+    private static File selectTempFolder( long id) {
+
+        TempRoot[] roots = m_tempRoots;
+
+        if ( roots == null)
+            return FSTempRoot;
+        else if ( roots.length == 1)
+            return roots[0].getShard( id);
+
+        long now = System.currentTimeMillis();
+        TempRoot best = null;
+        TempRoot mostFree = null;
+
+        for ( TempRoot root : roots) {
+            root.checkFreeSpace( now);
+
+            if ( mostFree == null || root.m_freeSpace > mostFree.m_freeSpace)
+                mostFree = root;
+
+            if ( root.m_freeSpace < MinimumFreeSpace)
+                continue;
+
+            if ( best == null || root.m_load.get() < best.m_load.get() ||
+                    ( root.m_load.get() == best.m_load.get() && root.m_freeSpace > best.m_freeSpace))
+                best = root;
+        }
+
+        return ( best != null ? best : mostFree).getShard( id);
+    }
+
+    /**
+     * Prepare the fileServersNG folder in a temp root. Unless the existing files are to be kept, an existing folder
+     * is renamed so it can be deleted in the background, keeping the commit queue folder.
+     *
+     * @param tempRoot Path
+     * @param shardCount int
+     * @param trashDirs List&lt;Path&gt; folders to be deleted
+     * @param keepExisting boolean keep the existing folder, the existing files are in the temp file journal
+     * @return Path
+     * @exception IOException Error preparing the folder
+     */
+    private static Path prepareTempRoot( Path tempRoot, int shardCount, List<Path> trashDirs, boolean keepExisting)
+        throws IOException {
+
+        // Append the fileServersNG folder and make sure the path exists
+        Path fsTempRoot = Paths.get( tempRoot.toString(), FSNG_TEMP_FILE_DIR);
+        if ( Files.exists(fsTempRoot) && !Files.isDirectory(fsTempRoot))
+            throw new IOException("Temp path exists but is not a directory: " + fsTempRoot);
+
+        if ( Files.exists(fsTempRoot) && keepExisting == false) {
+
+            // Move the existing folder out of the way, and keep any pending commits
+            Path trashDir = tempRoot.resolve( FSNG_TEMP_FILE_DIR + FSNG_TRASH_SUFFIX + System.currentTimeMillis());
+            Files.move( fsTempRoot, trashDir);
+            Files.createDirectories( fsTempRoot);
+
+            Path commitQueueDir = trashDir.resolve( FSNG_COMMIT_QUEUE_DIR);
+            if ( Files.isDirectory( commitQueueDir))
+                Files.move( commitQueueDir, fsTempRoot.resolve( FSNG_COMMIT_QUEUE_DIR));
+        }
+        else if ( !Files.exists(fsTempRoot)) {
+            Files.createDirectories(fsTempRoot);
+        }
+
+        // Find folders from previous runs, including any that were not deleted before a restart
+        File[] oldDirs = tempRoot.toFile().listFiles();
+
+        if ( oldDirs != null) {
+            for ( File oldDir : oldDirs) {
+                if ( oldDir.isDirectory() && oldDir.getName().startsWith( FSNG_TEMP_FILE_DIR + FSNG_TRASH_SUFFIX))
+                    trashDirs.add( oldDir.toPath());
+            }
+        }
+
+        // Create the sub-folders
+        for ( int i = 0; i < shardCount; i++)
+            Files.createDirectories( fsTempRoot.resolve( String.format( "%02x", i)));
+
+        return fsTempRoot;
+    }
+
+    /**
+     * Start a background thread to delete the temporary folders from previous runs
+     *
+     * @param trashDirs List&lt;Path&gt;
+     */
+    private static void startTrashCleanup( final List<Path> trashDirs) {
+
+        Thread cleanupThread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                for ( Path trashDir : trashDirs) {
+                    try {
+                        long startTime = System.currentTimeMillis();
+                        deleteTree( trashDir);
+
+                        if (logger.isDebugEnabled())
+                            logger.debug("Cleared temp directory: " + trashDir + " in " + (System.currentTimeMillis() - startTime) + "ms");
+                    }
+                    catch ( IOException ex) {
+                        logger.warn("Failed to clear temp directory " + trashDir + ", " + ex.getMessage());
+                    }
+                }
+            }
+        }, "FSTempCleanup");
+
+        cleanupThread.setDaemon( true);
+        cleanupThread.setPriority( Thread.MIN_PRIORITY);
+        cleanupThread.start();
+    }
+
+    private static void deleteTree(Path directory) throws IOException {
+
         Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
@@ -139,16 +451,9 @@ public class FSTempFileProvider {
                     throw exc;
                 }
 
-                if (!dir.equals(directory)) {
-                    Files.delete(dir);
-                }
-
+                Files.delete(dir);
                 return FileVisitResult.CONTINUE;
             }
         });
-
-        if (logger.isDebugEnabled()) {
-            logger.debug("Cleared temp directory: " + directory);
-        }
     }
 }
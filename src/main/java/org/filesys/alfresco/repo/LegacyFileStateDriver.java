@@ -70,12 +70,18 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
 {
     // File state attribute names
     private static final String AlfrescoAttrTempPath    = "AlfTempPath";
+    private static final String AlfrescoAttrTempLoader  = "AlfTempLoader";
+    private static final String AlfrescoAttrTempTracker = "AlfTempTracker";
+    private static final String AlfrescoAttrTempOwner   = "AlfTempOwner";
 
     private ExtendedDiskInterface diskInterface;
     
     private OpLockInterface opLockInterface;
     
     private FileLockingInterface fileLockingInterface; 
+
+    // Syncs writes to temp files shared by more than one handle in batches
+    private TempFileFlusher tempFileFlusher;
           
     public void init()
     {
@@ -242,6 +248,19 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
         FileState fstate = null;
         NetworkFile openFile = null;
 
+        // Report a failed background commit, the cached file state details are from the content that was not saved
+        if ( tctx.getCommitQueue() != null && !params.isDirectory()) {
+            ContentCommitQueue.PendingCommit failed = tctx.getCommitQueue().checkFailed( tctx.getDeviceName(), path);
+
+            if ( failed != null) {
+                if ( tctx.hasStateCache())
+                    tctx.getStateCache().removeFileState( path);
+
+                throw new IOException( "Queued content commit failed, path=" + path +
+                        ( failed.getFailedFile() != null ? ", content kept in " + failed.getFailedFile().getAbsolutePath() : ""), failed.getError());
+            }
+        }
+
         if(tctx.hasStateCache())
         {
             cache = tctx.getStateCache();
@@ -272,12 +291,52 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
 
         try
         {
+            // Check if the file content is waiting to be committed in the background
+            ContentCommitQueue commitQueue = tctx.getCommitQueue();
+
+            if ( commitQueue != null && !params.isDirectory() && !params.isAttributesOnlyAccess()) {
+
+                ContentCommitQueue.PendingCommit pending = commitQueue.findPending( tctx.getDeviceName(), path);
+
+                if ( pending != null) {
+
+                    // Read-only opens are served from the queued temporary file, until the commit starts
+                    if ( params.isReadOnlyAccess() && pending.addReader()) {
+                        PendingContentNetworkFile pendingFile = new PendingContentNetworkFile( pending, path);
+                        pendingFile.setAccessToken( token);
+                        pendingFile.setAccessMask( params.getAccessMode());
+                        pendingFile.setFileSize( pending.getTempFile().length());
+
+                        if ( pending.hasModifyDate())
+                            pendingFile.setModifyDate( pending.getModifyDate());
+
+                        // The access token is released when the file is closed
+                        rollbackToken = false;
+
+                        // DEBUG
+                        if (logger.isDebugEnabled())
+                            logger.debug("Open file, read pending commit temp file for path " + path + ", " + pending);
+
+                        return pendingFile;
+                    }
+
+                    // Other opens must see the committed content
+                    commitQueue.waitForCommit( tctx.getDeviceName(), path, ContentCommitQueue.DefaultWaitTimeout);
+                }
+            }
+
             // Check if the path has a file state, and there is an associated temporary file path
             if ( fstate != null && !params.isAttributesOnlyAccess()) {
                 String tempPath = (String) fstate.findAttribute( AlfrescoAttrTempPath);
 
                 if ( tempPath != null) {
 
+                    // The handle that created the temporary file may hold the data elsewhere, such as directly in
+                    // the content store, make sure the data is in the temporary file before it is shared
+                    TempNetworkFile ownerFile = (TempNetworkFile) fstate.findAttribute( AlfrescoAttrTempOwner);
+                    if ( ownerFile != null)
+                        ownerFile.prepareSharedOpen();
+
                     // Check if the temporary file still exists
                     File tFile = new File( tempPath);
 
@@ -285,8 +344,11 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
 
                         // File is already open and using a temporary path file
                         TempNetworkFile tempFile = new TempNetworkFile(new File(tempPath), path);
+                        tempFile.setTempFileFlusher(tempFileFlusher);
                         tempFile.setFileState(fstate);
                         tempFile.setAccessToken(token);
+                        tempFile.setContentLoader((TempContentLoader) fstate.findAttribute( AlfrescoAttrTempLoader));
+                        tempFile.setContentTracker((TempContentTracker) fstate.findAttribute( AlfrescoAttrTempTracker));
 
                         if (params.isReadOnlyAccess())
                             tempFile.setGrantedAccess(NetworkFile.Access.READ_ONLY);
@@ -327,8 +389,11 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
                     }
                     else {
 
-                        // Remove the file state attribute
+                        // Remove the file state attributes
                         fstate.removeAttribute( AlfrescoAttrTempPath);
+                        fstate.removeAttribute( AlfrescoAttrTempLoader);
+                        fstate.removeAttribute( AlfrescoAttrTempTracker);
+                        fstate.removeAttribute( AlfrescoAttrTempOwner);
                     }
                 }
             }
@@ -452,8 +517,15 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
                     x.setFileState(fstate);
                     fstate.setFileStatus(FileStatus.FileExists);
 
-                    // Save the temporary file path
+                    // Save the temporary file path, existing content loader and content tracker, and the handle that
+                    // owns the temporary file, in case it must copy data to the temporary file when another handle opens it
                     fstate.addAttribute( AlfrescoAttrTempPath, x.getFile().getPath());
+                    fstate.addAttribute( AlfrescoAttrTempOwner, x);
+
+                    if ( x.getContentLoader() != null)
+                        fstate.addAttribute( AlfrescoAttrTempLoader, x.getContentLoader());
+                    if ( x.getContentTracker() != null)
+                        fstate.addAttribute( AlfrescoAttrTempTracker, x.getContentTracker());
                 }
             }
             else if (openFile instanceof AlfrescoFolder)
@@ -647,6 +719,9 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
 
                 // Remove Alfresco specific attributes
                 fstate.removeAttribute( AlfrescoAttrTempPath);
+                fstate.removeAttribute( AlfrescoAttrTempLoader);
+                fstate.removeAttribute( AlfrescoAttrTempTracker);
+                fstate.removeAttribute( AlfrescoAttrTempOwner);
 
                 // Make sure the oplock has been released
                 if ( fstate.hasOpLock()) {
@@ -739,6 +814,10 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
     {
         ContentContext tctx = (ContentContext) tree.getContext();
 
+        // Make sure any pending content commit has completed
+        if ( tctx.getCommitQueue() != null)
+            tctx.getCommitQueue().waitForCommit( tctx.getDeviceName(), name, ContentCommitQueue.DefaultWaitTimeout);
+
         diskInterface.deleteFile(sess, tree, name);
         
         if(tctx.hasStateCache())
@@ -881,7 +960,13 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
             String oldName, String newName, NetworkFile netFile) throws IOException
     {
         ContentContext tctx = (ContentContext) tree.getContext();
-        
+
+        // Make sure any pending content commits for the old and new paths have completed
+        if ( tctx.getCommitQueue() != null) {
+            tctx.getCommitQueue().waitForCommit( tctx.getDeviceName(), oldName, ContentCommitQueue.DefaultWaitTimeout);
+            tctx.getCommitQueue().waitForCommit( tctx.getDeviceName(), newName, ContentCommitQueue.DefaultWaitTimeout);
+        }
+
         diskInterface.renameFile(sess, tree, oldName, newName, netFile);
         
         if(tctx.hasStateCache())
@@ -1070,6 +1155,16 @@ public class LegacyFileStateDriver implements ExtendedDiskInterface
         return opLockInterface;
     }
 
+    /**
+     * Set the flusher used by the temp files opened on a file that is already open
+     *
+     * @param tempFileFlusher TempFileFlusher
+     */
+    public void setTempFileFlusher(TempFileFlusher tempFileFlusher)
+    {
+        this.tempFileFlusher = tempFileFlusher;
+    }
+
     /**
      * Update the parent folder path file information last write and change timestamps
      *
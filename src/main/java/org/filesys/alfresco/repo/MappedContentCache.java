@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Mapped Content Cache Class
+ *
+ * <p>Memory maps large read-only content store files in fixed size windows, the mappings are shared by all file
+ * handles reading the same content URL. Windows are mapped when first read, and the mappings are dropped when the
+ * last handle releases the content. The total size of the mapped windows is capped, the least recently used windows
+ * are dropped when the cap is reached and are mapped again if read. The memory of a dropped window is unmapped when
+ * the buffer is garbage collected, a read in progress keeps the buffer reachable.
+ */
+public class MappedContentCache {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(MappedContentCache.class);
+
+    // Default window size, default minimum file size to be mapped, and default maximum size of the mapped windows
+    public static final int DefaultWindowSize = 16 * 1024 * 1024;
+    public static final long DefaultMinimumFileSize = 4L * 1024L * 1024L;
+    public static final long DefaultMaximumMappedSize = 256L * 1024L * 1024L;
+
+    /**
+     * Mapped content details, shared by the file handles reading the content
+     */
+    public static final class MappedContent {
+
+        // Cache that owns the mapping
+        private final MappedContentCache m_cache;
+
+        // Content URL and content store file
+        private final String m_contentUrl;
+        private final File m_file;
+
+        // File size, and window size
+        private final long m_size;
+        private final int m_windowSize;
+
+        // Mapped windows, mapped on first access
+        private final MappedByteBuffer[] m_windows;
+
+        // Number of file handles using the mapping
+        private int m_refCount;
+
+        /**
+         * Class constructor
+         *
+         * @param cache MappedContentCache
+         * @param contentUrl String
+         * @param file File
+         * @param size long
+         * @param windowSize int
+         */
+        private MappedContent( MappedContentCache cache, String contentUrl, File file, long size, int windowSize) {
+            m_cache = cache;
+            m_contentUrl = contentUrl;
+            m_file = file;
+            m_size = size;
+            m_windowSize = windowSize;
+
+            m_windows = new MappedByteBuffer[(int) (( size + windowSize - 1) / windowSize)];
+        }
+
+        /**
+         * Return the content size
+         *
+         * @return long
+         */
+        public final long getSize() {
+            return m_size;
+        }
+
+        /**
+         * Read data from the mapped content
+         *
+         * @param buf byte[]
+         * @param len int
+         * @param pos int
+         * @param fileOff long
+         * @return int number of bytes read, or -1 at the end of the file
+         * @exception IOException Error mapping the content
+         */
+        public final int read( byte[] buf, int len, int pos, long fileOff)
+            throws IOException {
+
+            if ( fileOff >= m_size)
+                return -1;
+
+            int rdlen = (int) Math.min( len, m_size - fileOff);
+            int bufPos = pos;
+            long off = fileOff;
+
+            while ( bufPos < pos + rdlen) {
+                ByteBuffer data = getWindow(( int) ( off / m_windowSize)).duplicate();
+                data.position(( int) ( off % m_windowSize));
+
+                int cnt = Math.min( data.remaining(), pos + rdlen - bufPos);
+                data.get( buf, bufPos, cnt);
+
+                bufPos += cnt;
+                off += cnt;
+            }
+
+            return rdlen;
+        }
+
+        /**
+         * Return a mapped window, map the window if not already mapped
+         *
+         * @param idx int
+         * @return MappedByteBuffer
+         * @exception IOException Error mapping the window
+         */
+        private MappedByteBuffer getWindow( int idx)
+            throws IOException {
+
+            MappedByteBuffer window;
+            long mappedLen = 0L;
+
+            synchronized ( m_windows) {
+                window = m_windows[ idx];
+
+                if ( window == null) {
+                    long winOff = (long) idx * m_windowSize;
+                    long winLen = Math.min( m_windowSize, m_size - winOff);
+
+                    FileChannel mapChannel = FileChannel.open( m_file.toPath(), StandardOpenOption.READ);
+
+                    try {
+                        window = mapChannel.map( FileChannel.MapMode.READ_ONLY, winOff, winLen);
+                    }
+                    finally {
+                        mapChannel.close();
+                    }
+
+                    m_windows[ idx] = window;
+                    mappedLen = winLen;
+
+                    // DEBUG
+                    if ( logger.isDebugEnabled())
+                        logger.debug("Mapped content window url=" + m_contentUrl + ", offset=" + winOff + ", length=" + winLen);
+                }
+            }
+
+            // Update the least recently used order, outside the window lock as other windows may be dropped
+            m_cache.windowUsed( this, idx, mappedLen);
+
+            return window;
+        }
+
+        /**
+         * Drop a mapped window, the memory is unmapped when the buffer is garbage collected
+         *
+         * @param idx int
+         * @return boolean true if the window was dropped
+         */
+        private boolean dropWindow( int idx) {
+            synchronized ( m_windows) {
+                if ( m_windows[ idx] == null)
+                    return false;
+
+                m_windows[ idx] = null;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Mapped window key, used to order the mapped windows by use
+     */
+    private static final class WindowKey {
+        final MappedContent m_content;
+        final int m_idx;
+
+        WindowKey( MappedContent content, int idx) {
+            m_content = content;
+            m_idx = idx;
+        }
+
+        @Override
+        public boolean equals( Object obj) {
+            if ( obj instanceof WindowKey == false)
+                return false;
+
+            WindowKey key = (WindowKey) obj;
+            return key.m_content == m_content && key.m_idx == m_idx;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode( m_content) * 31 + m_idx;
+        }
+    }
+
+    // Mapped content, keyed by content URL
+    private final Map<String, MappedContent> m_mappedMap = new HashMap<String, MappedContent>();
+
+    // Window size, minimum file size to be mapped, and maximum size of the mapped windows
+    private int m_windowSize = DefaultWindowSize;
+    private long m_minFileSize = DefaultMinimumFileSize;
+    private long m_maxMappedSize = DefaultMaximumMappedSize;
+
+    // Mapped windows, in least recently used order, with the window sizes, and the total size of the mapped windows
+    private final LinkedHashMap<WindowKey, Long> m_windowLRU = new LinkedHashMap<WindowKey, Long>( 64, 0.75f, true);
+    private long m_mappedSize;
+
+    // Statistics
+    private final AtomicLong m_mapped = new AtomicLong();
+    private final AtomicLong m_shared = new AtomicLong();
+    private final AtomicLong m_evicted = new AtomicLong();
+
+    /**
+     * Set the mapped window size, in bytes
+     *
+     * @param winSize int
+     */
+    public final void setWindowSize( int winSize) {
+        m_windowSize = winSize > 0 ? winSize : DefaultWindowSize;
+    }
+
+    /**
+     * Return the mapped window size, in bytes
+     *
+     * @return int
+     */
+    public final int getWindowSize() {
+        return m_windowSize;
+    }
+
+    /**
+     * Set the minimum size of file to be mapped, in bytes
+     *
+     * @param minSize long
+     */
+    public final void setMinimumFileSize( long minSize) {
+        m_minFileSize = minSize >= 0 ? minSize : DefaultMinimumFileSize;
+    }
+
+    /**
+     * Return the minimum size of file to be mapped, in bytes
+     *
+     * @return long
+     */
+    public final long getMinimumFileSize() {
+        return m_minFileSize;
+    }
+
+    /**
+     * Set the maximum total size of the mapped windows, in bytes
+     *
+     * @param maxSize long
+     */
+    public final void setMaximumMappedSize( long maxSize) {
+        m_maxMappedSize = maxSize > 0 ? maxSize : DefaultMaximumMappedSize;
+    }
+
+    /**
+     * Return the maximum total size of the mapped windows, in bytes
+     *
+     * @return long
+     */
+    public final long getMaximumMappedSize() {
+        return m_maxMappedSize;
+    }
+
+    /**
+     * Return the total size of the mapped windows, in bytes
+     *
+     * @return long
+     */
+    public final long getMappedSize() {
+        synchronized ( m_windowLRU) {
+            return m_mappedSize;
+        }
+    }
+
+    /**
+     * Return the number of windows dropped to keep the mapped size within the maximum
+     *
+     * @return long
+     */
+    public final long getEvictedWindows() {
+        return m_evicted.get();
+    }
+
+    /**
+     * Acquire an existing mapping for a content URL
+     *
+     * @param contentUrl String
+     * @return MappedContent, or null if the content is not mapped
+     */
+    public final synchronized MappedContent acquire( String contentUrl) {
+
+        MappedContent mapped = m_mappedMap.get( contentUrl);
+
+        if ( mapped != null) {
+            mapped.m_refCount++;
+            m_shared.incrementAndGet();
+        }
+
+        return mapped;
+    }
+
+    /**
+     * Acquire the mapping for a content URL, creating the mapping if the content is not already mapped
+     *
+     * @param contentUrl String
+     * @param file File content store file
+     * @return MappedContent, or null if the file is smaller than the minimum mapped file size
+     */
+    public final synchronized MappedContent acquire( String contentUrl, File file) {
+
+        MappedContent mapped = acquire( contentUrl);
+        if ( mapped != null)
+            return mapped;
+
+        long fileSize = file.length();
+        if ( fileSize < m_minFileSize || fileSize == 0L)
+            return null;
+
+        mapped = new MappedContent( this, contentUrl, file, fileSize, m_windowSize);
+        mapped.m_refCount = 1;
+
+        m_mappedMap.put( contentUrl, mapped);
+        m_mapped.incrementAndGet();
+
+        return mapped;
+    }
+
+    /**
+     * Release a mapping, the mapping is dropped when the last file handle releases it
+     *
+     * @param mapped MappedContent
+     */
+    public final void release( MappedContent mapped) {
+
+        synchronized ( this) {
+            if ( --mapped.m_refCount > 0 || m_mappedMap.remove( mapped.m_contentUrl, mapped) == false)
+                return;
+        }
+
+        // Drop the windows of the released mapping
+        synchronized ( m_windowLRU) {
+            for ( int idx = 0; idx < mapped.m_windows.length; idx++) {
+                Long winLen = m_windowLRU.remove( new WindowKey( mapped, idx));
+                if ( winLen != null)
+                    m_mappedSize -= winLen.longValue();
+            }
+        }
+    }
+
+    /**
+     * Record a read of a mapped window, if the window has just been mapped the least recently used windows are
+     * dropped until the total mapped size is within the maximum
+     *
+     * @param mapped MappedContent
+     * @param idx int
+     * @param mappedLen long size of the window if it has just been mapped, else zero
+     */
+    private void windowUsed( MappedContent mapped, int idx, long mappedLen) {
+
+        WindowKey key = new WindowKey( mapped, idx);
+        List<WindowKey> evictList = null;
+
+        synchronized ( m_windowLRU) {
+            if ( mappedLen == 0L) {
+
+                // Move the window to the end of the use order
+                m_windowLRU.get( key);
+                return;
+            }
+
+            Long prevLen = m_windowLRU.put( key, Long.valueOf( mappedLen));
+            m_mappedSize += mappedLen - ( prevLen != null ? prevLen.longValue() : 0L);
+
+            // Drop the least recently used windows, not the window just mapped
+            Iterator<Map.Entry<WindowKey, Long>> iter = m_windowLRU.entrySet().iterator();
+
+            while ( m_mappedSize > m_maxMappedSize && iter.hasNext()) {
+                Map.Entry<WindowKey, Long> entry = iter.next();
+                if ( entry.getKey().equals( key))
+                    continue;
+
+                iter.remove();
+                m_mappedSize -= entry.getValue().longValue();
+
+                if ( evictList == null)
+                    evictList = new ArrayList<WindowKey>();
+                evictList.add( entry.getKey());
+            }
+        }
+
+        // Drop the windows outside the LRU lock, the window lock of the other mappings is taken
+        if ( evictList != null) {
+            for ( WindowKey evictKey : evictList) {
+                if ( evictKey.m_content.dropWindow( evictKey.m_idx))
+                    m_evicted.incrementAndGet();
+            }
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Dropped " + evictList.size() + " mapped windows, mapped size=" + getMappedSize());
+        }
+    }
+
+    /**
+     * Return the number of mapped content files
+     *
+     * @return int
+     */
+    public final synchronized int numberOfMappings() {
+        return m_mappedMap.size();
+    }
+
+    /**
+     * Return the cache details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[MappedContentCache mappings=");
+        str.append( numberOfMappings());
+        str.append( ", window=");
+        str.append( m_windowSize);
+        str.append( ", minSize=");
+        str.append( m_minFileSize);
+        str.append( ", mapped=");
+        str.append( m_mapped.get());
+        str.append( ", shared=");
+        str.append( m_shared.get());
+        str.append( ", mappedSize=");
+        str.append( getMappedSize());
+        str.append( "/");
+        str.append( m_maxMappedSize);
+        str.append( ", evicted=");
+        str.append( m_evicted.get());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory Temp File Pool Class
+ *
+ * <p>Pool of fixed size direct buffers used to hold the data for small temporary files in memory. The total
+ * amount of buffer memory is limited by the memory budget, once the budget is used up new files are created on
+ * disk and growing files spill to disk.
+ */
+public class MemoryTempFilePool {
+
+    // Buffer size
+    public static final int BufferSize = 16 * 1024;
+
+    // Default maximum size of a file held in memory, and default memory budget
+    public static final int DefaultMaximumFileSize = 64 * 1024;
+    public static final long DefaultMemoryBudget = 32L * 1024L * 1024L;
+
+    // Free buffers
+    private final ConcurrentLinkedQueue<ByteBuffer> m_freeBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    // Maximum size of a file held in memory, and memory budget
+    private int m_maxFileSize = DefaultMaximumFileSize;
+    private long m_memBudget = DefaultMemoryBudget;
+
+    // Memory allocated to buffers, and memory used by files
+    private final AtomicLong m_allocated = new AtomicLong();
+    private final AtomicLong m_inUse = new AtomicLong();
+
+    // Statistics, buffer allocations refused due to the budget, and files spilled to disk
+    private final AtomicLong m_allocFails = new AtomicLong();
+    private final AtomicLong m_spills = new AtomicLong();
+
+    /**
+     * Set the maximum size of a file held in memory, in bytes
+     *
+     * @param maxSize int
+     */
+    public final void setMaximumFileSize( int maxSize) {
+        m_maxFileSize = maxSize > 0 ? maxSize : DefaultMaximumFileSize;
+    }
+
+    /**
+     * Return the maximum size of a file held in memory, in bytes
+     *
+     * @return int
+     */
+    public final int getMaximumFileSize() {
+        return m_maxFileSize;
+    }
+
+    /**
+     * Set the memory budget for all files held in memory, in bytes
+     *
+     * @param budget long
+     */
+    public final void setMemoryBudget( long budget) {
+        m_memBudget = budget > 0 ? budget : DefaultMemoryBudget;
+    }
+
+    /**
+     * Return the memory budget, in bytes
+     *
+     * @return long
+     */
+    public final long getMemoryBudget() {
+        return m_memBudget;
+    }
+
+    /**
+     * Allocate a zeroed buffer
+     *
+     * @return ByteBuffer, or null if the memory budget has been used
+     */
+    public final ByteBuffer allocateBuffer() {
+
+        ByteBuffer buf = m_freeBuffers.poll();
+
+        if ( buf == null) {
+
+            // Check the memory budget before allocating a new buffer
+            long allocated;
+
+            do {
+                allocated = m_allocated.get();
+
+                if ( allocated + BufferSize > m_memBudget) {
+                    m_allocFails.incrementAndGet();
+                    return null;
+                }
+            } while ( m_allocated.compareAndSet( allocated, allocated + BufferSize) == false);
+
+            buf = ByteBuffer.allocateDirect( BufferSize);
+        }
+        else {
+
+            // Clear data left by the previous file
+            buf.clear();
+
+            while ( buf.remaining() >= 8)
+                buf.putLong( 0L);
+            while ( buf.hasRemaining())
+                buf.put(( byte) 0);
+        }
+
+        buf.clear();
+        m_inUse.addAndGet( BufferSize);
+
+        return buf;
+    }
+
+    /**
+     * Return a buffer to the pool
+     *
+     * @param buf ByteBuffer
+     */
+    public final void releaseBuffer( ByteBuffer buf) {
+        m_inUse.addAndGet( -BufferSize);
+        m_freeBuffers.offer( buf);
+    }
+
+    /**
+     * Record a file spilling from memory to disk
+     */
+    protected final void recordSpill() {
+        m_spills.incrementAndGet();
+    }
+
+    /**
+     * Return the memory used by files, in bytes
+     *
+     * @return long
+     */
+    public final long getMemoryInUse() {
+        return m_inUse.get();
+    }
+
+    /**
+     * Return the memory allocated to buffers, in bytes
+     *
+     * @return long
+     */
+    public final long getMemoryAllocated() {
+        return m_allocated.get();
+    }
+
+    /**
+     * Return the number of buffer allocations refused as the memory budget was used
+     *
+     * @return long
+     */
+    public final long getAllocationFailures() {
+        return m_allocFails.get();
+    }
+
+    /**
+     * Return the number of files that spilled from memory to disk
+     *
+     * @return long
+     */
+    public final long getSpillCount() {
+        return m_spills.get();
+    }
+
+    /**
+     * Return the pool details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[MemoryTempFilePool maxFile=");
+        str.append( m_maxFileSize);
+        str.append( ", inUse=");
+        str.append( getMemoryInUse());
+        str.append( ", allocated=");
+        str.append( getMemoryAllocated());
+        str.append( "/");
+        str.append( m_memBudget);
+        str.append( ", allocFails=");
+        str.append( getAllocationFailures());
+        str.append( ", spills=");
+        str.append( getSpillCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Memory Temp Network File Class
+ *
+ * <p>A newly created file that holds its data in pooled buffers, whilst the file is smaller than the maximum
+ * memory file size. The temporary file is not created unless the file grows past the maximum size, or no buffer
+ * memory is available, when the data is spilled to the temporary file and the file then behaves as a normal
+ * temporary file.
+ *
+ * <p>The data is spilled to the temporary file when the file is opened by another handle, as the other handle
+ * uses the temporary file. The buffers are returned to the pool when the last handle closes the file, so the content
+ * must be committed before the file is closed.
+ */
+public class MemoryTempNetworkFile extends TempNetworkFile {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(MemoryTempNetworkFile.class);
+
+    // Buffer pool
+    private MemoryTempFilePool m_pool;
+
+    // Buffers holding the file data, and the file data length
+    private List<ByteBuffer> m_buffers = new ArrayList<ByteBuffer>();
+    private long m_memSize;
+
+    // Current file position, for writes that do not specify a file offset
+    private long m_filePos;
+
+    // File data is held in memory
+    private boolean m_inMemory = true;
+
+    /**
+     * Class constructor
+     *
+     * @param file File the temporary file path, created if the data spills to disk
+     * @param netPath String
+     * @param pool MemoryTempFilePool
+     */
+    public MemoryTempNetworkFile( File file, String netPath, MemoryTempFilePool pool) {
+        super( file, netPath);
+
+        m_pool = pool;
+    }
+
+    /**
+     * Check if the file data is held in memory
+     *
+     * @return boolean
+     */
+    public final synchronized boolean isInMemory() {
+        return m_inMemory;
+    }
+
+    /**
+     * Return the length of the data held in memory
+     *
+     * @return long
+     */
+    public final synchronized long getMemorySize() {
+        return m_memSize;
+    }
+
+    @Override
+    public void writeFile( byte[] buf, int len, int pos)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_inMemory && writeMemory( buf, len, pos, m_filePos))
+                return;
+        }
+
+        super.writeFile( buf, len, pos);
+    }
+
+    @Override
+    public void writeFile( byte[] buffer, int length, int position, long fileOffset)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_inMemory && writeMemory( buffer, length, position, fileOffset))
+                return;
+        }
+
+        super.writeFile( buffer, length, position, fileOffset);
+    }
+
+    @Override
+    public int readFile( byte[] buf, int len, int pos, long fileOff)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_inMemory) {
+                if ( getFileState() != null)
+                    getFileState().updateAccessDateTime();
+
+                return readMemory( buf, len, pos, fileOff);
+            }
+        }
+
+        return super.readFile( buf, len, pos, fileOff);
+    }
+
+    @Override
+    public void truncateFile( long size)
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_inMemory) {
+                if ( size <= m_pool.getMaximumFileSize() && truncateMemory( size))
+                    return;
+
+                spillToDisk( "truncate to " + size);
+            }
+        }
+
+        super.truncateFile( size);
+    }
+
+    @Override
+    public long seekFile( long pos, int typ)
+        throws IOException {
+
+        // Seeks use the random access file
+        synchronized ( this) {
+            if ( m_inMemory)
+                spillToDisk( "seek");
+        }
+
+        return super.seekFile( pos, typ);
+    }
+
+    @Override
+    public void flushFile()
+        throws IOException {
+
+        synchronized ( this) {
+            if ( m_inMemory)
+                return;
+        }
+
+        super.flushFile();
+    }
+
+    @Override
+    public synchronized void prepareSharedOpen()
+        throws IOException {
+
+        // The other handle uses the temporary file, which does not exist whilst the data is held in memory
+        if ( m_inMemory)
+            spillToDisk( "shared open");
+    }
+
+    @Override
+    public void closeFile()
+        throws IOException {
+
+        synchronized ( this) {
+
+            // Closed whilst other handles are still using the file, keep the data in the temporary file. The buffers
+            // are only released without being written on the last close, after the content has been committed.
+            if ( m_inMemory && getFileState() != null && getFileState().getOpenCount() > 0)
+                spillToDisk( "close");
+            else
+                releaseMemory();
+        }
+
+        super.closeFile();
+    }
+
+    /**
+     * Write the data held in memory to a channel
+     *
+     * @param channel WritableByteChannel
+     * @return long number of bytes written
+     * @exception IOException Error writing the data
+     */
+    public final synchronized long transferTo( WritableByteChannel channel)
+        throws IOException {
+
+        long remaining = m_memSize;
+
+        for ( ByteBuffer buf : m_buffers) {
+            if ( remaining <= 0)
+                break;
+
+            ByteBuffer data = buf.duplicate();
+            data.clear();
+            data.limit(( int) Math.min( data.capacity(), remaining));
+
+            while ( data.hasRemaining())
+                channel.write( data);
+
+            remaining -= data.limit();
+        }
+
+        return m_memSize;
+    }
+
+    /**
+     * Calculate the digest of the data held in memory
+     *
+     * @return byte[]
+     */
+    public final synchronized byte[] calculateDigest() {
+
+        MessageDigest digest = ContentDigestCache.createDigest();
+        long remaining = m_memSize;
+
+        for ( ByteBuffer buf : m_buffers) {
+            if ( remaining <= 0)
+                break;
+
+            ByteBuffer data = buf.duplicate();
+            data.clear();
+            data.limit(( int) Math.min( data.capacity(), remaining));
+
+            digest.update( data);
+            remaining -= data.limit();
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Read the data held in memory
+     *
+     * @param buf byte[]
+     * @param len int
+     * @param pos int
+     * @param fileOff long
+     * @return int number of bytes read, or -1 at the end of the file
+     */
+    public final synchronized int readMemory( byte[] buf, int len, int pos, long fileOff) {
+
+        if ( fileOff >= m_memSize)
+            return -1;
+
+        int rdlen = (int) Math.min( len, m_memSize - fileOff);
+        int bufPos = pos;
+        long off = fileOff;
+
+        while ( bufPos < pos + rdlen) {
+            ByteBuffer data = m_buffers.get(( int) ( off / MemoryTempFilePool.BufferSize)).duplicate();
+            data.clear();
+            data.position(( int) ( off % MemoryTempFilePool.BufferSize));
+
+            int cnt = Math.min( data.remaining(), pos + rdlen - bufPos);
+            data.get( buf, bufPos, cnt);
+
+            bufPos += cnt;
+            off += cnt;
+        }
+
+        return rdlen;
+    }
+
+    /**
+     * Write data to memory, spill the data to disk if the file grows past the maximum memory file size or the
+     * memory budget has been used
+     *
+     * @param buf byte[]
+     * @param len int
+     * @param pos int
+     * @param fileOff long
+     * @return boolean true if the data was written to memory, false if the file has spilled to disk
+     * @exception IOException Error spilling the data to disk
+     */
+    private boolean writeMemory( byte[] buf, int len, int pos, long fileOff)
+        throws IOException {
+
+        long endOff = fileOff + len;
+
+        if ( endOff > m_pool.getMaximumFileSize()) {
+            spillToDisk( "write to " + endOff);
+            return false;
+        }
+
+        if ( allocateBuffers( endOff) == false) {
+            spillToDisk( "memory budget used");
+            return false;
+        }
+
+        setChanged( true);
+
+        // Copy the data to the buffers
+        int bufPos = pos;
+        long off = fileOff;
+
+        while ( bufPos < pos + len) {
+            ByteBuffer data = m_buffers.get(( int) ( off / MemoryTempFilePool.BufferSize)).duplicate();
+            data.clear();
+            data.position(( int) ( off % MemoryTempFilePool.BufferSize));
+
+            int cnt = Math.min( data.remaining(), pos + len - bufPos);
+            data.put( buf, bufPos, cnt);
+
+            bufPos += cnt;
+            off += cnt;
+        }
+
+        // Record the write once the data has been copied to the buffers
+        if ( getContentTracker() != null)
+            getContentTracker().recordWrite( buf, len, pos, fileOff);
+
+        m_filePos = endOff;
+        if ( endOff > m_memSize)
+            m_memSize = endOff;
+
+        incrementWriteCount();
+        setFileSize( m_memSize);
+        updateTimestampsAndSize( getFileState(), m_memSize);
+
+        return true;
+    }
+
+    /**
+     * Change the length of the data held in memory
+     *
+     * @param size long
+     * @return boolean true if the length was changed, false if the memory budget has been used
+     */
+    private boolean truncateMemory( long size) {
+
+        if ( size > m_memSize) {
+
+            // Extend the file, new buffers are zeroed
+            if ( allocateBuffers( size) == false)
+                return false;
+        }
+        else {
+
+            // Release the buffers past the new end of file, and zero the remainder of the last buffer so the data
+            // reads as zeros if the file is extended
+            int keepCnt = (int) (( size + MemoryTempFilePool.BufferSize - 1) / MemoryTempFilePool.BufferSize);
+
+            while ( m_buffers.size() > keepCnt)
+                m_pool.releaseBuffer( m_buffers.remove( m_buffers.size() - 1));
+
+            if ( keepCnt > 0) {
+                ByteBuffer data = m_buffers.get( keepCnt - 1).duplicate();
+                data.clear();
+                data.position(( int) ( size - ( keepCnt - 1) * (long) MemoryTempFilePool.BufferSize));
+
+                while ( data.hasRemaining())
+                    data.put(( byte) 0);
+            }
+        }
+
+        if ( getContentTracker() != null)
+            getContentTracker().recordTruncate( size);
+
+        if ( size == 0)
+            setChanged( true);
+
+        m_memSize = size;
+        setFileSize( size);
+        updateTimestampsAndSize( getFileState(), size);
+
+        return true;
+    }
+
+    /**
+     * Allocate buffers to hold data up to the specified length
+     *
+     * @param len long
+     * @return boolean false if the memory budget has been used
+     */
+    private boolean allocateBuffers( long len) {
+
+        while ( (long) m_buffers.size() * MemoryTempFilePool.BufferSize < len) {
+            ByteBuffer buf = m_pool.allocateBuffer();
+            if ( buf == null)
+                return false;
+
+            m_buffers.add( buf);
+        }
+
+        return true;
+    }
+
+    /**
+     * Copy the data held in memory to the temporary file, and switch to using the temporary file
+     *
+     * @param reason String
+     * @exception IOException Error writing the temporary file
+     */
+    private void spillToDisk( String reason)
+        throws IOException {
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Memory temp file spill to disk, " + reason + ", file=" + getFullName() + ", size=" + m_memSize);
+
+        FSTempFileProvider.getRegistry().recordCreate( getFile());
+
+        FileChannel tempChannel = FileChannel.open( getFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        try {
+            transferTo( tempChannel);
+        }
+        finally {
+            tempChannel.close();
+        }
+
+        releaseMemory();
+        m_pool.recordSpill();
+
+        // Open the temporary file, writes that do not specify a file offset continue from the current file position
+        m_io = new RandomAccessFile( getFile(), "rw");
+        m_io.seek( m_filePos);
+    }
+
+    /**
+     * Return the buffers to the pool
+     */
+    private synchronized void releaseMemory() {
+
+        for ( ByteBuffer buf : m_buffers)
+            m_pool.releaseBuffer( buf);
+
+        m_buffers.clear();
+        m_inMemory = false;
+    }
+
+    /**
+     * Finalize
+     */
+    public void finalize() {
+
+        // Make sure the buffers are returned to the pool
+        releaseMemory();
+        super.finalize();
+    }
+}
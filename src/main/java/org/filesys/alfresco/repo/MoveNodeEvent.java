@@ -41,6 +41,10 @@ public class MoveNodeEvent extends NodeEvent {
 	private String fromPath;
 	private String toPath;
 	
+	// Destination parent folder node
+	
+	private NodeRef toParentNodeRef;
+	
 	/**
 	 * Class constructor
 	 * 
@@ -56,6 +60,21 @@ public class MoveNodeEvent extends NodeEvent {
 		this.toPath = toPath;
 	}
 	
+	/**
+	 * Class constructor
+	 * 
+	 * @param fType FileFolderServiceTtype
+	 * @param nodeRef NodeRef
+	 * @param fromPath String
+	 * @param toPath String
+	 * @param toParentNodeRef NodeRef
+	 */
+	public MoveNodeEvent( FileFolderServiceType fType, NodeRef nodeRef, String fromPath, String toPath, NodeRef toParentNodeRef) {
+		this( fType, nodeRef, fromPath, toPath);
+		
+		this.toParentNodeRef = toParentNodeRef;
+	}
+	
 	/**
 	 * Return the relative path of the target node
 	 * 
@@ -66,9 +85,24 @@ public class MoveNodeEvent extends NodeEvent {
 		return fromPath;
 	}
 	
+	/**
+	 * Return the relative path of the destination
+	 * 
+	 * @return String
+	 */
 	public final String getToPath() 
 	{
-	    return fromPath;
+	    return toPath;
+	}
+	
+	/**
+	 * Return the destination parent folder node, if known
+	 * 
+	 * @return NodeRef
+	 */
+	public final NodeRef getToParentNodeRef()
+	{
+	    return toParentNodeRef;
 	}
 	
 	/**
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.filesys.server.filesys.FileName;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Negative Lookup Cache Class
+ *
+ * <p>Records file/folder paths that were not found, keyed by the share root node and path, so that repeated lookups
+ * of missing files by clients do not have to go to the repository, or look up the parent folder. Entries are also
+ * indexed by the parent folder node and name, so they can be removed when the name is created in the folder. Entries
+ * expire after a short interval, the cache is bounded and evicts the oldest entries.
+ *
+ * <p>Every removal advances the removal stamp. A lookup reads the stamp before it starts, and the missing entry is
+ * not added if a name has been removed since, so a lookup that started before a file was created cannot add the
+ * name back once the create has removed it.
+ */
+public class NegativeLookupCache {
+
+    // Default maximum number of entries and entry expiry interval, in milliseconds
+    public static final int DefaultMaximumSize = 5000;
+    public static final long DefaultExpiryInterval = 30000L;
+
+    /**
+     * Missing path entry, with the parent folder key used to index the entry
+     */
+    private static class MissEntry {
+        final long expiry;
+        final String parentKey;
+
+        MissEntry( long expiry, String parentKey) {
+            this.expiry = expiry;
+            this.parentKey = parentKey;
+        }
+    }
+
+    // Missing path to entry mappings, in insertion order
+    private final LinkedHashMap<String, MissEntry> m_missMap;
+
+    // Parent folder and name to missing path keys, a folder may be reachable by more than one path
+    private final HashMap<String, Set<String>> m_parentIndex = new HashMap<String, Set<String>>();
+
+    // Maximum number of entries and expiry interval
+    private final int m_maxSize;
+    private final long m_expiryInterval;
+
+    // Removal stamp, advanced by every removal
+    private final AtomicLong m_removeStamp = new AtomicLong();
+
+    // Cache statistics
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+
+    /**
+     * Class constructor
+     *
+     * @param maxSize int
+     * @param expiryInterval long
+     */
+    public NegativeLookupCache( int maxSize, long expiryInterval) {
+        m_maxSize = maxSize > 0 ? maxSize : DefaultMaximumSize;
+        m_expiryInterval = expiryInterval > 0 ? expiryInterval : DefaultExpiryInterval;
+
+        m_missMap = new LinkedHashMap<String, MissEntry>( 256, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, MissEntry> eldest) {
+                if ( size() <= m_maxSize)
+                    return false;
+
+                unindex( eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Return the current removal stamp, read before a lookup and passed to addMissing()
+     *
+     * @return long
+     */
+    public final long getRemoveStamp() {
+        return m_removeStamp.get();
+    }
+
+    /**
+     * Check if a path is known not to exist
+     *
+     * @param rootNodeRef NodeRef share root node
+     * @param path String share relative path
+     * @return boolean
+     */
+    public final boolean isMissing( NodeRef rootNodeRef, String path) {
+        String key = makePathKey( rootNodeRef, path);
+        boolean missing = false;
+
+        synchronized ( m_missMap) {
+            MissEntry entry = m_missMap.get( key);
+
+            if ( entry != null) {
+                if ( entry.expiry > System.currentTimeMillis())
+                    missing = true;
+                else
+                    removeEntry( key);
+            }
+        }
+
+        if ( missing)
+            m_hits.incrementAndGet();
+        else
+            m_misses.incrementAndGet();
+
+        return missing;
+    }
+
+    /**
+     * Record that a path does not exist, unless a name has been removed from the cache since the lookup started
+     *
+     * @param rootNodeRef NodeRef share root node
+     * @param path String share relative path
+     * @param parentNodeRef NodeRef parent folder of the missing name
+     * @param name String missing name
+     * @param removeStamp long removal stamp read before the lookup started
+     * @return boolean true if the entry was added
+     */
+    public final boolean addMissing( NodeRef rootNodeRef, String path, NodeRef parentNodeRef, String name, long removeStamp) {
+        if ( rootNodeRef == null || path == null || parentNodeRef == null || name == null || name.length() == 0)
+            return false;
+
+        String key = makePathKey( rootNodeRef, path);
+        String parentKey = makeParentKey( parentNodeRef, name);
+        MissEntry entry = new MissEntry( System.currentTimeMillis() + m_expiryInterval, parentKey);
+
+        synchronized ( m_missMap) {
+
+            // A name was created, or moved, whilst the lookup was running
+            if ( m_removeStamp.get() != removeStamp)
+                return false;
+
+            // Remove any existing entry so the new entry is placed at the end of the eviction order
+            removeEntry( key);
+
+            m_missMap.put( key, entry);
+
+            Set<String> pathKeys = m_parentIndex.get( parentKey);
+            if ( pathKeys == null) {
+                pathKeys = new HashSet<String>( 2);
+                m_parentIndex.put( parentKey, pathKeys);
+            }
+            pathKeys.add( key);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the entries for a name that now exists in the specified folder
+     *
+     * @param parentNodeRef NodeRef
+     * @param name String
+     */
+    public final void removeMissing( NodeRef parentNodeRef, String name) {
+        if ( parentNodeRef == null || name == null)
+            return;
+
+        synchronized ( m_missMap) {
+            m_removeStamp.incrementAndGet();
+
+            Set<String> pathKeys = m_parentIndex.remove( makeParentKey( parentNodeRef, name));
+
+            if ( pathKeys != null) {
+                for ( String key : pathKeys)
+                    m_missMap.remove( key);
+            }
+        }
+    }
+
+    /**
+     * Remove the entries for a path, and all paths below it, used when a folder is created or moved to the path
+     *
+     * @param rootNodeRef NodeRef share root node
+     * @param path String share relative path
+     */
+    public final void removePath( NodeRef rootNodeRef, String path) {
+        if ( rootNodeRef == null || path == null)
+            return;
+
+        String key = makePathKey( rootNodeRef, path);
+        String prefix = key.endsWith( FileName.DOS_SEPERATOR_STR) ? key : key + FileName.DOS_SEPERATOR;
+
+        synchronized ( m_missMap) {
+            m_removeStamp.incrementAndGet();
+
+            Iterator<Map.Entry<String, MissEntry>> iter = m_missMap.entrySet().iterator();
+
+            while ( iter.hasNext()) {
+                Map.Entry<String, MissEntry> entry = iter.next();
+
+                if ( entry.getKey().equals( key) || entry.getKey().startsWith( prefix)) {
+                    iter.remove();
+                    unindex( entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the entries for a name in all folders, used when the parent folder is not known
+     *
+     * @param name String
+     */
+    public final void removeName( String name) {
+        if ( name == null)
+            return;
+
+        String suffix = FileName.DOS_SEPERATOR + name.toUpperCase();
+
+        synchronized ( m_missMap) {
+            m_removeStamp.incrementAndGet();
+
+            Iterator<Map.Entry<String, MissEntry>> iter = m_missMap.entrySet().iterator();
+
+            while ( iter.hasNext()) {
+                Map.Entry<String, MissEntry> entry = iter.next();
+
+                if ( entry.getKey().endsWith( suffix)) {
+                    iter.remove();
+                    unindex( entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear all entries
+     */
+    public final void clear() {
+        synchronized ( m_missMap) {
+            m_removeStamp.incrementAndGet();
+
+            m_missMap.clear();
+            m_parentIndex.clear();
+        }
+    }
+
+    /**
+     * Return the number of entries
+     *
+     * @return int
+     */
+    public final int numberOfEntries() {
+        synchronized ( m_missMap) {
+            return m_missMap.size();
+        }
+    }
+
+    /**
+     * Return the cache hit count
+     *
+     * @return long
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * Return the cache miss count
+     *
+     * @return long
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * Remove an entry, and its parent index mapping. The cache lock must be held.
+     *
+     * @param key String
+     */
+    private void removeEntry( String key) {
+        MissEntry entry = m_missMap.remove( key);
+
+        if ( entry != null)
+            unindex( key, entry);
+    }
+
+    /**
+     * Remove the parent index mapping for an entry. The cache lock must be held.
+     *
+     * @param key String
+     * @param entry MissEntry
+     */
+    private void unindex( String key, MissEntry entry) {
+        Set<String> pathKeys = m_parentIndex.get( entry.parentKey);
+
+        if ( pathKeys != null) {
+            pathKeys.remove( key);
+            if ( pathKeys.isEmpty())
+                m_parentIndex.remove( entry.parentKey);
+        }
+    }
+
+    /**
+     * Build the cache key for a share root and path
+     *
+     * @param rootNodeRef NodeRef
+     * @param path String
+     * @return String
+     */
+    private static String makePathKey( NodeRef rootNodeRef, String path) {
+        StringBuilder key = new StringBuilder( 64 + path.length());
+
+        key.append( rootNodeRef.getId());
+        if ( path.length() == 0 || path.charAt( 0) != FileName.DOS_SEPERATOR)
+            key.append( FileName.DOS_SEPERATOR);
+        key.append( path.toUpperCase());
+
+        return key.toString();
+    }
+
+    /**
+     * Build the index key for a folder and name
+     *
+     * @param parentNodeRef NodeRef
+     * @param name String
+     * @return String
+     */
+    private static String makeParentKey( NodeRef parentNodeRef, String name) {
+        StringBuilder key = new StringBuilder( 64 + name.length());
+
+        key.append( parentNodeRef.getId());
+        key.append( FileName.DOS_SEPERATOR);
+        key.append( name.toUpperCase());
+
+        return key.toString();
+    }
+
+    /**
+     * Return the cache details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[NegativeLookupCache entries=");
+        str.append( numberOfEntries());
+        str.append( "/");
+        str.append( m_maxSize);
+        str.append( ", expiry=");
+        str.append( m_expiryInterval);
+        str.append( "ms, hits=");
+        str.append( getHitCount());
+        str.append( ", misses=");
+        str.append( getMissCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
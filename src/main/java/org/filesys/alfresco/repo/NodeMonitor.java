@@ -53,6 +53,7 @@ import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.filesys.server.filesys.FileName;
 import org.filesys.server.filesys.FileStatus;
 import org.filesys.server.filesys.NotifyAction;
 import org.filesys.server.filesys.NotifyChange;
@@ -253,7 +254,7 @@ public class NodeMonitor extends TransactionListenerAdapter
     		}
     	
     		// Create an event to process the node creation
-    		NodeEvent nodeEvent = new CreateNodeEvent( fType, nodeRef, relPath, fName);
+    		NodeEvent nodeEvent = new CreateNodeEvent( fType, nodeRef, childAssocRef.getParentRef(), relPath, fName);
     		
     		// Store the event in the transaction until committed, and register the transaction listener
     		fireNodeEvent(nodeEvent);
@@ -305,7 +306,7 @@ public class NodeMonitor extends TransactionListenerAdapter
     			ChildAssociationRef childAssocRef = m_nodeService.getPrimaryParent(nodeRef);
     			String relPath2 = buildRelativePathString(childAssocRef.getParentRef(), beforeName);
     			String relPath3 = buildRelativePathString(childAssocRef.getParentRef(), afterName);
-    			fireNodeEvent(new MoveNodeEvent( fType, nodeRef, relPath2 , relPath3));
+    			fireNodeEvent(new MoveNodeEvent( fType, nodeRef, relPath2 , relPath3, childAssocRef.getParentRef()));
     		}
     	}
     }    
@@ -351,7 +352,7 @@ public class NodeMonitor extends TransactionListenerAdapter
 
 	    		// Create a move event
 		 		
-				NodeEvent nodeEvent = new MoveNodeEvent( fType, oldNodeRef, relPath, relPath2);
+				NodeEvent nodeEvent = new MoveNodeEvent( fType, oldNodeRef, relPath, relPath2, newChildAssocRef.getParentRef());
 			
 	    		// Store the event in the transaction until committed, and register the transaction listener
 	    		fireNodeEvent(nodeEvent);
@@ -616,6 +617,24 @@ public class NodeMonitor extends TransactionListenerAdapter
 			
 			relPath = fullPath.toString();
 			
+			// Remove any stale folder path cache entries for the new path
+			
+			if ( m_filesysCtx.hasPathCache())
+				m_filesysCtx.getPathCache().removePath( relPath);
+			
+			// Remove the new name from the negative lookup cache
+			
+			if ( m_filesysCtx.getNegativeLookupCache() != null) {
+				if ( createEvent.getParentNodeRef() != null)
+					m_filesysCtx.getNegativeLookupCache().removeMissing( createEvent.getParentNodeRef(), name);
+				else
+					m_filesysCtx.getNegativeLookupCache().removeName( name);
+
+				// Paths below a new folder were recorded against the folder that previously had the path
+				if ( createEvent.getFileType() == FileFolderServiceType.FOLDER)
+					m_filesysCtx.getNegativeLookupCache().removePath( m_filesysCtx.getRootNode(), relPath.replace( '/', FileName.DOS_SEPERATOR));
+			}
+			
 			// Update an existing file state to indicate that the file exists, may have been marked as deleted
 			
 			if ( m_stateTable != null) {
@@ -699,6 +718,11 @@ public class NodeMonitor extends TransactionListenerAdapter
 		if ( logger.isDebugEnabled())
 			logger.debug("DeleteNode nodeRef=" + deleteEvent.getNodeRef() + ", path=" + relPath);
 		
+		// Remove the folder, and any sub-folders, from the folder path cache
+		
+		if ( m_filesysCtx.hasPathCache())
+			m_filesysCtx.getPathCache().removePath( relPath);
+		
 		// Update an existing file state to indicate that the file does not exist
 		
 		if ( m_stateTable != null) {
@@ -755,13 +779,39 @@ public class NodeMonitor extends TransactionListenerAdapter
 		// Strip the root path
 		
 		String fromPath = moveEvent.getFromPath().substring( m_rootPath.length()).replace( '/', '\\');
-		String toPath =  moveEvent.getToPath().substring( m_rootPath.length()).replace( '/', '\\');
+		String toPath = null;
+		
+		// Check if the node has been moved outside of the filesystem view
+		
+		if ( moveEvent.getToPath().startsWith( m_rootPath))
+			toPath =  moveEvent.getToPath().substring( m_rootPath.length()).replace( '/', '\\');
 		
 		// DEBUG
 		
 		if ( logger.isDebugEnabled())
 			logger.debug("MoveNode fromPath=" + fromPath + ", toPath=" + toPath);
 		
+		// Remove the old and new paths, and any sub-folders, from the folder path cache
+		
+		if ( m_filesysCtx.hasPathCache()) {
+			m_filesysCtx.getPathCache().removePath( fromPath);
+			if ( toPath != null)
+				m_filesysCtx.getPathCache().removePath( toPath);
+		}
+		
+		// Remove the destination name from the negative lookup cache
+		
+		if ( toPath != null && m_filesysCtx.getNegativeLookupCache() != null) {
+			String toName = FileName.splitPath( toPath)[1];
+			if ( moveEvent.getToParentNodeRef() != null)
+				m_filesysCtx.getNegativeLookupCache().removeMissing( moveEvent.getToParentNodeRef(), toName);
+			else
+				m_filesysCtx.getNegativeLookupCache().removeName( toName);
+
+			if ( moveEvent.getFileType() == FileFolderServiceType.FOLDER)
+				m_filesysCtx.getNegativeLookupCache().removePath( m_filesysCtx.getRootNode(), toPath);
+		}
+		
 		// Update an existing file state to indicate that the file does not exist
 		
 		if ( m_stateTable != null) {
@@ -783,7 +833,7 @@ public class NodeMonitor extends TransactionListenerAdapter
 			
 			// Check if there is a file state for the destination file/folder
 			
-			fState = m_stateTable.findFileState( toPath);
+			fState = toPath != null ? m_stateTable.findFileState( toPath) : null;
 			if ( fState != null && fState.exists() == false) {
 				
 				// Indicate the the file or folder exists
@@ -808,9 +858,15 @@ public class NodeMonitor extends TransactionListenerAdapter
 			
 			if ( m_filesysCtx.getChangeHandler().getGlobalNotifyMask() != null) {
 				
-				// Send a file renamed event to the change notification handler
+				// Send a file renamed event to the change notification handler, or a removed event if the node
+				// has been moved outside of the filesystem view
 
-			    m_filesysCtx.getChangeHandler().notifyRename( fromPath, toPath);
+				if ( toPath != null)
+				    m_filesysCtx.getChangeHandler().notifyRename( fromPath, toPath);
+				else if ( moveEvent.getFileType() == FileFolderServiceType.FILE)
+				    m_filesysCtx.getChangeHandler().notifyFileChanged(NotifyAction.Removed, fromPath);
+				else
+				    m_filesysCtx.getChangeHandler().notifyDirectoryChanged(NotifyAction.Removed, fromPath);
 
 				// DEBUG
 				
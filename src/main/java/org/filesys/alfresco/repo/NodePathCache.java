@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.filesys.server.filesys.FileName;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node Path Cache Class
+ *
+ * <p>Caches folder path to NodeRef mappings for a filesystem so that path lookups can start from the deepest
+ * known folder rather than walking the hierarchy from the filesystem root on every request. Paths are
+ * matched case-insensitively, the cache is bounded and evicts the least recently used entries.
+ *
+ * <p>Each invalidation advances the cache generation. A path walk reads the generation before it starts and
+ * passes it when adding the folders it has walked, the entries are not added if an invalidation happened
+ * during the walk, as the walk may have found a folder that has since been renamed, moved or deleted.
+ */
+public class NodePathCache {
+
+    // Default maximum number of cached paths
+    public static final int DefaultMaximumSize = 10000;
+
+    // Path to node mappings, in access order
+    private final LinkedHashMap<String, NodeRef> m_pathMap;
+
+    // Maximum number of cached paths
+    private final int m_maxSize;
+
+    // Cache statistics
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_invalidations = new AtomicLong();
+    private final AtomicLong m_rejectedAdds = new AtomicLong();
+
+    // Cache generation, advanced by each invalidation
+    private final AtomicLong m_generation = new AtomicLong();
+
+    /**
+     * Default constructor
+     */
+    public NodePathCache() {
+        this( DefaultMaximumSize);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param maxSize int
+     */
+    public NodePathCache( int maxSize) {
+        m_maxSize = maxSize > 0 ? maxSize : DefaultMaximumSize;
+
+        m_pathMap = new LinkedHashMap<String, NodeRef>( 256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, NodeRef> eldest) {
+                return size() > m_maxSize;
+            }
+        };
+    }
+
+    /**
+     * Return the current cache generation, to be passed to {@link #addNode(String, NodeRef, long)}
+     *
+     * @return long
+     */
+    public final long getGeneration() {
+        return m_generation.get();
+    }
+
+    /**
+     * Find the node for the specified folder path, counted as one lookup
+     *
+     * @param path String
+     * @return NodeRef, or null if the path is not cached
+     */
+    public final NodeRef findNode( String path) {
+        NodeRef nodeRef;
+
+        synchronized ( m_pathMap) {
+            nodeRef = m_pathMap.get( normalizePath( path));
+        }
+
+        recordLookup( nodeRef != null);
+        return nodeRef;
+    }
+
+    /**
+     * Find the deepest cached folder of a list of folder paths, ordered from the shallowest to the deepest
+     * path, counted as one lookup
+     *
+     * @param paths String[]
+     * @param nodeRefs NodeRef[] returns the node of the deepest cached path, in the first element
+     * @return int index of the deepest cached path, or -1 if none of the paths are cached
+     */
+    public final int findDeepestNode( String[] paths, NodeRef[] nodeRefs) {
+        int foundIdx = -1;
+
+        synchronized ( m_pathMap) {
+            for ( int i = paths.length - 1; i >= 0 && foundIdx == -1; i--) {
+                NodeRef nodeRef = m_pathMap.get( normalizePath( paths[i]));
+
+                if ( nodeRef != null) {
+                    nodeRefs[0] = nodeRef;
+                    foundIdx = i;
+                }
+            }
+        }
+
+        recordLookup( foundIdx != -1);
+        return foundIdx;
+    }
+
+    /**
+     * Add a folder path to node mapping
+     *
+     * @param path String
+     * @param nodeRef NodeRef
+     */
+    public final void addNode( String path, NodeRef nodeRef) {
+        addNode( path, nodeRef, getGeneration());
+    }
+
+    /**
+     * Add a folder path to node mapping, found by a path walk that started at the specified cache generation.
+     * The mapping is not added if the cache has been invalidated since the walk started.
+     *
+     * @param path String
+     * @param nodeRef NodeRef
+     * @param generation long
+     * @return boolean true if the mapping was added
+     */
+    public final boolean addNode( String path, NodeRef nodeRef, long generation) {
+        String key = normalizePath( path);
+        if ( key.length() == 0 || nodeRef == null)
+            return false;
+
+        synchronized ( m_pathMap) {
+
+            // Invalidations advance the generation while holding the map lock
+            if ( m_generation.get() != generation) {
+                m_rejectedAdds.incrementAndGet();
+                return false;
+            }
+
+            m_pathMap.put( key, nodeRef);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove a path, and any paths below it, from the cache
+     *
+     * @param path String
+     */
+    public final void removePath( String path) {
+        String key = normalizePath( path);
+        if ( key.length() == 0) {
+            clear();
+            return;
+        }
+
+        String prefix = key + FileName.DOS_SEPERATOR;
+        int removeCnt = 0;
+
+        synchronized ( m_pathMap) {
+            m_generation.incrementAndGet();
+
+            Iterator<String> iter = m_pathMap.keySet().iterator();
+
+            while ( iter.hasNext()) {
+                String curPath = iter.next();
+
+                if ( curPath.equals( key) || curPath.startsWith( prefix)) {
+                    iter.remove();
+                    removeCnt++;
+                }
+            }
+        }
+
+        if ( removeCnt > 0)
+            m_invalidations.addAndGet( removeCnt);
+    }
+
+    /**
+     * Remove all paths that map to the specified node, and any paths below them
+     *
+     * @param nodeRef NodeRef
+     */
+    public final void removeNode( NodeRef nodeRef) {
+        if ( nodeRef == null) {
+            clear();
+            return;
+        }
+
+        String nodePath = null;
+
+        synchronized ( m_pathMap) {
+            m_generation.incrementAndGet();
+
+            for ( Map.Entry<String, NodeRef> entry : m_pathMap.entrySet()) {
+                if ( entry.getValue().equals( nodeRef)) {
+                    nodePath = entry.getKey();
+                    break;
+                }
+            }
+        }
+
+        if ( nodePath != null)
+            removePath( nodePath);
+    }
+
+    /**
+     * Clear all cached paths
+     */
+    public final void clear() {
+        int removeCnt;
+
+        synchronized ( m_pathMap) {
+            m_generation.incrementAndGet();
+
+            removeCnt = m_pathMap.size();
+            m_pathMap.clear();
+        }
+
+        m_invalidations.addAndGet( removeCnt);
+    }
+
+    /**
+     * Return the number of cached paths
+     *
+     * @return int
+     */
+    public final int numberOfEntries() {
+        synchronized ( m_pathMap) {
+            return m_pathMap.size();
+        }
+    }
+
+    /**
+     * Return the maximum number of cached paths
+     *
+     * @return int
+     */
+    public final int getMaximumSize() {
+        return m_maxSize;
+    }
+
+    /**
+     * Return the cache hit count
+     *
+     * @return long
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * Return the cache miss count
+     *
+     * @return long
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * Return the number of entries removed by invalidation
+     *
+     * @return long
+     */
+    public final long getInvalidationCount() {
+        return m_invalidations.get();
+    }
+
+    /**
+     * Return the number of mappings not added as the cache was invalidated during the path walk
+     *
+     * @return long
+     */
+    public final long getRejectedAddCount() {
+        return m_rejectedAdds.get();
+    }
+
+    /**
+     * Count a path lookup
+     *
+     * @param hit boolean
+     */
+    private void recordLookup( boolean hit) {
+        if ( hit)
+            m_hits.incrementAndGet();
+        else
+            m_misses.incrementAndGet();
+    }
+
+    /**
+     * Normalize a path to be used as a cache key
+     *
+     * @param path String
+     * @return String
+     */
+    protected static String normalizePath( String path) {
+        if ( path == null)
+            return "";
+
+        String normPath = path.replace( '/', FileName.DOS_SEPERATOR).toUpperCase();
+
+        while ( normPath.endsWith( FileName.DOS_SEPERATOR_STR))
+            normPath = normPath.substring( 0, normPath.length() - 1);
+
+        if ( normPath.length() > 0 && normPath.charAt( 0) != FileName.DOS_SEPERATOR)
+            normPath = FileName.DOS_SEPERATOR_STR + normPath;
+
+        return normPath;
+    }
+
+    /**
+     * Return the cache details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[NodePathCache entries=");
+        str.append( numberOfEntries());
+        str.append( "/");
+        str.append( m_maxSize);
+        str.append( ", hits=");
+        str.append( getHitCount());
+        str.append( ", misses=");
+        str.append( getMissCount());
+        str.append( ", invalidations=");
+        str.append( getInvalidationCount());
+        str.append( ", rejected=");
+        str.append( getRejectedAddCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
+import org.apache.poi.poifs.filesystem.DirectoryEntry;
+import org.apache.poi.poifs.filesystem.DocumentEntry;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.Entry;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * OLE2 Stream Comparator Class
+ *
+ * <p>Compares OLE2 documents by walking the directory trees and comparing the document streams in fixed size
+ * chunks, skipping excluded entries. The documents are opened file backed, so the memory used does not depend on
+ * the document size.
+ *
+ * <p>A fingerprint of a document can also be calculated, a digest of the document streams excluding the excluded
+ * entries, so a stored document does not need to be read again to be compared.
+ *
+ * <p>Excluded entries are specified by name for top level entries, or by path for entries in sub-directories, for
+ * example 'ObjectPool/Props'.
+ */
+public class OLE2StreamComparator {
+
+    // Compare buffer size
+    public static final int ChunkSize = 64 * 1024;
+
+    /**
+     * OLE2 Document Class
+     *
+     * <p>File backed OLE2 document, with the temporary copy of the content if the content is not a local file.
+     */
+    public static class OLE2Document implements Closeable {
+
+        // File system, and temporary copy of the content
+        private POIFSFileSystem m_fs;
+        private File m_tempFile;
+
+        /**
+         * Class constructor
+         *
+         * @param fs POIFSFileSystem
+         * @param tempFile File
+         */
+        private OLE2Document( POIFSFileSystem fs, File tempFile) {
+            m_fs = fs;
+            m_tempFile = tempFile;
+        }
+
+        /**
+         * Return the root directory
+         *
+         * @return DirectoryEntry
+         */
+        public final DirectoryEntry getRoot() {
+            return m_fs.getRoot();
+        }
+
+        /**
+         * Close the document, and delete the temporary copy
+         */
+        public void close() {
+            try {
+                m_fs.close();
+            }
+            catch ( IOException ex) {
+            }
+
+            if ( m_tempFile != null)
+                m_tempFile.delete();
+        }
+    }
+
+    /**
+     * Open a file as a read-only OLE2 document
+     *
+     * @param file File
+     * @return OLE2Document
+     * @exception IOException Not a valid OLE2 document
+     */
+    public static OLE2Document open( File file)
+        throws IOException {
+        return new OLE2Document( new POIFSFileSystem( file, true), null);
+    }
+
+    /**
+     * Open content as a read-only OLE2 document. Content that is not a local file is copied to a temporary file.
+     *
+     * @param reader ContentReader
+     * @return OLE2Document
+     * @exception IOException Not a valid OLE2 document
+     */
+    public static OLE2Document open( ContentReader reader)
+        throws IOException {
+
+        if ( reader instanceof FileContentReader) {
+            File file = ((FileContentReader) reader).getFile();
+
+            if ( file != null && file.exists())
+                return open( file);
+        }
+
+        // Copy the content to a temporary file
+        File tempFile = TempFileProvider.createTempFile( "OLE2StreamComparator", ".bin");
+
+        try {
+            InputStream in = reader.getReader().getContentInputStream();
+            OutputStream out = new FileOutputStream( tempFile);
+
+            try {
+                byte[] buf = new byte[ ChunkSize];
+                int cnt;
+
+                while (( cnt = in.read( buf)) != -1)
+                    out.write( buf, 0, cnt);
+            }
+            finally {
+                out.close();
+                in.close();
+            }
+
+            return new OLE2Document( new POIFSFileSystem( tempFile, true), tempFile);
+        }
+        catch ( IOException ex) {
+            tempFile.delete();
+            throw ex;
+        }
+        catch ( RuntimeException ex) {
+            tempFile.delete();
+            throw ex;
+        }
+    }
+
+    /**
+     * Compare two OLE2 directory trees, skipping excluded entries
+     *
+     * @param dir1 DirectoryEntry
+     * @param dir2 DirectoryEntry
+     * @param excludes Collection&lt;String&gt;
+     * @return boolean
+     * @exception IOException Error reading a document stream
+     */
+    public static boolean areDirectoriesEqual( DirectoryEntry dir1, DirectoryEntry dir2, Collection<String> excludes)
+        throws IOException {
+
+        byte[] buf1 = new byte[ ChunkSize];
+        byte[] buf2 = new byte[ ChunkSize];
+
+        return areDirectoriesEqual( dir1, dir2, "", excludes, buf1, buf2);
+    }
+
+    /**
+     * Compare two OLE2 directories
+     *
+     * @param dir1 DirectoryEntry
+     * @param dir2 DirectoryEntry
+     * @param path String path of the directories, empty for the root directory
+     * @param excludes Collection&lt;String&gt;
+     * @param buf1 byte[]
+     * @param buf2 byte[]
+     * @return boolean
+     * @exception IOException Error reading a document stream
+     */
+    private static boolean areDirectoriesEqual( DirectoryEntry dir1, DirectoryEntry dir2, String path, Collection<String> excludes,
+                                                byte[] buf1, byte[] buf2)
+        throws IOException {
+
+        // Check the second directory does not have any extra entries
+        int entryCnt = 0;
+
+        for ( String name : dir2.getEntryNames()) {
+            if ( isExcluded( path, name, excludes) == false) {
+                if ( dir1.hasEntry( name) == false)
+                    return false;
+                entryCnt++;
+            }
+        }
+
+        // Compare the entries
+        Iterator<Entry> entries = dir1.getEntries();
+
+        while ( entries.hasNext()) {
+            Entry entry1 = entries.next();
+
+            if ( isExcluded( path, entry1.getName(), excludes))
+                continue;
+
+            if ( dir2.hasEntry( entry1.getName()) == false)
+                return false;
+
+            Entry entry2 = dir2.getEntry( entry1.getName());
+            entryCnt--;
+
+            if ( entry1.isDirectoryEntry() && entry2.isDirectoryEntry()) {
+                if ( areDirectoriesEqual(( DirectoryEntry) entry1, ( DirectoryEntry) entry2, path + entry1.getName() + "/", excludes,
+                        buf1, buf2) == false)
+                    return false;
+            }
+            else if ( entry1.isDocumentEntry() && entry2.isDocumentEntry()) {
+                if ( areDocumentsEqual(( DocumentEntry) entry1, ( DocumentEntry) entry2, buf1, buf2) == false)
+                    return false;
+            }
+            else
+                return false;
+        }
+
+        return entryCnt == 0;
+    }
+
+    /**
+     * Compare two OLE2 document streams in chunks
+     *
+     * @param doc1 DocumentEntry
+     * @param doc2 DocumentEntry
+     * @param buf1 byte[]
+     * @param buf2 byte[]
+     * @return boolean
+     * @exception IOException Error reading a document stream
+     */
+    private static boolean areDocumentsEqual( DocumentEntry doc1, DocumentEntry doc2, byte[] buf1, byte[] buf2)
+        throws IOException {
+
+        if ( doc1.getSize() != doc2.getSize())
+            return false;
+
+        DocumentInputStream in1 = new DocumentInputStream( doc1);
+        DocumentInputStream in2 = new DocumentInputStream( doc2);
+
+        try {
+            int remaining = doc1.getSize();
+
+            while ( remaining > 0) {
+                int len = Math.min( remaining, buf1.length);
+
+                in1.readFully( buf1, 0, len);
+                in2.readFully( buf2, 0, len);
+
+                for ( int i = 0; i < len; i++) {
+                    if ( buf1[ i] != buf2[ i])
+                        return false;
+                }
+
+                remaining -= len;
+            }
+
+            return true;
+        }
+        finally {
+            in1.close();
+            in2.close();
+        }
+    }
+
+    /**
+     * Calculate the fingerprint of an OLE2 directory tree, skipping excluded entries. Documents with equal
+     * fingerprints have the same entries and stream data.
+     *
+     * @param dir DirectoryEntry
+     * @param excludes Collection&lt;String&gt;
+     * @return byte[]
+     * @exception IOException Error reading a document stream
+     */
+    public static byte[] calculateFingerprint( DirectoryEntry dir, Collection<String> excludes)
+        throws IOException {
+
+        MessageDigest digest = ContentDigestCache.createDigest();
+        addToFingerprint( digest, dir, "", excludes, new byte[ ChunkSize]);
+
+        return digest.digest();
+    }
+
+    /**
+     * Add a directory to the fingerprint, the entries are added in name order
+     *
+     * @param digest MessageDigest
+     * @param dir DirectoryEntry
+     * @param path String
+     * @param excludes Collection&lt;String&gt;
+     * @param buf byte[]
+     * @exception IOException Error reading a document stream
+     */
+    private static void addToFingerprint( MessageDigest digest, DirectoryEntry dir, String path, Collection<String> excludes, byte[] buf)
+        throws IOException {
+
+        List<String> names = new ArrayList<String>( dir.getEntryNames());
+        Collections.sort( names);
+
+        for ( String name : names) {
+            if ( isExcluded( path, name, excludes))
+                continue;
+
+            Entry entry = dir.getEntry( name);
+            String entryPath = path + name;
+
+            if ( entry.isDirectoryEntry()) {
+                digest.update(( byte) 'D');
+                digest.update( entryPath.getBytes( StandardCharsets.UTF_8));
+                digest.update(( byte) 0);
+
+                addToFingerprint( digest, ( DirectoryEntry) entry, entryPath + "/", excludes, buf);
+            }
+            else if ( entry.isDocumentEntry()) {
+                DocumentEntry doc = (DocumentEntry) entry;
+                int remaining = doc.getSize();
+
+                digest.update(( byte) 'F');
+                digest.update( entryPath.getBytes( StandardCharsets.UTF_8));
+                digest.update(( byte) 0);
+                digest.update( new byte[] { (byte) ( remaining >>> 24), (byte) ( remaining >>> 16), (byte) ( remaining >>> 8), (byte) remaining });
+
+                DocumentInputStream in = new DocumentInputStream( doc);
+
+                try {
+                    while ( remaining > 0) {
+                        int len = Math.min( remaining, buf.length);
+
+                        in.readFully( buf, 0, len);
+                        digest.update( buf, 0, len);
+
+                        remaining -= len;
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if an entry is excluded
+     *
+     * @param path String
+     * @param name String
+     * @param excludes Collection&lt;String&gt;
+     * @return boolean
+     */
+    protected static boolean isExcluded( String path, String name, Collection<String> excludes) {
+        if ( excludes == null || excludes.isEmpty())
+            return false;
+
+        return excludes.contains( path.length() == 0 ? name : path + name);
+    }
+}
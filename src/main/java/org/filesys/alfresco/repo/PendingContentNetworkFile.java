@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+
+import org.filesys.server.filesys.FileAttribute;
+import org.filesys.smb.server.disk.original.JavaNetworkFile;
+
+/**
+ * Pending Content Network File Class
+ *
+ * <p>Read-only access to the temporary file of a file that is waiting for its content to be committed to the
+ * repository. The temporary file is kept until the last reader closes the file.
+ */
+public class PendingContentNetworkFile extends JavaNetworkFile {
+
+    // Pending commit the temporary file belongs to
+    private ContentCommitQueue.PendingCommit m_pending;
+
+    /**
+     * Class constructor
+     *
+     * @param pending ContentCommitQueue.PendingCommit
+     * @param netPath String
+     */
+    public PendingContentNetworkFile( ContentCommitQueue.PendingCommit pending, String netPath) {
+        super( pending.getTempFile(), netPath);
+
+        m_pending = pending;
+
+        setFullName( netPath);
+        setAttributes( FileAttribute.NTNormal);
+        setGrantedAccess( Access.READ_ONLY);
+        setClosed( false);
+    }
+
+    /**
+     * Return the pending commit
+     *
+     * @return ContentCommitQueue.PendingCommit
+     */
+    public final ContentCommitQueue.PendingCommit getPendingCommit() {
+        return m_pending;
+    }
+
+    /**
+     * Close the file, and release the temporary file
+     *
+     * @exception IOException Error closing the file
+     */
+    @Override
+    public void closeFile()
+        throws IOException {
+
+        super.closeFile();
+
+        // Release the temporary file, once only as the close may be called more than once
+        ContentCommitQueue.PendingCommit pending;
+
+        synchronized ( this) {
+            pending = m_pending;
+            m_pending = null;
+        }
+
+        if ( pending != null)
+            pending.releaseReader();
+    }
+}
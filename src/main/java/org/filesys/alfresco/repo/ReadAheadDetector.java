@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+/**
+ * Read Ahead Detector Class
+ *
+ * <p>Tracks the reads on an open file, when the reads are sequential the following blocks are loaded
+ * asynchronously. The read-ahead window is sized to cover the data the client is expected to read during the lead
+ * time, based on the throughput of the current sequential run, between the minimum and maximum window sizes.
+ */
+public class ReadAheadDetector {
+
+    // Number of sequential reads before read-ahead starts
+    private static final int SequentialThreshold = 2;
+
+    // Maximum gap between reads that are treated as sequential, allows for clients with multiple reads outstanding
+    private static final long MaximumGap = 2L * ReadAheadManager.BlockSize;
+
+    // Minimum read-ahead window, in blocks
+    private static final int MinimumBlocks = 2;
+
+    // Lead time the read-ahead window should cover, in milliseconds
+    private static final long LeadTime = 250L;
+
+    // Read-ahead manager, and loader for the file
+    private final ReadAheadManager m_manager;
+    private final ReadAheadManager.BlockLoader m_loader;
+
+    // Expected offset of the next sequential read, or -1 if no reads yet
+    private long m_nextOffset = -1L;
+
+    // Current sequential run, number of reads, bytes read and start time
+    private int m_seqReads;
+    private long m_seqBytes;
+    private long m_seqStart;
+
+    // Offset that read-ahead has been requested up to, and read-ahead request in progress
+    private long m_readAheadEnd;
+    private boolean m_pending;
+
+    /**
+     * Class constructor
+     *
+     * @param manager ReadAheadManager
+     * @param loader ReadAheadManager.BlockLoader
+     */
+    public ReadAheadDetector( ReadAheadManager manager, ReadAheadManager.BlockLoader loader) {
+        m_manager = manager;
+        m_loader = loader;
+    }
+
+    /**
+     * Record a read on the file, called before the data is read. Starts a read-ahead if the reads are sequential.
+     *
+     * @param fileOff long
+     * @param len int
+     * @param fileSize long
+     */
+    public final synchronized void recordRead( long fileOff, int len, long fileSize) {
+
+        long now = System.currentTimeMillis();
+
+        // Check if the read continues the current sequential run
+        if ( m_nextOffset < 0 || fileOff < m_nextOffset - MaximumGap || fileOff > m_nextOffset + MaximumGap) {
+            m_seqReads = 0;
+            m_seqBytes = 0L;
+            m_seqStart = now;
+            m_readAheadEnd = 0L;
+            m_nextOffset = fileOff + len;
+
+            return;
+        }
+
+        m_seqReads++;
+        m_seqBytes += len;
+        m_nextOffset = Math.max( m_nextOffset, fileOff + len);
+
+        if ( m_seqReads < SequentialThreshold)
+            return;
+
+        // Check if the previous read-ahead loaded the data
+        if ( m_readAheadEnd > fileOff) {
+            if ( m_loader.isLoaded( fileOff, len))
+                m_manager.recordHit();
+            else
+                m_manager.recordMiss();
+        }
+
+        // Size the window using the throughput of the sequential run
+        long elapsed = Math.max( 1L, now - m_seqStart);
+        long windowBytes = ( m_seqBytes * LeadTime) / elapsed;
+
+        int blocks = (int) Math.min( windowBytes / ReadAheadManager.BlockSize, m_manager.getMaximumBlocks());
+        blocks = Math.max( blocks, Math.min( MinimumBlocks, m_manager.getMaximumBlocks()));
+
+        long endOff = Math.min( fileSize, m_nextOffset + (long) blocks * ReadAheadManager.BlockSize);
+        long startOff = Math.max( m_readAheadEnd, m_nextOffset);
+        startOff -= startOff % ReadAheadManager.BlockSize;
+
+        // Only one read-ahead request per file at a time
+        if ( m_pending || startOff >= endOff)
+            return;
+
+        m_pending = true;
+        m_readAheadEnd = endOff;
+
+        m_manager.queueReadAhead( m_loader, startOff, endOff, this);
+    }
+
+    /**
+     * Called when a read-ahead request completes
+     */
+    protected final synchronized void readAheadComplete() {
+        m_pending = false;
+    }
+
+    /**
+     * Return the detector details as a string
+     *
+     * @return String
+     */
+    public synchronized String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ReadAheadDetector next=");
+        str.append( m_nextOffset);
+        str.append( ", seqReads=");
+        str.append( m_seqReads);
+        str.append( ", readAheadEnd=");
+        str.append( m_readAheadEnd);
+        str.append( ", pending=");
+        str.append( m_pending);
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Read Ahead Manager Class
+ *
+ * <p>Runs the asynchronous read-ahead requests for files being read sequentially, and keeps the read-ahead
+ * statistics. The per file access pattern is tracked by a {@link ReadAheadDetector}.
+ */
+public class ReadAheadManager {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(ReadAheadManager.class);
+
+    // Read-ahead block size
+    public static final int BlockSize = 64 * 1024;
+
+    // Default maximum read-ahead window, in blocks, number of read-ahead threads and queued requests
+    public static final int DefaultMaximumBlocks = 16;
+    public static final int DefaultThreads = 2;
+    public static final int DefaultQueueSize = 256;
+
+    /**
+     * Block Loader Interface
+     *
+     * <p>Loads blocks of a file into the cache that serves the file reads.
+     */
+    public interface BlockLoader {
+
+        /**
+         * Check if a range of the file is already loaded
+         *
+         * @param fileOff long
+         * @param len long
+         * @return boolean
+         */
+        boolean isLoaded( long fileOff, long len);
+
+        /**
+         * Load the block at the specified offset
+         *
+         * @param fileOff long
+         * @return boolean false if the file can no longer be loaded, such as when the file has been closed
+         * @exception IOException Error loading the block
+         */
+        boolean loadBlock( long fileOff)
+            throws IOException;
+    }
+
+    // Maximum read-ahead window, in blocks, number of threads and queue size
+    private int m_maxBlocks = DefaultMaximumBlocks;
+    private int m_threads = DefaultThreads;
+    private int m_queueSize = DefaultQueueSize;
+
+    // Read-ahead thread pool, created on first use
+    private ThreadPoolExecutor m_executor;
+
+    // Statistics, blocks loaded by read-ahead, sequential reads that found the data loaded or not loaded
+    private final AtomicLong m_prefetched = new AtomicLong();
+    private final AtomicLong m_hits = new AtomicLong();
+    private final AtomicLong m_misses = new AtomicLong();
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    /**
+     * Set the maximum read-ahead window, in blocks
+     *
+     * @param maxBlocks int
+     */
+    public final void setMaximumBlocks( int maxBlocks) {
+        m_maxBlocks = maxBlocks > 0 ? maxBlocks : DefaultMaximumBlocks;
+    }
+
+    /**
+     * Return the maximum read-ahead window, in blocks
+     *
+     * @return int
+     */
+    public final int getMaximumBlocks() {
+        return m_maxBlocks;
+    }
+
+    /**
+     * Set the number of read-ahead threads
+     *
+     * @param threads int
+     */
+    public final void setThreads( int threads) {
+        m_threads = threads > 0 ? threads : DefaultThreads;
+    }
+
+    /**
+     * Set the maximum number of queued read-ahead requests
+     *
+     * @param queueSize int
+     */
+    public final void setQueueSize( int queueSize) {
+        m_queueSize = queueSize > 0 ? queueSize : DefaultQueueSize;
+    }
+
+    /**
+     * Queue a request to load a range of a file, such as the ranges an application is known to read first, the
+     * request is dropped if the queue is full
+     *
+     * @param loader BlockLoader
+     * @param startOff long
+     * @param endOff long
+     */
+    public final void queuePrefetch( BlockLoader loader, long startOff, long endOff) {
+        queueReadAhead( loader, startOff, endOff, null);
+    }
+
+    /**
+     * Queue a read-ahead request, the request is dropped if the queue is full
+     *
+     * @param loader BlockLoader
+     * @param startOff long
+     * @param endOff long
+     * @param detector ReadAheadDetector, or null if the request is not from a read-ahead detector
+     */
+    protected final void queueReadAhead( final BlockLoader loader, final long startOff, final long endOff, final ReadAheadDetector detector) {
+
+        Runnable readAheadJob = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for ( long off = startOff; off < endOff; off += BlockSize) {
+                        if ( loader.isLoaded( off, BlockSize))
+                            continue;
+
+                        if ( loader.loadBlock( off) == false)
+                            break;
+
+                        m_prefetched.incrementAndGet();
+                    }
+                }
+                catch ( Exception ex) {
+
+                    // DEBUG
+                    if ( logger.isDebugEnabled())
+                        logger.debug("Read-ahead failed, offset=" + startOff + ", " + ex.getMessage());
+                }
+                finally {
+                    if ( detector != null)
+                        detector.readAheadComplete();
+                }
+            }
+        };
+
+        try {
+            getExecutor().execute( readAheadJob);
+        }
+        catch ( Exception ex) {
+            m_dropped.incrementAndGet();
+
+            if ( detector != null)
+                detector.readAheadComplete();
+        }
+    }
+
+    /**
+     * Record a sequential read that found the data already loaded
+     */
+    protected final void recordHit() {
+        m_hits.incrementAndGet();
+    }
+
+    /**
+     * Record a sequential read that had to load the data
+     */
+    protected final void recordMiss() {
+        m_misses.incrementAndGet();
+    }
+
+    /**
+     * Return the number of blocks loaded by read-ahead
+     *
+     * @return long
+     */
+    public final long getPrefetchedBlocks() {
+        return m_prefetched.get();
+    }
+
+    /**
+     * Return the number of sequential reads that found the data already loaded
+     *
+     * @return long
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * Return the number of sequential reads that had to load the data
+     *
+     * @return long
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * Return the number of read-ahead requests dropped as the queue was full
+     *
+     * @return long
+     */
+    public final long getDroppedCount() {
+        return m_dropped.get();
+    }
+
+    /**
+     * Return the read-ahead hit ratio, the percentage of sequential reads that found the data already loaded
+     *
+     * @return int
+     */
+    public final int getHitRatio() {
+        long hits = m_hits.get();
+        long total = hits + m_misses.get();
+
+        return total > 0 ? (int) (( hits * 100L) / total) : 0;
+    }
+
+    /**
+     * Shutdown the read-ahead threads
+     */
+    public final synchronized void shutdown() {
+        if ( m_executor != null) {
+            m_executor.shutdownNow();
+            m_executor = null;
+        }
+    }
+
+    /**
+     * Return the read-ahead thread pool, create the thread pool on first use
+     *
+     * @return ThreadPoolExecutor
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+
+        if ( m_executor == null) {
+            final AtomicInteger threadId = new AtomicInteger();
+
+            m_executor = new ThreadPoolExecutor( m_threads, m_threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>( m_queueSize),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread( Runnable r) {
+                            Thread thread = new Thread( r, "FSReadAhead_" + threadId.incrementAndGet());
+                            thread.setDaemon( true);
+                            return thread;
+                        }
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        return m_executor;
+    }
+
+    /**
+     * Return the read-ahead details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[ReadAheadManager maxBlocks=");
+        str.append( m_maxBlocks);
+        str.append( ", prefetched=");
+        str.append( getPrefetchedBlocks());
+        str.append( ", hits=");
+        str.append( getHitCount());
+        str.append( ", misses=");
+        str.append( getMissCount());
+        str.append( ", hitRatio=");
+        str.append( getHitRatio());
+        str.append( "%, dropped=");
+        str.append( getDroppedCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
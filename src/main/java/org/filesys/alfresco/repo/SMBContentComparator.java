@@ -31,14 +31,15 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
-import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.TempFileProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -52,7 +53,7 @@ import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 /**
  * Compares content for to see if content is equal.
  * <p>
- * Most mimetypes can simply be binary compared but for some mimetypes
+ * Most mimetypes can simply be compared using a digest of the content but for some mimetypes
  * there may be trivial differences so a binary compare is not sufficient.
  * <p>
  * In particular MS Project and MS Excel write to header fields without changing content. 
@@ -66,6 +67,57 @@ public class SMBContentComparator implements ContentComparator
     private Map<String, ContentComparator> customComparators = new HashMap<String, ContentComparator>();
     
     private static final Log logger = LogFactory.getLog(SMBContentComparator.class);
+
+    // Cache of content digests, keyed by content URL
+    private ContentDigestCache digestCache;
+
+    // Cache of Office document fingerprints, keyed by document type and content URL
+    private ContentDigestCache fingerprintCache;
+
+    // Fingerprints of new files that differ from the existing content, keyed by file path, waiting for the new
+    // content URL when the file is committed
+    private static final int MaxPendingFingerprints = 256;
+
+    private final Map<String, PendingFingerprint> pendingFingerprints = new LinkedHashMap<String, PendingFingerprint>()
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PendingFingerprint> eldest)
+        {
+            return size() > MaxPendingFingerprints;
+        }
+    };
+
+    /**
+     * Fingerprint of a new file, with the file details used to check the file has not changed since it was fingerprinted
+     */
+    private static class PendingFingerprint
+    {
+        final String docType;
+        final byte[] fingerprint;
+        final long fileLength;
+        final long lastModified;
+
+        PendingFingerprint(String docType, byte[] fingerprint, File file)
+        {
+            this.docType = docType;
+            this.fingerprint = fingerprint;
+            this.fileLength = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        boolean isValidFor(File file)
+        {
+            // The file no longer exists if it was moved to the content store
+            return !file.exists() || (file.length() == fileLength && file.lastModified() == lastModified);
+        }
+    }
+
+    // Maximum size of document that will be fully parsed in memory, when the streaming comparison finds a difference,
+    // parsing is disabled by default so any difference in the compared streams is a change
+    public static final long DefaultMaximumParseSize = 0L;
+    private long maximumParseSize = DefaultMaximumParseSize;
     
     /**
      * 
@@ -75,11 +127,56 @@ public class SMBContentComparator implements ContentComparator
         customComparators.put("application/vnd.ms-project", new MPPContentComparator());
         customComparators.put("application/vnd.ms-excel", new XLSContentComparator());
         customComparators.put("application/vnd.ms-powerpoint", new PPTContentComparator());
+
+        if(digestCache == null)
+        {
+            digestCache = new ContentDigestCache();
+        }
     }  
 
+    /**
+     * Set the cache of content digests, keyed by content URL
+     *
+     * @param digestCache ContentDigestCache
+     */
+    public void setDigestCache(ContentDigestCache digestCache)
+    {
+        this.digestCache = digestCache;
+    }
+
+    /**
+     * Set the cache of Office document fingerprints, keyed by document type and content URL. If not set the
+     * Office documents are compared stream by stream.
+     *
+     * @param fingerprintCache ContentDigestCache
+     */
+    public void setFingerprintCache(ContentDigestCache fingerprintCache)
+    {
+        this.fingerprintCache = fingerprintCache;
+    }
+
+    /**
+     * Set the maximum size of document that will be fully parsed to check for trivial differences, when the
+     * stream by stream comparison finds a difference. Parsing loads the whole document into memory, a size of zero
+     * disables parsing so documents are only compared stream by stream.
+     *
+     * @param maxSize long
+     */
+    public void setMaximumParseSize(long maxSize)
+    {
+        this.maximumParseSize = maxSize;
+    }
+
     @Override
     public boolean isContentEqual(ContentReader existingContent,
             File newFile)
+    {
+        return isContentEqual(existingContent, newFile, null);
+    }
+
+    @Override
+    public boolean isContentEqual(ContentReader existingContent,
+            File newFile, byte[] newDigest)
     {
         String mimetype = existingContent.getMimetype();
         logger.debug("isContentEqual mimetype=" + mimetype);
@@ -90,7 +187,7 @@ public class SMBContentComparator implements ContentComparator
         
         if(custom == null)
         {
-            // No custom comparator - check length then do a binary diff
+            // No custom comparator - check length then compare the content digests
             if(existingContent.getSize() != newSize)
             {
                 // Different size
@@ -98,58 +195,183 @@ public class SMBContentComparator implements ContentComparator
                 return false;
             }
             
-            InputStream rightIs = null;
-            InputStream leftIs = null;
             try
-            {   
-                rightIs = new BufferedInputStream(new FileInputStream(newFile));
-                leftIs = existingContent.getContentInputStream();
-                boolean retVal = EqualsHelper.binaryStreamEquals(leftIs, rightIs);
-                rightIs = null;
-                leftIs = null;
+            {
+                // The digest of the existing content is cached, the new content digest may have been
+                // calculated as the file was written
+                byte[] existingDigest = digestCache.getDigest(existingContent);
+
+                if(newDigest == null)
+                {
+                    InputStream rightIs = new BufferedInputStream(new FileInputStream(newFile));
+                    try
+                    {
+                        newDigest = ContentDigestCache.calculateDigest(rightIs);
+                    }
+                    finally
+                    {
+                        rightIs.close();
+                    }
+                }
+
+                boolean retVal = MessageDigest.isEqual(existingDigest, newDigest);
                 
                 if(logger.isDebugEnabled())
                 {
-                    logger.debug("generic comparison, binary content comparison equal=" + retVal);
+                    logger.debug("generic comparison, content digest comparison equal=" + retVal);
                 }
                 return retVal;
             }
+            catch (ContentIOException ce)
+            {
+                logger.debug("Unable to compare contents", ce);
+                return false;
+            }
             catch (IOException e)
             {
 
                 logger.debug("Unable to compare contents", e);
                 return false;
             }
-            finally
+        }
+        else
+        {
+            // there is a custom comparator for this mimetype
+            return custom.isContentEqual(existingContent, newFile);
+        }
+    }
+
+    /**
+     * Compare the OLE2 streams of the existing content and the new file, skipping the excluded entries. Memory
+     * use does not depend on the document size.
+     * <p>
+     * If the fingerprint cache is enabled the fingerprints of the documents are compared, the fingerprint of the
+     * existing content is cached so only the new file needs to be read. Otherwise the streams are compared in
+     * fixed size chunks.
+     *
+     * @param existingContent ContentReader
+     * @param newFile File
+     * @param docType String document type, the fingerprint depends on the excluded entries for the type
+     * @param excludes Collection<String>
+     * @return boolean
+     * @throws IOException
+     */
+    private boolean isStreamContentEqual(ContentReader existingContent, File newFile, String docType, Collection<String> excludes) throws IOException
+    {
+        if(fingerprintCache != null && existingContent.getContentUrl() != null)
+        {
+            return isFingerprintEqual(existingContent, newFile, docType, excludes);
+        }
+
+        OLE2StreamComparator.OLE2Document doc1 = OLE2StreamComparator.open(newFile);
+        try
+        {
+            OLE2StreamComparator.OLE2Document doc2 = OLE2StreamComparator.open(existingContent);
+            try
             {
-                if(leftIs != null)
+                boolean retVal = OLE2StreamComparator.areDirectoriesEqual(doc1.getRoot(), doc2.getRoot(), excludes);
+                if(logger.isDebugEnabled())
                 {
-                    try
-                    {
-                        leftIs.close();
-                    } 
-                    catch (IOException e)
-                    {
-                        // Do nothing this is cleanup code
-                    }
-                }
-                if(rightIs != null)
-                {
-                    try
-                    {
-                        rightIs.close();
-                    } 
-                    catch (IOException e)
-                    {
-                        // Do nothing this is cleanup code
-                    }
+                    logger.debug("stream comparison, returning equal=" + retVal);
                 }
+                return retVal;
+            }
+            finally
+            {
+                doc2.close();
             }
         }
-        else
+        finally
         {
-            // there is a custom comparator for this mimetype
-            return custom.isContentEqual(existingContent, newFile);
+            doc1.close();
+        }
+    }
+
+    /**
+     * Compare the fingerprints of the existing content and the new file
+     *
+     * @param existingContent ContentReader
+     * @param newFile File
+     * @param docType String
+     * @param excludes Collection<String>
+     * @return boolean
+     * @throws IOException
+     */
+    private boolean isFingerprintEqual(ContentReader existingContent, File newFile, String docType, Collection<String> excludes) throws IOException
+    {
+        // Fingerprint the new file
+        byte[] newFingerprint;
+
+        OLE2StreamComparator.OLE2Document newDoc = OLE2StreamComparator.open(newFile);
+        try
+        {
+            newFingerprint = OLE2StreamComparator.calculateFingerprint(newDoc.getRoot(), excludes);
+        }
+        finally
+        {
+            newDoc.close();
+        }
+
+        // Get the fingerprint of the existing content, fingerprint the existing content if not cached
+        String fingerprintKey = docType + ":" + existingContent.getContentUrl();
+        byte[] existingFingerprint = fingerprintCache.findDigest(fingerprintKey);
+
+        if(existingFingerprint == null)
+        {
+            OLE2StreamComparator.OLE2Document existingDoc = OLE2StreamComparator.open(existingContent);
+            try
+            {
+                existingFingerprint = OLE2StreamComparator.calculateFingerprint(existingDoc.getRoot(), excludes);
+            }
+            finally
+            {
+                existingDoc.close();
+            }
+
+            fingerprintCache.addDigest(fingerprintKey, existingFingerprint);
+        }
+
+        boolean retVal = MessageDigest.isEqual(existingFingerprint, newFingerprint);
+        if(logger.isDebugEnabled())
+        {
+            logger.debug("fingerprint comparison, returning equal=" + retVal);
+        }
+
+        // Keep the fingerprint of the new file until it is committed and the new content URL is known, so the next
+        // save does not need to read the stored document
+        if(!retVal)
+        {
+            synchronized(pendingFingerprints)
+            {
+                pendingFingerprints.put(newFile.getAbsolutePath(), new PendingFingerprint(docType, newFingerprint, newFile));
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    public void contentCommitted(File file, String contentUrl)
+    {
+        if(fingerprintCache == null || contentUrl == null)
+        {
+            return;
+        }
+
+        PendingFingerprint pending;
+        synchronized(pendingFingerprints)
+        {
+            pending = pendingFingerprints.remove(file.getAbsolutePath());
+        }
+
+        // Only cache the fingerprint if the file has not been changed since it was fingerprinted
+        if(pending != null && pending.isValidFor(file))
+        {
+            fingerprintCache.addDigest(pending.docType + ":" + contentUrl, pending.fingerprint);
+
+            if(logger.isDebugEnabled())
+            {
+                logger.debug("cached fingerprint of committed content, url=" + contentUrl);
+            }
         }
     }
 
@@ -195,45 +417,14 @@ public class SMBContentComparator implements ContentComparator
             /**
              * Use POI to compare the content of the MPP file, exluding certain properties
              */
-            InputStream leftIs = null;
-
             try
             {  
                 Collection<String> excludes = new HashSet<String>();
                 excludes.add("Props");
                 excludes.add("Props12");
                 excludes.add("Props9");
-                
-                leftIs = existingContent.getContentInputStream();
-
-                // this call guarantees that leftIs is closed.
-                POIFSFileSystem fs2 = new POIFSFileSystem(leftIs);
-                // this call keeps an open file handle and needs closing.
-                POIFSFileSystem fs1 = new POIFSFileSystem(newFile);
-                try
-                {
 
-                    return isContentIdentical(fs1, fs2, excludes);
-                }
-                finally
-                {
-                	try
-                	{
-                		fs1.close();
-                	}
-                	catch (IOException e)
-                	{
-                		// ignore
-                	}
-                	try
-                	{
-                		fs2.close();
-                	}
-                	catch (IOException e)
-                	{
-                		// ignore
-                	}
-                }
+                return isStreamContentEqual(existingContent, newFile, "mpp", excludes);
             }
             catch (ContentIOException ce)
             {
@@ -245,20 +436,6 @@ public class SMBContentComparator implements ContentComparator
                 logger.debug("Unable to compare contents", e);
                 return false;
             }
-            finally
-            {
-                if(leftIs != null)
-                {
-                    try
-                    {
-                        leftIs.close();
-                    } 
-                    catch (IOException e)
-                    {
-                       // Ignore
-                    }
-                }
-            }
         }
     }
     
@@ -293,6 +470,18 @@ public class SMBContentComparator implements ContentComparator
             try 
             {  
                 Collection<String> excludes = new HashSet<String>();
+
+                // Compare the streams, if there is a difference check if the difference is trivial by rewriting both
+                // workbooks, only if parsing has been enabled and the workbook is not too large to parse
+                if (isStreamContentEqual(existingContent, newFile, "xls", excludes))
+                {
+                    return true;
+                }
+                else if (maximumParseSize <= 0 || newSize > maximumParseSize)
+                {
+                    logger.debug("excel file streams are different, parsing disabled or file too large to parse");
+                    return false;
+                }
                 
                 tpm1 = TempFileProvider.createTempFile("CIFSContentComparator1", "xls");
                 tpm2 = TempFileProvider.createTempFile("CIFSContentComparator2", "xls");
@@ -411,6 +600,18 @@ public class SMBContentComparator implements ContentComparator
                     Collection<String> excludes = new HashSet<String>();
                     excludes.add("Current User");
 
+                    // Compare the streams, if there is a difference parse both presentations, only if parsing has been
+                    // enabled and the presentation is not too large to parse
+                    if (isStreamContentEqual(existingContent, newFile, "ppt", excludes))
+                    {
+                        return true;
+                    }
+                    else if (maximumParseSize <= 0 || newFile.length() > maximumParseSize)
+                    {
+                        logger.debug("powerpoint file streams are different, parsing disabled or file too large to parse");
+                        return false;
+                    }
+
                     leftIs = existingContent.getContentInputStream();
                     HSLFSlideShowImpl slideShow1 = new HSLFSlideShowImpl(leftIs);
                     HSLFSlideShowImpl slideShow2 = new HSLFSlideShowImpl(new FileInputStream(newFile));
@@ -29,7 +29,9 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -37,8 +39,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
 import org.filesys.alfresco.repo.CommandExecutorImpl.PropagatingException;
 import org.filesys.server.filesys.FileAttribute;
 import org.filesys.server.filesys.FileExistsException;
@@ -47,6 +53,7 @@ import org.filesys.server.filesys.FileType;
 import org.filesys.util.MemorySize;
 import org.filesys.util.WildCard;
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.model.filefolder.HiddenAspect;
 import org.alfresco.repo.model.filefolder.HiddenAspect.Visibility;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -67,11 +74,13 @@ import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.util.AlfrescoCollator;
 import org.alfresco.util.FileFilterMode.Client;
+import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
-import org.alfresco.util.SearchLanguageConversion;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.extensions.surf.util.I18NUtil;
 
 /**
  * Class with supplying helper methods and potentially acting as a cache for
@@ -84,6 +93,20 @@ public class SMBHelper
     // Logging
     private static Log logger = LogFactory.getLog(SMBHelper.class);
     
+    // Number of child nodes to load per page during a wildcard search, and the number of times a page may step back
+    // if children are removed from the folder during the search
+    private static final int WILDCARD_SEARCH_PAGE_SIZE = 1000;
+    private static final int WILDCARD_SEARCH_MAX_STEPBACKS = 3;
+
+    // DOS wildcard characters, sent by clients in place of '*', '?' and '.' for DOS compatible matching
+    private static final char DOS_STAR = '<';
+    private static final char DOS_QM = '>';
+    private static final char DOS_DOT = '"';
+
+    // Wildcard search sort order, by name, so each page can be checked against the last entry of the previous page
+    private static final List<Pair<QName, Boolean>> WILDCARD_SEARCH_SORT =
+            Collections.singletonList(new Pair<QName, Boolean>(ContentModel.PROP_NAME, Boolean.TRUE));
+    
     // Services
     private DictionaryService dictionaryService;
     private NodeService nodeService;
@@ -93,11 +116,15 @@ public class SMBHelper
     private LockService lockService;
     private HiddenAspect hiddenAspect;
     private RetryingTransactionHelper retryingTransactionHelper;
+    private NodeDAO nodeDAO;
 
     private Set<QName> excludedTypes = new HashSet<QName>();
     
     private boolean isReadOnlyFlagOnFolders = false;
     
+    // Folder path caches, keyed by the filesystem root node
+    private Map<NodeRef, NodePathCache> pathCaches = new ConcurrentHashMap<NodeRef, NodePathCache>();
+    
     /**
      * Class constructor
      */
@@ -116,6 +143,16 @@ public class SMBHelper
         PropertyCheck.mandatory(this, "transactionHelper",getRetryingTransactionHelper());
     }
     
+    /**
+     * Set the node DAO, optional, used to bulk load node details when returning file information for a list of nodes
+     * 
+     * @param nodeDAO NodeDAO
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+    
     public void setDictionaryService(DictionaryService dictionaryService)
     {
         this.dictionaryService = dictionaryService;
@@ -176,6 +213,60 @@ public class SMBHelper
         this.isReadOnlyFlagOnFolders = setReadOnlyFlagOnFolders;
     }
 
+    /**
+     * Register a folder path cache to be used for path lookups relative to the specified root node
+     * 
+     * @param rootNodeRef the filesystem root node
+     * @param pathCache the path cache, or null to remove an existing cache
+     */
+    public void registerPathCache(NodeRef rootNodeRef, NodePathCache pathCache)
+    {
+        if (pathCache != null)
+        {
+            pathCaches.put(rootNodeRef, pathCache);
+        }
+        else
+        {
+            pathCaches.remove(rootNodeRef);
+        }
+    }
+    
+    /**
+     * Return the folder path cache for the specified root node
+     * 
+     * @param rootNodeRef the filesystem root node
+     * @return the path cache, or null if there is no cache for the root node
+     */
+    public NodePathCache getPathCache(NodeRef rootNodeRef)
+    {
+        return pathCaches.get(rootNodeRef);
+    }
+    
+    /**
+     * Return the registered folder path caches
+     * 
+     * @return the path caches
+     */
+    public Collection<NodePathCache> getPathCaches()
+    {
+        return Collections.unmodifiableCollection(pathCaches.values());
+    }
+    
+    /**
+     * Remove a path, and any cached paths below it, from the folder path cache for the specified root node
+     * 
+     * @param rootNodeRef the filesystem root node
+     * @param path the path that has been renamed, moved or deleted
+     */
+    public void invalidatePath(NodeRef rootNodeRef, String path)
+    {
+        NodePathCache pathCache = pathCaches.get(rootNodeRef);
+        if (pathCache != null)
+        {
+            pathCache.removePath(path);
+        }
+    }
+    
     /**
      * @param nodeRef
      * @return Returns true if the node is a subtype of {@link ContentModel#TYPE_FOLDER folder}
@@ -281,6 +372,87 @@ public class SMBHelper
     	
     }
 
+    /**
+     * Return the file information for a list of nodes using a single transaction.
+     * <p>
+     * The node properties, aspects and ACLs for the whole list are loaded into the node cache
+     * in bulk, rather than node by node.
+     * 
+     * @param nodeRefs the nodes to return file information for
+     * @param readOnly should the files be shown as "read only", regardless of their permissions?
+     * @param lockedFilesAsOffline should a locked file be marked as offline
+     * @return the file information, in the same order as the node list, with a null entry for any node that no longer
+     *         exists or could not be loaded, the caller should load a null entry individually to get the failure for that node
+     */
+    public List<ContentFileInfo> getFileInformation(final List<NodeRef> nodeRefs, final boolean readOnly, final boolean lockedFilesAsOffline)
+    {
+        RetryingTransactionCallback<List<ContentFileInfo>> cb =  new RetryingTransactionCallback<List<ContentFileInfo>>()
+        {
+            public List<ContentFileInfo> execute() throws IOException
+            {
+                // bulk load the node details
+                if (nodeDAO != null && nodeRefs.size() > 1)
+                {
+                    nodeDAO.cacheNodes(nodeRefs);
+                }
+                
+                List<ContentFileInfo> infoList = new ArrayList<ContentFileInfo>(nodeRefs.size());
+                for (NodeRef nodeRef : nodeRefs)
+                {
+                    ContentFileInfo fileInfo = null;
+                    try
+                    {
+                        fileInfo = getFileInformationImpl(nodeRef, readOnly, lockedFilesAsOffline);
+                    }
+                    catch (InvalidNodeRefException e)
+                    {
+                        // node has been deleted since the folder search
+                    }
+                    catch (FileNotFoundException e)
+                    {
+                        // node has been deleted since the folder search
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // let the transaction retry on concurrency failures
+                        if (RetryingTransactionHelper.extractRetryCause(e) != null)
+                        {
+                            throw e;
+                        }
+                        
+                        // fail this entry only, the caller loads it individually
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Bulk file information failed for node " + nodeRef + ", " + e);
+                        }
+                    }
+                    infoList.add(fileInfo);
+                }
+                return infoList;
+            }
+        };
+        
+        List<ContentFileInfo> infoList = null;
+        try
+        {
+            infoList = getRetryingTransactionHelper().doInTransaction(cb, true);
+        }
+        catch (RuntimeException e)
+        {
+            // the batch transaction failed, fail every entry so the caller loads each node individually
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Bulk file information failed for " + nodeRefs.size() + " nodes, " + e);
+            }
+            infoList = new ArrayList<ContentFileInfo>(Collections.<ContentFileInfo>nCopies(nodeRefs.size(), null));
+        }
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Bulk file information for " + nodeRefs.size() + " nodes");
+        }
+        return infoList;
+    }
 
     /**
      * Extract a single node's file info, where the node is reference by
@@ -596,8 +768,9 @@ public class SMBHelper
                     "   Path Element: " + pathElement);
         }
         List<NodeRef> results = null;
+        boolean dosWildcards = containsDosWildcards(pathElement);
         // if this contains no wildcards, then we can fasttrack it
-        if (!WildCard.containsWildcards(pathElement))
+        if (!dosWildcards && !WildCard.containsWildcards(pathElement))
         {
             // a specific name is required
             NodeRef foundNodeRef = fileFolderService.searchSimple(pathRootNodeRef, pathElement);
@@ -612,24 +785,134 @@ public class SMBHelper
         }
         else
         {
-            // escape for the Lucene syntax search
-            String escapedPathElement = SearchLanguageConversion.convertCifsToLucene(pathElement);
-            // do the lookup
-            List<org.alfresco.service.cmr.model.FileInfo> childInfos = fileFolderService.search(
-                    pathRootNodeRef,
-                    escapedPathElement,
-                    false);
-            // convert to noderefs
-            results = new ArrayList<NodeRef>(childInfos.size());
-            for (org.alfresco.service.cmr.model.FileInfo info : childInfos)
+            // page through the child nodes from the database and match the names against the wildcard,
+            // rather than converting the wildcard to a Lucene query. DOS wildcards are matched using a regular
+            // expression with the DOS matching rules.
+            Pattern dosPattern = dosWildcards ? convertDosWildcard(pathElement) : null;
+            WildCard wildCard = dosWildcards || pathElement.equals("*") ? null : new WildCard(pathElement, false);
+            results = new ArrayList<NodeRef>();
+            
+            // The listing is sorted by name and each page resumes from the last name returned by the previous page.
+            // The next page overlaps the previous page by one entry, entries up to the last returned name are skipped,
+            // and if the page starts after the last returned name, children were removed ahead of it and the page
+            // steps back so no children are missed. Children already returned are skipped. Names are compared using
+            // the collation the child listing sorts names by, so the resume point matches the listing order.
+            Comparator<Object> nameOrder = AlfrescoCollator.getInstance(I18NUtil.getContentLocale());
+            Set<NodeRef> returned = new HashSet<NodeRef>();
+            String lastName = null;
+            int pageStart = 0;
+            int stepBacks = 0;
+            
+            while (true)
             {
-                results.add(info.getNodeRef());
+                PagingResults<org.alfresco.service.cmr.model.FileInfo> childPage = fileFolderService.list(pathRootNodeRef,
+                        true, true, excludedTypes, WILDCARD_SEARCH_SORT, new PagingRequest(pageStart, WILDCARD_SEARCH_PAGE_SIZE));
+                
+                List<org.alfresco.service.cmr.model.FileInfo> childInfos = childPage.getPage();
+                int firstIdx = 0;
+                
+                if (lastName != null)
+                {
+                    while (firstIdx < childInfos.size() && nameOrder.compare(childInfos.get(firstIdx).getName(), lastName) <= 0)
+                    {
+                        firstIdx++;
+                    }
+                    
+                    if (firstIdx == 0 && pageStart > 0 && stepBacks++ < WILDCARD_SEARCH_MAX_STEPBACKS)
+                    {
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Folder changed during wildcard search, step back from " + pageStart + ", folder=" + pathRootNodeRef);
+                        }
+                        pageStart = Math.max(0, pageStart - WILDCARD_SEARCH_PAGE_SIZE);
+                        continue;
+                    }
+                }
+                
+                for (int idx = firstIdx; idx < childInfos.size(); idx++)
+                {
+                    org.alfresco.service.cmr.model.FileInfo info = childInfos.get(idx);
+                    if (!returned.add(info.getNodeRef()))
+                    {
+                        continue;
+                    }
+                    
+                    String name = info.getName();
+                    if (dosPattern != null ? dosPattern.matcher(name).matches() : wildCard == null || wildCard.matchesPattern(name))
+                    {
+                        results.add(info.getNodeRef());
+                    }
+                }
+                
+                if (childInfos.size() < 2 || !childPage.hasMoreItems())
+                {
+                    break;
+                }
+                
+                String pageLast = childInfos.get(childInfos.size() - 1).getName();
+                if (lastName == null || nameOrder.compare(pageLast, lastName) > 0)
+                {
+                    lastName = pageLast;
+                }
+                pageStart += childInfos.size() - 1;
             }
         }
         // done
         return results;
     }
 
+    /**
+     * Check if a search pattern contains the DOS wildcard characters
+     *
+     * @param pattern String
+     * @return boolean
+     */
+    private static boolean containsDosWildcards(String pattern)
+    {
+        return pattern.indexOf(DOS_STAR) != -1 || pattern.indexOf(DOS_QM) != -1 || pattern.indexOf(DOS_DOT) != -1;
+    }
+
+    /**
+     * Convert a search pattern containing DOS wildcards to a case insensitive regular expression, using the DOS
+     * matching rules. '&lt;' matches zero or more characters up to the final '.' in the name, '&gt;' matches any
+     * single character, or nothing at a '.' or the end of the name, and '"' matches a '.' or the end of the name.
+     *
+     * @param pattern String
+     * @return Pattern
+     */
+    protected static Pattern convertDosWildcard(String pattern)
+    {
+        StringBuilder regex = new StringBuilder(pattern.length() * 4);
+        
+        for (int idx = 0; idx < pattern.length(); idx++)
+        {
+            char ch = pattern.charAt(idx);
+            switch (ch)
+            {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append(".");
+                    break;
+                case DOS_STAR:
+                    regex.append("(?:[^.]|\\.(?=.*\\.))*");
+                    break;
+                case DOS_QM:
+                    regex.append("(?:[^.]|(?=\\.)|$)");
+                    break;
+                case DOS_DOT:
+                    regex.append("(?:\\.|$)");
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(ch)));
+                    break;
+            }
+        }
+        
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+
     /**
      * Finds the nodes being reference by the given directory and file paths.
      * <p>
@@ -655,6 +938,26 @@ public class SMBHelper
             tokens[count] = tokenizer.nextToken();
             count++;
         }
+        
+        // use the folder path cache for a specific path, if there is a cache for the root node
+        NodePathCache pathCache = pathCaches.get(pathRootNodeRef);
+        if (pathCache != null && tokens.length > 0 && !WildCard.containsWildcards(path) && !containsDosWildcards(path))
+        {
+            try
+            {
+                return getNodeRefsCached(pathCache, pathRootNodeRef, path, tokens);
+            }
+            catch (InvalidNodeRefException e)
+            {
+                // a cached folder no longer exists, fall through to a full path walk
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Stale path cache entry for path " + path + ", node " + e.getNodeRef());
+                }
+                pathCache.removeNode(e.getNodeRef());
+            }
+        }
+        
         Stack<String> pathElements = new Stack<String>();
         for (int i = tokens.length - 1; i >= 0; i--)
         {
@@ -691,6 +994,73 @@ public class SMBHelper
         return results;
     }
     
+    /**
+     * Finds the node referenced by a path without wildcards, starting from the deepest folder found
+     * in the folder path cache and adding the folders walked to the cache.
+     * 
+     * @param pathCache the folder path cache for the root node
+     * @param pathRootNodeRef the node from which to start the path search
+     * @param path the path to either a folder or file
+     * @param tokens the path elements
+     * @return Returns the matching node, or an empty list
+     * @throws InvalidNodeRefException if a cached folder node no longer exists
+     */
+    private List<NodeRef> getNodeRefsCached(NodePathCache pathCache, NodeRef pathRootNodeRef, String path, String[] tokens)
+    {
+        // find the deepest cached folder on the path
+        StringBuilder pathBuf = new StringBuilder(path.length() + 1);
+        String[] folderPaths = new String[tokens.length];
+        for (int i = 0; i < tokens.length; i++)
+        {
+            pathBuf.append(FileName.DOS_SEPERATOR);
+            pathBuf.append(tokens[i]);
+            folderPaths[i] = pathBuf.toString();
+        }
+        
+        // the folders walked are only cached if the cache is not invalidated during the walk
+        long generation = pathCache.getGeneration();
+        
+        NodeRef[] cachedNodeRef = new NodeRef[1];
+        int cachedIdx = pathCache.findDeepestNode(folderPaths, cachedNodeRef);
+        NodeRef curNodeRef = cachedIdx != -1 ? cachedNodeRef[0] : pathRootNodeRef;
+        int startIdx = cachedIdx + 1;
+        
+        // walk the remaining path elements, caching the intermediate folders
+        for (int i = startIdx; i < tokens.length; i++)
+        {
+            curNodeRef = fileFolderService.searchSimple(curNodeRef, tokens[i]);
+            if (curNodeRef == null)
+            {
+                return Collections.emptyList();
+            }
+            if (i < tokens.length - 1)
+            {
+                pathCache.addNode(folderPaths[i], curNodeRef, generation);
+            }
+        }
+        
+        // check the node type, and cache the last path element if it is a folder
+        QName nodeType = nodeService.getType(curNodeRef);
+        if (excludedTypes.contains(nodeType))
+        {
+            return Collections.emptyList();
+        }
+        if (startIdx < tokens.length && dictionaryService.isSubClass(nodeType, ContentModel.TYPE_FOLDER))
+        {
+            pathCache.addNode(path, curNodeRef, generation);
+        }
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Retrieved node reference for path: \n" +
+                    "   path root: " + pathRootNodeRef + "\n" +
+                    "   path: " + path + "\n" +
+                    "   cached elements: " + startIdx + "\n" +
+                    "   result: " + curNodeRef);
+        }
+        return Collections.singletonList(curNodeRef);
+    }
+    
     /**
      * Attempts to fetch a specific single node at the given path.
      * <p>
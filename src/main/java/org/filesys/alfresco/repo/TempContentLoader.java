@@ -0,0 +1,464 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * Temporary Content Loader Class
+ *
+ * <p>Loads the existing content of a file into a sparse temporary file on demand, in fixed size blocks, so that a
+ * file opened for read/write does not have to be copied in full when it is opened. Blocks are loaded from the
+ * existing content when they are first read, or partially written, blocks that are completely overwritten are never
+ * loaded. The remaining blocks are loaded when the content is committed.
+ *
+ * <p>The loader is shared by all handles that use the same temporary file.
+ */
+public class TempContentLoader {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(TempContentLoader.class);
+
+    // Default block size
+    public static final int DefaultBlockSize = 64 * 1024;
+
+    // Existing content and temporary file
+    private ContentReader m_reader;
+    private File m_tempFile;
+
+    // Size of the existing content that is still visible in the file, reduced by a truncate
+    private long m_srcSize;
+
+    // Block size and loaded blocks
+    private int m_blockSize;
+    private BitSet m_loaded = new BitSet();
+    private int m_loadedCount;
+
+    // Channels used to load blocks
+    private FileChannel m_srcChannel;
+    private RandomAccessFile m_tempIO;
+
+    // Block copy buffer
+    private ByteBuffer m_copyBuf;
+
+    // Read-ahead manager, if sequential reads should load the following blocks asynchronously
+    private ReadAheadManager m_readAhead;
+
+    // Loader has been closed
+    private boolean m_closed;
+
+    /**
+     * Class constructor
+     *
+     * <p>Sets the temporary file length to the existing content size, the file is sparse until blocks are loaded.
+     *
+     * @param reader ContentReader
+     * @param tempFile File
+     * @exception IOException Error sizing the temporary file
+     */
+    public TempContentLoader( ContentReader reader, File tempFile)
+        throws IOException {
+        this( reader, tempFile, DefaultBlockSize);
+    }
+
+    /**
+     * Class constructor
+     *
+     * @param reader ContentReader
+     * @param tempFile File
+     * @param blockSize int
+     * @exception IOException Error sizing the temporary file
+     */
+    public TempContentLoader( ContentReader reader, File tempFile, int blockSize)
+        throws IOException {
+        m_reader = reader;
+        m_tempFile = tempFile;
+        m_srcSize = reader.getSize();
+        m_blockSize = blockSize > 0 ? blockSize : DefaultBlockSize;
+
+        m_tempIO = new RandomAccessFile( m_tempFile, "rw");
+        m_tempIO.setLength( m_srcSize);
+    }
+
+    /**
+     * Return the temporary file
+     *
+     * @return File
+     */
+    public final File getTempFile() {
+        return m_tempFile;
+    }
+
+    /**
+     * Return the content URL of the existing content
+     *
+     * @return String
+     */
+    public final String getContentUrl() {
+        return m_reader.getContentUrl();
+    }
+
+    /**
+     * Return the block size
+     *
+     * @return int
+     */
+    public final int getBlockSize() {
+        return m_blockSize;
+    }
+
+    /**
+     * Set the read-ahead manager, used by the file handles to load blocks ahead of sequential reads
+     *
+     * @param readAhead ReadAheadManager
+     */
+    public final void setReadAheadManager( ReadAheadManager readAhead) {
+        m_readAhead = readAhead;
+    }
+
+    /**
+     * Return the read-ahead manager, or null if read-ahead is not enabled
+     *
+     * @return ReadAheadManager
+     */
+    public final ReadAheadManager getReadAheadManager() {
+        return m_readAhead;
+    }
+
+    /**
+     * Check if all of the existing content has been loaded into the temporary file
+     *
+     * @return boolean
+     */
+    public final synchronized boolean isComplete() {
+        return m_loadedCount >= numberOfBlocks();
+    }
+
+    /**
+     * Return the number of blocks that have been loaded, or overwritten
+     *
+     * @return int
+     */
+    public final synchronized int getLoadedBlockCount() {
+        return m_loadedCount;
+    }
+
+    /**
+     * Create a block loader that loads the existing content into the temporary file, used to queue the loading of
+     * ranges of the file with the read-ahead manager
+     *
+     * @return ReadAheadManager.BlockLoader
+     */
+    public final ReadAheadManager.BlockLoader createBlockLoader() {
+        return new ReadAheadManager.BlockLoader() {
+            @Override
+            public boolean isLoaded( long fileOff, long len) {
+                return TempContentLoader.this.isLoaded( fileOff, len);
+            }
+
+            @Override
+            public boolean loadBlock( long fileOff)
+                throws IOException {
+                return prefetch( fileOff);
+            }
+        };
+    }
+
+    /**
+     * Make sure the existing content for a range of the file is loaded, before the range is read
+     *
+     * @param fileOff long
+     * @param len long
+     * @exception IOException Error loading the content
+     */
+    public final synchronized void prepareRead( long fileOff, long len)
+        throws IOException {
+        loadRange( fileOff, len, false);
+    }
+
+    /**
+     * Check if the existing content for a range of the file has been loaded
+     *
+     * @param fileOff long
+     * @param len long
+     * @return boolean
+     */
+    public final synchronized boolean isLoaded( long fileOff, long len) {
+
+        if ( len <= 0 || fileOff >= m_srcSize)
+            return true;
+
+        long endOff = Math.min( fileOff + len, m_srcSize);
+        int startBlk = (int) ( fileOff / m_blockSize);
+        int endBlk = (int) (( endOff - 1) / m_blockSize);
+
+        return m_loaded.nextClearBit( startBlk) > endBlk;
+    }
+
+    /**
+     * Load the block containing the specified offset ahead of a read
+     *
+     * @param fileOff long
+     * @return boolean false if the loader has been closed or all of the content has been loaded
+     * @exception IOException Error loading the content
+     */
+    public final synchronized boolean prefetch( long fileOff)
+        throws IOException {
+
+        if ( m_closed || isComplete())
+            return false;
+
+        loadRange( fileOff, 1, false);
+        return true;
+    }
+
+    /**
+     * Make sure the existing content for the blocks partially covered by a write is loaded, blocks that are
+     * completely overwritten do not need to be loaded, they are marked as loaded by completeWrite() once the write
+     * has succeeded
+     *
+     * <p>The caller should hold the loader lock from prepareWrite() until completeWrite() so that a read on another
+     * handle cannot load the existing content over the new data.
+     *
+     * @param fileOff long
+     * @param len long
+     * @exception IOException Error loading the content
+     */
+    public final synchronized void prepareWrite( long fileOff, long len)
+        throws IOException {
+        loadRange( fileOff, len, true);
+    }
+
+    /**
+     * Mark the blocks that were completely overwritten by a successful write as loaded. If the write fails the
+     * blocks are left unloaded and will be loaded from the existing content when they are next read.
+     *
+     * @param fileOff long
+     * @param len long
+     */
+    public final synchronized void completeWrite( long fileOff, long len) {
+
+        if ( len <= 0 || fileOff >= m_srcSize)
+            return;
+
+        long endOff = Math.min( fileOff + len, m_srcSize);
+        int startBlk = (int) ( fileOff / m_blockSize);
+        int endBlk = (int) (( endOff - 1) / m_blockSize);
+
+        for ( int blk = startBlk; blk <= endBlk; blk++) {
+
+            long blkStart = (long) blk * m_blockSize;
+            long blkEnd = Math.min( blkStart + m_blockSize, m_srcSize);
+
+            if ( m_loaded.get( blk) == false && fileOff <= blkStart && fileOff + len >= blkEnd) {
+                m_loaded.set( blk);
+                m_loadedCount++;
+            }
+        }
+    }
+
+    /**
+     * Prepare for the file to be truncated, or extended, to the specified size
+     *
+     * @param size long
+     * @exception IOException Error loading the content
+     */
+    public final synchronized void prepareTruncate( long size)
+        throws IOException {
+
+        if ( size >= m_srcSize)
+            return;
+
+        // Load the block that will contain the new end of file, the existing content beyond the new size is no
+        // longer visible, if the file is extended again the new area must be zeroed
+        if ( size > 0)
+            loadRange( size - 1, 1, false);
+
+        m_srcSize = size;
+        m_loadedCount = m_loaded.get( 0, numberOfBlocks()).cardinality();
+    }
+
+    /**
+     * Load all of the remaining existing content into the temporary file, and release the existing content
+     *
+     * @exception IOException Error loading the content
+     */
+    public final synchronized void loadAll()
+        throws IOException {
+
+        if ( isComplete() == false) {
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Load remaining content, blocks=" + ( numberOfBlocks() - m_loadedCount) + "/" + numberOfBlocks() + ", file=" + m_tempFile);
+
+            loadRange( 0, m_srcSize, false);
+        }
+
+        // Make sure the loaded blocks are written through before the temporary file is read by other streams
+        if ( m_tempIO != null)
+            m_tempIO.getChannel().force( false);
+
+        closeSource();
+    }
+
+    /**
+     * Close the loader, release the existing content and temporary file channels
+     */
+    public final synchronized void close() {
+        m_closed = true;
+        closeSource();
+
+        if ( m_tempIO != null) {
+            try {
+                m_tempIO.close();
+            }
+            catch ( IOException ex) {
+            }
+            m_tempIO = null;
+        }
+    }
+
+    /**
+     * Load the blocks for the specified range of the file
+     *
+     * @param fileOff long
+     * @param len long
+     * @param write boolean
+     * @exception IOException Error loading the content
+     */
+    private void loadRange( long fileOff, long len, boolean write)
+        throws IOException {
+
+        // Check if the range overlaps the existing content
+        if ( len <= 0 || fileOff >= m_srcSize)
+            return;
+
+        long endOff = Math.min( fileOff + len, m_srcSize);
+        int startBlk = (int) ( fileOff / m_blockSize);
+        int endBlk = (int) (( endOff - 1) / m_blockSize);
+
+        for ( int blk = startBlk; blk <= endBlk; blk++) {
+
+            if ( m_loaded.get( blk))
+                continue;
+
+            long blkStart = (long) blk * m_blockSize;
+            long blkEnd = Math.min( blkStart + m_blockSize, m_srcSize);
+
+            // A block that is completely overwritten does not need to be loaded, it is only marked as loaded once
+            // the write has succeeded
+            if ( write && fileOff <= blkStart && fileOff + len >= blkEnd)
+                continue;
+
+            loadBlock( blkStart, (int) ( blkEnd - blkStart));
+
+            m_loaded.set( blk);
+            m_loadedCount++;
+        }
+    }
+
+    /**
+     * Copy a block of the existing content into the temporary file
+     *
+     * @param blkStart long
+     * @param blkLen int
+     * @exception IOException Error loading the block
+     */
+    private void loadBlock( long blkStart, int blkLen)
+        throws IOException {
+
+        // Open the existing content, and temporary file, if not already open
+        if ( m_srcChannel == null || m_srcChannel.isOpen() == false)
+            m_srcChannel = m_reader.getReader().getFileChannel();
+
+        if ( m_tempIO == null)
+            m_tempIO = new RandomAccessFile( m_tempFile, "rw");
+
+        if ( m_copyBuf == null)
+            m_copyBuf = ByteBuffer.allocate( m_blockSize);
+
+        // Read the block from the existing content
+        m_copyBuf.clear();
+        m_copyBuf.limit( blkLen);
+
+        while ( m_copyBuf.hasRemaining()) {
+            if ( m_srcChannel.read( m_copyBuf, blkStart + m_copyBuf.position()) == -1)
+                break;
+        }
+
+        // Write the block to the temporary file
+        m_copyBuf.flip();
+        FileChannel tempChannel = m_tempIO.getChannel();
+
+        while ( m_copyBuf.hasRemaining())
+            tempChannel.write( m_copyBuf, blkStart + m_copyBuf.position());
+    }
+
+    /**
+     * Close the existing content channel
+     */
+    private void closeSource() {
+        if ( m_srcChannel != null) {
+            try {
+                m_srcChannel.close();
+            }
+            catch ( IOException ex) {
+            }
+            m_srcChannel = null;
+        }
+    }
+
+    /**
+     * Return the number of blocks in the existing content
+     *
+     * @return int
+     */
+    private int numberOfBlocks() {
+        return (int) (( m_srcSize + m_blockSize - 1) / m_blockSize);
+    }
+
+    /**
+     * Return the loader details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[TempContentLoader ");
+        str.append( m_tempFile.getName());
+        str.append( ", size=");
+        str.append( m_srcSize);
+        str.append( ", blocks=");
+        str.append( getLoadedBlockCount());
+        str.append( "/");
+        str.append( numberOfBlocks());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
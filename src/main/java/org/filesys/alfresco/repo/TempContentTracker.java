@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Temporary Content Tracker Class
+ *
+ * <p>Tracks the writes to a temporary file so that the file content can be checked for changes when the file is
+ * closed without reading the whole file. A running digest is kept while the file is written sequentially from the
+ * start, and the ranges of the file that have been written are recorded.
+ *
+ * <p>The tracker is shared by all handles that use the same temporary file.
+ */
+public class TempContentTracker {
+
+    // Maximum number of separate written ranges that are tracked
+    public static final int MaxDirtyRanges = 1024;
+
+    // Buffer size used to compare ranges
+    private static final int CompareBufferSize = 65536;
+
+    // Running digest, and the offset the next sequential write must start at for the digest to remain valid
+    private MessageDigest m_digest;
+    private long m_digestOffset;
+
+    // Written ranges, start offset to end offset, and valid flag
+    private TreeMap<Long, Long> m_dirtyRanges = new TreeMap<Long, Long>();
+    private boolean m_rangesValid = true;
+
+    /**
+     * Class constructor
+     *
+     * @param emptyFile boolean true if the file starts with no content
+     */
+    public TempContentTracker( boolean emptyFile) {
+        if ( emptyFile)
+            m_digest = ContentDigestCache.createDigest();
+    }
+
+    /**
+     * Record a write to the file
+     *
+     * @param buf byte[]
+     * @param len int
+     * @param pos int
+     * @param fileOff long
+     */
+    public final synchronized void recordWrite( byte[] buf, int len, int pos, long fileOff) {
+        if ( len <= 0)
+            return;
+
+        // Update the running digest if the write follows on from the previous write, any other write pattern means
+        // the digest must be calculated from the file
+        if ( m_digest != null) {
+            if ( fileOff == m_digestOffset) {
+                m_digest.update( buf, pos, len);
+                m_digestOffset += len;
+            }
+            else
+                m_digest = null;
+        }
+
+        // Add the written range
+        if ( m_rangesValid)
+            addRange( fileOff, fileOff + len);
+    }
+
+    /**
+     * Record the file being truncated, or extended
+     *
+     * @param size long
+     */
+    public final synchronized void recordTruncate( long size) {
+
+        if ( size == 0) {
+
+            // All of the previous content has been discarded, the running digest is valid again
+            m_digest = ContentDigestCache.createDigest();
+            m_digestOffset = 0L;
+        }
+        else if ( size < m_digestOffset) {
+
+            // Content covered by the digest has been discarded
+            m_digest = null;
+        }
+
+        // Changed ranges are only tracked whilst the file size is not changed by a truncate
+        m_rangesValid = false;
+        m_dirtyRanges.clear();
+    }
+
+    /**
+     * Return the content digest, if the running digest covers the whole file
+     *
+     * @param fileSize long
+     * @return byte[], or null if the digest must be calculated from the file
+     */
+    public final synchronized byte[] getContentDigest( long fileSize) {
+        if ( m_digest == null || m_digestOffset != fileSize)
+            return null;
+
+        try {
+            return (( MessageDigest) m_digest.clone()).digest();
+        }
+        catch ( CloneNotSupportedException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if the written ranges are being tracked
+     *
+     * @return boolean
+     */
+    public final synchronized boolean hasDirtyRanges() {
+        return m_rangesValid;
+    }
+
+    /**
+     * Return the written ranges, as pairs of start and end offsets
+     *
+     * @return List of long[], or null if the ranges are not being tracked
+     */
+    public final synchronized List<long[]> getDirtyRanges() {
+        if ( m_rangesValid == false)
+            return null;
+
+        List<long[]> ranges = new ArrayList<long[]>( m_dirtyRanges.size());
+
+        for ( Map.Entry<Long, Long> range : m_dirtyRanges.entrySet())
+            ranges.add( new long[] { range.getKey(), range.getValue() });
+        return ranges;
+    }
+
+    /**
+     * Check if the written ranges of the file contain the same data as the existing content
+     *
+     * @param existing FileChannel
+     * @param file FileChannel
+     * @return boolean
+     * @exception IOException Error reading the data
+     */
+    public final boolean isDirtyDataEqual( FileChannel existing, FileChannel file)
+        throws IOException {
+
+        List<long[]> ranges = getDirtyRanges();
+        if ( ranges == null)
+            return false;
+
+        ByteBuffer buf1 = ByteBuffer.allocate( CompareBufferSize);
+        ByteBuffer buf2 = ByteBuffer.allocate( CompareBufferSize);
+
+        for ( long[] range : ranges) {
+
+            long off = range[0];
+
+            while ( off < range[1]) {
+                int len = (int) Math.min( CompareBufferSize, range[1] - off);
+
+                if ( readFully( existing, buf1, off, len) == false || readFully( file, buf2, off, len) == false)
+                    return false;
+
+                if ( buf1.equals( buf2) == false)
+                    return false;
+
+                off += len;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a written range, merging with overlapping and adjacent ranges
+     *
+     * @param start long
+     * @param end long
+     */
+    private void addRange( long start, long end) {
+
+        // Merge with a range that starts before, or at, the new range
+        Map.Entry<Long, Long> prev = m_dirtyRanges.floorEntry( start);
+        if ( prev != null && prev.getValue() >= start) {
+            start = prev.getKey();
+            end = Math.max( end, prev.getValue());
+            m_dirtyRanges.remove( prev.getKey());
+        }
+
+        // Merge with ranges that start within the new range
+        Map.Entry<Long, Long> next = m_dirtyRanges.ceilingEntry( start);
+        while ( next != null && next.getKey() <= end) {
+            end = Math.max( end, next.getValue());
+            m_dirtyRanges.remove( next.getKey());
+            next = m_dirtyRanges.ceilingEntry( start);
+        }
+
+        m_dirtyRanges.put( start, end);
+
+        // Stop tracking ranges if the writes are too scattered
+        if ( m_dirtyRanges.size() > MaxDirtyRanges) {
+            m_rangesValid = false;
+            m_dirtyRanges.clear();
+        }
+    }
+
+    /**
+     * Read a range of a file into the buffer
+     *
+     * @param channel FileChannel
+     * @param buf ByteBuffer
+     * @param off long
+     * @param len int
+     * @return boolean false if the end of file was reached
+     * @exception IOException Error reading the file
+     */
+    private static boolean readFully( FileChannel channel, ByteBuffer buf, long off, int len)
+        throws IOException {
+
+        buf.clear();
+        buf.limit( len);
+
+        while ( buf.hasRemaining()) {
+            if ( channel.read( buf, off + buf.position()) == -1)
+                return false;
+        }
+
+        buf.flip();
+        return true;
+    }
+
+    /**
+     * Return the tracker details as a string
+     *
+     * @return String
+     */
+    public synchronized String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[TempContentTracker digest=");
+        str.append( m_digest != null ? m_digestOffset : "Invalid");
+        str.append( ", ranges=");
+        str.append( m_rangesValid ? m_dirtyRanges.size() : "Invalid");
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Temp File Commit Strategy Enum
+ *
+ * <p>How a temporary file is copied to its content store file when the content is committed, if the temporary file
+ * is not moved to the content store.
+ *
+ * <ul>
+ * <li>Link - hard link the content store file to the temporary file, requires both on the same filesystem. The
+ * content store file shares the inode of the temporary file, so any later write to the temporary file would also
+ * change the stored content. Only used if configured explicitly, it is never selected by the probe.</li>
+ * <li>Transfer - channel to channel transfer, the data is copied by the kernel (sendfile, or copy_file_range on
+ * newer JDKs) rather than through the Java heap</li>
+ * <li>Stream - copy via the content writer output stream</li>
+ * </ul>
+ */
+public enum TempFileCommitStrategy {
+    Link,
+    Transfer,
+    Stream;
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(TempFileCommitStrategy.class);
+
+    // Probe file prefix
+    private static final String ProbePrefix = ".fsngProbe";
+
+    /**
+     * Copy the temporary file to the content store file using this strategy
+     *
+     * @param tempPath Path
+     * @param contentPath Path
+     * @return long number of bytes copied
+     * @exception IOException Error copying the file
+     */
+    public final long copyFile( Path tempPath, Path contentPath)
+        throws IOException {
+
+        long fileSize = Files.size( tempPath);
+
+        switch ( this) {
+
+            // Replace the content store file with a link to the temporary file data, the temporary file is not
+            // written to once it is committed
+            case Link:
+                Files.deleteIfExists( contentPath);
+                Files.createLink( contentPath, tempPath);
+                break;
+
+            // Transfer the data between the file channels
+            case Transfer:
+                FileChannel inChannel = FileChannel.open( tempPath, StandardOpenOption.READ);
+                FileChannel outChannel = null;
+
+                try {
+                    outChannel = FileChannel.open( contentPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+                    long pos = 0L;
+
+                    while ( pos < fileSize) {
+                        long cnt = inChannel.transferTo( pos, fileSize - pos, outChannel);
+                        if ( cnt <= 0)
+                            throw new IOException( "Transfer to content file failed at offset " + pos + ", file=" + contentPath);
+                        pos += cnt;
+                    }
+                }
+                finally {
+                    inChannel.close();
+                    if ( outChannel != null)
+                        outChannel.close();
+                }
+                break;
+
+            default:
+                throw new IOException( "Commit strategy " + this + " does not copy files directly");
+        }
+
+        return fileSize;
+    }
+
+    /**
+     * Probe the temporary and content store folders to find the fastest safe strategy that is supported, either
+     * Transfer or Stream. Link is not selected as the content store file would share its data with the temporary
+     * file. The probe files are created in sub-folders that are deleted when the probe completes.
+     *
+     * @param tempDir File
+     * @param storeDir File
+     * @return TempFileCommitStrategy
+     */
+    public static TempFileCommitStrategy probe( File tempDir, File storeDir) {
+
+        if ( tempDir == null || storeDir == null || storeDir.isDirectory() == false)
+            return Stream;
+
+        Path tempProbeDir = null;
+        Path storeProbeDir = null;
+
+        try {
+
+            // Create the probe folders, and a small file in the temporary probe folder
+            tempProbeDir = Files.createTempDirectory( tempDir.toPath(), ProbePrefix);
+            storeProbeDir = Files.createTempDirectory( storeDir.toPath(), ProbePrefix);
+
+            Path probeFile = tempProbeDir.resolve( "probe.tmp");
+            Path storeFile = storeProbeDir.resolve( "probe.bin");
+
+            Files.write( probeFile, new byte[] { 'F', 'S', 'N', 'G' });
+
+            // Check that a channel transfer to the content store works
+            Files.createFile( storeFile);
+            Transfer.copyFile( probeFile, storeFile);
+
+            if ( Files.size( storeFile) == Files.size( probeFile))
+                return Transfer;
+        }
+        catch ( IOException | SecurityException ex) {
+
+            // DEBUG
+            if ( logger.isDebugEnabled())
+                logger.debug("Commit strategy probe failed, temp=" + tempDir + ", store=" + storeDir + ", " + ex);
+        }
+        finally {
+            deleteProbeFolder( tempProbeDir);
+            deleteProbeFolder( storeProbeDir);
+        }
+
+        return Stream;
+    }
+
+    /**
+     * Delete a probe folder and the files in it
+     *
+     * @param probeDir Path, or null
+     */
+    private static void deleteProbeFolder( Path probeDir) {
+        if ( probeDir == null)
+            return;
+
+        File[] files = probeDir.toFile().listFiles();
+
+        if ( files != null) {
+            for ( File curFile : files)
+                curFile.delete();
+        }
+
+        if ( probeDir.toFile().delete() == false)
+            logger.warn("Failed to delete commit strategy probe folder " + probeDir);
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Temp File Flusher Class
+ *
+ * <p>Group commit of writes to temporary files that are open by more than one handle. Instead of syncing the file
+ * after every write, files are marked as dirty and synced together by a background thread at a short interval, or
+ * when the file is flushed or closed.
+ *
+ * <p>All handles to a temporary file use the same underlying file, and writes are not buffered by the handle, so
+ * written data is visible to the other handles as soon as the write completes without waiting for the sync.
+ *
+ * <p>A failed background sync is logged, and reported to the handle on the next write, flush or close of the file.
+ * The flusher is configured as a bean, and set on the temporary files by the disk driver.
+ */
+public class TempFileFlusher implements Runnable {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(TempFileFlusher.class);
+
+    // Default flush interval, in milliseconds
+    public static final long DefaultFlushInterval = 500L;
+
+    // Temporary files with writes that have not been synced
+    private final Set<TempNetworkFile> m_dirtyFiles = ConcurrentHashMap.newKeySet();
+
+    // Background sync failures, reported on the next write, flush or close of the file
+    private final Map<TempNetworkFile, IOException> m_failures = new ConcurrentHashMap<TempNetworkFile, IOException>();
+
+    // Flush interval, and flusher thread
+    private volatile long m_flushInterval = DefaultFlushInterval;
+    private Thread m_flushThread;
+
+    // Statistics, number of writes that required a sync, and number of syncs
+    private final AtomicLong m_syncRequests = new AtomicLong();
+    private final AtomicLong m_syncCount = new AtomicLong();
+    private final AtomicLong m_syncFailures = new AtomicLong();
+
+    // Flusher has been shut down
+    private volatile boolean m_shutdown;
+
+    /**
+     * Set the flush interval, in milliseconds, zero syncs the file after every write
+     *
+     * @param interval long
+     */
+    public final void setFlushInterval( long interval) {
+        m_flushInterval = interval >= 0 ? interval : DefaultFlushInterval;
+    }
+
+    /**
+     * Return the flush interval, in milliseconds
+     *
+     * @return long
+     */
+    public final long getFlushInterval() {
+        return m_flushInterval;
+    }
+
+    /**
+     * Mark a temporary file as having writes that need to be synced
+     *
+     * @param tempFile TempNetworkFile
+     * @exception IOException Error syncing the file
+     */
+    public final void markDirty( TempNetworkFile tempFile)
+        throws IOException {
+
+        checkFailed( tempFile);
+        m_syncRequests.incrementAndGet();
+
+        // Sync immediately if group commit is disabled, or the flusher has been shut down
+        if ( m_flushInterval == 0 || m_shutdown) {
+            syncFile( tempFile);
+            return;
+        }
+
+        if ( m_dirtyFiles.add( tempFile))
+            startFlusher();
+    }
+
+    /**
+     * Sync a temporary file now, if it has writes that have not been synced
+     *
+     * @param tempFile TempNetworkFile
+     * @exception IOException Error syncing the file
+     */
+    public final void flush( TempNetworkFile tempFile)
+        throws IOException {
+
+        if ( m_dirtyFiles.remove( tempFile))
+            syncFile( tempFile);
+
+        checkFailed( tempFile);
+    }
+
+    /**
+     * Report a failed background sync of a temporary file, the failure is only reported once
+     *
+     * @param tempFile TempNetworkFile
+     * @exception IOException The background sync of the file failed
+     */
+    public final void checkFailed( TempNetworkFile tempFile)
+        throws IOException {
+
+        if ( m_failures.isEmpty())
+            return;
+
+        IOException ex = m_failures.remove( tempFile);
+        if ( ex != null)
+            throw new IOException( "Background sync of temp file failed, " + tempFile.getFullName(), ex);
+    }
+
+    /**
+     * Remove a temporary file without syncing it, the file has been synced or is being closed
+     *
+     * @param tempFile TempNetworkFile
+     */
+    public final void remove( TempNetworkFile tempFile) {
+        m_dirtyFiles.remove( tempFile);
+        m_failures.remove( tempFile);
+    }
+
+    /**
+     * Return the number of files waiting to be synced
+     *
+     * @return int
+     */
+    public final int getDirtyFileCount() {
+        return m_dirtyFiles.size();
+    }
+
+    /**
+     * Return the number of writes that required a sync
+     *
+     * @return long
+     */
+    public final long getSyncRequestCount() {
+        return m_syncRequests.get();
+    }
+
+    /**
+     * Return the number of file syncs
+     *
+     * @return long
+     */
+    public final long getSyncCount() {
+        return m_syncCount.get();
+    }
+
+    /**
+     * Return the number of background syncs that failed
+     *
+     * @return long
+     */
+    public final long getSyncFailureCount() {
+        return m_syncFailures.get();
+    }
+
+    /**
+     * Stop the flusher thread, and sync any files that have not been synced
+     */
+    public final void shutdown() {
+
+        Thread flushThread;
+
+        synchronized ( this) {
+            m_shutdown = true;
+            flushThread = m_flushThread;
+            m_flushThread = null;
+        }
+
+        if ( flushThread != null) {
+            flushThread.interrupt();
+
+            try {
+                flushThread.join( 5000L);
+            }
+            catch ( InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        syncDirtyFiles();
+    }
+
+    /**
+     * Background flusher, sync the dirty files at each interval
+     */
+    @Override
+    public void run() {
+
+        while ( !m_shutdown) {
+
+            try {
+                Thread.sleep( Math.max( m_flushInterval, 1L));
+            }
+            catch ( InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            syncDirtyFiles();
+        }
+    }
+
+    /**
+     * Sync the current set of dirty files, files dirtied during the flush are picked up on the next run. Failures
+     * are recorded and reported on the next write, flush or close of the file.
+     */
+    private void syncDirtyFiles() {
+
+        if ( m_dirtyFiles.isEmpty())
+            return;
+
+        List<TempNetworkFile> files = new ArrayList<TempNetworkFile>( m_dirtyFiles);
+
+        for ( TempNetworkFile tempFile : files) {
+            if ( m_dirtyFiles.remove( tempFile)) {
+                try {
+                    syncFile( tempFile);
+                }
+                catch ( IOException ex) {
+                    m_syncFailures.incrementAndGet();
+                    m_failures.put( tempFile, ex);
+
+                    logger.warn("Failed to sync temp file " + tempFile.getFullName() + ", " + ex.getMessage());
+                }
+            }
+        }
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Synced " + files.size() + " temp files, " + this);
+    }
+
+    /**
+     * Sync a temporary file
+     *
+     * @param tempFile TempNetworkFile
+     * @exception IOException Error syncing the file
+     */
+    private void syncFile( TempNetworkFile tempFile)
+        throws IOException {
+
+        tempFile.syncFile();
+        m_syncCount.incrementAndGet();
+    }
+
+    /**
+     * Start the flusher thread, if not already running
+     */
+    private synchronized void startFlusher() {
+        if ( m_shutdown)
+            return;
+
+        if ( m_flushThread == null || m_flushThread.isAlive() == false) {
+            m_flushThread = new Thread( this, "TempFileFlusher");
+            m_flushThread.setDaemon( true);
+            m_flushThread.start();
+        }
+    }
+
+    /**
+     * Return the flusher details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[TempFileFlusher interval=");
+        str.append( m_flushInterval);
+        str.append( "ms, dirty=");
+        str.append( getDirtyFileCount());
+        str.append( ", requests=");
+        str.append( getSyncRequestCount());
+        str.append( ", syncs=");
+        str.append( getSyncCount());
+        str.append( ", failures=");
+        str.append( getSyncFailureCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Temp File Registry Class
+ *
+ * <p>Tracks the temporary files created by the filesystem, from creation until the file is deleted or handed over
+ * to the content store or commit queue. Each change is appended to a journal, and the journal is synced to disk, so
+ * temporary files left by a crash can be found and deleted when the server restarts, without clearing the whole
+ * temporary folder.
+ *
+ * <p>Temporary files that fail to delete are kept in the registry and the delete is retried by the cleanup task.
+ */
+public class TempFileRegistry {
+
+    // Logging
+    private static final Log logger = LogFactory.getLog(TempFileRegistry.class);
+
+    // Journal file name
+    public static final String JournalFileName = "temp.journal";
+
+    // Journal record types, created, handed over to the content store or commit queue, deleted
+    private static final char JournalCreated    = 'C';
+    private static final char JournalCommitted  = 'M';
+    private static final char JournalDeleted    = 'D';
+
+    // Number of journal records before the journal is compacted
+    private static final int JournalCompactSize = 10000;
+
+    /**
+     * Registered temporary file details
+     */
+    private static class TempFileEntry {
+
+        // Temporary file
+        private final File m_file;
+
+        // Delete failed, or the file was left by a previous run
+        private volatile boolean m_pendingDelete;
+
+        TempFileEntry( File file) {
+            m_file = file;
+        }
+    }
+
+    // Registered temporary files, keyed by absolute path
+    private final Map<String, TempFileEntry> m_tempFiles = new ConcurrentHashMap<String, TempFileEntry>();
+
+    // Journal file and output stream, and number of records written
+    private File m_journalFile;
+    private FileOutputStream m_journal;
+    private int m_journalRecords;
+
+    // Temporary space used by the registered files, updated by the cleanup task
+    private volatile long m_spaceUsed;
+
+    // Statistics
+    private final AtomicLong m_created = new AtomicLong();
+    private final AtomicLong m_deleted = new AtomicLong();
+    private final AtomicLong m_committed = new AtomicLong();
+    private final AtomicLong m_orphans = new AtomicLong();
+
+    /**
+     * Open the journal, any temporary files from a previous run that were not deleted or committed are marked as
+     * orphans, to be deleted by the cleanup task
+     *
+     * @param journalFile File
+     * @return int number of orphaned temporary files
+     * @exception IOException Error opening the journal
+     */
+    public final synchronized int openJournal( File journalFile)
+        throws IOException {
+
+        closeJournal();
+
+        // Replay the existing journal
+        int orphanCnt = 0;
+
+        if ( journalFile.exists()) {
+            for ( String path : readJournal( journalFile)) {
+                TempFileEntry entry = new TempFileEntry( new File( path));
+                entry.m_pendingDelete = true;
+
+                if ( m_tempFiles.put( path, entry) == null)
+                    orphanCnt++;
+            }
+        }
+
+        m_orphans.addAndGet( orphanCnt);
+
+        // Start a new journal containing the outstanding files
+        m_journalFile = journalFile;
+        rewriteJournal();
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Opened temp file journal " + journalFile + ", orphans=" + orphanCnt);
+
+        return orphanCnt;
+    }
+
+    /**
+     * Close the journal
+     */
+    public final synchronized void closeJournal() {
+        if ( m_journal != null) {
+            try {
+                m_journal.close();
+            }
+            catch ( IOException ex) {
+            }
+
+            m_journal = null;
+        }
+    }
+
+    /**
+     * Record a new temporary file
+     *
+     * @param file File
+     */
+    public final void recordCreate( File file) {
+        m_tempFiles.put( file.getAbsolutePath(), new TempFileEntry( file));
+        m_created.incrementAndGet();
+
+        writeJournal( JournalCreated, file);
+    }
+
+    /**
+     * Record that a temporary file has been moved to the content store or commit queue
+     *
+     * @param file File
+     */
+    public final void recordCommit( File file) {
+        if ( m_tempFiles.remove( file.getAbsolutePath()) != null) {
+            m_committed.incrementAndGet();
+            writeJournal( JournalCommitted, file);
+        }
+    }
+
+    /**
+     * Record that a temporary file has been deleted
+     *
+     * @param file File
+     */
+    public final void recordDelete( File file) {
+        if ( m_tempFiles.remove( file.getAbsolutePath()) != null) {
+            m_deleted.incrementAndGet();
+            writeJournal( JournalDeleted, file);
+        }
+    }
+
+    /**
+     * Delete a temporary file, if the delete fails the cleanup task will retry the delete
+     *
+     * @param file File
+     * @return boolean true if the file was deleted
+     */
+    public final boolean deleteTempFile( File file) {
+        if ( file.delete() || file.exists() == false) {
+            recordDelete( file);
+            return true;
+        }
+
+        addPendingDelete( file);
+        return false;
+    }
+
+    /**
+     * Add a temporary file that failed to delete, the cleanup task will retry the delete
+     *
+     * @param file File
+     */
+    public final void addPendingDelete( File file) {
+
+        // DEBUG
+        if ( logger.isDebugEnabled())
+            logger.debug("Failed to delete temp file: " + file.getAbsolutePath() + ", add to cleanup list");
+
+        TempFileEntry entry = m_tempFiles.get( file.getAbsolutePath());
+
+        if ( entry == null) {
+            entry = new TempFileEntry( file);
+            m_tempFiles.put( file.getAbsolutePath(), entry);
+            writeJournal( JournalCreated, file);
+        }
+
+        entry.m_pendingDelete = true;
+    }
+
+    /**
+     * Delete pending temporary files, and remove entries for files that no longer exist. Updates the temporary
+     * space used.
+     *
+     * @param maxDeletes int maximum number of files to try to delete
+     * @return int number of files deleted by this run
+     */
+    public final int runCleanup( int maxDeletes) {
+
+        int delCnt = 0;
+        int deleted = 0;
+        long spaceUsed = 0L;
+
+        Iterator<TempFileEntry> iter = m_tempFiles.values().iterator();
+
+        while ( iter.hasNext()) {
+            TempFileEntry entry = iter.next();
+
+            if ( entry.m_pendingDelete && delCnt < maxDeletes) {
+                delCnt++;
+
+                if ( entry.m_file.delete() || entry.m_file.exists() == false) {
+                    recordDelete( entry.m_file);
+                    deleted++;
+                    continue;
+                }
+
+                // DEBUG
+                if ( logger.isDebugEnabled())
+                    logger.debug("Failed to delete temporary file: " + entry.m_file);
+            }
+            else if ( entry.m_file.exists() == false) {
+
+                // File was removed without being recorded, or was never created
+                recordDelete( entry.m_file);
+                continue;
+            }
+
+            spaceUsed += entry.m_file.length();
+        }
+
+        m_spaceUsed = spaceUsed;
+
+        // Compact the journal if required
+        synchronized ( this) {
+            try {
+                if ( m_journalRecords > JournalCompactSize)
+                    rewriteJournal();
+            }
+            catch ( IOException ex) {
+                logger.warn("Temp file journal error, " + ex.getMessage());
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Return the number of registered temporary files
+     *
+     * @return int
+     */
+    public final int numberOfTempFiles() {
+        return m_tempFiles.size();
+    }
+
+    /**
+     * Return the number of temporary files waiting to be deleted
+     *
+     * @return int
+     */
+    public final int numberOfPendingDeletes() {
+        int pendingCnt = 0;
+
+        for ( TempFileEntry entry : m_tempFiles.values()) {
+            if ( entry.m_pendingDelete)
+                pendingCnt++;
+        }
+
+        return pendingCnt;
+    }
+
+    /**
+     * Return the temporary space used, as at the last cleanup run
+     *
+     * @return long
+     */
+    public final long getTempSpaceUsed() {
+        return m_spaceUsed;
+    }
+
+    /**
+     * Return the number of orphaned temporary files found at startup
+     *
+     * @return long
+     */
+    public final long getOrphanCount() {
+        return m_orphans.get();
+    }
+
+    /**
+     * Write a record to the journal, and sync the journal to disk so the record survives a crash
+     *
+     * @param recType char
+     * @param file File
+     */
+    private synchronized void writeJournal( char recType, File file) {
+        if ( m_journal == null)
+            return;
+
+        try {
+            m_journal.write(( recType + "\t" + file.getAbsolutePath() + "\n").getBytes( StandardCharsets.UTF_8));
+            m_journal.getChannel().force( false);
+
+            m_journalRecords++;
+        }
+        catch ( IOException ex) {
+            logger.warn("Failed to write temp file journal, " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Read a journal, and return the paths of the temporary files that were not deleted or committed
+     *
+     * @param journalFile File
+     * @return List&lt;String&gt;
+     * @exception IOException Error reading the journal
+     */
+    private List<String> readJournal( File journalFile)
+        throws IOException {
+
+        Map<String, Boolean> liveFiles = new LinkedHashMap<String, Boolean>();
+        BufferedReader rdr = new BufferedReader( new FileReader( journalFile));
+
+        try {
+            String line;
+
+            while (( line = rdr.readLine()) != null) {
+
+                // Ignore a partial record written at a crash
+                if ( line.length() < 3 || line.charAt( 1) != '\t')
+                    continue;
+
+                String path = line.substring( 2);
+
+                if ( line.charAt( 0) == JournalCreated)
+                    liveFiles.put( path, Boolean.TRUE);
+                else
+                    liveFiles.remove( path);
+            }
+        }
+        finally {
+            rdr.close();
+        }
+
+        return new ArrayList<String>( liveFiles.keySet());
+    }
+
+    /**
+     * Rewrite the journal with the currently registered temporary files
+     *
+     * @exception IOException Error writing the journal
+     */
+    private synchronized void rewriteJournal()
+        throws IOException {
+
+        if ( m_journalFile == null)
+            return;
+
+        closeJournal();
+
+        File newJournal = new File( m_journalFile.getParentFile(), m_journalFile.getName() + ".new");
+        FileOutputStream out = new FileOutputStream( newJournal);
+
+        try {
+            StringBuilder str = new StringBuilder();
+
+            for ( String path : m_tempFiles.keySet()) {
+                str.setLength( 0);
+                str.append( JournalCreated).append( '\t').append( path).append( '\n');
+                out.write( str.toString().getBytes( StandardCharsets.UTF_8));
+            }
+
+            out.getFD().sync();
+        }
+        finally {
+            out.close();
+        }
+
+        if ( newJournal.renameTo( m_journalFile) == false) {
+            m_journalFile.delete();
+            if ( newJournal.renameTo( m_journalFile) == false)
+                throw new IOException( "Failed to replace temp file journal " + m_journalFile);
+        }
+
+        m_journal = new FileOutputStream( m_journalFile, true);
+        m_journalRecords = m_tempFiles.size();
+    }
+
+    /**
+     * Return the registry details as a string
+     *
+     * @return String
+     */
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+
+        str.append( "[TempFileRegistry files=");
+        str.append( numberOfTempFiles());
+        str.append( ", pending=");
+        str.append( numberOfPendingDeletes());
+        str.append( ", space=");
+        str.append( getTempSpaceUsed());
+        str.append( ", created=");
+        str.append( m_created.get());
+        str.append( ", committed=");
+        str.append( m_committed.get());
+        str.append( ", deleted=");
+        str.append( m_deleted.get());
+        str.append( ", orphans=");
+        str.append( getOrphanCount());
+        str.append( "]");
+
+        return str.toString();
+    }
+}
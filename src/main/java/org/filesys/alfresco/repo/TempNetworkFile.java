@@ -59,6 +59,19 @@ public class TempNetworkFile extends JavaNetworkFile
     private FileState fileState;
     private int legacyOpenCount = 0;
 
+    // Loads the existing content on demand, if the temporary file was not populated when opened
+    private TempContentLoader contentLoader;
+
+    // Tracks writes to the temporary file so the content can be checked for changes without reading it all
+    private TempContentTracker contentTracker;
+
+    // Detects sequential reads, and loads the existing content ahead of the reads
+    private ReadAheadDetector readAhead;
+
+    // Syncs writes to the file when it is shared by more than one handle, if not set shared writes are synced
+    // immediately
+    private TempFileFlusher flusher;
+
     /**
      * Create a new temporary file with no existing content.
      * 
@@ -71,6 +84,8 @@ public class TempNetworkFile extends JavaNetworkFile
         setFullName(netPath);
         setAttributes(FileAttribute.NTNormal);
         setClosed(false);
+
+        contentTracker = new TempContentTracker(true);
     }
     
     /**
@@ -86,6 +101,20 @@ public class TempNetworkFile extends JavaNetworkFile
         setAttributes(FileAttribute.NTNormal);
         setClosed(false);
     }
+
+    /**
+     * A new temporary network file with the existing content loaded on demand.
+     *
+     * @param file File
+     * @param netPath String
+     * @param contentLoader TempContentLoader
+     */
+    public TempNetworkFile(File file, String netPath, TempContentLoader contentLoader)
+    {
+        this(file, netPath);
+        this.contentLoader = contentLoader;
+        this.contentTracker = new TempContentTracker(contentLoader == null);
+    }
     
     /**
      * Access to the underlying file.
@@ -100,7 +129,70 @@ public class TempNetworkFile extends JavaNetworkFile
     @Override
     public void closeFile() throws IOException {
 
-        super.closeFile();
+        // Sync any writes that have not been synced by the flusher, and report a failed background sync, the file
+        // is closed even if the sync failed
+        try {
+            if (flusher != null)
+                flusher.flush(this);
+        }
+        finally {
+            synchronized (this) {
+                super.closeFile();
+            }
+        }
+    }
+
+    @Override
+    public void flushFile() throws IOException {
+
+        if (flusher != null)
+            flusher.flush(this);
+        super.flushFile();
+    }
+
+    /**
+     * Set the flusher used to sync writes when the file is shared by more than one handle
+     *
+     * @param flusher TempFileFlusher
+     */
+    public void setTempFileFlusher(TempFileFlusher flusher)
+    {
+        this.flusher = flusher;
+    }
+
+    /**
+     * Return the flusher used to sync writes when the file is shared, or null if shared writes are synced
+     * immediately
+     *
+     * @return TempFileFlusher
+     */
+    public TempFileFlusher getTempFileFlusher()
+    {
+        return flusher;
+    }
+
+    /**
+     * Sync the writes to a shared file, in batches by the flusher if set
+     *
+     * @exception IOException Error syncing the file, or a previous background sync failed
+     */
+    private void markDirty() throws IOException
+    {
+        if (flusher != null)
+            flusher.markDirty(this);
+        else
+            syncFile();
+    }
+
+    /**
+     * Sync the temporary file data to disk, called by the flusher
+     *
+     * @exception IOException Error syncing the file
+     */
+    protected synchronized void syncFile() throws IOException {
+
+        if (m_io != null)
+            m_io.getFD().sync();
     }
 
     @Override
@@ -111,16 +203,84 @@ public class TempNetworkFile extends JavaNetworkFile
         {
             fileState.updateAccessDateTime();
         }
+
+        if(contentLoader != null)
+        {
+            // Load the existing content ahead of sequential reads
+            if(readAhead == null && contentLoader.getReadAheadManager() != null)
+            {
+                readAhead = createReadAhead(contentLoader.getReadAheadManager());
+            }
+
+            if(readAhead != null)
+            {
+                readAhead.recordRead(fileOff, len, getFileSize());
+            }
+
+            contentLoader.prepareRead(fileOff, len);
+        }
         return super.readFile(buf, len, pos, fileOff);
     }
+
+    /**
+     * Create the read-ahead detector, blocks are loaded into the temporary file by the existing content loader
+     *
+     * @param manager ReadAheadManager
+     * @return ReadAheadDetector
+     */
+    private ReadAheadDetector createReadAhead(ReadAheadManager manager)
+    {
+        return new ReadAheadDetector(manager, new ReadAheadManager.BlockLoader()
+        {
+            @Override
+            public boolean isLoaded(long fileOff, long len)
+            {
+                TempContentLoader loader = contentLoader;
+                return loader == null || loader.isLoaded(fileOff, len);
+            }
+
+            @Override
+            public boolean loadBlock(long fileOff) throws IOException
+            {
+                TempContentLoader loader = contentLoader;
+                return loader != null && !isClosed() && loader.prefetch(fileOff);
+            }
+        });
+    }
     
     @Override
     public void writeFile(byte[] buf, int len, int pos) throws IOException
     {
+        // Report a failed background sync of earlier writes
+        if (flusher != null)
+            flusher.checkFailed(this);
+
         setChanged(true);
 
-        super.writeFile(buf, len, pos);
+        long fileOff = m_io != null ? m_io.getFilePointer() : 0L;
+
+        TempContentLoader loader = contentLoader;
+        if(loader != null)
+        {
+            // Hold the loader lock for the write so another handle cannot load the existing content over the new data
+            synchronized(loader)
+            {
+                loader.prepareWrite(fileOff, len);
+                super.writeFile(buf, len, pos);
+                loader.completeWrite(fileOff, len);
+            }
+        }
+        else
+        {
+            super.writeFile(buf, len, pos);
+        }
         
+        // Only record the write once the data has been written to the file
+        if(contentTracker != null)
+        {
+            contentTracker.recordWrite(buf, len, pos, fileOff);
+        }
+
         long size = m_io.length();
         setFileSize(size);
 
@@ -129,9 +289,9 @@ public class TempNetworkFile extends JavaNetworkFile
             // Update cached values
             updateTimestampsAndSize( fileState, size);
 
-            // File is being shared so flush updates
+            // File is being shared so flush updates, synced in batches by the flusher
             if ( fileState.getOpenCount() > 1)
-                m_io.getFD().sync();
+                markDirty();
         }
     }
     
@@ -139,9 +299,33 @@ public class TempNetworkFile extends JavaNetworkFile
     public void writeFile(byte[] buffer, int length, int position, long fileOffset)
     throws IOException
     {
+        // Report a failed background sync of earlier writes
+        if (flusher != null)
+            flusher.checkFailed(this);
+
         setChanged(true);
+
+        TempContentLoader loader = contentLoader;
+        if(loader != null)
+        {
+            // Hold the loader lock for the write so another handle cannot load the existing content over the new data
+            synchronized(loader)
+            {
+                loader.prepareWrite(fileOffset, length);
+                super.writeFile(buffer, length, position, fileOffset);
+                loader.completeWrite(fileOffset, length);
+            }
+        }
+        else
+        {
+            super.writeFile(buffer, length, position, fileOffset);
+        }
         
-        super.writeFile(buffer, length, position, fileOffset);
+        // Only record the write once the data has been written to the file
+        if(contentTracker != null)
+        {
+            contentTracker.recordWrite(buffer, length, position, fileOffset);
+        }
         
         long size = m_io.length();
         setFileSize(size);
@@ -151,15 +335,25 @@ public class TempNetworkFile extends JavaNetworkFile
             // Update cached values
             updateTimestampsAndSize( fileState, size);
 
-            // File is being shared so flush updates
+            // File is being shared so flush updates, synced in batches by the flusher
             if ( fileState.getOpenCount() > 1)
-                m_io.getFD().sync();
+                markDirty();
         }
     }
     
     @Override
     public void truncateFile(long size) throws IOException
     {
+        if(contentLoader != null)
+        {
+            contentLoader.prepareTruncate(size);
+        }
+
+        if(contentTracker != null)
+        {
+            contentTracker.recordTruncate(size);
+        }
+
         super.truncateFile(size);
         
         if(size == 0)
@@ -173,9 +367,9 @@ public class TempNetworkFile extends JavaNetworkFile
             // Update cached values
             updateTimestampsAndSize( fileState, size);
 
-            // File is being shared so flush updates
+            // File is being shared so flush updates, synced in batches by the flusher
             if ( fileState.getOpenCount() > 1)
-                m_io.getFD().sync();
+                markDirty();
         }
     }
 
@@ -195,6 +389,71 @@ public class TempNetworkFile extends JavaNetworkFile
         return fileState;
     }
     
+    /**
+     * Set the existing content loader, shared by all handles using the temporary file
+     *
+     * @param contentLoader TempContentLoader
+     */
+    public void setContentLoader(TempContentLoader contentLoader)
+    {
+        this.contentLoader = contentLoader;
+    }
+
+    /**
+     * Return the existing content loader, or null if the temporary file contains all of the content
+     *
+     * @return TempContentLoader
+     */
+    public TempContentLoader getContentLoader()
+    {
+        return contentLoader;
+    }
+
+    /**
+     * Set the content tracker, shared by all handles using the temporary file
+     *
+     * @param contentTracker TempContentTracker
+     */
+    public void setContentTracker(TempContentTracker contentTracker)
+    {
+        this.contentTracker = contentTracker;
+    }
+
+    /**
+     * Return the content tracker, or null if writes to the file are not being tracked
+     *
+     * @return TempContentTracker
+     */
+    public TempContentTracker getContentTracker()
+    {
+        return contentTracker;
+    }
+
+    /**
+     * Make sure the temporary file contains all of the file content, merging any existing content that has
+     * not been loaded with the changed blocks. Must be called before the temporary file is read directly.
+     *
+     * @exception IOException Error loading the existing content
+     */
+    public void loadContent() throws IOException
+    {
+        if(contentLoader != null)
+        {
+            contentLoader.loadAll();
+        }
+    }
+
+    /**
+     * Make sure all of the file data is in the temporary file, before the temporary file is opened by another handle.
+     * Files that hold their data outside the temporary file copy it to the temporary file, and then use the temporary
+     * file.
+     *
+     * @exception IOException Error copying the data to the temporary file
+     */
+    public void prepareSharedOpen() throws IOException
+    {
+    }
+
     /**
      * Tell JFileServer it needs to call disk.closeFile rather than short cutting.
      *
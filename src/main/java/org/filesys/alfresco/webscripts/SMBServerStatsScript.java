@@ -21,6 +21,12 @@ import org.alfresco.repo.management.subsystems.ChildApplicationContextFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.filesys.alfresco.SMBServerBean;
+import org.filesys.alfresco.repo.ContentDiskDriver2;
+import org.filesys.alfresco.repo.NodePathCache;
+import org.filesys.alfresco.repo.ReadAheadManager;
+import org.filesys.alfresco.repo.SMBHelper;
+import org.filesys.alfresco.repo.TempFileFlusher;
+import org.filesys.alfresco.repo.TempFileRegistry;
 import org.filesys.smb.server.SMBServer;
 import org.springframework.extensions.webscripts.AbstractWebScript;
 import org.springframework.extensions.webscripts.WebScriptRequest;
@@ -36,7 +42,7 @@ import org.json.JSONException;
 /**
  * SMB Session List Webscript Class
  *
- * <p>Return the current session list for the SMB server</p>
+ * <p>Return the SMB server counters, and the filesystem cache and temporary file counters</p>
  *
  * @author gkspencer
  */
@@ -87,6 +93,12 @@ public class SMBServerStatsScript extends AbstractWebScript {
             } else {
                 json.put( "error", "SMB server bean not found");
             }
+
+            // Add the filesystem details
+            ContentDiskDriver2 diskDriver = (ContentDiskDriver2) contextFactory.getApplicationContext().getBean( "contentDiskDriver2");
+
+            if ( diskDriver != null)
+                json.put( "filesystem", getFilesystemStats( diskDriver));
         }
         catch ( JSONException ex) {
             out.write("JSON Error: " + ex.toString());
@@ -96,4 +108,78 @@ public class SMBServerStatsScript extends AbstractWebScript {
         String jsonStr = json.toString();
         out.write( jsonStr);
     }
+
+    /**
+     * Return the filesystem counters
+     *
+     * @param diskDriver ContentDiskDriver2
+     * @return JSONObject
+     * @exception JSONException JSON error
+     */
+    private JSONObject getFilesystemStats( ContentDiskDriver2 diskDriver)
+        throws JSONException {
+
+        JSONObject json = new JSONObject();
+
+        // Temporary file counters
+        TempFileRegistry registry = diskDriver.getTempFileRegistry();
+
+        json.put( "temp_files", registry.numberOfTempFiles());
+        json.put( "temp_pending_deletes", registry.numberOfPendingDeletes());
+        json.put( "temp_space_used", diskDriver.getTempSpaceUsed());
+        json.put( "temp_orphans", registry.getOrphanCount());
+
+        // Shared temporary file sync counters
+        TempFileFlusher flusher = diskDriver.getTempFileFlusher();
+
+        if ( flusher != null) {
+            json.put( "temp_sync_requests", flusher.getSyncRequestCount());
+            json.put( "temp_syncs", flusher.getSyncCount());
+            json.put( "temp_sync_failures", flusher.getSyncFailureCount());
+        }
+
+        // Folder path cache counters, totals for all filesystems
+        SMBHelper smbHelper = diskDriver.getSMBHelper();
+
+        if ( smbHelper != null) {
+            long entries = 0L;
+            long hits = 0L;
+            long misses = 0L;
+            long invalidations = 0L;
+            long rejected = 0L;
+
+            for ( NodePathCache pathCache : smbHelper.getPathCaches()) {
+                entries += pathCache.numberOfEntries();
+                hits += pathCache.getHitCount();
+                misses += pathCache.getMissCount();
+                invalidations += pathCache.getInvalidationCount();
+                rejected += pathCache.getRejectedAddCount();
+            }
+
+            json.put( "path_cache_entries", entries);
+            json.put( "path_cache_hits", hits);
+            json.put( "path_cache_misses", misses);
+            json.put( "path_cache_hit_ratio", hits + misses > 0 ? ( hits * 100L) / ( hits + misses) : 0L);
+            json.put( "path_cache_invalidations", invalidations);
+            json.put( "path_cache_rejected_adds", rejected);
+        }
+
+        // Read-ahead counters
+        ReadAheadManager readAhead = diskDriver.getReadAheadManager();
+
+        if ( readAhead != null) {
+            json.put( "read_ahead_prefetched", readAhead.getPrefetchedBlocks());
+            json.put( "read_ahead_hits", readAhead.getHitCount());
+            json.put( "read_ahead_misses", readAhead.getMissCount());
+            json.put( "read_ahead_hit_ratio", readAhead.getHitRatio());
+            json.put( "read_ahead_dropped", readAhead.getDroppedCount());
+        }
+
+        // Temporary file to content store copy counters
+        json.put( "content_copies", diskDriver.getContentCopyCount());
+        json.put( "content_copy_bytes", diskDriver.getContentCopyBytes());
+        json.put( "content_copy_throughput", diskDriver.getContentCopyThroughput());
+
+        return json;
+    }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Content commit queue journal and replay tests
+ */
+public class ContentCommitQueueTest {
+
+    private static final String NODE_1 = "workspace://SpacesStore/00000000-0000-0000-0000-000000000001";
+    private static final String NODE_2 = "workspace://SpacesStore/00000000-0000-0000-0000-000000000002";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File commitDir;
+    private ContentCommitQueue commitQueue;
+
+    @Before
+    public void setUp() throws IOException {
+        commitDir = tempFolder.newFolder( "commit");
+        commitQueue = new ContentCommitQueue( null, null, commitDir, 1, 10);
+    }
+
+    @After
+    public void tearDown() {
+        commitQueue.stopQueue();
+    }
+
+    @Test
+    public void testReplayQueuedCommits() throws IOException {
+        createFile( "temp1.tmp");
+        createFile( "temp2.tmp");
+
+        writeJournal( queued( "Alfresco:\\DOC1.DOCX", NODE_1, "temp1.tmp", "user1", "\\doc1.docx", -1L, 1000L),
+                      queued( "Alfresco:\\DOC2.DOCX", NODE_2, "temp2.tmp", "user2", "\\doc2.docx", 5000L, 2000L));
+
+        List<ContentCommitQueue.PendingCommit> restored = commitQueue.restoreJournal();
+
+        assertEquals( 2, restored.size());
+
+        ContentCommitQueue.PendingCommit pending = restored.get( 0);
+
+        assertTrue( pending.isRestored());
+        assertEquals( new NodeRef( NODE_1), pending.getNodeRef());
+        assertEquals( new File( commitDir, "temp1.tmp"), pending.getTempFile());
+        assertEquals( "user1", pending.getUserName());
+        assertEquals( "\\doc1.docx", pending.getPath());
+        assertFalse( pending.hasModifyDate());
+        assertEquals( 1000L, pending.getQueuedAt());
+
+        pending = restored.get( 1);
+
+        assertEquals( new NodeRef( NODE_2), pending.getNodeRef());
+        assertEquals( 5000L, pending.getModifyDate());
+        assertEquals( 2000L, pending.getQueuedAt());
+    }
+
+    @Test
+    public void testCompletedAndFailedCommitsNotReplayed() throws IOException {
+        createFile( "temp1.tmp");
+        createFile( "temp2.tmp");
+        createFile( "temp3.tmp");
+
+        writeJournal( queued( "Alfresco:\\DOC1.DOCX", NODE_1, "temp1.tmp", "user1", "\\doc1.docx", -1L, 1000L),
+                      queued( "Alfresco:\\DOC2.DOCX", NODE_2, "temp2.tmp", "user1", "\\doc2.docx", -1L, 1001L),
+                      queued( "Alfresco:\\DOC3.DOCX", NODE_2, "temp3.tmp", "user1", "\\doc3.docx", -1L, 1002L),
+                      "D\tAlfresco:\\DOC1.DOCX\ttemp1.tmp",
+                      "F\tAlfresco:\\DOC2.DOCX\ttemp2.tmp");
+
+        List<ContentCommitQueue.PendingCommit> restored = commitQueue.restoreJournal();
+
+        assertEquals( 1, restored.size());
+        assertEquals( "\\doc3.docx", restored.get( 0).getPath());
+
+        // Files that do not belong to an outstanding commit are deleted
+        assertFalse( new File( commitDir, "temp1.tmp").exists());
+        assertFalse( new File( commitDir, "temp2.tmp").exists());
+        assertTrue( new File( commitDir, "temp3.tmp").exists());
+    }
+
+    @Test
+    public void testMissingTempFileNotReplayed() throws IOException {
+        createFile( "temp2.tmp");
+
+        writeJournal( queued( "Alfresco:\\DOC1.DOCX", NODE_1, "temp1.tmp", "user1", "\\doc1.docx", -1L, 1000L),
+                      queued( "Alfresco:\\DOC2.DOCX", NODE_2, "temp2.tmp", "user1", "\\doc2.docx", -1L, 1001L));
+
+        List<ContentCommitQueue.PendingCommit> restored = commitQueue.restoreJournal();
+
+        assertEquals( 1, restored.size());
+        assertEquals( new NodeRef( NODE_2), restored.get( 0).getNodeRef());
+    }
+
+    @Test
+    public void testPartialRecordIgnored() throws IOException {
+        createFile( "temp1.tmp");
+
+        writeJournal( queued( "Alfresco:\\DOC1.DOCX", NODE_1, "temp1.tmp", "user1", "\\doc1.docx", -1L, 1000L),
+                      "D\tAlfresco:\\DOC1");
+
+        assertEquals( 1, commitQueue.restoreJournal().size());
+    }
+
+    @Test
+    public void testRecordWithoutQueuedTime() throws IOException {
+        File tempFile = createFile( "temp1.tmp");
+        assertTrue( tempFile.setLastModified( 1234000L));
+
+        writeJournal( "Q\tAlfresco:\\DOC1.DOCX\t" + NODE_1 + "\ttemp1.tmp\tuser1\t\\doc1.docx\t-1");
+
+        List<ContentCommitQueue.PendingCommit> restored = commitQueue.restoreJournal();
+
+        assertEquals( 1, restored.size());
+        assertEquals( 1234000L, restored.get( 0).getQueuedAt());
+    }
+
+    @Test
+    public void testJournalRewrittenWithOutstandingCommits() throws IOException {
+        createFile( "temp1.tmp");
+        createFile( "temp2.tmp");
+
+        String outstanding = queued( "Alfresco:\\DOC2.DOCX", NODE_2, "temp2.tmp", "user1", "\\doc2.docx", -1L, 1001L);
+
+        writeJournal( queued( "Alfresco:\\DOC1.DOCX", NODE_1, "temp1.tmp", "user1", "\\doc1.docx", -1L, 1000L),
+                      outstanding,
+                      "D\tAlfresco:\\DOC1.DOCX\ttemp1.tmp");
+
+        commitQueue.restoreJournal();
+        commitQueue.stopQueue();
+
+        List<String> lines = Files.readAllLines( new File( commitDir, ContentCommitQueue.JournalFileName).toPath(), StandardCharsets.UTF_8);
+
+        assertEquals( 1, lines.size());
+        assertEquals( outstanding, lines.get( 0));
+
+        // Replaying the rewritten journal restores the same commit
+        commitQueue = new ContentCommitQueue( null, null, commitDir, 1, 10);
+
+        List<ContentCommitQueue.PendingCommit> restored = commitQueue.restoreJournal();
+
+        assertEquals( 1, restored.size());
+        assertEquals( "\\doc2.docx", restored.get( 0).getPath());
+    }
+
+    @Test
+    public void testFailedFilesKeptAtRestore() throws IOException {
+        createFile( "temp2.tmp");
+
+        File failedDir = new File( commitDir, ContentCommitQueue.FailedFolderName);
+        assertTrue( failedDir.mkdir());
+
+        File failedFile = new File( failedDir, "temp1.tmp");
+        Files.write( failedFile.toPath(), "content".getBytes( StandardCharsets.UTF_8));
+
+        // Failed records carry the name of the kept file
+        writeJournal( queued( "Alfresco:\\DOC1.DOCX", NODE_1, "temp1.tmp", "user1", "\\doc1.docx", -1L, 1000L),
+                      queued( "Alfresco:\\DOC2.DOCX", NODE_2, "temp2.tmp", "user1", "\\doc2.docx", -1L, 1001L),
+                      "F\tAlfresco:\\DOC1.DOCX\ttemp1.tmp\t" + ContentCommitQueue.FailedFolderName + File.separator + "temp1.tmp");
+
+        List<ContentCommitQueue.PendingCommit> restored = commitQueue.restoreJournal();
+
+        assertEquals( 1, restored.size());
+        assertEquals( "\\doc2.docx", restored.get( 0).getPath());
+
+        // The failed folder is not removed as an orphan
+        assertTrue( failedFile.exists());
+    }
+
+    @Test
+    public void testEmptyCommitFolder() throws IOException {
+        assertTrue( commitQueue.restoreJournal().isEmpty());
+        assertTrue( new File( commitDir, ContentCommitQueue.JournalFileName).exists());
+    }
+
+    /**
+     * Build a queued commit journal record
+     */
+    private static String queued( String key, String nodeRef, String tempName, String userName, String path, long modifyDate, long queuedAt) {
+        return "Q\t" + key + "\t" + nodeRef + "\t" + tempName + "\t" + userName + "\t" + path + "\t" + modifyDate + "\t" + queuedAt;
+    }
+
+    /**
+     * Write the journal records
+     */
+    private void writeJournal( String... records) throws IOException {
+        Writer wrt = new FileWriter( new File( commitDir, ContentCommitQueue.JournalFileName));
+
+        try {
+            for ( String rec : records)
+                wrt.write( rec + "\n");
+        }
+        finally {
+            wrt.close();
+        }
+    }
+
+    /**
+     * Create a file in the commit folder
+     */
+    private File createFile( String name) throws IOException {
+        File file = new File( commitDir, name);
+        Files.write( file.toPath(), "content".getBytes( StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Negative lookup cache invalidation tests
+ */
+public class NegativeLookupCacheTest {
+
+    private static final NodeRef ROOT = new NodeRef( "workspace://SpacesStore/root");
+    private static final NodeRef FOLDER1 = new NodeRef( "workspace://SpacesStore/folder1");
+    private static final NodeRef FOLDER2 = new NodeRef( "workspace://SpacesStore/folder2");
+
+    private NegativeLookupCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new NegativeLookupCache( 100, 60000L);
+    }
+
+    @Test
+    public void testAddAndFind() {
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+
+        assertTrue( addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt"));
+
+        assertTrue( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+        assertTrue( cache.isMissing( ROOT, "\\FOLDER1\\FILE.TXT"));
+        assertFalse( cache.isMissing( new NodeRef( "workspace://SpacesStore/root2"), "\\folder1\\file.txt"));
+
+        assertEquals( 2L, cache.getHitCount());
+        assertEquals( 2L, cache.getMissCount());
+    }
+
+    @Test
+    public void testRemoveMissing() {
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        addMissing( "\\folder1\\other.txt", FOLDER1, "other.txt");
+        addMissing( "\\folder2\\file.txt", FOLDER2, "file.txt");
+
+        cache.removeMissing( FOLDER1, "FILE.TXT");
+
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+        assertTrue( cache.isMissing( ROOT, "\\folder1\\other.txt"));
+        assertTrue( cache.isMissing( ROOT, "\\folder2\\file.txt"));
+        assertEquals( 2, cache.numberOfEntries());
+    }
+
+    @Test
+    public void testRemoveMissingAllPathsToFolder() {
+
+        // The same folder reached by two paths
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        addMissing( "\\link\\file.txt", FOLDER1, "file.txt");
+
+        cache.removeMissing( FOLDER1, "file.txt");
+
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+        assertFalse( cache.isMissing( ROOT, "\\link\\file.txt"));
+        assertEquals( 0, cache.numberOfEntries());
+    }
+
+    @Test
+    public void testRemovePath() {
+        addMissing( "\\folder1", ROOT, "folder1");
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        addMissing( "\\folder1\\sub\\file.txt", FOLDER2, "file.txt");
+        addMissing( "\\folder10\\file.txt", FOLDER2, "file.txt");
+
+        cache.removePath( ROOT, "\\Folder1");
+
+        assertFalse( cache.isMissing( ROOT, "\\folder1"));
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\sub\\file.txt"));
+
+        // A path that only shares the name prefix is kept
+        assertTrue( cache.isMissing( ROOT, "\\folder10\\file.txt"));
+    }
+
+    @Test
+    public void testRemovePathUnindexesEntries() {
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        cache.removePath( ROOT, "\\folder1");
+
+        // Adding the entry again and removing it by folder and name must still work
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        cache.removeMissing( FOLDER1, "file.txt");
+
+        assertEquals( 0, cache.numberOfEntries());
+    }
+
+    @Test
+    public void testRemoveName() {
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        addMissing( "\\folder2\\file.txt", FOLDER2, "file.txt");
+        addMissing( "\\folder2\\myfile.txt", FOLDER2, "myfile.txt");
+
+        cache.removeName( "File.txt");
+
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+        assertFalse( cache.isMissing( ROOT, "\\folder2\\file.txt"));
+        assertTrue( cache.isMissing( ROOT, "\\folder2\\myfile.txt"));
+    }
+
+    @Test
+    public void testClear() {
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+
+        cache.clear();
+
+        assertEquals( 0, cache.numberOfEntries());
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+    }
+
+    @Test
+    public void testAddRejectedAfterRemoval() {
+
+        // A lookup starts, then the name is created before the lookup adds the missing entry
+        long stamp = cache.getRemoveStamp();
+
+        cache.removeMissing( FOLDER1, "file.txt");
+
+        assertFalse( cache.addMissing( ROOT, "\\folder1\\file.txt", FOLDER1, "file.txt", stamp));
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+
+        // A lookup started after the removal can add the entry
+        assertTrue( addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt"));
+    }
+
+    @Test
+    public void testAddRejectedAfterPathRemoval() {
+        long stamp = cache.getRemoveStamp();
+
+        cache.removePath( ROOT, "\\folder1");
+
+        assertFalse( cache.addMissing( ROOT, "\\folder1\\file.txt", FOLDER1, "file.txt", stamp));
+    }
+
+    @Test
+    public void testEntryExpires() throws InterruptedException {
+        cache = new NegativeLookupCache( 100, 1L);
+
+        addMissing( "\\folder1\\file.txt", FOLDER1, "file.txt");
+        Thread.sleep( 20L);
+
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file.txt"));
+        assertEquals( 0, cache.numberOfEntries());
+    }
+
+    @Test
+    public void testEviction() {
+        cache = new NegativeLookupCache( 2, 60000L);
+
+        addMissing( "\\folder1\\file1.txt", FOLDER1, "file1.txt");
+        addMissing( "\\folder1\\file2.txt", FOLDER1, "file2.txt");
+        addMissing( "\\folder1\\file3.txt", FOLDER1, "file3.txt");
+
+        assertEquals( 2, cache.numberOfEntries());
+        assertFalse( cache.isMissing( ROOT, "\\folder1\\file1.txt"));
+        assertTrue( cache.isMissing( ROOT, "\\folder1\\file3.txt"));
+    }
+
+    /**
+     * Add a missing entry using the current removal stamp
+     */
+    private boolean addMissing( String path, NodeRef parentNodeRef, String name) {
+        return cache.addMissing( ROOT, path, parentNodeRef, name, cache.getRemoveStamp());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Folder path cache tests
+ */
+public class NodePathCacheTest {
+
+    private static final NodeRef FOLDER1 = new NodeRef( "workspace://SpacesStore/folder1");
+    private static final NodeRef FOLDER2 = new NodeRef( "workspace://SpacesStore/folder2");
+    private static final NodeRef FOLDER3 = new NodeRef( "workspace://SpacesStore/folder3");
+
+    private NodePathCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new NodePathCache( 100);
+    }
+
+    @Test
+    public void testAddAndFind() {
+        cache.addNode( "\\docs", FOLDER1);
+
+        assertEquals( FOLDER1, cache.findNode( "\\docs"));
+        assertEquals( FOLDER1, cache.findNode( "\\DOCS\\"));
+        assertEquals( FOLDER1, cache.findNode( "docs"));
+        assertNull( cache.findNode( "\\other"));
+
+        assertEquals( 3L, cache.getHitCount());
+        assertEquals( 1L, cache.getMissCount());
+    }
+
+    @Test
+    public void testFindDeepestNodeCountsOneLookup() {
+        cache.addNode( "\\a", FOLDER1);
+        cache.addNode( "\\a\\b", FOLDER2);
+
+        String[] paths = { "\\a", "\\a\\b", "\\a\\b\\c", "\\a\\b\\c\\d" };
+        NodeRef[] nodeRef = new NodeRef[1];
+
+        assertEquals( 1, cache.findDeepestNode( paths, nodeRef));
+        assertEquals( FOLDER2, nodeRef[0]);
+        assertEquals( 1L, cache.getHitCount());
+        assertEquals( 0L, cache.getMissCount());
+
+        assertEquals( -1, cache.findDeepestNode( new String[] { "\\x", "\\x\\y" }, nodeRef));
+        assertEquals( 1L, cache.getMissCount());
+    }
+
+    @Test
+    public void testAddRejectedAfterInvalidation() {
+
+        // A path walk reads the generation, then a folder is renamed before the walk adds its folders
+        long generation = cache.getGeneration();
+
+        cache.removePath( "\\a");
+
+        assertFalse( cache.addNode( "\\a\\b", FOLDER2, generation));
+        assertNull( cache.findNode( "\\a\\b"));
+        assertEquals( 1L, cache.getRejectedAddCount());
+
+        // A walk started after the invalidation can add
+        assertTrue( cache.addNode( "\\a\\b", FOLDER2, cache.getGeneration()));
+        assertEquals( FOLDER2, cache.findNode( "\\a\\b"));
+    }
+
+    @Test
+    public void testAddRejectedAfterRemoveNodeAndClear() {
+        long generation = cache.getGeneration();
+        cache.removeNode( FOLDER3);
+        assertFalse( cache.addNode( "\\a", FOLDER1, generation));
+
+        generation = cache.getGeneration();
+        cache.clear();
+        assertFalse( cache.addNode( "\\a", FOLDER1, generation));
+    }
+
+    @Test
+    public void testRemovePathPrefix() {
+        cache.addNode( "\\a", FOLDER1);
+        cache.addNode( "\\a\\b", FOLDER2);
+        cache.addNode( "\\a\\b\\c", FOLDER3);
+        cache.addNode( "\\ab", FOLDER3);
+
+        cache.removePath( "\\A");
+
+        assertNull( cache.findNode( "\\a"));
+        assertNull( cache.findNode( "\\a\\b"));
+        assertNull( cache.findNode( "\\a\\b\\c"));
+
+        // A path that only shares the name prefix is kept
+        assertEquals( FOLDER3, cache.findNode( "\\ab"));
+        assertEquals( 3L, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void testRemoveNode() {
+        cache.addNode( "\\a", FOLDER1);
+        cache.addNode( "\\a\\b", FOLDER2);
+        cache.addNode( "\\c", FOLDER3);
+
+        cache.removeNode( FOLDER1);
+
+        assertNull( cache.findNode( "\\a"));
+        assertNull( cache.findNode( "\\a\\b"));
+        assertEquals( FOLDER3, cache.findNode( "\\c"));
+    }
+
+    @Test
+    public void testLRUEviction() {
+        cache = new NodePathCache( 2);
+
+        cache.addNode( "\\a", FOLDER1);
+        cache.addNode( "\\b", FOLDER2);
+
+        // Access the first entry so the second entry is the least recently used
+        assertEquals( FOLDER1, cache.findNode( "\\a"));
+
+        cache.addNode( "\\c", FOLDER3);
+
+        assertEquals( 2, cache.numberOfEntries());
+        assertEquals( FOLDER1, cache.findNode( "\\a"));
+        assertNull( cache.findNode( "\\b"));
+        assertEquals( FOLDER3, cache.findNode( "\\c"));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.model.FileFolderService;
+import org.alfresco.service.cmr.model.FileInfo;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SMB helper path lookup tests
+ */
+public class SMBHelperTest {
+
+    private static final NodeRef ROOT = new NodeRef( "workspace://SpacesStore/root");
+    private static final NodeRef DOCS = new NodeRef( "workspace://SpacesStore/docs");
+
+    private FileFolderService fileFolderService;
+    private NodeService nodeService;
+    private SMBHelper smbHelper;
+    private NodePathCache pathCache;
+
+    @Before
+    public void setUp() {
+        fileFolderService = mock( FileFolderService.class);
+        nodeService = mock( NodeService.class);
+
+        smbHelper = new SMBHelper();
+        smbHelper.setFileFolderService( fileFolderService);
+        smbHelper.setNodeService( nodeService);
+        smbHelper.setDictionaryService( mock( DictionaryService.class));
+
+        // The path cache is enabled by default
+        pathCache = new NodePathCache();
+        smbHelper.registerPathCache( ROOT, pathCache);
+
+        when( fileFolderService.searchSimple( ROOT, "docs")).thenReturn( DOCS);
+        when( nodeService.getType( any( NodeRef.class))).thenReturn( ContentModel.TYPE_CONTENT);
+    }
+
+    @Test
+    public void testDosWildcardSearchWithPathCache() {
+        NodeRef fooTxt = new NodeRef( "workspace://SpacesStore/footxt");
+        NodeRef fooBarTxt = new NodeRef( "workspace://SpacesStore/foobartxt");
+        NodeRef fooDoc = new NodeRef( "workspace://SpacesStore/foodoc");
+
+        listChildren( DOCS, child( "foo.txt", fooTxt), child( "foobar.txt", fooBarTxt), child( "foo.doc", fooDoc));
+
+        // '<' matches any characters up to the final '.', so the pattern matches both .txt files
+        List<NodeRef> results = smbHelper.getNodeRefs( ROOT, "\\docs\\foo<.txt");
+
+        assertEquals( new HashSet<NodeRef>( Arrays.asList( fooTxt, fooBarTxt)), new HashSet<NodeRef>( results));
+
+        // The pattern is not looked up as a literal name through the path cache
+        verify( fileFolderService, never()).searchSimple( DOCS, "foo<.txt");
+        assertNull( pathCache.findNode( "\\docs\\foo<.txt"));
+    }
+
+    @Test
+    public void testDosQuestionMarkAndDotWithPathCache() {
+        NodeRef abc = new NodeRef( "workspace://SpacesStore/abc");
+        NodeRef ab = new NodeRef( "workspace://SpacesStore/ab");
+        NodeRef abcd = new NodeRef( "workspace://SpacesStore/abcd");
+
+        listChildren( DOCS, child( "abc", abc), child( "ab", ab), child( "abcd", abcd));
+
+        // '>' matches a single character or nothing at the end of the name, '"' matches a '.' or the end of the name
+        List<NodeRef> results = smbHelper.getNodeRefs( ROOT, "\\docs\\ab>\"");
+
+        assertEquals( new HashSet<NodeRef>( Arrays.asList( abc, ab)), new HashSet<NodeRef>( results));
+    }
+
+    @Test
+    public void testPlainPathUsesPathCache() {
+        NodeRef file = new NodeRef( "workspace://SpacesStore/file");
+        when( fileFolderService.searchSimple( DOCS, "file.txt")).thenReturn( file);
+
+        assertEquals( Collections.singletonList( file), smbHelper.getNodeRefs( ROOT, "\\docs\\file.txt"));
+        assertEquals( DOCS, pathCache.findNode( "\\docs"));
+    }
+
+    /**
+     * Return a single page listing of the children of a folder
+     */
+    @SuppressWarnings("unchecked")
+    private void listChildren( NodeRef folder, FileInfo... children) {
+        PagingResults<FileInfo> page = mock( PagingResults.class);
+
+        when( page.getPage()).thenReturn( new ArrayList<FileInfo>( Arrays.asList( children)));
+        when( page.hasMoreItems()).thenReturn( false);
+
+        when( fileFolderService.list( eq( folder), anyBoolean(), anyBoolean(), any( Set.class), any( List.class), any( PagingRequest.class)))
+                .thenReturn( page);
+    }
+
+    /**
+     * Create a child file details
+     */
+    private static FileInfo child( String name, NodeRef nodeRef) {
+        FileInfo info = mock( FileInfo.class);
+
+        when( info.getName()).thenReturn( name);
+        when( info.getNodeRef()).thenReturn( nodeRef);
+
+        return info;
+    }
+}
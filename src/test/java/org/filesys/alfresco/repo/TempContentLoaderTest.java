@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Temporary content loader block loading tests
+ */
+public class TempContentLoaderTest {
+
+    // Block size used by the tests
+    private static final int BlockSize = 16;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File tempFile;
+    private TempContentLoader loader;
+
+    @Before
+    public void setUp() throws IOException {
+
+        // Existing content is two blocks of 'A'
+        final File srcFile = tempFolder.newFile( "content.bin");
+        byte[] srcData = new byte[ BlockSize * 2];
+        Arrays.fill( srcData, (byte) 'A');
+        Files.write( srcFile.toPath(), srcData);
+
+        ContentReader reader = mock( ContentReader.class);
+        when( reader.getSize()).thenReturn( (long) srcData.length);
+        when( reader.getReader()).thenReturn( reader);
+        when( reader.getFileChannel()).thenAnswer( new Answer<FileChannel>() {
+            @Override
+            public FileChannel answer( InvocationOnMock invocation) throws Throwable {
+                return FileChannel.open( srcFile.toPath(), StandardOpenOption.READ);
+            }
+        });
+
+        tempFile = new File( tempFolder.getRoot(), "content.tmp");
+        loader = new TempContentLoader( reader, tempFile, BlockSize);
+    }
+
+    @After
+    public void tearDown() {
+        loader.close();
+    }
+
+    @Test
+    public void testOverwrittenBlockLoadedAfterWrite() throws IOException {
+
+        // A block that is completely overwritten is not loaded, and is only marked as loaded once the write completes
+        loader.prepareWrite( 0, BlockSize);
+
+        assertFalse( loader.isLoaded( 0, BlockSize));
+        assertEquals( 0, loader.getLoadedBlockCount());
+
+        writeTemp( 0, BlockSize, (byte) 'B');
+        loader.completeWrite( 0, BlockSize);
+
+        assertTrue( loader.isLoaded( 0, BlockSize));
+        assertEquals( 1, loader.getLoadedBlockCount());
+
+        loader.loadAll();
+
+        assertArrayEquals( expected( 'B', 'A'), Files.readAllBytes( tempFile.toPath()));
+    }
+
+    @Test
+    public void testFailedWriteLoadsExistingContent() throws IOException {
+
+        // The write fails after prepareWrite(), so completeWrite() is never called
+        loader.prepareWrite( 0, BlockSize);
+
+        // A read of the block must see the existing content, not sparse zeros
+        loader.prepareRead( 0, BlockSize);
+
+        assertTrue( loader.isLoaded( 0, BlockSize));
+        assertArrayEquals( expected( 'A'), Arrays.copyOf( Files.readAllBytes( tempFile.toPath()), BlockSize));
+    }
+
+    @Test
+    public void testPartialWriteLoadsBlock() throws IOException {
+
+        // A block that is only partially covered by the write is loaded before the write
+        loader.prepareWrite( BlockSize + 4, 4);
+
+        assertTrue( loader.isLoaded( BlockSize, BlockSize));
+        assertFalse( loader.isLoaded( 0, BlockSize));
+
+        writeTemp( BlockSize + 4, 4, (byte) 'C');
+        loader.completeWrite( BlockSize + 4, 4);
+
+        assertFalse( loader.isLoaded( 0, BlockSize));
+        assertEquals( 1, loader.getLoadedBlockCount());
+    }
+
+    /**
+     * Write a range of the temporary file
+     *
+     * @param fileOff long
+     * @param len int
+     * @param val byte
+     * @exception IOException Error writing the file
+     */
+    private void writeTemp( long fileOff, int len, byte val)
+        throws IOException {
+
+        byte[] data = new byte[ len];
+        Arrays.fill( data, val);
+
+        try ( RandomAccessFile raf = new RandomAccessFile( tempFile, "rw")) {
+            raf.seek( fileOff);
+            raf.write( data);
+        }
+    }
+
+    /**
+     * Build the expected content, one block per value
+     *
+     * @param vals char...
+     * @return byte[]
+     */
+    private byte[] expected( char... vals) {
+        byte[] data = new byte[ vals.length * BlockSize];
+
+        for ( int i = 0; i < vals.length; i++)
+            Arrays.fill( data, i * BlockSize, ( i + 1) * BlockSize, (byte) vals[i]);
+        return data;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2026 JFileServer contributors
+ *
+ * JFileServer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JFileServer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with JFileServer. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.filesys.alfresco.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Temporary file registry journal and cleanup tests
+ */
+public class TempFileRegistryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File journalFile;
+    private TempFileRegistry registry;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = new File( tempFolder.getRoot(), TempFileRegistry.JournalFileName);
+
+        registry = new TempFileRegistry();
+        registry.openJournal( journalFile);
+    }
+
+    @After
+    public void tearDown() {
+        registry.closeJournal();
+    }
+
+    @Test
+    public void testRecordCreateCommitDelete() throws IOException {
+        File file1 = createFile( "file1.tmp", 10);
+        File file2 = createFile( "file2.tmp", 20);
+        File file3 = createFile( "file3.tmp", 30);
+
+        registry.recordCreate( file1);
+        registry.recordCreate( file2);
+        registry.recordCreate( file3);
+
+        assertEquals( 3, registry.numberOfTempFiles());
+
+        registry.recordCommit( file1);
+        registry.recordDelete( file2);
+
+        assertEquals( 1, registry.numberOfTempFiles());
+
+        // Committing or deleting an unregistered file is ignored
+        registry.recordCommit( file1);
+        registry.recordDelete( file2);
+
+        assertEquals( 1, registry.numberOfTempFiles());
+    }
+
+    @Test
+    public void testOrphansRestoredFromJournal() throws IOException {
+        File file1 = createFile( "file1.tmp", 10);
+        File file2 = createFile( "file2.tmp", 20);
+        File file3 = createFile( "file3.tmp", 30);
+
+        registry.recordCreate( file1);
+        registry.recordCreate( file2);
+        registry.recordCreate( file3);
+
+        registry.recordCommit( file1);
+        registry.recordDelete( file2);
+
+        // Simulate a restart, the file that was not committed or deleted is an orphan
+        registry.closeJournal();
+
+        TempFileRegistry newRegistry = new TempFileRegistry();
+
+        try {
+            assertEquals( 1, newRegistry.openJournal( journalFile));
+            assertEquals( 1, newRegistry.getOrphanCount());
+            assertEquals( 1, newRegistry.numberOfTempFiles());
+            assertEquals( 1, newRegistry.numberOfPendingDeletes());
+
+            // The cleanup deletes the orphan
+            assertEquals( 1, newRegistry.runCleanup( 100));
+            assertFalse( file3.exists());
+            assertEquals( 0, newRegistry.numberOfTempFiles());
+
+            // The committed file is not touched by the cleanup
+            assertTrue( file1.exists());
+        }
+        finally {
+            newRegistry.closeJournal();
+        }
+
+        // The delete is journalled, so the orphan is not found again
+        TempFileRegistry nextRegistry = new TempFileRegistry();
+
+        try {
+            assertEquals( 0, nextRegistry.openJournal( journalFile));
+        }
+        finally {
+            nextRegistry.closeJournal();
+        }
+    }
+
+    @Test
+    public void testJournalRewrittenWithOutstandingFiles() throws IOException {
+        File file1 = createFile( "file1.tmp", 10);
+        File file2 = createFile( "file2.tmp", 20);
+
+        registry.recordCreate( file1);
+        registry.recordCreate( file2);
+        registry.recordDelete( file1);
+        registry.closeJournal();
+
+        TempFileRegistry newRegistry = new TempFileRegistry();
+
+        try {
+            newRegistry.openJournal( journalFile);
+
+            List<String> lines = Files.readAllLines( journalFile.toPath(), StandardCharsets.UTF_8);
+
+            assertEquals( 1, lines.size());
+            assertEquals( "C\t" + file2.getAbsolutePath(), lines.get( 0));
+        }
+        finally {
+            newRegistry.closeJournal();
+        }
+    }
+
+    @Test
+    public void testPartialJournalRecordIgnored() throws IOException {
+        registry.closeJournal();
+
+        File file1 = createFile( "file1.tmp", 10);
+        Files.write( journalFile.toPath(), ( "C\t" + file1.getAbsolutePath() + "\nD").getBytes( StandardCharsets.UTF_8));
+
+        TempFileRegistry newRegistry = new TempFileRegistry();
+
+        try {
+            assertEquals( 1, newRegistry.openJournal( journalFile));
+        }
+        finally {
+            newRegistry.closeJournal();
+        }
+    }
+
+    @Test
+    public void testCleanupPendingDeletes() throws IOException {
+        File file1 = createFile( "file1.tmp", 10);
+        File file2 = createFile( "file2.tmp", 20);
+
+        registry.recordCreate( file1);
+        registry.recordCreate( file2);
+        registry.addPendingDelete( file1);
+
+        assertEquals( 1, registry.numberOfPendingDeletes());
+
+        assertEquals( 1, registry.runCleanup( 100));
+        assertFalse( file1.exists());
+        assertTrue( file2.exists());
+
+        assertEquals( 1, registry.numberOfTempFiles());
+        assertEquals( 0, registry.numberOfPendingDeletes());
+        assertEquals( 20L, registry.getTempSpaceUsed());
+    }
+
+    @Test
+    public void testCleanupLimitsDeletes() throws IOException {
+        for ( int i = 0; i < 5; i++) {
+            File file = createFile( "file" + i + ".tmp", 10);
+            registry.recordCreate( file);
+            registry.addPendingDelete( file);
+        }
+
+        assertEquals( 2, registry.runCleanup( 2));
+        assertEquals( 3, registry.numberOfPendingDeletes());
+
+        assertEquals( 3, registry.runCleanup( 100));
+        assertEquals( 0, registry.numberOfTempFiles());
+    }
+
+    @Test
+    public void testCleanupRemovesMissingFiles() throws IOException {
+        File file1 = createFile( "file1.tmp", 10);
+
+        registry.recordCreate( file1);
+        assertTrue( file1.delete());
+
+        assertEquals( 0, registry.runCleanup( 100));
+        assertEquals( 0, registry.numberOfTempFiles());
+        assertEquals( 0L, registry.getTempSpaceUsed());
+    }
+
+    @Test
+    public void testDeleteTempFile() throws IOException {
+        File file1 = createFile( "file1.tmp", 10);
+
+        registry.recordCreate( file1);
+
+        assertTrue( registry.deleteTempFile( file1));
+        assertFalse( file1.exists());
+        assertEquals( 0, registry.numberOfTempFiles());
+    }
+
+    /**
+     * Create a file of the specified size
+     */
+    private File createFile( String name, int size) throws IOException {
+        File file = tempFolder.newFile( name);
+        Files.write( file.toPath(), new byte[size]);
+        return file;
+    }
+}